@@ -0,0 +1,181 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+import com.example.android.bookstore.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test showing that with write-ahead logging, readers of the {@link BookDbHelper}
+ * database aren't blocked by writers.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookDbHelperConcurrencyTest {
+
+    private static final String TEST_DATABASE = "concurrency_test.db";
+
+    private static final int BOOKS = 1000;
+    private static final int READERS = 4;
+
+    private Context context;
+
+    private BookDbHelper dbHelper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase( TEST_DATABASE );
+        dbHelper = new BookDbHelper( context, TEST_DATABASE );
+
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            long[] supplierIds = new long[10];
+            ContentValues supplier = new ContentValues();
+            for (int i = 0; i < supplierIds.length; i++) {
+                supplier.put( SupplierEntry.COLUMN_SUPPLIER_NAME, "Supplier " + i );
+                supplierIds[i] = db.insert( SupplierEntry.TABLE_NAME, null, supplier );
+            }
+
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < BOOKS; i++) {
+                values.put( BookEntry.COLUMN_PRODUCT_NAME, "Book " + i );
+                values.put( BookEntry.COLUMN_PRODUCT_PRICE, i );
+                values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, 100 );
+                values.put( BookEntry.COLUMN_SUPPLIER_ID, supplierIds[i % supplierIds.length] );
+                db.insert( BookEntry.TABLE_NAME, null, values );
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase( TEST_DATABASE );
+    }
+
+    @Test
+    public void writeAheadLogging_isEnabled() {
+        assertTrue( dbHelper.getWritableDatabase().isWriteAheadLoggingEnabled() );
+    }
+
+    @Test
+    public void readDuringOpenWriteTransaction_isNotBlocked() throws Exception {
+        final SQLiteDatabase db = dbHelper.getWritableDatabase();
+        final CountDownLatch written = new CountDownLatch( 1 );
+        final CountDownLatch read = new CountDownLatch( 1 );
+
+        // Hold a write transaction open until the reader is done
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> writer = executor.submit( new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                db.beginTransaction();
+                try {
+                    db.execSQL( "UPDATE " + BookEntry.TABLE_NAME + " SET "
+                            + BookEntry.COLUMN_PRODUCT_QUANTITY + " = 0" );
+                    written.countDown();
+                    assertTrue( read.await( 10, TimeUnit.SECONDS ) );
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                return null;
+            }
+        } );
+
+        // The read completes while the write is still uncommitted, and sees the committed data
+        assertTrue( written.await( 10, TimeUnit.SECONDS ) );
+        long total = DatabaseUtils.longForQuery( db, "SELECT SUM("
+                + BookEntry.COLUMN_PRODUCT_QUANTITY + ") FROM " + BookEntry.TABLE_NAME, null );
+        read.countDown();
+        assertEquals( BOOKS * 100, total );
+
+        writer.get();
+        executor.shutdown();
+    }
+
+    @Test
+    public void readsDuringSteadyUpdates_keepUp() throws Exception {
+        final SQLiteDatabase db = dbHelper.getWritableDatabase();
+        final AtomicBoolean writing = new AtomicBoolean( true );
+        final AtomicInteger updates = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool( READERS + 1 );
+
+        // A steady stream of single-row updates, each one its own transaction, like sales
+        Future<?> writer = executor.submit( new Runnable() {
+            @Override
+            public void run() {
+                ContentValues values = new ContentValues();
+                while (writing.get()) {
+                    int update = updates.get();
+                    values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, update % 100 );
+                    db.update( BookEntry.TABLE_NAME, values, BookEntry._ID + "=?",
+                            new String[]{String.valueOf( update % BOOKS + 1 )} );
+                    updates.incrementAndGet();
+                }
+            }
+        } );
+
+        // Readers scanning a page of the list at a time, counting the updates committed
+        // while they read
+        Future<?>[] readers = new Future<?>[READERS];
+        for (int i = 0; i < READERS; i++) {
+            readers[i] = executor.submit( new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    int firstUpdate = updates.get();
+                    for (int read = 0; read < 200; read++) {
+                        DatabaseUtils.longForQuery( db, "SELECT SUM("
+                                + BookEntry.COLUMN_PRODUCT_QUANTITY + ") FROM (SELECT "
+                                + BookEntry.COLUMN_PRODUCT_QUANTITY + " FROM " + BookEntry.TABLE_NAME
+                                + " WHERE " + BookEntry._ID + " > ? LIMIT 50)",
+                                new String[]{String.valueOf( read % (BOOKS - 50) )} );
+                    }
+                    return updates.get() - firstUpdate;
+                }
+            } );
+        }
+
+        // Every reader finishes while the writer is still writing, and the writer kept
+        // committing in the meantime, so neither waited for the other to be done. No fixed
+        // latency is asserted, since that depends on the device.
+        try {
+            int updatesDuringReads = 0;
+            for (Future<?> reader : readers) {
+                updatesDuringReads += (Integer) reader.get( 60, TimeUnit.SECONDS );
+            }
+            assertTrue( "No update was committed during the reads", updatesDuringReads > 0 );
+            assertFalse( writer.isDone() );
+        } finally {
+            writing.set( false );
+            writer.get( 60, TimeUnit.SECONDS );
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.example.android.bookstore.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+import com.example.android.bookstore.data.BookContract.ChangeEntry;
+import com.example.android.bookstore.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the {@link BookDbHelper} migrations, which upgrades a populated
+ * version 1 database in place.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookDbHelperMigrationTest {
+
+    private static final String UPGRADED_DATABASE = "migration_test_upgraded.db";
+    private static final String NEW_DATABASE = "migration_test_new.db";
+
+    /**
+     * The books table exactly as version 1 of the app created it
+     */
+    private static final String SQL_CREATE_VERSION_1_BOOKS_TABLE = "CREATE TABLE books("
+            + "_id INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + "product_name TEXT NOT NULL, "
+            + "price INTEGER NOT NULL, "
+            + "quantity INTEGER NOT NULL DEFAULT 0, "
+            + "supplier_name TEXT NOT NULL, "
+            + "supplier_phone_number TEXT);";
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        context.deleteDatabase( UPGRADED_DATABASE );
+        context.deleteDatabase( NEW_DATABASE );
+    }
+
+    @After
+    public void tearDown() {
+        context.deleteDatabase( UPGRADED_DATABASE );
+        context.deleteDatabase( NEW_DATABASE );
+    }
+
+    @Test
+    public void upgradeFromVersion1_keepsBooks() {
+        createVersion1Database();
+
+        BookDbHelper dbHelper = new BookDbHelper( context, UPGRADED_DATABASE );
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try {
+            assertEquals( BookDbHelper.DATABASE_VERSION, db.getVersion() );
+
+            Cursor cursor = db.query( BookEntry.TABLE_NAME,
+                    new String[]{BookEntry.COLUMN_PRODUCT_NAME, BookEntry.COLUMN_PRODUCT_QUANTITY},
+                    null, null, null, null, BookEntry._ID );
+            try {
+                assertEquals( 2, cursor.getCount() );
+                cursor.moveToFirst();
+                assertEquals( "The Great Gatsby", cursor.getString( 0 ) );
+                assertEquals( 3, cursor.getInt( 1 ) );
+                cursor.moveToNext();
+                assertEquals( "Moby Dick", cursor.getString( 0 ) );
+                assertEquals( 7, cursor.getInt( 1 ) );
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    @Test
+    public void upgradeFromVersion1_storesPricesInCents() {
+        createVersion1Database();
+
+        BookDbHelper dbHelper = new BookDbHelper( context, UPGRADED_DATABASE );
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try {
+            Cursor cursor = db.query( BookEntry.TABLE_NAME, new String[]{
+                            BookEntry.COLUMN_PRODUCT_PRICE,
+                            "typeof(" + BookEntry.COLUMN_PRODUCT_PRICE + ")"},
+                    null, null, null, null, BookEntry._ID );
+            try {
+                cursor.moveToFirst();
+                assertEquals( 1999, cursor.getLong( 0 ) );
+                assertEquals( "integer", cursor.getString( 1 ) );
+                cursor.moveToNext();
+                assertEquals( 1200, cursor.getLong( 0 ) );
+                assertEquals( "integer", cursor.getString( 1 ) );
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    @Test
+    public void upgradeFromVersion1_movesSuppliersToTheirOwnTable() {
+        createVersion1Database();
+
+        BookDbHelper dbHelper = new BookDbHelper( context, UPGRADED_DATABASE );
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        try {
+            Cursor cursor = db.query( SupplierEntry.TABLE_NAME, new String[]{
+                            SupplierEntry.COLUMN_SUPPLIER_NAME,
+                            SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER},
+                    null, null, null, null, SupplierEntry._ID );
+            try {
+                assertEquals( 2, cursor.getCount() );
+                cursor.moveToFirst();
+                assertEquals( "Scholastic", cursor.getString( 0 ) );
+                assertEquals( "8001234567", cursor.getString( 1 ) );
+                cursor.moveToNext();
+                assertEquals( "Penguin", cursor.getString( 0 ) );
+                assertNull( cursor.getString( 1 ) );
+            } finally {
+                cursor.close();
+            }
+
+            // The books still show their supplier through the details view
+            cursor = db.query( BookEntry.DETAILS_VIEW_NAME, new String[]{
+                            BookEntry.COLUMN_PRODUCT_NAME,
+                            BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+                            BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER},
+                    null, null, null, null, BookEntry._ID );
+            try {
+                assertEquals( 2, cursor.getCount() );
+                cursor.moveToFirst();
+                assertEquals( "The Great Gatsby", cursor.getString( 0 ) );
+                assertEquals( "Scholastic", cursor.getString( 1 ) );
+                assertEquals( "8001234567", cursor.getString( 2 ) );
+                cursor.moveToNext();
+                assertEquals( "Moby Dick", cursor.getString( 0 ) );
+                assertEquals( "Penguin", cursor.getString( 1 ) );
+                assertNull( cursor.getString( 2 ) );
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    @Test
+    public void upgradeFromVersion1_addsIndexes() {
+        createVersion1Database();
+
+        BookDbHelper dbHelper = new BookDbHelper( context, UPGRADED_DATABASE );
+        try {
+            List<String> indexes = getSchema( dbHelper.getReadableDatabase(), "index" );
+            assertTrue( containsName( indexes, BookDbHelper.INDEX_PRODUCT_NAME ) );
+            assertTrue( containsName( indexes, BookDbHelper.INDEX_SUPPLIER_QUANTITY ) );
+            assertTrue( containsName( indexes, BookDbHelper.INDEX_QUANTITY ) );
+            assertTrue( containsName( indexes, BookDbHelper.INDEX_PRICE ) );
+            assertTrue( containsName( indexes, BookDbHelper.INDEX_ISBN ) );
+            assertTrue( containsName( indexes, BookDbHelper.INDEX_DAILY_SALES_BOOK ) );
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    @Test
+    public void upgradeFromVersion1_logsChangesFromAReset() {
+        createVersion1Database();
+
+        BookDbHelper dbHelper = new BookDbHelper( context, UPGRADED_DATABASE );
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            List<String> triggers = getSchema( db, "trigger" );
+            assertTrue( containsName( triggers, BookDbHelper.TRIGGER_CHANGES_INSERT ) );
+            assertTrue( containsName( triggers, BookDbHelper.TRIGGER_CHANGES_UPDATE ) );
+            assertTrue( containsName( triggers, BookDbHelper.TRIGGER_CHANGES_DELETE ) );
+            assertTrue( containsName( triggers, BookDbHelper.TRIGGER_CHANGES_SUPPLIER_UPDATE ) );
+
+            // The books from before the upgrade were never logged, so the log starts with a reset
+            db.execSQL( "UPDATE books SET quantity = 4 WHERE product_name = 'Moby Dick';" );
+            Cursor cursor = db.query( ChangeEntry.TABLE_NAME, new String[]{
+                    ChangeEntry.COLUMN_OPERATION, ChangeEntry.COLUMN_CHANGED_COLUMNS},
+                    null, null, null, null, ChangeEntry._ID );
+            try {
+                assertEquals( 2, cursor.getCount() );
+                cursor.moveToFirst();
+                assertEquals( ChangeEntry.OPERATION_RESET, cursor.getString( 0 ) );
+                cursor.moveToNext();
+                assertEquals( ChangeEntry.OPERATION_UPDATE, cursor.getString( 0 ) );
+                assertEquals( BookEntry.COLUMN_PRODUCT_QUANTITY, cursor.getString( 1 ) );
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    @Test
+    public void upgradeFromVersion1_listsBooksLowOnStock() {
+        createVersion1Database();
+
+        BookDbHelper dbHelper = new BookDbHelper( context, UPGRADED_DATABASE );
+        try {
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            List<String> triggers = getSchema( db, "trigger" );
+            assertTrue( containsName( triggers, BookDbHelper.TRIGGER_LOW_STOCK_INSERT ) );
+            assertTrue( containsName( triggers, BookDbHelper.TRIGGER_LOW_STOCK_UPDATE ) );
+            assertTrue( containsName( triggers, BookDbHelper.TRIGGER_LOW_STOCK_DELETE ) );
+
+            // Only The Great Gatsby has fewer copies than the default threshold
+            Cursor cursor = db.rawQuery( "SELECT " + BookEntry.COLUMN_PRODUCT_NAME + " FROM "
+                    + BookEntry.TABLE_NAME + " WHERE " + BookEntry._ID + " IN (SELECT "
+                    + BookEntry._ID + " FROM " + BookEntry.LOW_STOCK_TABLE_NAME + ")", null );
+            try {
+                assertEquals( 1, cursor.getCount() );
+                cursor.moveToFirst();
+                assertEquals( "The Great Gatsby", cursor.getString( 0 ) );
+            } finally {
+                cursor.close();
+            }
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    @Test
+    public void upgradeFromVersion1_matchesNewDatabaseSchema() {
+        createVersion1Database();
+
+        BookDbHelper upgradedHelper = new BookDbHelper( context, UPGRADED_DATABASE );
+        BookDbHelper newHelper = new BookDbHelper( context, NEW_DATABASE );
+        try {
+            SQLiteDatabase upgraded = upgradedHelper.getReadableDatabase();
+            SQLiteDatabase created = newHelper.getReadableDatabase();
+            assertEquals( getSchema( created, null ), getSchema( upgraded, null ) );
+        } finally {
+            upgradedHelper.close();
+            newHelper.close();
+        }
+    }
+
+    /**
+     * Create a database with the version 1 schema and a couple of books in it.
+     */
+    private void createVersion1Database() {
+        SQLiteDatabase db = context.openOrCreateDatabase( UPGRADED_DATABASE, Context.MODE_PRIVATE, null );
+        try {
+            db.execSQL( SQL_CREATE_VERSION_1_BOOKS_TABLE );
+            db.execSQL( "INSERT INTO books (product_name, price, quantity, supplier_name, "
+                    + "supplier_phone_number) VALUES ('The Great Gatsby', 19.99, 3, 'Scholastic', "
+                    + "'8001234567');" );
+            db.execSQL( "INSERT INTO books (product_name, price, quantity, supplier_name, "
+                    + "supplier_phone_number) VALUES ('Moby Dick', '12', 7, 'Penguin', NULL);" );
+            db.setVersion( 1 );
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Returns the "name: sql" of every schema object of the given type (or of every type, if null),
+     * sorted by name.
+     */
+    private static List<String> getSchema(SQLiteDatabase db, String type) {
+        String selection = "name NOT LIKE 'sqlite_%' AND name != 'android_metadata'";
+        String[] selectionArgs = null;
+        if (type != null) {
+            selection += " AND type=?";
+            selectionArgs = new String[]{type};
+        }
+
+        List<String> schema = new ArrayList<>();
+        Cursor cursor = db.query( "sqlite_master", new String[]{"name", "sql"}, selection,
+                selectionArgs, null, null, "name" );
+        try {
+            while (cursor.moveToNext()) {
+                schema.add( cursor.getString( 0 ) + ": " + cursor.getString( 1 ) );
+            }
+        } finally {
+            cursor.close();
+        }
+        return schema;
+    }
+
+    private static boolean containsName(List<String> schema, String name) {
+        for (String entry : schema) {
+            if (entry.startsWith( name + ": " )) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,301 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+import com.example.android.bookstore.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link BookExporter}, which checks the CSV and JSON Lines it writes, that
+ * no book is left out or written twice where the chunks meet, and that an export streamed
+ * through {@link BookEntry#EXPORT_URI} can be imported again. The books are exported from a
+ * database of the test's own, so its output is known in full.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookExporterTest {
+
+    private static final String TEST_DATABASE = "exporter_test.db";
+
+    private static final String SUPPLIER = "Exporter Test Supplier";
+
+    private static final String PHONE_NUMBER = "555-0100";
+
+    private static final String ISBN = "9780141439587";
+
+    private static final String CSV_HEADER =
+            "_id,product_name,price,quantity,supplier_name,supplier_phone_number,isbn,low_stock_threshold\r\n";
+
+    private Context context;
+
+    private ContentResolver contentResolver;
+
+    private BookDbHelper dbHelper;
+
+    private long supplierId;
+
+    private File exportFile;
+
+    private File rejectFile;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        contentResolver = context.getContentResolver();
+        context.deleteDatabase( TEST_DATABASE );
+        dbHelper = new BookDbHelper( context, TEST_DATABASE );
+        exportFile = new File( context.getCacheDir(), "exporter_test.csv" );
+        rejectFile = new File( context.getCacheDir(), "exporter_test_rejects.csv" );
+
+        ContentValues supplier = new ContentValues();
+        supplier.put( SupplierEntry.COLUMN_SUPPLIER_NAME, SUPPLIER );
+        supplier.put( SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER, PHONE_NUMBER );
+        supplierId = dbHelper.getWritableDatabase().insert( SupplierEntry.TABLE_NAME, null, supplier );
+    }
+
+    @After
+    public void tearDown() {
+        dbHelper.close();
+        context.deleteDatabase( TEST_DATABASE );
+        exportFile.delete();
+        rejectFile.delete();
+        contentResolver.delete( BookEntry.CONTENT_URI,
+                BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + "=?", new String[]{SUPPLIER} );
+        contentResolver.delete( SupplierEntry.CONTENT_URI, SupplierEntry.COLUMN_SUPPLIER_NAME + "=?",
+                new String[]{SUPPLIER} );
+    }
+
+    @Test
+    public void csv_quotesOnlyTheFieldsThatNeedIt() throws IOException {
+        long first = insertBook( "Emma", 899, 2 );
+        long second = insertBook( "Pride, and \"Prejudice\"", 1250, 0 );
+
+        assertEquals( CSV_HEADER
+                        + first + ",Emma,8.99,2," + SUPPLIER + "," + PHONE_NUMBER + ",,\r\n"
+                        + second + ",\"Pride, and \"\"Prejudice\"\"\",12.50,0," + SUPPLIER + ","
+                        + PHONE_NUMBER + ",,\r\n",
+                export( BookContract.MIME_TYPE_CSV ) );
+    }
+
+    @Test
+    public void jsonLines_escapeTheStrings() throws IOException {
+        long id = insertBook( "A \"quote\", a \\ and\n\ta line\u0001\u2028", 5, 1 );
+
+        assertEquals( "{\"_id\":" + id + ",\"product_name\":"
+                        + "\"A \\\"quote\\\", a \\\\ and\\n\\ta line\\u0001\\u2028\","
+                        + "\"price\":0.05,\"quantity\":1,\"supplier_name\":\"" + SUPPLIER + "\","
+                        + "\"supplier_phone_number\":\"" + PHONE_NUMBER + "\",\"isbn\":null,"
+                        + "\"low_stock_threshold\":null}\n",
+                export( BookContract.MIME_TYPE_JSON_LINES ) );
+    }
+
+    @Test
+    public void jsonLines_writeNullForMissingStrings() throws IOException {
+        ContentValues supplier = new ContentValues();
+        supplier.putNull( SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER );
+        dbHelper.getWritableDatabase().update( SupplierEntry.TABLE_NAME, supplier, null, null );
+        long id = insertBook( "Emma", 899, 2 );
+
+        assertEquals( "{\"_id\":" + id + ",\"product_name\":\"Emma\",\"price\":8.99,\"quantity\":2,"
+                        + "\"supplier_name\":\"" + SUPPLIER + "\",\"supplier_phone_number\":null,"
+                        + "\"isbn\":null,\"low_stock_threshold\":null}\n",
+                export( BookContract.MIME_TYPE_JSON_LINES ) );
+    }
+
+    @Test
+    public void isbnAndLowStockThreshold_areExported() throws IOException {
+        long id = insertBook( "Emma", 899, 2 );
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_ISBN, ISBN );
+        values.put( BookEntry.COLUMN_LOW_STOCK_THRESHOLD, 3 );
+        dbHelper.getWritableDatabase().update( BookEntry.TABLE_NAME, values, null, null );
+
+        assertEquals( CSV_HEADER + id + ",Emma,8.99,2," + SUPPLIER + "," + PHONE_NUMBER + ","
+                + ISBN + ",3\r\n", export( BookContract.MIME_TYPE_CSV ) );
+        assertEquals( "{\"_id\":" + id + ",\"product_name\":\"Emma\",\"price\":8.99,\"quantity\":2,"
+                        + "\"supplier_name\":\"" + SUPPLIER + "\",\"supplier_phone_number\":\""
+                        + PHONE_NUMBER + "\",\"isbn\":\"" + ISBN + "\",\"low_stock_threshold\":3}\n",
+                export( BookContract.MIME_TYPE_JSON_LINES ) );
+    }
+
+    @Test
+    public void exactlyAChunkOfBooks_isExportedOnce() throws IOException {
+        assertExportsEveryBookOnce( BookExporter.CHUNK_SIZE );
+    }
+
+    @Test
+    public void oneBookMoreThanAChunk_isExportedOnce() throws IOException {
+        assertExportsEveryBookOnce( BookExporter.CHUNK_SIZE + 1 );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownType_isRejected() {
+        new BookExporter( dbHelper.getReadableDatabase(), "application/pdf", new StringWriter() );
+    }
+
+    @Test
+    public void export_isStreamedThroughAPipe() throws IOException {
+        Uri bookUri = contentResolver.insert( BookEntry.CONTENT_URI, createBook( "Emma", 899, 2 ) );
+        String expected = "{\"_id\":" + ContentUris.parseId( bookUri )
+                + ",\"product_name\":\"Emma\",\"price\":8.99,\"quantity\":2,\"supplier_name\":\""
+                + SUPPLIER + "\",\"supplier_phone_number\":\"" + PHONE_NUMBER
+                + "\",\"isbn\":null,\"low_stock_threshold\":null}";
+
+        AssetFileDescriptor descriptor = contentResolver.openTypedAssetFileDescriptor(
+                BookEntry.EXPORT_URI, BookContract.MIME_TYPE_JSON_LINES, null );
+        assertNotNull( descriptor );
+        assertEquals( AssetFileDescriptor.UNKNOWN_LENGTH, descriptor.getLength() );
+        BufferedReader reader = new BufferedReader( new InputStreamReader(
+                descriptor.createInputStream(), "UTF-8" ) );
+        try {
+            boolean found = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                found |= line.equals( expected );
+            }
+            assertTrue( found );
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void export_opened_withoutAType_isCsv() throws IOException {
+        InputStream input = contentResolver.openInputStream( BookEntry.EXPORT_URI );
+        BufferedReader reader = new BufferedReader( new InputStreamReader( input, "UTF-8" ) );
+        try {
+            assertEquals( CSV_HEADER.trim(), reader.readLine() );
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void csv_canBeImportedAgain() throws IOException {
+        long first = insertBook( "Emma", 899, 2 );
+        insertBook( "Pride, and \"Prejudice\"\non two lines", 1250, 0 );
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_ISBN, ISBN );
+        values.put( BookEntry.COLUMN_LOW_STOCK_THRESHOLD, 3 );
+        dbHelper.getWritableDatabase().update( BookEntry.TABLE_NAME, values, BookEntry._ID + "=?",
+                new String[]{String.valueOf( first )} );
+        Writer writer = new OutputStreamWriter( new FileOutputStream( exportFile ), "UTF-8" );
+        try {
+            new BookExporter( dbHelper.getReadableDatabase(), BookContract.MIME_TYPE_CSV, writer ).export();
+        } finally {
+            writer.close();
+        }
+
+        BookImporter.Progress progress = new BookImporter( contentResolver )
+                .importBooks( Uri.fromFile( exportFile ), rejectFile, null );
+        assertEquals( 2, progress.imported );
+        assertEquals( 0, progress.rejected );
+
+        Cursor cursor = contentResolver.query( BookEntry.CONTENT_URI, new String[]{
+                        BookEntry.COLUMN_PRODUCT_NAME, BookEntry.COLUMN_PRODUCT_PRICE,
+                        BookEntry.COLUMN_PRODUCT_QUANTITY, BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER,
+                        BookEntry.COLUMN_ISBN, BookEntry.COLUMN_LOW_STOCK_THRESHOLD},
+                BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + "=?", new String[]{SUPPLIER}, BookEntry._ID );
+        try {
+            assertEquals( 2, cursor.getCount() );
+            cursor.moveToFirst();
+            assertEquals( "Emma", cursor.getString( 0 ) );
+            assertEquals( 899, cursor.getLong( 1 ) );
+            assertEquals( 2, cursor.getInt( 2 ) );
+            assertEquals( PHONE_NUMBER, cursor.getString( 3 ) );
+            assertEquals( ISBN, cursor.getString( 4 ) );
+            assertEquals( 3, cursor.getInt( 5 ) );
+            cursor.moveToNext();
+            assertEquals( "Pride, and \"Prejudice\"\non two lines", cursor.getString( 0 ) );
+            assertEquals( 1250, cursor.getLong( 1 ) );
+            assertEquals( 0, cursor.getInt( 2 ) );
+            assertTrue( cursor.isNull( 4 ) );
+            assertTrue( cursor.isNull( 5 ) );
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Insert the given number of books, export them as CSV, and check that each is in the
+     * export once, in _ID order.
+     */
+    private void assertExportsEveryBookOnce(int books) throws IOException {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < books; i++) {
+                insertBook( "Book " + i, 100, 1 );
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        String[] lines = export( BookContract.MIME_TYPE_CSV ).split( "\r\n" );
+        assertEquals( books + 1, lines.length );
+        long lastId = 0;
+        for (int i = 1; i < lines.length; i++) {
+            long id = Long.parseLong( lines[i].substring( 0, lines[i].indexOf( ',' ) ) );
+            assertTrue( id > lastId );
+            assertTrue( lines[i].startsWith( id + ",Book " + (i - 1) + "," ) );
+            lastId = id;
+        }
+    }
+
+    private String export(String mimeType) throws IOException {
+        StringWriter writer = new StringWriter();
+        new BookExporter( dbHelper.getReadableDatabase(), mimeType, writer ).export();
+        return writer.toString();
+    }
+
+    /**
+     * Insert a book of the test's supplier straight into the test database.
+     */
+    private long insertBook(String name, long priceCents, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_NAME, name );
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, priceCents );
+        values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, quantity );
+        values.put( BookEntry.COLUMN_SUPPLIER_ID, supplierId );
+        return dbHelper.getWritableDatabase().insert( BookEntry.TABLE_NAME, null, values );
+    }
+
+    /**
+     * Returns the content values of a book of the test's supplier, for the provider.
+     */
+    private static ContentValues createBook(String name, long priceCents, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_NAME, name );
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, priceCents );
+        values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, quantity );
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, SUPPLIER );
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER, PHONE_NUMBER );
+        return values;
+    }
+}
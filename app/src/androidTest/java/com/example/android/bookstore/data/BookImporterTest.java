@@ -0,0 +1,315 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+import com.example.android.bookstore.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link BookImporter}, which checks that the valid books of a catalog are
+ * inserted a batch at a time, and that the others end up in the reject file with their line.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookImporterTest {
+
+    private static final String SUPPLIER = "Importer Test Supplier";
+
+    private static final String HEADER = "product_name,price,quantity,supplier_name\r\n";
+
+    private static final String ISBN_HEADER =
+            "product_name,price,quantity,supplier_name,isbn,low_stock_threshold\r\n";
+
+    private ContentResolver contentResolver;
+
+    private File catalogFile;
+
+    private File rejectFile;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        contentResolver = context.getContentResolver();
+        catalogFile = new File( context.getCacheDir(), "importer_test.csv" );
+        rejectFile = new File( context.getCacheDir(), "importer_test_rejects.csv" );
+    }
+
+    @After
+    public void tearDown() {
+        catalogFile.delete();
+        rejectFile.delete();
+        contentResolver.delete( BookEntry.CONTENT_URI,
+                BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + "=?", new String[]{SUPPLIER} );
+        contentResolver.delete( SupplierEntry.CONTENT_URI, SupplierEntry.COLUMN_SUPPLIER_NAME + "=?",
+                new String[]{SUPPLIER} );
+    }
+
+    @Test
+    public void invalidBooks_areWrittenToTheRejectFileWithTheirLine() throws IOException {
+        writeCatalog( HEADER
+                + "Emma,8.99,2," + SUPPLIER + "\r\n"
+                + "\"Pride, and\nPrejudice\",abc,1," + SUPPLIER + "\r\n"
+                + "Persuasion,7.50,-1," + SUPPLIER + "\r\n"
+                + "\r\n"
+                + "Sense and Sensibility,1.00,1\r\n"
+                + "Mansfield Park,9.99,," + SUPPLIER + "\r\n" );
+
+        BookImporter.Progress progress = new BookImporter( contentResolver )
+                .importBooks( Uri.fromFile( catalogFile ), rejectFile, null );
+
+        assertEquals( 2, progress.imported );
+        assertEquals( 3, progress.rejected );
+        assertEquals( catalogFile.length(), progress.bytesRead );
+        assertEquals( Arrays.asList( "Emma", "Mansfield Park" ), queryNames() );
+        assertEquals( "line,error,product_name,price,quantity,supplier_name\r\n"
+                        + "3,Invalid price abc,\"Pride, and\nPrejudice\",abc,1," + SUPPLIER + "\r\n"
+                        + "5,Book requires a quantity,Persuasion,7.50,-1," + SUPPLIER + "\r\n"
+                        + "7,\"Expected 4 fields, found 3\",Sense and Sensibility,1.00,1\r\n",
+                readFile( rejectFile ) );
+    }
+
+    @Test
+    public void catalogWithoutInvalidBooks_leavesNoRejectFile() throws IOException {
+        writeCatalog( "\uFEFF" + HEADER + "Emma,8.99,2," + SUPPLIER + "\r\n" );
+
+        BookImporter.Progress progress = new BookImporter( contentResolver )
+                .importBooks( Uri.fromFile( catalogFile ), rejectFile, null );
+
+        assertEquals( 1, progress.imported );
+        assertEquals( 0, progress.rejected );
+        assertFalse( rejectFile.exists() );
+    }
+
+    @Test
+    public void books_areInsertedABatchAtATime() throws IOException {
+        writeCatalog( HEADER + createBooks( 5 ) );
+        final List<Integer> imported = new ArrayList<>();
+
+        new BookImporter( contentResolver ).setBatchSize( 2 ).importBooks( Uri.fromFile( catalogFile ),
+                rejectFile, new BookImporter.ProgressListener() {
+                    @Override
+                    public void onProgress(BookImporter.Progress progress) {
+                        imported.add( progress.imported );
+                        // Every batch reported is committed already
+                        assertEquals( progress.imported, queryNames().size() );
+                    }
+                } );
+
+        assertEquals( Arrays.asList( 2, 4, 5 ), imported );
+    }
+
+    @Test
+    public void catalogOfWholeBatches_endsWithoutAnEmptyBatch() throws IOException {
+        writeCatalog( HEADER + createBooks( 4 ) );
+        final List<Integer> imported = new ArrayList<>();
+
+        new BookImporter( contentResolver ).setBatchSize( 2 ).importBooks( Uri.fromFile( catalogFile ),
+                rejectFile, new BookImporter.ProgressListener() {
+                    @Override
+                    public void onProgress(BookImporter.Progress progress) {
+                        imported.add( progress.imported );
+                    }
+                } );
+
+        // The final progress repeats the last batch's
+        assertEquals( Arrays.asList( 2, 4, 4 ), imported );
+        assertEquals( 4, queryNames().size() );
+    }
+
+    @Test
+    public void interruptedImport_keepsTheBatchesCommittedBefore() throws IOException {
+        writeCatalog( HEADER + createBooks( 5 ) );
+
+        try {
+            new BookImporter( contentResolver ).setBatchSize( 2 ).importBooks( Uri.fromFile( catalogFile ),
+                    rejectFile, new BookImporter.ProgressListener() {
+                        @Override
+                        public void onProgress(BookImporter.Progress progress) {
+                            Thread.currentThread().interrupt();
+                        }
+                    } );
+            fail( "The import wasn't interrupted" );
+        } catch (InterruptedIOException e) {
+            // Expected
+        } finally {
+            Thread.interrupted();
+        }
+        assertEquals( Arrays.asList( "Book 0", "Book 1" ), queryNames() );
+    }
+
+    @Test
+    public void isbns_areNormalized() throws IOException {
+        writeCatalog( ISBN_HEADER
+                + "Pride and Prejudice,8.99,2," + SUPPLIER + ",0-14-143951-3,3\r\n"
+                + "Emma,8.99,2," + SUPPLIER + ",,\r\n"
+                + "Persuasion,7.50,1," + SUPPLIER + ",12345,\r\n"
+                + "Mansfield Park,9.99,1," + SUPPLIER + ",,abc\r\n" );
+
+        BookImporter.Progress progress = new BookImporter( contentResolver )
+                .importBooks( Uri.fromFile( catalogFile ), rejectFile, null );
+
+        assertEquals( 2, progress.imported );
+        assertEquals( 2, progress.rejected );
+        Cursor cursor = contentResolver.query( BookEntry.CONTENT_URI, new String[]{
+                        BookEntry.COLUMN_ISBN, BookEntry.COLUMN_LOW_STOCK_THRESHOLD},
+                BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + "=?", new String[]{SUPPLIER}, BookEntry._ID );
+        try {
+            assertEquals( 2, cursor.getCount() );
+            cursor.moveToFirst();
+            assertEquals( "9780141439518", cursor.getString( 0 ) );
+            assertEquals( 3, cursor.getInt( 1 ) );
+            cursor.moveToNext();
+            assertTrue( cursor.isNull( 0 ) );
+            assertTrue( cursor.isNull( 1 ) );
+        } finally {
+            cursor.close();
+        }
+        assertEquals( "line,error,product_name,price,quantity,supplier_name,isbn,low_stock_threshold\r\n"
+                        + "4,Invalid ISBN 12345,Persuasion,7.50,1," + SUPPLIER + ",12345,\r\n"
+                        + "5,Invalid low stock threshold abc,Mansfield Park,9.99,1," + SUPPLIER + ",,abc\r\n",
+                readFile( rejectFile ) );
+    }
+
+    @Test
+    public void duplicateIsbns_areRejectedWithTheirLine() throws IOException {
+        ContentValues book = new ContentValues();
+        book.put( BookEntry.COLUMN_PRODUCT_NAME, "Emma" );
+        book.put( BookEntry.COLUMN_PRODUCT_PRICE, 899 );
+        book.put( BookEntry.COLUMN_PRODUCT_QUANTITY, 1 );
+        book.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, SUPPLIER );
+        book.put( BookEntry.COLUMN_ISBN, "9780141439518" );
+        contentResolver.insert( BookEntry.CONTENT_URI, book );
+
+        // The books are inserted three lines at a time, so line 6 has the ISBN of a book
+        // committed in the batch before
+        writeCatalog( ISBN_HEADER
+                + "Emma again,8.99,1," + SUPPLIER + ",0-14-143951-3,\r\n"
+                + "Persuasion,7.50,1," + SUPPLIER + ",9780141439587,\r\n"
+                + "Persuasion again,7.50,1," + SUPPLIER + ",978-0-14-143958-7,\r\n"
+                + "Mansfield Park,abc,1," + SUPPLIER + ",,\r\n"
+                + "Persuasion once more,7.50,1," + SUPPLIER + ",9780141439587,\r\n"
+                + "Sense and Sensibility,1.00,1," + SUPPLIER + ",9780141439600,\r\n" );
+
+        BookImporter.Progress progress = new BookImporter( contentResolver ).setBatchSize( 3 )
+                .importBooks( Uri.fromFile( catalogFile ), rejectFile, null );
+
+        assertEquals( 2, progress.imported );
+        assertEquals( 4, progress.rejected );
+        assertEquals( Arrays.asList( "Emma", "Persuasion", "Sense and Sensibility" ), queryNames() );
+        assertEquals( "line,error,product_name,price,quantity,supplier_name,isbn,low_stock_threshold\r\n"
+                        + "2,Duplicate ISBN 9780141439518,Emma again,8.99,1," + SUPPLIER
+                        + ",0-14-143951-3,\r\n"
+                        + "4,Duplicate ISBN 9780141439587,Persuasion again,7.50,1," + SUPPLIER
+                        + ",978-0-14-143958-7,\r\n"
+                        + "5,Invalid price abc,Mansfield Park,abc,1," + SUPPLIER + ",,\r\n"
+                        + "6,Duplicate ISBN 9780141439587,Persuasion once more,7.50,1," + SUPPLIER
+                        + ",9780141439587,\r\n",
+                readFile( rejectFile ) );
+    }
+
+    @Test
+    public void bookRefusedByTheDatabase_failsTheImport_andKeepsTheBatchesCommittedBefore()
+            throws IOException {
+        // A valid book the database refuses, as it would on a full disk or an ISBN inserted
+        // by someone else since the importer looked it up
+        BookDbHelper dbHelper = new BookDbHelper( InstrumentationRegistry.getTargetContext() );
+        try {
+            dbHelper.getWritableDatabase().execSQL( "CREATE TRIGGER importer_test_refuse BEFORE INSERT ON "
+                    + BookEntry.TABLE_NAME + " WHEN new." + BookEntry.COLUMN_PRODUCT_NAME
+                    + " = 'Book 3' BEGIN SELECT RAISE(ABORT, 'Refused by the test'); END;" );
+            writeCatalog( HEADER + createBooks( 5 ) );
+
+            try {
+                new BookImporter( contentResolver ).setBatchSize( 2 )
+                        .importBooks( Uri.fromFile( catalogFile ), rejectFile, null );
+                fail( "The import didn't fail" );
+            } catch (SQLException e) {
+                // Expected
+            }
+            // The whole batch with the refused book is rolled back
+            assertEquals( Arrays.asList( "Book 0", "Book 1" ), queryNames() );
+        } finally {
+            dbHelper.getWritableDatabase().execSQL( "DROP TRIGGER IF EXISTS importer_test_refuse;" );
+            dbHelper.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void catalogWithoutARequiredColumn_isRejected() throws IOException {
+        writeCatalog( "product_name,quantity,supplier_name\r\nEmma,2," + SUPPLIER + "\r\n" );
+        new BookImporter( contentResolver ).importBooks( Uri.fromFile( catalogFile ), rejectFile, null );
+    }
+
+    private static String createBooks(int count) {
+        StringBuilder books = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            books.append( "Book " ).append( i ).append( ",1.99,1," ).append( SUPPLIER ).append( "\r\n" );
+        }
+        return books.toString();
+    }
+
+    private void writeCatalog(String csv) throws IOException {
+        OutputStream output = new FileOutputStream( catalogFile );
+        try {
+            output.write( csv.getBytes( "UTF-8" ) );
+        } finally {
+            output.close();
+        }
+    }
+
+    private static String readFile(File file) throws IOException {
+        InputStream input = new FileInputStream( file );
+        try {
+            byte[] bytes = new byte[(int) file.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                read += input.read( bytes, read, bytes.length - read );
+            }
+            return new String( bytes, "UTF-8" );
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Returns the names of the test's books, in the order they were inserted.
+     */
+    private List<String> queryNames() {
+        Cursor cursor = contentResolver.query( BookEntry.CONTENT_URI,
+                new String[]{BookEntry.COLUMN_PRODUCT_NAME}, BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + "=?",
+                new String[]{SUPPLIER}, BookEntry._ID );
+        try {
+            List<String> names = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                names.add( cursor.getString( 0 ) );
+            }
+            return names;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.net.Uri;
+import android.os.RemoteException;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.text.TextUtils;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link BookProvider#bulkInsert} and {@link BookProvider#applyBatch}, which
+ * checks that a batch is applied as a whole or not at all, and that the observers of the books
+ * are notified once for the whole batch rather than once per book.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderBatchTest {
+
+    private static final String SUPPLIER = "Batch Test Supplier";
+
+    private ContentResolver contentResolver;
+
+    @Before
+    public void setUp() {
+        contentResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        contentResolver.delete( BookEntry.CONTENT_URI,
+                BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + "=?", new String[]{SUPPLIER} );
+    }
+
+    @Test
+    public void bulkInsert_insertsEveryBook() {
+        ContentValues[] books = {
+                createBook( "Emma", "9780141439518" ),
+                createBook( "Persuasion", "9780141439686" )};
+
+        assertEquals( 2, contentResolver.bulkInsert( BookEntry.CONTENT_URI, books ) );
+        assertEquals( 2, countBooks() );
+    }
+
+    @Test
+    public void bulkInsert_withABookThatFailsToInsert_insertsNothing() {
+        // The last book has the ISBN of the first one, which the database refuses
+        ContentValues[] books = {
+                createBook( "Emma", "9780141439518" ),
+                createBook( "Persuasion", "9780141439686" ),
+                createBook( "Emma, again", "0141439513" )};
+
+        try {
+            contentResolver.bulkInsert( BookEntry.CONTENT_URI, books );
+            fail( "The batch didn't fail" );
+        } catch (SQLException e) {
+            // Expected
+        }
+        assertEquals( 0, countBooks() );
+    }
+
+    @Test
+    public void bulkInsert_withAnInvalidBook_insertsNothing() {
+        ContentValues invalid = createBook( "Emma, again", null );
+        invalid.remove( BookEntry.COLUMN_PRODUCT_NAME );
+        ContentValues[] books = {createBook( "Emma", null ), invalid};
+
+        try {
+            contentResolver.bulkInsert( BookEntry.CONTENT_URI, books );
+            fail( "The invalid book was inserted" );
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertEquals( 0, countBooks() );
+    }
+
+    @Test
+    public void bulkInsert_notifiesTheObserversOnce() throws InterruptedException {
+        final ContentValues[] books = {
+                createBook( "Emma", null ),
+                createBook( "Persuasion", null ),
+                createBook( "Mansfield Park", null )};
+
+        assertNotifiedOnce( new Runnable() {
+            @Override
+            public void run() {
+                assertEquals( 3, contentResolver.bulkInsert( BookEntry.CONTENT_URI, books ) );
+            }
+        } );
+    }
+
+    @Test
+    public void applyBatch_appliesEveryOperation() throws RemoteException,
+            OperationApplicationException {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add( ContentProviderOperation.newInsert( BookEntry.CONTENT_URI )
+                .withValues( createBook( "Emma", null ) ).build() );
+        operations.add( ContentProviderOperation.newInsert( BookEntry.CONTENT_URI )
+                .withValues( createBook( "Persuasion", null ) ).build() );
+
+        assertEquals( 2, contentResolver.applyBatch( BookContract.CONTENT_AUTHORITY, operations ).length );
+        assertEquals( 2, countBooks() );
+    }
+
+    @Test
+    public void applyBatch_withARejectedOperation_appliesNothing() throws RemoteException,
+            OperationApplicationException {
+        ContentValues invalid = createBook( "Emma, again", null );
+        invalid.put( BookEntry.COLUMN_PRODUCT_QUANTITY, -1 );
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add( ContentProviderOperation.newInsert( BookEntry.CONTENT_URI )
+                .withValues( createBook( "Emma", null ) ).build() );
+        operations.add( ContentProviderOperation.newInsert( BookEntry.CONTENT_URI )
+                .withValues( invalid ).build() );
+
+        try {
+            contentResolver.applyBatch( BookContract.CONTENT_AUTHORITY, operations );
+            fail( "The invalid book was inserted" );
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertEquals( 0, countBooks() );
+    }
+
+    @Test
+    public void applyBatch_notifiesTheObserversOnce() throws InterruptedException {
+        final ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add( ContentProviderOperation.newInsert( BookEntry.CONTENT_URI )
+                .withValues( createBook( "Emma", null ) ).build() );
+        operations.add( ContentProviderOperation.newInsert( BookEntry.CONTENT_URI )
+                .withValues( createBook( "Persuasion", null ) ).build() );
+        operations.add( ContentProviderOperation.newUpdate( BookEntry.CONTENT_URI )
+                .withSelection( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + "=?", new String[]{SUPPLIER} )
+                .withValue( BookEntry.COLUMN_PRODUCT_QUANTITY, 10 ).build() );
+
+        assertNotifiedOnce( new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    contentResolver.applyBatch( BookContract.CONTENT_AUTHORITY, operations );
+                } catch (RemoteException | OperationApplicationException e) {
+                    throw new AssertionError( e );
+                }
+            }
+        } );
+    }
+
+    /**
+     * Run the batch, and check that the books URI is notified once, and no single book is.
+     */
+    private void assertNotifiedOnce(Runnable batch) throws InterruptedException {
+        final List<Uri> notifiedUris = Collections.synchronizedList( new ArrayList<Uri>() );
+        final CountDownLatch notified = new CountDownLatch( 1 );
+        ContentObserver observer = new ContentObserver( null ) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                notifiedUris.add( uri );
+                if (BookEntry.CONTENT_URI.equals( uri )) {
+                    notified.countDown();
+                }
+            }
+        };
+        contentResolver.registerContentObserver( BookEntry.CONTENT_URI, true, observer );
+        try {
+            batch.run();
+
+            assertTrue( notified.await( 5, TimeUnit.SECONDS ) );
+            // Give any notification of the single books the time to come in too
+            SystemClock.sleep( 200 );
+            assertEquals( 1, Collections.frequency( notifiedUris, BookEntry.CONTENT_URI ) );
+            for (Uri uri : notifiedUris) {
+                assertFalse( "Notified " + uri, TextUtils.isDigitsOnly( uri.getLastPathSegment() ) );
+            }
+        } finally {
+            contentResolver.unregisterContentObserver( observer );
+        }
+    }
+
+    private static ContentValues createBook(String name, String isbn) {
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_NAME, name );
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, 899 );
+        values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, 2 );
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, SUPPLIER );
+        values.put( BookEntry.COLUMN_ISBN, isbn );
+        return values;
+    }
+
+    private int countBooks() {
+        Cursor cursor = contentResolver.query( BookEntry.CONTENT_URI, new String[]{BookEntry._ID},
+                BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + "=?", new String[]{SUPPLIER}, null );
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+import com.example.android.bookstore.data.BookContract.ChangeEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link ChangeEntry#CONTENT_URI}, which checks that every change to a book
+ * is logged, that only the changes after the given one are returned, and that compacting the log
+ * keeps the last change to each book.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderChangesTest {
+
+    private static final String[] PROJECTION = {
+            ChangeEntry._ID,
+            ChangeEntry.COLUMN_BOOK_ID,
+            ChangeEntry.COLUMN_OPERATION,
+            ChangeEntry.COLUMN_CHANGED_COLUMNS};
+
+    private ContentResolver contentResolver;
+
+    private Uri bookUri;
+
+    @Before
+    public void setUp() {
+        contentResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        if (bookUri != null) {
+            contentResolver.delete( bookUri, null, null );
+        }
+    }
+
+    @Test
+    public void changes_followInsertsUpdatesAndDeletes() {
+        long since = getLastChangeId();
+
+        bookUri = insertBook();
+        long bookId = Long.parseLong( bookUri.getLastPathSegment() );
+        updateBook( BookEntry.COLUMN_PRODUCT_PRICE, 1000 );
+        // Setting the quantity it already has changes nothing
+        updateBook( BookEntry.COLUMN_PRODUCT_QUANTITY, 10 );
+        contentResolver.delete( bookUri, null, null );
+        bookUri = null;
+
+        Cursor cursor = contentResolver.query( ChangeEntry.buildChangesUri( since ), PROJECTION,
+                null, null, null );
+        try {
+            assertEquals( 3, cursor.getCount() );
+            cursor.moveToFirst();
+            assertChange( cursor, bookId, ChangeEntry.OPERATION_INSERT, null );
+            cursor.moveToNext();
+            assertChange( cursor, bookId, ChangeEntry.OPERATION_UPDATE, BookEntry.COLUMN_PRODUCT_PRICE );
+            cursor.moveToNext();
+            assertChange( cursor, bookId, ChangeEntry.OPERATION_DELETE, null );
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void compaction_keepsTheLastChangeToEachBook() {
+        long since = getLastChangeId();
+
+        bookUri = insertBook();
+        long bookId = Long.parseLong( bookUri.getLastPathSegment() );
+        updateBook( BookEntry.COLUMN_PRODUCT_PRICE, 1000 );
+        updateBook( BookEntry.COLUMN_PRODUCT_QUANTITY, 3 );
+        long lastChangeId = getLastChangeId();
+        compactChanges( ChangeEntry.DEFAULT_RETENTION_MILLIS );
+
+        Cursor cursor = contentResolver.query( ChangeEntry.buildChangesUri( since ), PROJECTION,
+                null, null, null );
+        try {
+            assertEquals( 1, cursor.getCount() );
+            cursor.moveToFirst();
+            assertEquals( lastChangeId, cursor.getLong( 0 ) );
+            assertChange( cursor, bookId, ChangeEntry.OPERATION_UPDATE, null );
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void compaction_pastTheRetention_leavesAReset() {
+        bookUri = insertBook();
+        long lastChangeId = getLastChangeId();
+        // Let the change get older than no retention at all
+        SystemClock.sleep( 10 );
+        compactChanges( 0 );
+
+        Cursor cursor = contentResolver.query( ChangeEntry.buildChangesUri( 0 ), PROJECTION,
+                null, null, null );
+        try {
+            assertEquals( 1, cursor.getCount() );
+            cursor.moveToFirst();
+            assertEquals( lastChangeId, cursor.getLong( 0 ) );
+            assertTrue( cursor.isNull( 1 ) );
+            assertEquals( ChangeEntry.OPERATION_RESET, cursor.getString( 2 ) );
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Uri insertBook() {
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_NAME, "Changes Test" );
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, 1999 );
+        values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, 10 );
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Changes Test Supplier" );
+        return contentResolver.insert( BookEntry.CONTENT_URI, values );
+    }
+
+    private void updateBook(String column, int value) {
+        ContentValues values = new ContentValues();
+        values.put( column, value );
+        contentResolver.update( bookUri, values, null, null );
+    }
+
+    private long getLastChangeId() {
+        Uri uri = ChangeEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_LIMIT, "1" )
+                .build();
+        Cursor cursor = contentResolver.query( uri, new String[]{ChangeEntry._ID}, null, null,
+                ChangeEntry._ID + " DESC" );
+        try {
+            assertTrue( cursor.moveToFirst() );
+            return cursor.getLong( 0 );
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void compactChanges(long retentionMillis) {
+        Bundle extras = new Bundle();
+        extras.putLong( BookContract.EXTRA_RETENTION_MILLIS, retentionMillis );
+        contentResolver.call( BookEntry.CONTENT_URI, BookContract.METHOD_COMPACT_CHANGES, null, extras );
+    }
+
+    private static void assertChange(Cursor cursor, long bookId, String operation,
+                                     String changedColumns) {
+        assertEquals( bookId, cursor.getLong( 1 ) );
+        assertEquals( operation, cursor.getString( 2 ) );
+        assertEquals( changedColumns, cursor.getString( 3 ) );
+    }
+}
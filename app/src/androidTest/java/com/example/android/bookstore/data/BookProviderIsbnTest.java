@@ -0,0 +1,128 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link BookEntry#ISBN_URI}, which checks that books are found by their
+ * codes in any of the forms a code can be typed or scanned, one at a time or many at once.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderIsbnTest {
+
+    private ContentResolver contentResolver;
+
+    private final List<Uri> bookUris = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        contentResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        for (Uri bookUri : bookUris) {
+            contentResolver.delete( bookUri, null, null );
+        }
+    }
+
+    @Test
+    public void isbn_isFoundInAnyForm() {
+        // An ISBN-10 is stored as the ISBN-13 on the barcode
+        Uri bookUri = insertBook( "Emma", "0-14-143951-3" );
+        assertEquals( "9780141439518", queryIsbn( bookUri ) );
+
+        assertFound( BookEntry.buildIsbnUri( "9780141439518" ), bookUri );
+        assertFound( BookEntry.buildIsbnUri( "978-0-14-143951-8" ), bookUri );
+        assertFound( BookEntry.buildIsbnUri( "0141439513" ), bookUri );
+    }
+
+    @Test
+    public void isbns_areFoundInOneQuery() {
+        Uri emmaUri = insertBook( "Emma", "9780141439518" );
+        Uri persuasionUri = insertBook( "Persuasion", "9780141439686" );
+
+        // Unknown and invalid codes match no book
+        Cursor cursor = contentResolver.query( BookEntry.buildIsbnUri( Arrays.asList(
+                "9780141439686", "9780000000002", "not a code", "0-14-143951-3" ) ),
+                new String[]{BookEntry._ID}, null, null, BookEntry._ID );
+        try {
+            assertEquals( 2, cursor.getCount() );
+            cursor.moveToFirst();
+            assertEquals( Long.parseLong( emmaUri.getLastPathSegment() ), cursor.getLong( 0 ) );
+            cursor.moveToNext();
+            assertEquals( Long.parseLong( persuasionUri.getLastPathSegment() ), cursor.getLong( 0 ) );
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void isbn_ofAnotherBook_isNotInserted() {
+        insertBook( "Emma", "9780141439518" );
+
+        ContentValues values = createBook( "Emma, again", "0141439513" );
+        assertNull( contentResolver.insert( BookEntry.CONTENT_URI, values ) );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void isbn_withWrongCheckDigit_isRejected() {
+        insertBook( "Emma", "9780141439519" );
+    }
+
+    private Uri insertBook(String name, String isbn) {
+        Uri bookUri = contentResolver.insert( BookEntry.CONTENT_URI, createBook( name, isbn ) );
+        assertNotNull( bookUri );
+        bookUris.add( bookUri );
+        return bookUri;
+    }
+
+    private static ContentValues createBook(String name, String isbn) {
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_NAME, name );
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, 899 );
+        values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, 2 );
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Isbn Test Supplier" );
+        values.put( BookEntry.COLUMN_ISBN, isbn );
+        return values;
+    }
+
+    private String queryIsbn(Uri bookUri) {
+        Cursor cursor = contentResolver.query( bookUri, new String[]{BookEntry.COLUMN_ISBN},
+                null, null, null );
+        try {
+            assertTrue( cursor.moveToFirst() );
+            return cursor.getString( 0 );
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void assertFound(Uri isbnUri, Uri bookUri) {
+        Cursor cursor = contentResolver.query( isbnUri, new String[]{BookEntry._ID}, null, null, null );
+        try {
+            assertEquals( 1, cursor.getCount() );
+            cursor.moveToFirst();
+            assertEquals( Long.parseLong( bookUri.getLastPathSegment() ), cursor.getLong( 0 ) );
+        } finally {
+            cursor.close();
+        }
+    }
+}
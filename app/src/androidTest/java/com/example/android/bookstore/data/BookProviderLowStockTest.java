@@ -0,0 +1,144 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link BookEntry#LOW_STOCK_URI}, which checks that books join and leave
+ * it as their quantity or threshold crosses the line, and that its observers are only notified
+ * when a book does.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderLowStockTest {
+
+    private ContentResolver contentResolver;
+
+    private final List<Uri> bookUris = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        contentResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        for (Uri bookUri : bookUris) {
+            contentResolver.delete( bookUri, null, null );
+        }
+    }
+
+    @Test
+    public void book_isLowOnStockBelowTheDefaultThreshold() {
+        Uri bookUri = insertBook( BookEntry.LOW_STOCK_THRESHOLD + 1, null );
+        assertFalse( isLowOnStock( bookUri ) );
+
+        sell( bookUri, 1 );
+        assertFalse( isLowOnStock( bookUri ) );
+        sell( bookUri, 1 );
+        assertTrue( isLowOnStock( bookUri ) );
+
+        updateBook( bookUri, BookEntry.COLUMN_PRODUCT_QUANTITY, 10 );
+        assertFalse( isLowOnStock( bookUri ) );
+    }
+
+    @Test
+    public void book_isLowOnStockBelowItsOwnThreshold() {
+        Uri bookUri = insertBook( 10, 20 );
+        assertTrue( isLowOnStock( bookUri ) );
+
+        updateBook( bookUri, BookEntry.COLUMN_LOW_STOCK_THRESHOLD, 2 );
+        assertFalse( isLowOnStock( bookUri ) );
+    }
+
+    @Test
+    public void observers_areOnlyNotifiedWhenABookCrossesItsThreshold() throws InterruptedException {
+        Uri bookUri = insertBook( 10, 8 );
+        final AtomicInteger notifications = new AtomicInteger();
+        final CountDownLatch notified = new CountDownLatch( 1 );
+        ContentObserver observer = new ContentObserver( null ) {
+            @Override
+            public void onChange(boolean selfChange) {
+                notifications.incrementAndGet();
+                notified.countDown();
+            }
+        };
+        contentResolver.registerContentObserver( BookEntry.LOW_STOCK_URI, false, observer );
+        try {
+            // Still above the threshold, then below it, then further below
+            sell( bookUri, 1 );
+            sell( bookUri, 3 );
+            sell( bookUri, 1 );
+
+            assertTrue( notified.await( 5, TimeUnit.SECONDS ) );
+            // Give a wrong notification of the other sales the time to come in too
+            SystemClock.sleep( 200 );
+            assertEquals( 1, notifications.get() );
+        } finally {
+            contentResolver.unregisterContentObserver( observer );
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeThreshold_isRejected() {
+        insertBook( 10, -1 );
+    }
+
+    private Uri insertBook(int quantity, Integer threshold) {
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_NAME, "Low Stock Test" );
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, 999 );
+        values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, quantity );
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Low Stock Test Supplier" );
+        values.put( BookEntry.COLUMN_LOW_STOCK_THRESHOLD, threshold );
+        Uri bookUri = contentResolver.insert( BookEntry.CONTENT_URI, values );
+        assertNotNull( bookUri );
+        bookUris.add( bookUri );
+        return bookUri;
+    }
+
+    private void updateBook(Uri bookUri, String column, int value) {
+        ContentValues values = new ContentValues();
+        values.put( column, value );
+        assertEquals( 1, contentResolver.update( bookUri, values, null, null ) );
+    }
+
+    private void sell(Uri bookUri, int quantity) {
+        Bundle extras = new Bundle();
+        extras.putInt( BookContract.EXTRA_QUANTITY, quantity );
+        Bundle result = contentResolver.call( BookEntry.CONTENT_URI, BookContract.METHOD_SELL,
+                bookUri.getLastPathSegment(), extras );
+        assertTrue( result.getBoolean( BookContract.EXTRA_SOLD ) );
+    }
+
+    private boolean isLowOnStock(Uri bookUri) {
+        Cursor cursor = contentResolver.query( BookEntry.LOW_STOCK_URI, new String[]{BookEntry._ID},
+                BookEntry._ID + "=?", new String[]{bookUri.getLastPathSegment()}, null );
+        try {
+            return cursor.getCount() == 1;
+        } finally {
+            cursor.close();
+        }
+    }
+}
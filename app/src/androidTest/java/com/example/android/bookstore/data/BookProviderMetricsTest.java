@@ -0,0 +1,97 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link BookContract#METHOD_METRICS}, which checks that the provider's
+ * calls are counted per operation and URI, and that the metrics can be disabled and reset.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderMetricsTest {
+
+    private ContentResolver contentResolver;
+
+    @Before
+    public void setUp() {
+        contentResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+        callMetrics( true, true );
+    }
+
+    @After
+    public void tearDown() {
+        // Leave them disabled, as they are by default
+        callMetrics( false, true );
+    }
+
+    @Test
+    public void metrics_areDisabledByDefault() {
+        assertFalse( new ProviderMetrics( new int[0], new String[0] ).isEnabled() );
+    }
+
+    @Test
+    public void metrics_countQueriesAndTheirRows() {
+        Cursor cursor = contentResolver.query( BookEntry.CONTENT_URI, null, null, null, null );
+        int rowCount = cursor.getCount();
+        cursor.close();
+        contentResolver.getType( BookEntry.CONTENT_URI );
+
+        Bundle metrics = callMetrics( null, false );
+        assertTrue( metrics.getBoolean( BookContract.EXTRA_ENABLED ) );
+        Bundle queries = metrics.getBundle( "query/books" );
+        assertNotNull( queries );
+        assertEquals( 1, queries.getLong( BookContract.EXTRA_CALL_COUNT ) );
+        assertEquals( rowCount, queries.getLong( BookContract.EXTRA_ROW_COUNT ) );
+
+        // The call is in exactly one latency bucket
+        long calls = 0;
+        for (long bucketCount : queries.getLongArray( BookContract.EXTRA_LATENCY_HISTOGRAM )) {
+            calls += bucketCount;
+        }
+        assertEquals( 1, calls );
+        assertNotNull( metrics.getBundle( "getType/books" ) );
+    }
+
+    @Test
+    public void metrics_whenDisabled_countNothing() {
+        callMetrics( false, true );
+        contentResolver.query( BookEntry.CONTENT_URI, null, null, null, null ).close();
+
+        Bundle metrics = callMetrics( null, false );
+        assertFalse( metrics.getBoolean( BookContract.EXTRA_ENABLED ) );
+        assertNull( metrics.getBundle( "query/books" ) );
+    }
+
+    @Test
+    public void metrics_afterReset_areEmpty() {
+        contentResolver.query( BookEntry.CONTENT_URI, null, null, null, null ).close();
+
+        assertNotNull( callMetrics( null, true ).getBundle( "query/books" ) );
+        assertNull( callMetrics( null, false ).getBundle( "query/books" ) );
+    }
+
+    /**
+     * Returns the metrics, then enables or disables them unless {@code enabled} is null, and
+     * resets them if asked to.
+     */
+    private Bundle callMetrics(Boolean enabled, boolean reset) {
+        Bundle extras = new Bundle();
+        if (enabled != null) {
+            extras.putBoolean( BookContract.EXTRA_ENABLED, enabled );
+        }
+        extras.putBoolean( BookContract.EXTRA_RESET, reset );
+        return contentResolver.call( BookEntry.CONTENT_URI, BookContract.METHOD_METRICS, null, extras );
+    }
+}
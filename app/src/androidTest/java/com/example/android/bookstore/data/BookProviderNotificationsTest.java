@@ -0,0 +1,219 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+import com.example.android.bookstore.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the notifications of {@link BookProvider}, which checks that a change to
+ * some books notifies the URIs of those books only, that books added or removed notify the
+ * {@link BookEntry#COLLECTION_URI} too, and that changes to too many books to name notify
+ * everyone at once.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderNotificationsTest {
+
+    private static final String SUPPLIER = "Notifications Test Supplier";
+
+    /**
+     * How long to wait for notifications that shouldn't come, in milliseconds
+     */
+    private static final long QUIET_MILLIS = 200;
+
+    private ContentResolver contentResolver;
+
+    /**
+     * The URIs of the books, the collection and the suppliers notified since the test started
+     * observing. The sales reports, which a sale may roll up, aren't observed.
+     */
+    private final Set<Uri> notifiedUris = new HashSet<>();
+
+    private ContentObserver observer;
+
+    private long firstId;
+
+    private long secondId;
+
+    @Before
+    public void setUp() {
+        contentResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+        // The first book adds the supplier, which notifies everyone, so insert the books
+        // before observing
+        firstId = insertBook( "Emma" );
+        secondId = insertBook( "Persuasion" );
+
+        observer = new ContentObserver( null ) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                synchronized (notifiedUris) {
+                    notifiedUris.add( uri );
+                    notifiedUris.notifyAll();
+                }
+            }
+        };
+        contentResolver.registerContentObserver( BookEntry.CONTENT_URI, true, observer );
+        contentResolver.registerContentObserver( BookEntry.COLLECTION_URI, true, observer );
+        contentResolver.registerContentObserver( SupplierEntry.CONTENT_URI, true, observer );
+    }
+
+    @After
+    public void tearDown() {
+        contentResolver.unregisterContentObserver( observer );
+        contentResolver.delete( BookEntry.CONTENT_URI,
+                BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + "=?", new String[]{SUPPLIER} );
+        contentResolver.delete( SupplierEntry.CONTENT_URI, SupplierEntry.COLUMN_SUPPLIER_NAME + "=?",
+                new String[]{SUPPLIER} );
+    }
+
+    @Test
+    public void updateBook_notifiesThatBookOnly() throws InterruptedException {
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, 999 );
+        assertEquals( 1, contentResolver.update( bookUri( firstId ), values, null, null ) );
+
+        assertNotified( bookUri( firstId ) );
+    }
+
+    @Test
+    public void updateBooksBySelection_notifiesEachBookChanged() throws InterruptedException {
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, 999 );
+        assertEquals( 2, contentResolver.update( BookEntry.CONTENT_URI, values,
+                BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + "=?", new String[]{SUPPLIER} ) );
+
+        assertNotified( bookUri( firstId ), bookUri( secondId ) );
+    }
+
+    @Test
+    public void updateOfTooManyBooks_notifiesEveryone() throws InterruptedException {
+        ContentValues[] books = new ContentValues[60];
+        for (int i = 0; i < books.length; i++) {
+            books[i] = createBook( "Book " + i );
+        }
+        contentResolver.bulkInsert( BookEntry.CONTENT_URI, books );
+        waitForQuiet();
+        synchronized (notifiedUris) {
+            notifiedUris.clear();
+        }
+
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, 999 );
+        contentResolver.update( BookEntry.CONTENT_URI, values,
+                BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + "=?", new String[]{SUPPLIER} );
+
+        assertNotified( BookEntry.CONTENT_URI, BookEntry.COLLECTION_URI, SupplierEntry.CONTENT_URI );
+    }
+
+    @Test
+    public void sale_notifiesTheBooksSold() throws InterruptedException {
+        Bundle extras = new Bundle();
+        extras.putLongArray( BookContract.EXTRA_BOOK_IDS, new long[]{secondId} );
+        extras.putIntArray( BookContract.EXTRA_QUANTITIES, new int[]{1} );
+        contentResolver.call( BookEntry.CONTENT_URI, BookContract.METHOD_SELL_BATCH, null, extras );
+
+        assertNotified( bookUri( secondId ) );
+    }
+
+    @Test
+    public void insertBook_notifiesTheBookAndTheCollection() throws InterruptedException {
+        long id = insertBook( "Mansfield Park" );
+
+        assertNotified( bookUri( id ), BookEntry.COLLECTION_URI );
+    }
+
+    @Test
+    public void deleteBook_notifiesTheBookAndTheCollection() throws InterruptedException {
+        assertEquals( 1, contentResolver.delete( bookUri( firstId ), null, null ) );
+
+        assertNotified( bookUri( firstId ), BookEntry.COLLECTION_URI );
+    }
+
+    @Test
+    public void collectionNotifications_skipTheChangesToSingleBooks() throws InterruptedException {
+        Cursor cursor = contentResolver.query( BookEntry.CONTENT_URI.buildUpon()
+                        .appendQueryParameter( BookEntry.QUERY_PARAMETER_COLLECTION_NOTIFICATIONS, "true" )
+                        .build(), new String[]{BookEntry._ID}, null, null, null );
+        try {
+            final CountDownLatch changed = new CountDownLatch( 1 );
+            cursor.registerContentObserver( new ContentObserver( null ) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    changed.countDown();
+                }
+            } );
+
+            ContentValues values = new ContentValues();
+            values.put( BookEntry.COLUMN_PRODUCT_PRICE, 999 );
+            contentResolver.update( bookUri( firstId ), values, null, null );
+            assertFalse( changed.await( QUIET_MILLIS, TimeUnit.MILLISECONDS ) );
+
+            insertBook( "Mansfield Park" );
+            assertTrue( changed.await( 5, TimeUnit.SECONDS ) );
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Wait for the given URIs to be notified, and check that no other URI is.
+     */
+    private void assertNotified(Uri... uris) throws InterruptedException {
+        Set<Uri> expected = new HashSet<>( Arrays.asList( uris ) );
+        long deadline = SystemClock.uptimeMillis() + 5000;
+        synchronized (notifiedUris) {
+            while (!notifiedUris.containsAll( expected ) && SystemClock.uptimeMillis() < deadline) {
+                notifiedUris.wait( Math.max( 1, deadline - SystemClock.uptimeMillis() ) );
+            }
+        }
+        // Give any other notification the time to come in too
+        waitForQuiet();
+        synchronized (notifiedUris) {
+            assertEquals( expected, notifiedUris );
+        }
+    }
+
+    private static void waitForQuiet() {
+        SystemClock.sleep( QUIET_MILLIS );
+    }
+
+    private static Uri bookUri(long id) {
+        return ContentUris.withAppendedId( BookEntry.CONTENT_URI, id );
+    }
+
+    private long insertBook(String name) {
+        return ContentUris.parseId( contentResolver.insert( BookEntry.CONTENT_URI, createBook( name ) ) );
+    }
+
+    private static ContentValues createBook(String name) {
+        // Well above the low stock threshold, so a sale doesn't notify the books low on stock
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_NAME, name );
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, 899 );
+        values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, 20 );
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, SUPPLIER );
+        return values;
+    }
+}
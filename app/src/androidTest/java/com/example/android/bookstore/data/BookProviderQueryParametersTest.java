@@ -0,0 +1,180 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+import com.example.android.bookstore.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the query parameters of the books URI that sort, filter and page the
+ * books. The test's books all have a supplier of their own, so filtering by it leaves the app's
+ * own books out.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderQueryParametersTest {
+
+    private static final String SUPPLIER = "Query Parameters Test Supplier";
+
+    private ContentResolver contentResolver;
+
+    /**
+     * _IDs of the books inserted, in order: prices 300, 100, 200, 100 and quantities 1, 9, 4, 7
+     */
+    private final List<Long> ids = new ArrayList<>();
+
+    private long supplierId;
+
+    @Before
+    public void setUp() {
+        contentResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+        insertBook( "C", 300, 1 );
+        insertBook( "A", 100, 9 );
+        insertBook( "D", 200, 4 );
+        insertBook( "B", 100, 7 );
+
+        Cursor cursor = contentResolver.query( ContentUris.withAppendedId( BookEntry.CONTENT_URI,
+                ids.get( 0 ) ), new String[]{BookEntry.COLUMN_SUPPLIER_ID}, null, null, null );
+        try {
+            assertTrue( cursor.moveToFirst() );
+            supplierId = cursor.getLong( 0 );
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for (long id : ids) {
+            contentResolver.delete( ContentUris.withAppendedId( BookEntry.CONTENT_URI, id ), null, null );
+        }
+        contentResolver.delete( SupplierEntry.CONTENT_URI, SupplierEntry.COLUMN_SUPPLIER_NAME + "=?",
+                new String[]{SUPPLIER} );
+    }
+
+    @Test
+    public void sort_byName() {
+        assertEquals( ids( 1, 3, 0, 2 ), queryIds( buildUri()
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_SORT, BookEntry.SORT_NAME ) ) );
+    }
+
+    @Test
+    public void sort_byPrice_breaksTiesBy_ID() {
+        assertEquals( ids( 1, 3, 2, 0 ), queryIds( buildUri()
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_SORT, BookEntry.SORT_PRICE ) ) );
+        assertEquals( ids( 0, 2, 3, 1 ), queryIds( buildUri()
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_SORT, BookEntry.SORT_PRICE )
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_DESCENDING, "true" ) ) );
+    }
+
+    @Test
+    public void sortedPages_followEachOther() {
+        Uri.Builder sorted = buildUri()
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_SORT, BookEntry.SORT_PRICE )
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_LIMIT, "2" );
+        assertEquals( ids( 1, 3 ), queryIds( sorted ) );
+
+        // The page after the second book, which has the same price as the first one
+        assertEquals( ids( 2, 0 ), queryIds( sorted
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_AFTER_ID, String.valueOf( ids.get( 3 ) ) )
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_AFTER_VALUE, "100" ) ) );
+    }
+
+    @Test
+    public void lowStock_onlyReturnsTheBooksBelowTheThreshold() {
+        assertEquals( ids( 0, 2 ), queryIds( buildUri()
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_LOW_STOCK, "true" )
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_SORT, BookEntry.SORT_QUANTITY ) ) );
+    }
+
+    @Test
+    public void lowStock_usesTheThresholdOfEachBook() {
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_LOW_STOCK_THRESHOLD, 8 );
+        contentResolver.update( ContentUris.withAppendedId( BookEntry.CONTENT_URI, ids.get( 3 ) ),
+                values, null, null );
+
+        assertEquals( ids( 0, 2, 3 ), queryIds( buildUri()
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_LOW_STOCK, "true" )
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_SORT, BookEntry.SORT_QUANTITY ) ) );
+    }
+
+    @Test
+    public void limitAndOffset() {
+        assertEquals( ids( 2, 0 ), queryIds( buildUri()
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_SORT, BookEntry.SORT_PRICE )
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_OFFSET, "2" ) ) );
+        assertEquals( ids( 3 ), queryIds( buildUri()
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_SORT, BookEntry.SORT_PRICE )
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_OFFSET, "1" )
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_LIMIT, "1" ) ) );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sort_unknown_isRejected() {
+        queryIds( buildUri().appendQueryParameter( BookEntry.QUERY_PARAMETER_SORT, "_id; DROP" ) );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sortedPage_withoutAfterValue_isRejected() {
+        queryIds( buildUri()
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_SORT, BookEntry.SORT_NAME )
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_AFTER_ID, "1" ) );
+    }
+
+    /**
+     * Returns a builder of the URI of the test's books
+     */
+    private Uri.Builder buildUri() {
+        return BookEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_SUPPLIER_ID, String.valueOf( supplierId ) );
+    }
+
+    private List<Long> queryIds(Uri.Builder uri) {
+        Cursor cursor = contentResolver.query( uri.build(), new String[]{BookEntry._ID}, null, null, null );
+        try {
+            List<Long> result = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                result.add( cursor.getLong( 0 ) );
+            }
+            return result;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the _IDs of the books inserted at the given indices, in the given order.
+     */
+    private List<Long> ids(int... indices) {
+        List<Long> result = new ArrayList<>();
+        for (int index : indices) {
+            result.add( ids.get( index ) );
+        }
+        return result;
+    }
+
+    private void insertBook(String name, long priceCents, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_NAME, name );
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, priceCents );
+        values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, quantity );
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, SUPPLIER );
+        ids.add( ContentUris.parseId( contentResolver.insert( BookEntry.CONTENT_URI, values ) ) );
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the cache of books looked up by _ID, which checks that lookups are
+ * answered from it and that it never answers with a book's old values.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderRowCacheTest {
+
+    private static final String[] PROJECTION = {
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRODUCT_QUANTITY};
+
+    private ContentResolver contentResolver;
+
+    private Uri bookUri;
+
+    @Before
+    public void setUp() {
+        contentResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_NAME, "Row Cache Test" );
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, 1999 );
+        values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, 10 );
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Row Cache Test Supplier" );
+        bookUri = contentResolver.insert( BookEntry.CONTENT_URI, values );
+    }
+
+    @After
+    public void tearDown() {
+        contentResolver.delete( bookUri, null, null );
+    }
+
+    @Test
+    public void lookup_twice_isAnsweredFromTheCache() {
+        assertEquals( 10, queryQuantity() );
+        Bundle before = getCacheStats();
+
+        assertEquals( 10, queryQuantity() );
+        Bundle after = getCacheStats();
+        assertEquals( 1, difference( before, after, BookContract.EXTRA_HIT_COUNT ) );
+        assertEquals( 0, difference( before, after, BookContract.EXTRA_MISS_COUNT ) );
+    }
+
+    @Test
+    public void lookup_afterUpdateAndSale_returnsTheNewValues() {
+        assertEquals( 10, queryQuantity() );
+
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, 8 );
+        contentResolver.update( bookUri, values, null, null );
+        assertEquals( 8, queryQuantity() );
+
+        Bundle extras = new Bundle();
+        extras.putInt( BookContract.EXTRA_QUANTITY, 3 );
+        contentResolver.call( BookEntry.CONTENT_URI, BookContract.METHOD_SELL,
+                bookUri.getLastPathSegment(), extras );
+        assertEquals( 5, queryQuantity() );
+    }
+
+    @Test
+    public void lookup_afterDelete_returnsNothing() {
+        assertEquals( 10, queryQuantity() );
+        contentResolver.delete( bookUri, null, null );
+
+        Cursor cursor = contentResolver.query( bookUri, PROJECTION, null, null, null );
+        try {
+            assertEquals( 0, cursor.getCount() );
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int queryQuantity() {
+        Cursor cursor = contentResolver.query( bookUri, PROJECTION, null, null, null );
+        try {
+            assertTrue( cursor.moveToFirst() );
+            assertEquals( "Row Cache Test", cursor.getString( 0 ) );
+            return cursor.getInt( 1 );
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Bundle getCacheStats() {
+        return contentResolver.call( BookEntry.CONTENT_URI, BookContract.METHOD_ROW_CACHE_STATS,
+                null, null );
+    }
+
+    private static long difference(Bundle before, Bundle after, String key) {
+        return after.getLong( key ) - before.getLong( key );
+    }
+}
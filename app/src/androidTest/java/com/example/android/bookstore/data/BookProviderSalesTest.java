@@ -0,0 +1,195 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+import com.example.android.bookstore.data.BookContract.DailySalesEntry;
+import com.example.android.bookstore.data.BookContract.SaleEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the sales ledger and the reports rolled up from it, which checks that
+ * each sale is recorded at the price it was made at, and that the sales of a day that is over
+ * show up in {@link DailySalesEntry#CONTENT_URI} and {@link DailySalesEntry#TOP_SELLERS_URI}.
+ * The sales are moved back in time through a database helper of the test's own.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderSalesTest {
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000;
+
+    private static final int PRICE = 1250;
+
+    private ContentResolver contentResolver;
+
+    private BookDbHelper dbHelper;
+
+    private Uri bookUri;
+
+    private long bookId;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        contentResolver = context.getContentResolver();
+        dbHelper = new BookDbHelper( context );
+
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_NAME, "Sales Test" );
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, PRICE );
+        values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, 10 );
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Sales Test Supplier" );
+        bookUri = contentResolver.insert( BookEntry.CONTENT_URI, values );
+        bookId = Long.parseLong( bookUri.getLastPathSegment() );
+
+        // Roll up whatever other tests sold on the days before, so only this test's sales are left
+        rollUpSales( SaleEntry.DEFAULT_RETENTION_MILLIS );
+    }
+
+    @After
+    public void tearDown() {
+        contentResolver.delete( bookUri, null, null );
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        String[] bookIdArgs = {String.valueOf( bookId )};
+        db.delete( SaleEntry.TABLE_NAME, SaleEntry.COLUMN_BOOK_ID + "=?", bookIdArgs );
+        db.delete( DailySalesEntry.TABLE_NAME, DailySalesEntry.COLUMN_BOOK_ID + "=?", bookIdArgs );
+        dbHelper.close();
+    }
+
+    @Test
+    public void sales_areRecordedInTheLedger() {
+        sell( 2 );
+        sell( 3 );
+        // Not enough copies left, so nothing is sold or recorded
+        sell( 6 );
+
+        Cursor cursor = queryLedger();
+        try {
+            assertEquals( 2, cursor.getCount() );
+            cursor.moveToFirst();
+            assertEquals( 2, cursor.getInt( 0 ) );
+            assertEquals( PRICE, cursor.getLong( 1 ) );
+            cursor.moveToNext();
+            assertEquals( 3, cursor.getInt( 0 ) );
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void salesOfADayThatIsOver_areReported() {
+        sell( 2 );
+        sell( 1 );
+        moveSalesBack( 2 * DAY_MILLIS );
+        sell( 4 );
+        String day = new SimpleDateFormat( "yyyy-MM-dd", Locale.US )
+                .format( new Date( System.currentTimeMillis() - 2 * DAY_MILLIS ) );
+
+        // Only the sales of the day that is over are rolled up, and those stay in the ledger
+        assertEquals( 2, rollUpSales( SaleEntry.DEFAULT_RETENTION_MILLIS ) );
+        Cursor cursor = contentResolver.query( DailySalesEntry.buildDailySalesUri( day, day ),
+                new String[]{DailySalesEntry.COLUMN_QUANTITY, DailySalesEntry.COLUMN_REVENUE},
+                DailySalesEntry.COLUMN_BOOK_ID + "=?", new String[]{String.valueOf( bookId )}, null );
+        try {
+            assertEquals( 1, cursor.getCount() );
+            cursor.moveToFirst();
+            assertEquals( 3, cursor.getInt( 0 ) );
+            assertEquals( 3 * PRICE, cursor.getLong( 1 ) );
+        } finally {
+            cursor.close();
+        }
+        assertEquals( 3, countLedger() );
+
+        // The book's totals of that day are among the top sellers, with its name
+        cursor = contentResolver.query( DailySalesEntry.buildTopSellersUri( day, day, 100 ),
+                new String[]{BookEntry._ID, BookEntry.COLUMN_PRODUCT_NAME, DailySalesEntry.COLUMN_QUANTITY},
+                BookEntry._ID + "=?", new String[]{String.valueOf( bookId )}, null );
+        try {
+            assertEquals( 1, cursor.getCount() );
+            cursor.moveToFirst();
+            assertEquals( "Sales Test", cursor.getString( 1 ) );
+            assertEquals( 3, cursor.getInt( 2 ) );
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void salesRolledUp_areDroppedPastTheRetention() {
+        sell( 2 );
+        moveSalesBack( DAY_MILLIS );
+
+        assertEquals( 1, rollUpSales( 0 ) );
+        assertEquals( 0, countLedger() );
+        // Nothing is rolled up twice
+        assertEquals( 0, rollUpSales( 0 ) );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void report_withInvalidDay_isRejected() {
+        contentResolver.query( DailySalesEntry.buildDailySalesUri( "yesterday", null ),
+                null, null, null, null );
+    }
+
+    private void sell(int quantity) {
+        Bundle extras = new Bundle();
+        extras.putInt( BookContract.EXTRA_QUANTITY, quantity );
+        contentResolver.call( BookEntry.CONTENT_URI, BookContract.METHOD_SELL,
+                String.valueOf( bookId ), extras );
+    }
+
+    private int rollUpSales(long retentionMillis) {
+        Bundle extras = new Bundle();
+        extras.putLong( BookContract.EXTRA_RETENTION_MILLIS, retentionMillis );
+        Bundle result = contentResolver.call( BookEntry.CONTENT_URI,
+                BookContract.METHOD_ROLL_UP_SALES, null, extras );
+        return (int) result.getLong( BookContract.EXTRA_ROW_COUNT );
+    }
+
+    /**
+     * Move the book's sales so far back by the given time, as if they were made then.
+     */
+    private void moveSalesBack(long millis) {
+        dbHelper.getWritableDatabase().execSQL( "UPDATE " + SaleEntry.TABLE_NAME + " SET "
+                        + SaleEntry.COLUMN_TIME + " = " + SaleEntry.COLUMN_TIME + " - ? WHERE "
+                        + SaleEntry.COLUMN_BOOK_ID + " = ?",
+                new Object[]{millis, bookId} );
+    }
+
+    /**
+     * Returns the quantity and price of the book's sales in the ledger, in the order they were made.
+     */
+    private Cursor queryLedger() {
+        return dbHelper.getReadableDatabase().query( SaleEntry.TABLE_NAME,
+                new String[]{SaleEntry.COLUMN_QUANTITY, SaleEntry.COLUMN_PRICE},
+                SaleEntry.COLUMN_BOOK_ID + "=?", new String[]{String.valueOf( bookId )},
+                null, null, SaleEntry._ID );
+    }
+
+    private int countLedger() {
+        Cursor cursor = queryLedger();
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
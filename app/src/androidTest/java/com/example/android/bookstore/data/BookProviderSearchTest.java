@@ -0,0 +1,172 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+import com.example.android.bookstore.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the {@link BookEntry#buildSearchUri search URI}, which checks that every
+ * term matches the start of a word, how the matches are ranked, and that the triggers keep the
+ * search in step with the books as they're updated and deleted. The names are made up, so only
+ * the test's books match them.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderSearchTest {
+
+    private static final String SUPPLIER = "Search Test Supplier";
+
+    private static final String OTHER_SUPPLIER = "Quillmarsh Search Test Press";
+
+    private ContentResolver contentResolver;
+
+    @Before
+    public void setUp() {
+        contentResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        contentResolver.delete( BookEntry.CONTENT_URI, BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME
+                + " IN (?, ?)", new String[]{SUPPLIER, OTHER_SUPPLIER} );
+        contentResolver.delete( SupplierEntry.CONTENT_URI, SupplierEntry.COLUMN_SUPPLIER_NAME
+                + " IN (?, ?)", new String[]{SUPPLIER, OTHER_SUPPLIER} );
+    }
+
+    @Test
+    public void terms_matchTheStartOfWords() {
+        long id = insertBook( "The Zephyrwick Almanac", SUPPLIER );
+
+        assertEquals( Collections.singletonList( id ), search( "zephyr" ) );
+        assertEquals( Collections.singletonList( id ), search( "ZEPHYRWICK" ) );
+        // The middle of a word isn't the start of one
+        assertEquals( Collections.<Long>emptyList(), search( "wick" ) );
+    }
+
+    @Test
+    public void everyTerm_mustMatch() {
+        long id = insertBook( "The Zephyrwick Almanac", SUPPLIER );
+
+        assertEquals( Collections.singletonList( id ), search( "alma zeph" ) );
+        assertEquals( Collections.<Long>emptyList(), search( "zeph yearbook" ) );
+    }
+
+    @Test
+    public void punctuationAndOperators_areTakenAsPlainTerms() {
+        long id = insertBook( "Zephyrwick, or the Almanac", SUPPLIER );
+
+        assertEquals( Collections.singletonList( id ), search( "zephyrwick OR \"alm*\"" ) );
+        assertEquals( Collections.<Long>emptyList(), search( "zephyrwick -almanac NEAR yearbook" ) );
+    }
+
+    @Test
+    public void supplierNames_areSearchedToo() {
+        long id = insertBook( "The Zephyrwick Almanac", OTHER_SUPPLIER );
+
+        assertEquals( Collections.singletonList( id ), search( "quillmarsh" ) );
+    }
+
+    @Test
+    public void nameMatches_comeBeforeSupplierMatches_thenTheMostFrequent() {
+        long supplierMatch = insertBook( "A Tale of the Fens", OTHER_SUPPLIER );
+        long nameMatch = insertBook( "Quillmarsh", SUPPLIER );
+        long frequentNameMatch = insertBook( "Quillmarsh and Quillmarsh Again", SUPPLIER );
+
+        assertEquals( Arrays.asList( frequentNameMatch, nameMatch, supplierMatch ),
+                search( "quillmarsh" ) );
+    }
+
+    @Test
+    public void limit_isHonoured() {
+        insertBook( "Zephyrwick One", SUPPLIER );
+        insertBook( "Zephyrwick Two", SUPPLIER );
+        insertBook( "Zephyrwick Three", SUPPLIER );
+
+        Uri uri = BookEntry.buildSearchUri( "zephyrwick" ).buildUpon()
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_LIMIT, "2" ).build();
+        assertEquals( 2, query( uri ).size() );
+    }
+
+    @Test
+    public void updatedBook_isFoundByItsNewName() {
+        long id = insertBook( "The Zephyrwick Almanac", SUPPLIER );
+
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_NAME, "The Brambleton Almanac" );
+        assertEquals( 1, contentResolver.update( ContentUris.withAppendedId( BookEntry.CONTENT_URI, id ),
+                values, null, null ) );
+
+        assertEquals( Collections.<Long>emptyList(), search( "zephyrwick" ) );
+        assertEquals( Collections.singletonList( id ), search( "brambleton" ) );
+    }
+
+    @Test
+    public void bookMovedToAnotherSupplier_isFoundByItsNewSupplier() {
+        long id = insertBook( "The Zephyrwick Almanac", SUPPLIER );
+
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, OTHER_SUPPLIER );
+        assertEquals( 1, contentResolver.update( ContentUris.withAppendedId( BookEntry.CONTENT_URI, id ),
+                values, null, null ) );
+
+        assertEquals( Collections.singletonList( id ), search( "quillmarsh" ) );
+    }
+
+    @Test
+    public void deletedBook_isNotFound() {
+        long id = insertBook( "The Zephyrwick Almanac", SUPPLIER );
+        long other = insertBook( "Zephyrwick Revisited", SUPPLIER );
+
+        assertEquals( 1, contentResolver.delete( ContentUris.withAppendedId( BookEntry.CONTENT_URI, id ),
+                null, null ) );
+
+        assertEquals( Collections.singletonList( other ), search( "zephyrwick" ) );
+    }
+
+    private long insertBook(String name, String supplier) {
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_NAME, name );
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, 899 );
+        values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, 2 );
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, supplier );
+        return ContentUris.parseId( contentResolver.insert( BookEntry.CONTENT_URI, values ) );
+    }
+
+    /**
+     * Returns the _IDs of the books found, best match first
+     */
+    private List<Long> search(String terms) {
+        return query( BookEntry.buildSearchUri( terms ) );
+    }
+
+    private List<Long> query(Uri uri) {
+        Cursor cursor = contentResolver.query( uri, new String[]{BookEntry._ID}, null, null, null );
+        try {
+            List<Long> ids = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                ids.add( cursor.getLong( 0 ) );
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link BookContract#METHOD_SELL}, which hammers a single book from many
+ * threads at once.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderSellTest {
+
+    private static final int THREADS = 8;
+    private static final int SALES_PER_THREAD = 100;
+
+    private ContentResolver contentResolver;
+
+    private Uri bookUri;
+
+    @Before
+    public void setUp() {
+        contentResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        if (bookUri != null) {
+            contentResolver.delete( bookUri, null, null );
+        }
+    }
+
+    @Test
+    public void concurrentSales_loseNoUpdates() throws Exception {
+        int stock = THREADS * SALES_PER_THREAD * 2;
+        bookUri = insertBook( stock );
+
+        List<Integer> quantitiesLeft = sellConcurrently();
+
+        // Every sale went through, and each one left a different quantity behind
+        assertEquals( THREADS * SALES_PER_THREAD, quantitiesLeft.size() );
+        boolean[] seen = new boolean[stock];
+        for (int quantityLeft : quantitiesLeft) {
+            assertFalse( "Quantity " + quantityLeft + " was left twice", seen[quantityLeft] );
+            seen[quantityLeft] = true;
+        }
+        assertEquals( stock - THREADS * SALES_PER_THREAD, queryQuantity() );
+    }
+
+    @Test
+    public void concurrentSales_stopAtZero() throws Exception {
+        int stock = THREADS * SALES_PER_THREAD / 2;
+        bookUri = insertBook( stock );
+
+        List<Integer> quantitiesLeft = sellConcurrently();
+
+        // Only as many sales as there were copies went through
+        assertEquals( stock, quantitiesLeft.size() );
+        assertEquals( 0, queryQuantity() );
+    }
+
+    @Test
+    public void sellUnknownBook_returnsNoQuantity() {
+        Bundle result = contentResolver.call( BookEntry.CONTENT_URI, BookContract.METHOD_SELL,
+                String.valueOf( Long.MAX_VALUE ), null );
+
+        assertFalse( result.getBoolean( BookContract.EXTRA_SOLD ) );
+        assertEquals( -1, result.getInt( BookContract.EXTRA_QUANTITY ) );
+    }
+
+    /**
+     * Sell the test book from {@link #THREADS} threads at once, and return the quantity left
+     * after each sale that went through.
+     */
+    private List<Integer> sellConcurrently() throws Exception {
+        final String bookId = String.valueOf( ContentUris.parseId( bookUri ) );
+
+        ExecutorService executor = Executors.newFixedThreadPool( THREADS );
+        List<Future<List<Integer>>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add( executor.submit( new Callable<List<Integer>>() {
+                @Override
+                public List<Integer> call() {
+                    List<Integer> quantitiesLeft = new ArrayList<>();
+                    for (int sale = 0; sale < SALES_PER_THREAD; sale++) {
+                        Bundle result = contentResolver.call( BookEntry.CONTENT_URI,
+                                BookContract.METHOD_SELL, bookId, null );
+                        if (result.getBoolean( BookContract.EXTRA_SOLD )) {
+                            quantitiesLeft.add( result.getInt( BookContract.EXTRA_QUANTITY ) );
+                        }
+                    }
+                    return quantitiesLeft;
+                }
+            } ) );
+        }
+
+        List<Integer> quantitiesLeft = new ArrayList<>();
+        for (Future<List<Integer>> future : futures) {
+            quantitiesLeft.addAll( future.get() );
+        }
+        executor.shutdown();
+        return quantitiesLeft;
+    }
+
+    private Uri insertBook(int quantity) {
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_NAME, "Concurrency Test" );
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, 1 );
+        values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, quantity );
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Test Supplier" );
+        return contentResolver.insert( BookEntry.CONTENT_URI, values );
+    }
+
+    private int queryQuantity() {
+        Cursor cursor = contentResolver.query( bookUri,
+                new String[]{BookEntry.COLUMN_PRODUCT_QUANTITY}, null, null, null );
+        try {
+            assertTrue( cursor.moveToFirst() );
+            return cursor.getInt( 0 );
+        } finally {
+            cursor.close();
+        }
+    }
+}
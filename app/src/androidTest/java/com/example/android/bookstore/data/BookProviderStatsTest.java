@@ -0,0 +1,110 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link BookContract#METHOD_STATS}, which checks that the cached statistics
+ * follow every change to the books. The app's own books are left alone: only the differences
+ * the test's books make are checked.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderStatsTest {
+
+    private ContentResolver contentResolver;
+
+    private final List<Uri> bookUris = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        contentResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        for (Uri bookUri : bookUris) {
+            contentResolver.delete( bookUri, null, null );
+        }
+    }
+
+    @Test
+    public void stats_followInsertsUpdatesSalesAndDeletes() {
+        Bundle before = getStats();
+
+        Uri bookUri = insertBook( "Stats Test Supplier A", 1999, 10 );
+        insertBook( "Stats Test Supplier B", 500, 2 );
+        Bundle inserted = getStats();
+        assertEquals( 2, difference( before, inserted, BookContract.EXTRA_BOOK_COUNT ) );
+        assertEquals( 12, difference( before, inserted, BookContract.EXTRA_TOTAL_UNITS ) );
+        assertEquals( 10 * 1999 + 2 * 500, difference( before, inserted, BookContract.EXTRA_TOTAL_VALUE ) );
+        assertEquals( 2, difference( before, inserted, BookContract.EXTRA_SUPPLIER_COUNT ) );
+        assertEquals( 1, difference( before, inserted, BookContract.EXTRA_LOW_STOCK_COUNT ) );
+
+        // Selling the first book down to low stock
+        Bundle extras = new Bundle();
+        extras.putInt( BookContract.EXTRA_QUANTITY, 7 );
+        contentResolver.call( BookEntry.CONTENT_URI, BookContract.METHOD_SELL,
+                bookUri.getLastPathSegment(), extras );
+        Bundle sold = getStats();
+        assertEquals( 5, difference( before, sold, BookContract.EXTRA_TOTAL_UNITS ) );
+        assertEquals( 2, difference( before, sold, BookContract.EXTRA_LOW_STOCK_COUNT ) );
+
+        // Repricing it
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, 1000 );
+        contentResolver.update( bookUri, values, null, null );
+        Bundle updated = getStats();
+        assertEquals( 3 * 1000 + 2 * 500, difference( before, updated, BookContract.EXTRA_TOTAL_VALUE ) );
+
+        // Deleting it
+        contentResolver.delete( bookUri, null, null );
+        Bundle deleted = getStats();
+        assertEquals( 1, difference( before, deleted, BookContract.EXTRA_BOOK_COUNT ) );
+        assertEquals( 1, difference( before, deleted, BookContract.EXTRA_SUPPLIER_COUNT ) );
+    }
+
+    @Test
+    public void stats_withoutChanges_areTheSame() {
+        Bundle first = getStats();
+        Bundle second = getStats();
+
+        for (String key : first.keySet()) {
+            assertEquals( key, first.getLong( key ), second.getLong( key ) );
+        }
+    }
+
+    private Bundle getStats() {
+        return contentResolver.call( BookEntry.CONTENT_URI, BookContract.METHOD_STATS, null, null );
+    }
+
+    private static long difference(Bundle before, Bundle after, String key) {
+        return after.getLong( key ) - before.getLong( key );
+    }
+
+    private Uri insertBook(String supplier, long priceCents, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_NAME, "Stats Test" );
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, priceCents );
+        values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, quantity );
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, supplier );
+        Uri bookUri = contentResolver.insert( BookEntry.CONTENT_URI, values );
+        bookUris.add( bookUri );
+        return bookUri;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+import com.example.android.bookstore.data.BookContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the suppliers, which the books refer to by _ID but are still read and
+ * written by name through the books' URIs.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookProviderSuppliersTest {
+
+    private static final String SUPPLIER = "Suppliers Test Supplier";
+    private static final String RENAMED_SUPPLIER = "Suppliers Test Renamed";
+
+    private ContentResolver contentResolver;
+
+    private Uri bookUri;
+
+    @Before
+    public void setUp() {
+        contentResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_NAME, "Suppliers Test" );
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, 1999 );
+        values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, 3 );
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, SUPPLIER );
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER, "8001234567" );
+        bookUri = contentResolver.insert( BookEntry.CONTENT_URI, values );
+    }
+
+    @After
+    public void tearDown() {
+        contentResolver.delete( bookUri, null, null );
+        contentResolver.delete( SupplierEntry.CONTENT_URI, SupplierEntry.COLUMN_SUPPLIER_NAME
+                + " IN (?, ?)", new String[]{SUPPLIER, RENAMED_SUPPLIER} );
+    }
+
+    @Test
+    public void insertBook_addsItsSupplier() {
+        long supplierId = querySupplierId();
+        Cursor cursor = contentResolver.query( SupplierEntry.CONTENT_URI.buildUpon()
+                        .appendPath( String.valueOf( supplierId ) ).build(),
+                new String[]{SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER}, null, null, null );
+        try {
+            assertTrue( cursor.moveToFirst() );
+            assertEquals( "8001234567", cursor.getString( 0 ) );
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void supplierBooks_returnsTheSuppliersBooks() {
+        Cursor cursor = contentResolver.query( SupplierEntry.buildBooksUri( querySupplierId() ),
+                new String[]{BookEntry._ID}, null, null, null );
+        try {
+            assertEquals( 1, cursor.getCount() );
+            cursor.moveToFirst();
+            assertEquals( ContentUris.parseId( bookUri ), cursor.getLong( 0 ) );
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void renameSupplier_renamesItForItsBooks() {
+        ContentValues values = new ContentValues();
+        values.put( SupplierEntry.COLUMN_SUPPLIER_NAME, RENAMED_SUPPLIER );
+        assertEquals( 1, contentResolver.update( SupplierEntry.CONTENT_URI.buildUpon()
+                .appendPath( String.valueOf( querySupplierId() ) ).build(), values, null, null ) );
+
+        Cursor cursor = contentResolver.query( bookUri,
+                new String[]{BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME}, null, null, null );
+        try {
+            assertTrue( cursor.moveToFirst() );
+            assertEquals( RENAMED_SUPPLIER, cursor.getString( 0 ) );
+        } finally {
+            cursor.close();
+        }
+
+        // The search follows the new name too
+        cursor = contentResolver.query( BookEntry.buildSearchUri( RENAMED_SUPPLIER ),
+                new String[]{BookEntry._ID}, null, null, null );
+        try {
+            assertEquals( 1, cursor.getCount() );
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void deleteSupplier_withBooks_deletesNothing() {
+        Uri supplierUri = SupplierEntry.CONTENT_URI.buildUpon()
+                .appendPath( String.valueOf( querySupplierId() ) ).build();
+        assertEquals( 0, contentResolver.delete( supplierUri, null, null ) );
+    }
+
+    private long querySupplierId() {
+        Cursor cursor = contentResolver.query( bookUri,
+                new String[]{BookEntry.COLUMN_SUPPLIER_ID}, null, null, null );
+        try {
+            assertTrue( cursor.moveToFirst() );
+            return cursor.getLong( 0 );
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link BookWriteExecutor}, which checks that the writes for a book run in
+ * the order they were submitted, that a write to all the books runs between the writes submitted
+ * before and after it, that a cancelled write doesn't run, and that the callbacks are called on
+ * the main thread.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BookWriteExecutorTest {
+
+    private BookWriteExecutor executor;
+
+    @Before
+    public void setUp() {
+        ContentResolver contentResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+        executor = new BookWriteExecutor( contentResolver );
+    }
+
+    @Test
+    public void writesForTheSameBook_runInOrder() throws InterruptedException {
+        final List<Integer> order = Collections.synchronizedList( new ArrayList<Integer>() );
+        CountDownLatch done = new CountDownLatch( 1 );
+        for (int i = 0; i < 20; i++) {
+            executor.submit( 1, new RecordingWrite( order, i ), null );
+        }
+        executor.submit( 1, new RecordingWrite( order, 20 ), new LatchCallback<Integer>( done ) );
+
+        assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+        for (int i = 0; i <= 20; i++) {
+            assertEquals( Integer.valueOf( i ), order.get( i ) );
+        }
+    }
+
+    @Test
+    public void deleteAll_runsAfterAnInsertSubmittedBefore() throws InterruptedException {
+        final List<Integer> order = Collections.synchronizedList( new ArrayList<Integer>() );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        // A slow insert, which a write to all the books on the other thread would overtake
+        executor.submit( BookWriteExecutor.NEW_BOOK, new RecordingWrite( order, 0 ) {
+            @Override
+            public Integer write(ContentResolver contentResolver) {
+                await( release );
+                return super.write( contentResolver );
+            }
+        }, null );
+        executor.submit( BookWriteExecutor.ALL_BOOKS, new RecordingWrite( order, 1 ), null );
+        release.countDown();
+
+        CountDownLatch done = new CountDownLatch( 1 );
+        executor.submit( BookWriteExecutor.ALL_BOOKS, new RecordingWrite( order, 2 ),
+                new LatchCallback<Integer>( done ) );
+        assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+        assertEquals( Arrays.asList( 0, 1, 2 ), order );
+    }
+
+    @Test
+    public void writesSubmittedAfterDeleteAll_waitForIt() throws InterruptedException {
+        final List<Integer> order = Collections.synchronizedList( new ArrayList<Integer>() );
+        final CountDownLatch blocked = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        executor.submit( 4, new RecordingWrite( order, 0 ) {
+            @Override
+            public Integer write(ContentResolver contentResolver) {
+                blocked.countDown();
+                await( release );
+                return super.write( contentResolver );
+            }
+        }, null );
+        assertTrue( blocked.await( 5, TimeUnit.SECONDS ) );
+
+        // The save of another book and the insert come after the delete, although a thread is free
+        executor.submit( BookWriteExecutor.ALL_BOOKS, new RecordingWrite( order, 1 ), null );
+        CountDownLatch done = new CountDownLatch( 2 );
+        executor.submit( 5, new RecordingWrite( order, 2 ), new LatchCallback<Integer>( done ) );
+        executor.submit( BookWriteExecutor.NEW_BOOK, new RecordingWrite( order, 3 ),
+                new LatchCallback<Integer>( done ) );
+        SystemClock.sleep( 100 );
+        assertEquals( Collections.<Integer>emptyList(), order );
+        release.countDown();
+
+        assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+        assertEquals( Arrays.asList( 0, 1 ), order.subList( 0, 2 ) );
+        assertEquals( 4, order.size() );
+    }
+
+    @Test
+    public void cancelledWrite_doesNotRun() throws InterruptedException {
+        final CountDownLatch blocked = new CountDownLatch( 1 );
+        final CountDownLatch release = new CountDownLatch( 1 );
+        executor.submit( 2, new BookWriteExecutor.Write<Integer>() {
+            @Override
+            public Integer write(ContentResolver contentResolver) {
+                blocked.countDown();
+                try {
+                    release.await( 5, TimeUnit.SECONDS );
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return 0;
+            }
+        }, null );
+        assertTrue( blocked.await( 5, TimeUnit.SECONDS ) );
+
+        // The second write waits behind the first, so it can still be cancelled
+        final List<Integer> order = Collections.synchronizedList( new ArrayList<Integer>() );
+        BookWriteExecutor.Task<Integer> task = executor.submit( 2, new RecordingWrite( order, 1 ), null );
+        assertTrue( task.cancel() );
+        CountDownLatch done = new CountDownLatch( 1 );
+        executor.submit( 2, new RecordingWrite( order, 2 ), new LatchCallback<Integer>( done ) );
+        release.countDown();
+
+        assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+        assertEquals( Collections.singletonList( 2 ), order );
+    }
+
+    @Test
+    public void failedWrite_isReportedOnTheMainThread() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch( 1 );
+        final boolean[] onMainThread = new boolean[1];
+        executor.submit( 3, new BookWriteExecutor.Write<Integer>() {
+            @Override
+            public Integer write(ContentResolver contentResolver) {
+                throw new IllegalArgumentException( "Test failure" );
+            }
+        }, new BookWriteExecutor.Callback<Integer>() {
+            @Override
+            public void onComplete(Integer result) {
+            }
+
+            @Override
+            public void onError(RuntimeException e) {
+                onMainThread[0] = Looper.myLooper() == Looper.getMainLooper();
+                done.countDown();
+            }
+        } );
+
+        assertTrue( done.await( 5, TimeUnit.SECONDS ) );
+        assertTrue( onMainThread[0] );
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await( 5, TimeUnit.SECONDS );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Adds its number to a list when it's written
+     */
+    private static class RecordingWrite implements BookWriteExecutor.Write<Integer> {
+
+        private final List<Integer> order;
+
+        private final int number;
+
+        RecordingWrite(List<Integer> order, int number) {
+            this.order = order;
+            this.number = number;
+        }
+
+        @Override
+        public Integer write(ContentResolver contentResolver) {
+            order.add( number );
+            return number;
+        }
+    }
+
+    /**
+     * Counts down a latch when the write is done
+     */
+    private static class LatchCallback<T> implements BookWriteExecutor.Callback<T> {
+
+        private final CountDownLatch latch;
+
+        LatchCallback(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void onComplete(T result) {
+            latch.countDown();
+        }
+
+        @Override
+        public void onError(RuntimeException e) {
+            fail( e.toString() );
+        }
+    }
+}
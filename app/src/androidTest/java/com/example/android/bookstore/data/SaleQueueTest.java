@@ -0,0 +1,179 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link SaleQueue}, which checks that the sales are counted as pending
+ * until they are flushed, and then written in full, that the quantity left doesn't go back
+ * up before the stock shown counts them, and that the sales that couldn't be written are
+ * written by the next queue.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SaleQueueTest {
+
+    /**
+     * How long the sales are gathered for, so they're only flushed when the test asks for it
+     */
+    private static final long NO_FLUSH_DELAY_MILLIS = Long.MAX_VALUE / 2;
+
+    private Context context;
+
+    private ContentResolver contentResolver;
+
+    private SharedPreferences preferences;
+
+    private SaleQueue saleQueue;
+
+    private Uri bookUri;
+
+    private long bookId;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getTargetContext();
+        contentResolver = context.getContentResolver();
+        preferences = context.getSharedPreferences( "sale_queue_test", Context.MODE_PRIVATE );
+        preferences.edit().clear().commit();
+        saleQueue = new SaleQueue( contentResolver, preferences, NO_FLUSH_DELAY_MILLIS, null );
+
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_NAME, "Sale Queue Test" );
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, 1999 );
+        values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, 10 );
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Sale Queue Test Supplier" );
+        bookUri = contentResolver.insert( BookEntry.CONTENT_URI, values );
+        bookId = Long.parseLong( bookUri.getLastPathSegment() );
+    }
+
+    @After
+    public void tearDown() {
+        saleQueue.close();
+        contentResolver.delete( bookUri, null, null );
+        preferences.edit().clear().commit();
+    }
+
+    @Test
+    public void sales_arePendingUntilFlushed() {
+        saleQueue.sell( bookId, 10 );
+        saleQueue.sell( bookId, 10 );
+        saleQueue.sell( bookId, 10 );
+        assertEquals( 3, saleQueue.getPendingQuantity( bookId ) );
+        assertEquals( 10, queryQuantity() );
+
+        saleQueue.flush();
+        assertEquals( 0, saleQueue.getPendingQuantity( bookId ) );
+        assertEquals( 7, queryQuantity() );
+    }
+
+    @Test
+    public void sales_ofMoreThanTheStock_areDropped() {
+        for (int i = 0; i < 11; i++) {
+            saleQueue.sell( bookId, 10 );
+        }
+
+        saleQueue.flush();
+        assertEquals( 0, saleQueue.getPendingQuantity( bookId ) );
+        assertEquals( 10, queryQuantity() );
+        // The stock shown is right again straight away
+        assertEquals( 10, saleQueue.getQuantityLeft( bookId, 10 ) );
+    }
+
+    @Test
+    public void salesWritten_areTakenOffUntilTheStockShownCountsThem() {
+        saleQueue.sell( bookId, 10 );
+        saleQueue.sell( bookId, 10 );
+        assertEquals( 8, saleQueue.getQuantityLeft( bookId, 10 ) );
+
+        // The list hasn't loaded the book again yet
+        saleQueue.flush();
+        assertEquals( 8, saleQueue.getQuantityLeft( bookId, 10 ) );
+
+        // Once it has, a sale made in the meantime is still taken off, but not those written
+        saleQueue.sell( bookId, 10 );
+        assertEquals( 7, saleQueue.getQuantityLeft( bookId, 10 ) );
+        assertEquals( 7, saleQueue.getQuantityLeft( bookId, 8 ) );
+        saleQueue.flush();
+        assertEquals( 7, saleQueue.getQuantityLeft( bookId, 8 ) );
+        assertEquals( 7, saleQueue.getQuantityLeft( bookId, 7 ) );
+
+        // Nothing is taken off the stock anymore
+        assertEquals( 5, saleQueue.getQuantityLeft( bookId, 5 ) );
+        assertEquals( 7, queryQuantity() );
+    }
+
+    @Test
+    public void flushAndWait_writesTheSalesBeforeReturning() {
+        saleQueue.sell( bookId, 10 );
+        saleQueue.sell( bookId, 10 );
+
+        assertTrue( saleQueue.flushAndWait( 5000 ) );
+        assertEquals( 0, saleQueue.getPendingQuantity( bookId ) );
+        assertEquals( 8, queryQuantity() );
+    }
+
+    @Test
+    public void failedFlush_isNotReportedAsWritten_andTheNextQueueWritesTheSales() {
+        saleQueue.sell( bookId, 10 );
+        saleQueue.sell( bookId, 10 );
+        assertEquals( 2, preferences.getInt( String.valueOf( bookId ), 0 ) );
+
+        // Make the database refuse the sales, as it would on a full disk
+        BookDbHelper dbHelper = new BookDbHelper( context );
+        try {
+            dbHelper.getWritableDatabase().execSQL( "CREATE TRIGGER sale_queue_test_refuse BEFORE UPDATE OF "
+                    + BookEntry.COLUMN_PRODUCT_QUANTITY + " ON " + BookEntry.TABLE_NAME + " WHEN old."
+                    + BookEntry._ID + " = " + bookId + " BEGIN SELECT RAISE(ABORT, 'Refused by the test'); END;" );
+            assertFalse( saleQueue.flushAndWait( 5000 ) );
+        } finally {
+            dbHelper.getWritableDatabase().execSQL( "DROP TRIGGER IF EXISTS sale_queue_test_refuse;" );
+            dbHelper.close();
+        }
+        assertEquals( 2, saleQueue.getPendingQuantity( bookId ) );
+        assertEquals( 10, queryQuantity() );
+
+        // The process is killed before the sales are written, and the next queue writes them
+        SaleQueue nextQueue = new SaleQueue( contentResolver, preferences, NO_FLUSH_DELAY_MILLIS, null );
+        try {
+            assertTrue( nextQueue.flushAndWait( 5000 ) );
+            assertEquals( 8, queryQuantity() );
+            assertFalse( preferences.contains( String.valueOf( bookId ) ) );
+        } finally {
+            nextQueue.close();
+        }
+    }
+
+    @Test
+    public void salesWritten_areClearedFromThePreferences() {
+        saleQueue.sell( bookId, 10 );
+        saleQueue.flush();
+
+        assertFalse( preferences.contains( String.valueOf( bookId ) ) );
+    }
+
+    private int queryQuantity() {
+        Cursor cursor = contentResolver.query( bookUri,
+                new String[]{BookEntry.COLUMN_PRODUCT_QUANTITY}, null, null, null );
+        try {
+            assertTrue( cursor.moveToFirst() );
+            return cursor.getInt( 0 );
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -1,71 +1,340 @@
 package com.example.android.bookstore;
 
-import android.app.Activity;
-import android.content.Context;
 import android.database.Cursor;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
-import android.widget.CursorAdapter;
 import android.widget.TextView;
 import android.widget.Toast;
 
 
 import com.example.android.bookstore.data.BookContract.BookEntry;
+import com.example.android.bookstore.data.PriceFormatter;
+import com.example.android.bookstore.data.SaleQueue;
 
-public class BookCursorAdapter extends CursorAdapter {
+/**
+ * {@link RecyclerView.Adapter} that shows the books in a {@link Cursor}. Binding a row allocates
+ * little more than the book name: the views and the column indices are looked up once, the numbers
+ * are written into reused char buffers, and every row shares the same click handler.
+ */
+public class BookCursorAdapter extends RecyclerView.Adapter<BookCursorAdapter.BookViewHolder> {
 
-    public BookCursorAdapter(Context context, Cursor cursor) {
-        super( context, cursor, 0 );
+    /**
+     * Listener for taps on the books in the list
+     */
+    public interface OnBookClickListener {
+
+        /**
+         * Called when the user taps a book in the list.
+         */
+        void onBookClick(long bookId);
+
+        /**
+         * Called when the user taps the "BUY" button of a book that isn't sold out.
+         *
+         * @param stock the quantity of the book in stock the list shows, before the sales in
+         *              flight are taken off
+         */
+        void onSellClick(long bookId, int stock);
+    }
+
+    /**
+     * Listener for the first row the adapter shows
+     */
+    public interface OnFirstRowBoundListener {
+
+        /**
+         * Called once, right after the adapter bound its first row.
+         */
+        void onFirstRowBound();
+    }
+
+    private final OnBookClickListener listener;
+
+    /**
+     * Told about the first row bound, then dropped. Null once it's been told, or if there is none.
+     */
+    private OnFirstRowBoundListener firstRowBoundListener;
+
+    /**
+     * The sales that may not be in the cursor yet, which are taken off the quantities shown
+     */
+    private final SaleQueue saleQueue;
+
+    /**
+     * The books shown, or null if there are none yet
+     */
+    private Cursor cursor;
+
+    /**
+     * Indices of the columns in {@link #cursor}, looked up once per cursor rather than per row
+     */
+    private int idColumnIndex;
+    private int nameColumnIndex;
+    private int priceColumnIndex;
+    private int quantityColumnIndex;
+
+    /**
+     * The one click handler shared by every row and "BUY" button. Both views are tagged with their
+     * {@link BookViewHolder}, which knows which book it is showing.
+     */
+    private final View.OnClickListener clickHandler = new View.OnClickListener() {
+        @Override
+        public void onClick(View view) {
+            BookViewHolder holder = (BookViewHolder) view.getTag();
+            if (holder.getAdapterPosition() == RecyclerView.NO_POSITION) {
+                return;
+            }
+
+            if (view.getId() != R.id.sale_button) {
+                listener.onBookClick( holder.bookId );
+            } else if (holder.quantity == 0) {
+                // Sell one copy unless the quantity is at 0,
+                // where we then have a toast message pop up saying "Sold Out"
+                Toast.makeText( view.getContext(), R.string.book_sold_out, Toast.LENGTH_SHORT ).show();
+            } else {
+                listener.onSellClick( holder.bookId, holder.stock );
+                // Show the quantity left straight away, rather than when the sale is written
+                notifyItemChanged( holder.getAdapterPosition() );
+            }
+        }
+    };
+
+    public BookCursorAdapter(OnBookClickListener listener, SaleQueue saleQueue) {
+        this.listener = listener;
+        this.saleQueue = saleQueue;
+        setHasStableIds( true );
     }
 
     @Override
-    public View newView(Context context, Cursor cursor, ViewGroup parent) {
+    public BookViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         // Inflate a list item view using the layout specified in the list_item.xml
-        return LayoutInflater.from( context ).inflate( R.layout.list_item, parent, false );
+        View view = LayoutInflater.from( parent.getContext() ).inflate( R.layout.list_item, parent, false );
+        BookViewHolder holder = new BookViewHolder( view );
+
+        view.setTag( holder );
+        view.setOnClickListener( clickHandler );
+        holder.button.setTag( holder );
+        holder.button.setOnClickListener( clickHandler );
+        return holder;
     }
 
     @Override
-    public void bindView(View view, final Context context, Cursor cursor) {
-        // Find individual views that we want to modify in the list item layout
-        TextView nameTextView = view.findViewById( R.id.product_name );
-        TextView priceTextView = view.findViewById( R.id.price );
-        final TextView quantityTextView = view.findViewById( R.id.quantity );
-        Button button = view.findViewById( R.id.sale_button );
-
-        // Find the columns of book attributes that we're interested in
-        int idColumnIndex = cursor.getColumnIndex( BookEntry._ID );
-        int nameColumnIndex = cursor.getColumnIndex( BookEntry.COLUMN_PRODUCT_NAME );
-        int priceColumnIndex = cursor.getColumnIndex( BookEntry.COLUMN_PRODUCT_PRICE );
-        final int quantityColumnIndex = cursor.getColumnIndex( BookEntry.COLUMN_PRODUCT_QUANTITY );
-
-        // Read the pet attributes from the Cursor for the current book
-        final String id = cursor.getString( idColumnIndex );
-        String bookName = cursor.getString( nameColumnIndex );
-        Double bookPrice = cursor.getDouble( priceColumnIndex );
-        final Integer quantityBook = cursor.getInt( quantityColumnIndex );
-
-        // Attach a "$" to the String bookPrice
-        String bookPriceFinal = "$" + bookPrice;
+    public void onBindViewHolder(BookViewHolder holder, int position) {
+        cursor.moveToPosition( position );
+
+        // Read the book attributes from the Cursor for the current book
+        holder.bookId = cursor.getLong( idColumnIndex );
+        holder.stock = cursor.getInt( quantityColumnIndex );
+        holder.quantity = saleQueue.getQuantityLeft( holder.bookId, holder.stock );
 
         // Update the TextViews with the attributes for the current book
-        nameTextView.setText( bookName );
-        priceTextView.setText( bookPriceFinal );
-        quantityTextView.setText( String.valueOf( quantityBook ) );
-
-        // Set onClickListener on the "BUY" button, will decrease quantity by 1 unless quantity
-        // is at 0 where we then have a toast message pop up saying "Sold Out"
-        button.setOnClickListener( new View.OnClickListener() {
-            @Override
-            public void onClick(View view) {
-                if (quantityBook == 0) {
-                    Toast.makeText( view.getContext(), R.string.book_sold_out, Toast.LENGTH_SHORT ).show();
-                } else {
-                    InventoryActivity inventoryActivity = (InventoryActivity) context;
-                    inventoryActivity.decreaseQuantity( Integer.valueOf( id ), Integer.valueOf( quantityBook ) );
-                }
+        holder.nameTextView.setText( cursor.getString( nameColumnIndex ) );
+        holder.showPrice( cursor.getLong( priceColumnIndex ) );
+        holder.showQuantity( holder.quantity );
+
+        if (firstRowBoundListener != null) {
+            OnFirstRowBoundListener firstRowListener = firstRowBoundListener;
+            firstRowBoundListener = null;
+            firstRowListener.onFirstRowBound();
+        }
+    }
+
+    /**
+     * Set the listener told when the next row is bound, which is the first row if the adapter
+     * hasn't bound any yet.
+     */
+    public void setOnFirstRowBoundListener(OnFirstRowBoundListener listener) {
+        firstRowBoundListener = listener;
+    }
+
+    @Override
+    public int getItemCount() {
+        return cursor == null ? 0 : cursor.getCount();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        cursor.moveToPosition( position );
+        return cursor.getLong( idColumnIndex );
+    }
+
+    /**
+     * Rebind the row of the book with the given _ID, if the list shows it.
+     */
+    public void notifyBookChanged(long bookId) {
+        if (cursor == null) {
+            return;
+        }
+        for (int position = 0; cursor.moveToPosition( position ); position++) {
+            if (cursor.getLong( idColumnIndex ) == bookId) {
+                notifyItemChanged( position );
+                return;
             }
-        } );
+        }
+    }
+
+    /**
+     * Show the books in the new cursor. Only the rows that differ from the current cursor are
+     * rebound, so a change to one book only redraws that book. The old cursor is not closed.
+     */
+    public void swapCursor(Cursor newCursor) {
+        if (newCursor == cursor) {
+            return;
+        }
+
+        Cursor oldCursor = cursor;
+        DiffUtil.DiffResult diff = null;
+        if (oldCursor != null && newCursor != null) {
+            diff = DiffUtil.calculateDiff( new BookDiffCallback( oldCursor, newCursor ), false );
+        }
+
+        cursor = newCursor;
+        if (newCursor != null) {
+            // Find the columns of book attributes that we're interested in
+            idColumnIndex = newCursor.getColumnIndexOrThrow( BookEntry._ID );
+            nameColumnIndex = newCursor.getColumnIndexOrThrow( BookEntry.COLUMN_PRODUCT_NAME );
+            priceColumnIndex = newCursor.getColumnIndexOrThrow( BookEntry.COLUMN_PRODUCT_PRICE );
+            quantityColumnIndex = newCursor.getColumnIndexOrThrow( BookEntry.COLUMN_PRODUCT_QUANTITY );
+        }
+
+        if (diff != null) {
+            diff.dispatchUpdatesTo( this );
+        } else {
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Caches the views of a row, and the buffers the numbers shown in them are written into.
+     */
+    static class BookViewHolder extends RecyclerView.ViewHolder {
+
+        final TextView nameTextView;
+        final TextView priceTextView;
+        final TextView quantityTextView;
+        final Button button;
+
+        /**
+         * Large enough for "$" and any price
+         */
+        private final char[] priceChars = new char[PriceFormatter.MAX_LENGTH];
+
+        /**
+         * Large enough for any int
+         */
+        private final char[] quantityChars = new char[11];
+
+        long bookId;
+
+        /**
+         * The quantity in the cursor, and the quantity shown once the sales in flight are taken off
+         */
+        int stock;
+        int quantity;
+
+        BookViewHolder(View view) {
+            super( view );
+            // Find individual views that we want to modify in the list item layout
+            nameTextView = view.findViewById( R.id.product_name );
+            priceTextView = view.findViewById( R.id.price );
+            quantityTextView = view.findViewById( R.id.quantity );
+            button = view.findViewById( R.id.sale_button );
+        }
+
+        /**
+         * Show the price, such as "$19.99"
+         */
+        void showPrice(long cents) {
+            int end = priceChars.length;
+            int start = PriceFormatter.writeDollars( cents, priceChars, end );
+            priceChars[--start] = '$';
+            priceTextView.setText( priceChars, start, end - start );
+        }
+
+        void showQuantity(int quantity) {
+            int end = quantityChars.length;
+            int start = writeDigits( quantity, quantityChars, end );
+            quantityTextView.setText( quantityChars, start, end - start );
+        }
+
+        /**
+         * Write the decimal digits of a non-negative number into the buffer, ending just before
+         * {@code end}. Returns the index of the first digit.
+         */
+        private static int writeDigits(long number, char[] buffer, int end) {
+            do {
+                buffer[--end] = (char) ('0' + number % 10);
+                number /= 10;
+            } while (number > 0);
+            return end;
+        }
+    }
+
+    /**
+     * Compares the books in two cursors by _ID, and then by the attributes shown in the list.
+     */
+    private static class BookDiffCallback extends DiffUtil.Callback {
+
+        private final Cursor oldCursor;
+        private final Cursor newCursor;
+
+        private final int oldIdIndex;
+        private final int oldNameIndex;
+        private final int oldPriceIndex;
+        private final int oldQuantityIndex;
+
+        private final int newIdIndex;
+        private final int newNameIndex;
+        private final int newPriceIndex;
+        private final int newQuantityIndex;
+
+        BookDiffCallback(Cursor oldCursor, Cursor newCursor) {
+            this.oldCursor = oldCursor;
+            this.newCursor = newCursor;
+            oldIdIndex = oldCursor.getColumnIndexOrThrow( BookEntry._ID );
+            oldNameIndex = oldCursor.getColumnIndexOrThrow( BookEntry.COLUMN_PRODUCT_NAME );
+            oldPriceIndex = oldCursor.getColumnIndexOrThrow( BookEntry.COLUMN_PRODUCT_PRICE );
+            oldQuantityIndex = oldCursor.getColumnIndexOrThrow( BookEntry.COLUMN_PRODUCT_QUANTITY );
+            newIdIndex = newCursor.getColumnIndexOrThrow( BookEntry._ID );
+            newNameIndex = newCursor.getColumnIndexOrThrow( BookEntry.COLUMN_PRODUCT_NAME );
+            newPriceIndex = newCursor.getColumnIndexOrThrow( BookEntry.COLUMN_PRODUCT_PRICE );
+            newQuantityIndex = newCursor.getColumnIndexOrThrow( BookEntry.COLUMN_PRODUCT_QUANTITY );
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldCursor.getCount();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newCursor.getCount();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            // Read the old row before moving the new cursor, since both may be backed
+            // by the same page cursor
+            oldCursor.moveToPosition( oldPosition );
+            long oldId = oldCursor.getLong( oldIdIndex );
+            newCursor.moveToPosition( newPosition );
+            return oldId == newCursor.getLong( newIdIndex );
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            oldCursor.moveToPosition( oldPosition );
+            int oldQuantity = oldCursor.getInt( oldQuantityIndex );
+            long oldPrice = oldCursor.getLong( oldPriceIndex );
+            String oldName = oldCursor.getString( oldNameIndex );
+            newCursor.moveToPosition( newPosition );
+            return oldQuantity == newCursor.getInt( newQuantityIndex )
+                    && oldPrice == newCursor.getLong( newPriceIndex )
+                    && oldName.equals( newCursor.getString( newNameIndex ) );
+        }
     }
 }
@@ -2,7 +2,10 @@ package com.example.android.bookstore;
 
 import android.app.AlertDialog;
 import android.app.LoaderManager;
+import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
@@ -23,6 +26,8 @@ import android.widget.ImageButton;
 import android.widget.Toast;
 
 import com.example.android.bookstore.data.BookContract.BookEntry;
+import com.example.android.bookstore.data.BookWriteExecutor;
+import com.example.android.bookstore.data.PriceFormatter;
 
 /**
  * Allow user to create a new book or edit an existing one or just view full product details
@@ -91,15 +96,11 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         }
     };
 
-    BookCursorAdapter cursorAdapter;
-
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate( savedInstanceState );
         setContentView( R.layout.activity_editor );
 
-        cursorAdapter = new BookCursorAdapter( this, null );
-
         // Examine the intent that was used to launch this activity,
         // in order to figure out if we're creating a new book or editing an existing one.
         Intent intent = getIntent();
@@ -229,16 +230,26 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
         // and book attributes from the editor are the values.
         ContentValues contentValues = new ContentValues();
 
+        // Convert the price in dollars to the cents it is stored in, or -1 if it isn't valid
+        long priceCents = -1;
+        if (!TextUtils.isEmpty( priceString )) {
+            try {
+                priceCents = PriceFormatter.parseCents( priceString );
+            } catch (NumberFormatException e) {
+                // Leave the price invalid
+            }
+        }
+
         // Validate that all the fields have been filled in appropriately
-        if (TextUtils.isEmpty( nameString ) || TextUtils.isEmpty( priceString ) ||
+        if (TextUtils.isEmpty( nameString ) || priceCents < 0 ||
                 TextUtils.isEmpty( quantityString ) || TextUtils.isEmpty( supplierNameString ) ||
-                TextUtils.isEmpty( supplierPhoneString ) || Double.valueOf( priceString ) < 0 ||
+                TextUtils.isEmpty( supplierPhoneString ) ||
                 Long.valueOf( supplierPhoneString ) < 0 || supplierPhoneString.length() != 10) {
             // Tag book as Invalid to make sure the correct toast appears and user cannot exit.
             bookIsInvalid = true;
         } else {
             contentValues.put( BookEntry.COLUMN_PRODUCT_NAME, nameString );
-            contentValues.put( BookEntry.COLUMN_PRODUCT_PRICE, priceString );
+            contentValues.put( BookEntry.COLUMN_PRODUCT_PRICE, priceCents );
             contentValues.put( BookEntry.COLUMN_PRODUCT_QUANTITY, quantityString );
             contentValues.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, supplierNameString );
             contentValues.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER, supplierPhoneString );
@@ -248,37 +259,73 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
             // Determine is this is a new or existing book by checking id currentBookUri is null or not
             if (currentBookUri == null) {
-                // This is a NEW BOOK, so insert a new book into the provider,
-                // returning the content URI for the new book.
-                Uri newUri = getContentResolver().insert( BookEntry.CONTENT_URI, contentValues );
-
-                // Show a toast message depending on whether or not the insertion was successful.
-                if (newUri == null) {
-                    // If the new content URI is null, then there was an error with insertion.
-                    Toast.makeText( this, R.string.editor_activity_insert_book_failed,
-                            Toast.LENGTH_SHORT ).show();
-                } else {
-                    // Otherwise, the insertion was successful and we can display a toast.
-                    Toast.makeText( this, R.string.editor_activity_insert_book_successful,
-                            Toast.LENGTH_SHORT ).show();
-                }
+                // This is a NEW BOOK, so insert a new book into the provider in the background.
+                // The editor closes straight away, so the toast is shown with the app's context.
+                final Context context = getApplicationContext();
+                final ContentValues values = contentValues;
+                BookWriteExecutor.getInstance( this ).submit( BookWriteExecutor.NEW_BOOK,
+                        new BookWriteExecutor.Write<Uri>() {
+                            @Override
+                            public Uri write(ContentResolver contentResolver) {
+                                // Returns the content URI for the new book
+                                return contentResolver.insert( BookEntry.CONTENT_URI, values );
+                            }
+                        }, new BookWriteExecutor.Callback<Uri>() {
+                            @Override
+                            public void onComplete(Uri newUri) {
+                                // Show a toast message depending on whether or not the insertion was successful.
+                                if (newUri == null) {
+                                    // If the new content URI is null, then there was an error with insertion.
+                                    Toast.makeText( context, R.string.editor_activity_insert_book_failed,
+                                            Toast.LENGTH_SHORT ).show();
+                                } else {
+                                    // Otherwise, the insertion was successful and we can display a toast.
+                                    Toast.makeText( context, R.string.editor_activity_insert_book_successful,
+                                            Toast.LENGTH_SHORT ).show();
+                                }
+                            }
+
+                            @Override
+                            public void onError(RuntimeException e) {
+                                Toast.makeText( context, R.string.editor_activity_insert_book_failed,
+                                        Toast.LENGTH_SHORT ).show();
+                            }
+                        } );
             } else {
                 // Otherwise this is an EXISTING BOOK, so update the book with content URI: currentBookUri
-                // and pass in the new ContentValues. Pass in null for the selection and selection args
-                // because currentBookUri will already identify the correct row in the database that
-                // we want to modify.
-                int rowsAffected = getContentResolver().update( currentBookUri, contentValues, null, null );
-
-                // Show a toast message depending on whether or not the update was successful
-                if (rowsAffected == 0) {
-                    // If the rowsAffected equals 0 then there was an error with the update
-                    Toast.makeText( this, R.string.editor_activity_update_book_failed,
-                            Toast.LENGTH_SHORT ).show();
-                } else {
-                    // Otherwise, the update was successful and we can display a toast
-                    Toast.makeText( this, R.string.editor_activity_update_book_successful,
-                            Toast.LENGTH_SHORT ).show();
-                }
+                // and pass in the new ContentValues, in the background after any earlier write to it.
+                // Pass in null for the selection and selection args because currentBookUri will already
+                // identify the correct row in the database that we want to modify.
+                final Context context = getApplicationContext();
+                final Uri bookUri = currentBookUri;
+                final ContentValues values = contentValues;
+                BookWriteExecutor.getInstance( this ).submit( ContentUris.parseId( bookUri ),
+                        new BookWriteExecutor.Write<Integer>() {
+                            @Override
+                            public Integer write(ContentResolver contentResolver) {
+                                return contentResolver.update( bookUri, values, null, null );
+                            }
+                        }, new BookWriteExecutor.Callback<Integer>() {
+                            @Override
+                            public void onComplete(Integer rowsAffected) {
+                                // Show a toast message depending on whether or not the update was successful
+                                if (rowsAffected == 0) {
+                                    // If the rowsAffected equals 0 then there was an error with the update
+                                    Toast.makeText( context, R.string.editor_activity_update_book_failed,
+                                            Toast.LENGTH_SHORT ).show();
+                                } else {
+                                    // Otherwise, the update was successful and we can display a toast
+                                    Toast.makeText( context, R.string.editor_activity_update_book_successful,
+                                            Toast.LENGTH_SHORT ).show();
+                                }
+                            }
+
+                            @Override
+                            public void onError(RuntimeException e) {
+                                Toast.makeText( context, R.string.editor_activity_update_book_failed,
+                                        Toast.LENGTH_SHORT ).show();
+                            }
+                        } );
             }
         }
     }
@@ -411,14 +458,14 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
 
             // Extract out the value from the Cursor for the given column index
             String name = cursor.getString( nameColumnIndex );
-            double price = cursor.getDouble( priceColumnIndex );
+            long priceCents = cursor.getLong( priceColumnIndex );
             int quantity = cursor.getInt( quantityColumnIndex );
             String supplierName = cursor.getString( supplierNameColumnIndex );
             String supplierPhone = cursor.getString( supplierPhoneColumnIndex );
 
             // Update the views on the screen with the values from the database
             nameEditText.setText( name );
-            priceEditText.setText( Double.toString( price ) );
+            priceEditText.setText( PriceFormatter.toDollars( priceCents ) );
             quantityEditText.setText( Integer.toString( quantity ) );
             supplierEditText.setText( supplierName );
             supplierPhoneEditText.setText( supplierPhone );
@@ -523,21 +570,38 @@ public class EditorActivity extends AppCompatActivity implements LoaderManager.L
     private void deleteBook() {
         // Only perform the delete if this is an existing book.
         if (currentBookUri != null) {
-            // Call the ContentResolver to delete the book at the given content URI.
-            // Pass in null for the selection and selection args because the currentBookUri
+            // Delete the book at the given content URI in the background, after any earlier write
+            // to it. Pass in null for the selection and selection args because the currentBookUri
             // content URI already identifies the book we want.
-            int rowsDeleted = getContentResolver().delete( currentBookUri, null, null );
-
-            // Show a toast message depending on whether or not the delete was successful.
-            if (rowsDeleted == 0) {
-                // If no rows were deleted, then there was an error with the delete.
-                Toast.makeText( this, R.string.editor_activity_delete_book_failed,
-                        Toast.LENGTH_SHORT ).show();
-            } else {
-                // Otherwise, the delete was successful and we can display a toast.
-                Toast.makeText( this, R.string.editor_activity_delete_book_successful,
-                        Toast.LENGTH_SHORT ).show();
-            }
+            final Context context = getApplicationContext();
+            final Uri bookUri = currentBookUri;
+            BookWriteExecutor.getInstance( this ).submit( ContentUris.parseId( bookUri ),
+                    new BookWriteExecutor.Write<Integer>() {
+                        @Override
+                        public Integer write(ContentResolver contentResolver) {
+                            return contentResolver.delete( bookUri, null, null );
+                        }
+                    }, new BookWriteExecutor.Callback<Integer>() {
+                        @Override
+                        public void onComplete(Integer rowsDeleted) {
+                            // Show a toast message depending on whether or not the delete was successful.
+                            if (rowsDeleted == 0) {
+                                // If no rows were deleted, then there was an error with the delete.
+                                Toast.makeText( context, R.string.editor_activity_delete_book_failed,
+                                        Toast.LENGTH_SHORT ).show();
+                            } else {
+                                // Otherwise, the delete was successful and we can display a toast.
+                                Toast.makeText( context, R.string.editor_activity_delete_book_successful,
+                                        Toast.LENGTH_SHORT ).show();
+                            }
+                        }
+
+                        @Override
+                        public void onError(RuntimeException e) {
+                            Toast.makeText( context, R.string.editor_activity_delete_book_failed,
+                                    Toast.LENGTH_SHORT ).show();
+                        }
+                    } );
         }
 
         // Close the activity
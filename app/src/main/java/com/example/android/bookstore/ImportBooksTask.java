@@ -0,0 +1,115 @@
+package com.example.android.bookstore;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import com.example.android.bookstore.data.BookImporter;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Imports a CSV catalog of books in the background with a {@link BookImporter}, and reports its
+ * progress to whichever activity is attached to it. The task outlives the activity it was started
+ * from, so a new activity can attach to it after a configuration change.
+ */
+class ImportBooksTask extends AsyncTask<Uri, BookImporter.Progress, BookImporter.Progress> {
+
+    private static final String LOG_TAG = ImportBooksTask.class.getSimpleName();
+
+    /**
+     * Receives the progress of the import on the main thread
+     */
+    interface Callbacks {
+
+        void onImportProgress(BookImporter.Progress progress);
+
+        /**
+         * Called when the import is over.
+         *
+         * @param result how much was imported, or null if the import failed
+         * @param error  why the import failed, such as an {@link IOException} reading the file or
+         *               an {@link android.database.SQLException} writing a batch, or null if
+         *               it didn't
+         */
+        void onImportFinished(BookImporter.Progress result, Exception error);
+    }
+
+    private final ContentResolver contentResolver;
+
+    private final File rejectFile;
+
+    /**
+     * The attached activity, only touched on the main thread
+     */
+    private Callbacks callbacks;
+
+    /**
+     * The last progress reported, so an activity attaching part way can show it straight away
+     */
+    private BookImporter.Progress lastProgress;
+
+    private Exception error;
+
+    ImportBooksTask(ContentResolver contentResolver, File rejectFile) {
+        this.contentResolver = contentResolver;
+        this.rejectFile = rejectFile;
+    }
+
+    File getRejectFile() {
+        return rejectFile;
+    }
+
+    /**
+     * Report the progress to the given callbacks from now on. Call from the main thread.
+     */
+    void attach(Callbacks callbacks) {
+        this.callbacks = callbacks;
+        if (lastProgress != null && getStatus() == Status.RUNNING) {
+            callbacks.onImportProgress( lastProgress );
+        }
+    }
+
+    /**
+     * Stop reporting the progress, when the attached activity is destroyed. Call from the main thread.
+     */
+    void detach() {
+        callbacks = null;
+    }
+
+    @Override
+    protected BookImporter.Progress doInBackground(Uri... sources) {
+        try {
+            return new BookImporter( contentResolver ).importBooks( sources[0], rejectFile,
+                    new BookImporter.ProgressListener() {
+                        @Override
+                        public void onProgress(BookImporter.Progress progress) {
+                            publishProgress( progress );
+                        }
+                    } );
+        } catch (IOException | RuntimeException e) {
+            // A batch the provider refuses, or a file the picker doesn't let us open, fails the
+            // import like a file that can't be read, rather than crashing the app part way
+            Log.e( LOG_TAG, "Failed to import " + sources[0], e );
+            error = e;
+            return null;
+        }
+    }
+
+    @Override
+    protected void onProgressUpdate(BookImporter.Progress... progress) {
+        lastProgress = progress[progress.length - 1];
+        if (callbacks != null) {
+            callbacks.onImportProgress( lastProgress );
+        }
+    }
+
+    @Override
+    protected void onPostExecute(BookImporter.Progress result) {
+        if (callbacks != null) {
+            callbacks.onImportFinished( result, error );
+        }
+    }
+}
@@ -1,29 +1,72 @@
 package com.example.android.bookstore;
 
+import android.app.AlertDialog;
 import android.app.LoaderManager;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.CursorLoader;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
+import android.content.SharedPreferences;
+import android.database.ContentObserver;
 import android.database.Cursor;
+import android.database.MergeCursor;
 import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.os.Bundle;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+import android.widget.Toast;
 
+import com.example.android.bookstore.data.BookContract;
 import com.example.android.bookstore.data.BookContract.BookEntry;
+import com.example.android.bookstore.data.BookContract.SupplierEntry;
+import com.example.android.bookstore.data.BookImporter;
+import com.example.android.bookstore.data.BookWriteExecutor;
+import com.example.android.bookstore.data.SaleQueue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Displays list of books that were entered and stored in the app
  */
-public class InventoryActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor> {
+public class InventoryActivity extends AppCompatActivity implements LoaderManager.LoaderCallbacks<Cursor>,
+        BookCursorAdapter.OnBookClickListener, ImportBooksTask.Callbacks {
+
+    private static final String LOG_TAG = InventoryActivity.class.getSimpleName();
+
+    /**
+     * Request code for picking the CSV catalog to import
+     */
+    private static final int REQUEST_IMPORT_CATALOG = 1;
+
+    /**
+     * Name of the file the lines of a catalog that couldn't be imported are written to
+     */
+    private static final String IMPORT_REJECTS_FILE = "import_rejects.csv";
+
+    /**
+     * How long the main thread waits for the sales to be written when the activity is stopped
+     */
+    private static final long SALES_FLUSH_TIMEOUT_MILLIS = 1000;
 
     /**
      * Identifier for the book data loader
@@ -31,12 +74,248 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
     private static final int BOOK_LOADER = 0;
 
     /**
-     * Adapter for the ListView
+     * Identifier for the search results loader. The page loaders use the ids from
+     * {@link #BOOK_LOADER} upwards.
+     */
+    private static final int SEARCH_LOADER = -1;
+
+    /**
+     * Identifier for the loader of the suppliers the list can be filtered by
+     */
+    private static final int SUPPLIER_LOADER = -2;
+
+    /**
+     * Maximum number of search results shown
+     */
+    private static final int SEARCH_LIMIT = 100;
+
+    /**
+     * Loader argument holding the search terms
+     */
+    private static final String ARG_SEARCH_TERMS = "search_terms";
+
+    /**
+     * Number of books loaded per page of the list
+     */
+    private static final int PAGE_SIZE = 50;
+
+    /**
+     * Number of books loaded by the first page, about a screenful, so the first rows show as soon
+     * as possible. The following pages are loaded straight after it has been laid out.
+     */
+    private static final int FIRST_PAGE_SIZE = 20;
+
+    /**
+     * Maximum number of pages kept loaded. The pages further from the ones shown are dropped,
+     * and loaded again from their arguments when the user scrolls back to them.
+     */
+    private static final int MAX_LOADED_PAGES = 6;
+
+    /**
+     * Loader argument holding the number of books of the page
+     */
+    private static final String ARG_PAGE_SIZE = "page_size";
+
+    /**
+     * Loader argument holding the _ID of the book the page starts after, and the value of the
+     * sort column of that book when the list is sorted. The first page has neither.
+     */
+    private static final String ARG_AFTER_ID = "after_id";
+    private static final String ARG_AFTER_VALUE = "after_value";
+
+    /**
+     * Loader argument holding the _ID of the last book of the page, and the value of its sort
+     * column when the list is sorted, once the next page exists
+     */
+    private static final String ARG_LAST_ID = "last_id";
+    private static final String ARG_LAST_VALUE = "last_value";
+
+    /**
+     * Keys of the sort and the filters of the list in the saved instance state
+     */
+    private static final String STATE_SORT = "sort";
+    private static final String STATE_DESCENDING = "descending";
+    private static final String STATE_LOW_STOCK_ONLY = "low_stock_only";
+    private static final String STATE_SUPPLIER_ID = "supplier_id";
+
+    /**
+     * Value of {@link #supplierId} when the books of all the suppliers are shown
+     */
+    private static final long ALL_SUPPLIERS = -1;
+
+    /**
+     * Projection of the columns shown in the list
+     */
+    private static final String[] PROJECTION = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRODUCT_PRICE,
+            BookEntry.COLUMN_PRODUCT_QUANTITY};
+
+    /**
+     * Adapter for the RecyclerView
      */
     BookCursorAdapter cursorAdapter;
 
+    /**
+     * When the activity was created, in {@link SystemClock#uptimeMillis} time
+     */
+    private long createdAtMillis;
+
+    /**
+     * View shown instead of the list when there are no books
+     */
+    private View emptyView;
+
+    /**
+     * The pages of books, in list order. Page {@code i} is loaded by the loader with id
+     * {@code BOOK_LOADER + i}, and is null until that loader has delivered its cursor, or once
+     * the page has been dropped from the pages loaded.
+     */
+    private final ArrayList<Cursor> pages = new ArrayList<>();
+
+    /**
+     * The loader arguments of each of the {@link #pages}, kept after a page is dropped so it can
+     * be loaded again from the same book
+     */
+    private final ArrayList<Bundle> pageArgs = new ArrayList<>();
+
+    /**
+     * The first of the pages loaded. The list shows the pages from this one on, up to
+     * {@link #MAX_LOADED_PAGES} of them.
+     */
+    private int firstPage;
+
+    /**
+     * Observer of the changes to single books. Instead of the whole list, it only reloads the page
+     * of the list the changed book is on, and the list then only rebinds that book's row.
+     */
+    private final ContentObserver bookObserver = new ContentObserver( new Handler() ) {
+        @Override
+        public void onChange(boolean selfChange) {
+            // Before Jelly Bean there is no way to tell which book changed
+            refreshAllBooks();
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            // Only the URIs of single books are of interest here. Changes to the collection of
+            // books are notified to the pages of the list directly.
+            List<String> segments = uri == null ? null : uri.getPathSegments();
+            if (segments == null) {
+                onChange( selfChange );
+            } else if (segments.size() == 2 && TextUtils.isDigitsOnly( segments.get( 1 ) )) {
+                refreshBook( ContentUris.parseId( uri ) );
+            }
+        }
+    };
+
+    /**
+     * Gathers the copies sold with the "BUY" buttons, and writes them to the database a few at a time
+     */
+    private SaleQueue saleQueue;
+
+    /**
+     * The running catalog import, or null if there is none
+     */
+    private ImportBooksTask importTask;
+
+    /**
+     * Views showing the progress of the catalog import
+     */
+    private View importProgressView;
+    private TextView importStatusTextView;
+    private ProgressBar importProgressBar;
+
+    /**
+     * Whether the list shows search results rather than the pages of books
+     */
+    private boolean searching = false;
+
+    /**
+     * What the list is sorted by, one of the {@link BookEntry#QUERY_PARAMETER_SORT} values, or
+     * null for the order the books were added in. The provider does the sorting and the filtering.
+     */
+    private String sort;
+
+    private boolean descending;
+
+    /**
+     * Whether the list only shows the books low on stock
+     */
+    private boolean lowStockOnly;
+
+    /**
+     * _ID of the supplier whose books the list shows, or {@link #ALL_SUPPLIERS}
+     */
+    private long supplierId = ALL_SUPPLIERS;
+
+    /**
+     * Whether the user asked to pick a supplier, and the suppliers are being loaded to pick from
+     */
+    private boolean pickingSupplier;
+
+    /**
+     * Callbacks for the loader of the suppliers, which are shown to pick from once they're loaded
+     */
+    private final LoaderManager.LoaderCallbacks<Cursor> supplierCallbacks =
+            new LoaderManager.LoaderCallbacks<Cursor>() {
+                @Override
+                public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+                    String[] projection = {SupplierEntry._ID, SupplierEntry.COLUMN_SUPPLIER_NAME};
+                    return new CursorLoader( InventoryActivity.this, SupplierEntry.CONTENT_URI,
+                            projection, null, null, SupplierEntry.COLUMN_SUPPLIER_NAME );
+                }
+
+                @Override
+                public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+                    // Only show the suppliers once, rather than again every time they change
+                    if (pickingSupplier) {
+                        pickingSupplier = false;
+                        showSupplierDialog( cursor );
+                    }
+                }
+
+                @Override
+                public void onLoaderReset(Loader<Cursor> loader) {
+                }
+            };
+
+    /**
+     * Callbacks for the search results loader, which replace the pages of books in the list
+     * while the user is searching.
+     */
+    private final LoaderManager.LoaderCallbacks<Cursor> searchCallbacks =
+            new LoaderManager.LoaderCallbacks<Cursor>() {
+                @Override
+                public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+                    Uri searchUri = BookEntry.buildSearchUri( args.getString( ARG_SEARCH_TERMS ) )
+                            .buildUpon()
+                            .appendQueryParameter( BookEntry.QUERY_PARAMETER_LIMIT,
+                                    String.valueOf( SEARCH_LIMIT ) )
+                            .build();
+                    return new CursorLoader( InventoryActivity.this, searchUri, PROJECTION,
+                            null, null, null );
+                }
+
+                @Override
+                public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+                    if (searching) {
+                        showBooks( cursor );
+                    }
+                }
+
+                @Override
+                public void onLoaderReset(Loader<Cursor> loader) {
+                    if (searching) {
+                        showBooks( null );
+                    }
+                }
+            };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        createdAtMillis = SystemClock.uptimeMillis();
         super.onCreate( savedInstanceState );
         setContentView( R.layout.activity_inventory );
 
@@ -50,40 +329,410 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
             }
         } );
 
-        // Find the ListView which will be populated with the book data
-        ListView bookListView = findViewById( R.id.text_view_inventory );
-        // Find and set empty view on the ListView, so that it only shows when the list has 0 items.
+        // Find the RecyclerView which will be populated with the book data
+        RecyclerView bookListView = findViewById( R.id.text_view_inventory );
+        final LinearLayoutManager layoutManager = new LinearLayoutManager( this );
+        bookListView.setLayoutManager( layoutManager );
+        bookListView.addItemDecoration( new DividerItemDecoration( this, DividerItemDecoration.VERTICAL ) );
+
+        // Find the empty view, which only shows when the list has 0 items
+        emptyView = findViewById( R.id.empty_view );
+
+        // Find the views showing the progress of a catalog import
+        importProgressView = findViewById( R.id.import_progress );
+        importStatusTextView = findViewById( R.id.import_status );
+        importProgressBar = findViewById( R.id.import_progress_bar );
 
-        // Find and set empty view on the ListView, so that it only shows when the list has 0 items
-        View emptyView = findViewById( R.id.empty_view );
-        bookListView.setEmptyView( emptyView );
+        // Pick up an import that was still running when the activity was recreated
+        importTask = (ImportBooksTask) getLastCustomNonConfigurationInstance();
+        if (importTask != null) {
+            importTask.attach( this );
+        }
+
+        // The sales an earlier process didn't get to write are picked up from the preferences
+        SharedPreferences salePreferences = getSharedPreferences( SaleQueue.PREFERENCES_NAME, MODE_PRIVATE );
 
         // Setup an Adapter to create a list item for each row of book data in the Cursor.
-        // There is no book data yet(until the loader finishes) so pass in null for the Cursor.
-        cursorAdapter = new BookCursorAdapter( this, null );
+        // There is no book data yet (until the loader finishes) so the list starts out empty.
+        saleQueue = new SaleQueue( getContentResolver(), salePreferences, new SaleQueue.Listener() {
+            @Override
+            public void onSalesFlushed(long[] soldOutIds) {
+                // If another sale took the last copies first, let the user know it's sold out
+                if (soldOutIds.length > 0) {
+                    Toast.makeText( InventoryActivity.this, R.string.book_sold_out,
+                            Toast.LENGTH_SHORT ).show();
+                }
+                // Rebind the quantities of the books whose sales were dropped. The sales written
+                // are still taken off until their pages are reloaded, which rebinds those books.
+                for (long bookId : soldOutIds) {
+                    cursorAdapter.notifyBookChanged( bookId );
+                }
+            }
+        } );
+        cursorAdapter = new BookCursorAdapter( this, saleQueue );
         bookListView.setAdapter( cursorAdapter );
 
-        // Setup item click listener
-        bookListView.setOnItemClickListener( new AdapterView.OnItemClickListener() {
+        // Measure how long it takes for the first book to show
+        cursorAdapter.setOnFirstRowBoundListener( new BookCursorAdapter.OnFirstRowBoundListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
-                // Create new intent to go to {@link EditorActivity}
-                Intent intent = new Intent( InventoryActivity.this, EditorActivity.class );
+            public void onFirstRowBound() {
+                Log.i( LOG_TAG, "First book shown " + (SystemClock.uptimeMillis() - createdAtMillis)
+                        + " ms after the activity was created" );
+                // The rest of the screen is filled with the same page, in the same layout pass
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                    reportFullyDrawn();
+                }
+            }
+        } );
 
-                // Form the content URI that represents the specific book that was clicked on,
-                // by appending the "id" (passed as input to this method) onto the {@link BookEntry#CONTENT_URI}.
-                Uri currentBookUri = ContentUris.withAppendedId( BookEntry.CONTENT_URI, id );
+        // Load the next page when the user scrolls close to the end of the pages loaded so far,
+        // and the page before them when the user scrolls back close to their start.
+        // This is also called after every layout, so short lists keep loading until the screen is
+        // full, and the small first page is followed by the next one as soon as it's shown.
+        bookListView.addOnScrollListener( new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int lastVisibleItem = layoutManager.findLastVisibleItemPosition();
+                if (lastVisibleItem >= cursorAdapter.getItemCount() - PAGE_SIZE / 2) {
+                    loadNextPage();
+                }
+                int firstVisibleItem = layoutManager.findFirstVisibleItemPosition();
+                if (firstVisibleItem != RecyclerView.NO_POSITION && firstVisibleItem < PAGE_SIZE / 2) {
+                    loadPreviousPage();
+                }
+            }
+        } );
 
-                // Set the URI on the data field of the intent
-                intent.setData( currentBookUri );
+        // Sort and filter the list as it was before the activity was recreated
+        if (savedInstanceState != null) {
+            sort = savedInstanceState.getString( STATE_SORT );
+            descending = savedInstanceState.getBoolean( STATE_DESCENDING );
+            lowStockOnly = savedInstanceState.getBoolean( STATE_LOW_STOCK_ONLY );
+            supplierId = savedInstanceState.getLong( STATE_SUPPLIER_ID, ALL_SUPPLIERS );
+        }
 
-                // Launch the {@link EditorActivity} to display the data for the current book.
-                startActivity( intent );
+        // Kick off the loader for the first page, which only covers the first screen
+        pages.add( null );
+        pageArgs.add( createFirstPageArgs() );
+        getLoaderManager().initLoader( BOOK_LOADER, pageArgs.get( 0 ), this );
+
+        // Listen for changes to single books, including all the books below the content URI
+        getContentResolver().registerContentObserver( BookEntry.CONTENT_URI, true, bookObserver );
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState( outState );
+        outState.putString( STATE_SORT, sort );
+        outState.putBoolean( STATE_DESCENDING, descending );
+        outState.putBoolean( STATE_LOW_STOCK_ONLY, lowStockOnly );
+        outState.putLong( STATE_SUPPLIER_ID, supplierId );
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Start writing the sales on the queue's own thread, so there's little left to wait for
+        // if the activity is stopped next
+        saleQueue.flushInBackground();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // The process may be killed at any time once the activity is stopped, so try to get the
+        // sales written. The wait is bounded, so a slow write can't freeze the app; the sales
+        // still not written are kept in the preferences, and written by the next queue.
+        if (!saleQueue.flushAndWait( SALES_FLUSH_TIMEOUT_MILLIS )) {
+            Log.w( LOG_TAG, "Sales still not written " + SALES_FLUSH_TIMEOUT_MILLIS
+                    + " ms after the activity was stopped" );
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        getContentResolver().unregisterContentObserver( bookObserver );
+        saleQueue.close();
+        if (importTask != null) {
+            importTask.detach();
+        }
+        super.onDestroy();
+    }
+
+    /**
+     * Reload the page of the list the book with the given _ID is on, if it is loaded. The pages
+     * are ranges of _IDs, so the page is found without looking at the books themselves.
+     * When the list is sorted otherwise, the book may move to another page, so all of them
+     * are reloaded.
+     */
+    private void refreshBook(long bookId) {
+        if (sort != null || descending) {
+            refreshAllBooks();
+            return;
+        }
+        for (int page = pages.size() - 1; page >= 0; page--) {
+            if (pages.get( page ) != null && bookId > getAfterId( page )) {
+                getLoaderManager().getLoader( BOOK_LOADER + page ).onContentChanged();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reload every page of the list that is loaded.
+     */
+    private void refreshAllBooks() {
+        for (int page = 0; page < pages.size(); page++) {
+            Loader<Cursor> loader = getLoaderManager().getLoader( BOOK_LOADER + page );
+            if (loader != null) {
+                loader.onContentChanged();
+            }
+        }
+    }
+
+    /**
+     * Start loading the page after the last one, if the last page is loaded and is full.
+     * Otherwise there is either a load in progress or nothing more to load. If that makes more
+     * than {@link #MAX_LOADED_PAGES}, the first page loaded is dropped.
+     */
+    private void loadNextPage() {
+        if (searching) {
+            return;
+        }
+        int lastPage = pages.size() - 1;
+        Cursor lastCursor = pages.get( lastPage );
+        int lastPageSize = getPageSize( lastPage );
+        if (lastCursor == null || lastCursor.getCount() < lastPageSize || !lastCursor.moveToLast()) {
+            return;
+        }
+        long lastId = lastCursor.getLong( lastCursor.getColumnIndex( BookEntry._ID ) );
+        String lastValue = sort == null ? null
+                : lastCursor.getString( lastCursor.getColumnIndex( getSortColumn() ) );
+
+        // Bound the last page at its last book, so that if books are deleted from it later on
+        // it doesn't pull in the books that now belong to the next page.
+        Bundle lastArgs = new Bundle();
+        if (lastPage > 0) {
+            lastArgs.putLong( ARG_AFTER_ID, getAfterId( lastPage ) );
+            lastArgs.putString( ARG_AFTER_VALUE, getAfterValue( lastPage ) );
+        }
+        lastArgs.putInt( ARG_PAGE_SIZE, lastPageSize );
+        lastArgs.putLong( ARG_LAST_ID, lastId );
+        lastArgs.putString( ARG_LAST_VALUE, lastValue );
+        pageArgs.set( lastPage, lastArgs );
+        getLoaderManager().restartLoader( BOOK_LOADER + lastPage, lastArgs, this );
+
+        // Start the next page right after it
+        Bundle args = new Bundle();
+        args.putLong( ARG_AFTER_ID, lastId );
+        args.putString( ARG_AFTER_VALUE, lastValue );
+        args.putInt( ARG_PAGE_SIZE, PAGE_SIZE );
+        pages.add( null );
+        pageArgs.add( args );
+        getLoaderManager().restartLoader( BOOK_LOADER + lastPage + 1, args, this );
+
+        // Drop the first page, and close its cursor, if there are too many loaded. Its arguments
+        // are kept to load it again if the user scrolls back up.
+        if (pages.size() - firstPage > MAX_LOADED_PAGES) {
+            firstPage++;
+            getLoaderManager().destroyLoader( BOOK_LOADER + firstPage - 1 );
+            pages.set( firstPage - 1, null );
+        }
+    }
+
+    /**
+     * Start loading the page before the first one loaded, if there is one and the first page is
+     * loaded. If that makes more than {@link #MAX_LOADED_PAGES}, the last page is dropped.
+     */
+    private void loadPreviousPage() {
+        if (searching || firstPage == 0 || pages.get( firstPage ) == null) {
+            return;
+        }
+        firstPage--;
+        getLoaderManager().restartLoader( BOOK_LOADER + firstPage, pageArgs.get( firstPage ), this );
+
+        // Drop the last page, and close its cursor. It's loaded again from the page before it
+        // when the user scrolls back down.
+        if (pages.size() - firstPage > MAX_LOADED_PAGES) {
+            int lastPage = pages.size() - 1;
+            getLoaderManager().destroyLoader( BOOK_LOADER + lastPage );
+            pages.remove( lastPage );
+            pageArgs.remove( lastPage );
+        }
+    }
+
+    /**
+     * Returns the _ID of the book the given page starts after, or 0 for the first page.
+     */
+    private long getAfterId(int page) {
+        return pageArgs.get( page ).getLong( ARG_AFTER_ID );
+    }
+
+    /**
+     * Returns the value of the sort column of the book the given page starts after, or null for
+     * the first page, or if the list isn't sorted.
+     */
+    private String getAfterValue(int page) {
+        return pageArgs.get( page ).getString( ARG_AFTER_VALUE );
+    }
+
+    /**
+     * Returns the loader arguments of the first page of the list.
+     */
+    private static Bundle createFirstPageArgs() {
+        Bundle args = new Bundle();
+        args.putInt( ARG_PAGE_SIZE, FIRST_PAGE_SIZE );
+        return args;
+    }
+
+    /**
+     * Returns the column the list is sorted by, when it is sorted.
+     */
+    private String getSortColumn() {
+        switch (sort) {
+            case BookEntry.SORT_NAME:
+                return BookEntry.COLUMN_PRODUCT_NAME;
+            case BookEntry.SORT_PRICE:
+                return BookEntry.COLUMN_PRODUCT_PRICE;
+            default:
+                return BookEntry.COLUMN_PRODUCT_QUANTITY;
+        }
+    }
+
+    /**
+     * Sort the list, and load it again from the first page.
+     *
+     * @param sort one of the {@link BookEntry#QUERY_PARAMETER_SORT} values, or null for the order
+     *             the books were added in
+     */
+    private void setSort(String sort, boolean descending) {
+        if (TextUtils.equals( sort, this.sort ) && descending == this.descending) {
+            return;
+        }
+        this.sort = sort;
+        this.descending = descending;
+        reloadPages();
+    }
+
+    /**
+     * Drop all the pages of the list, and load it again from the first page with the current
+     * sort and filters.
+     */
+    private void reloadPages() {
+        for (int page = 0; page < pages.size(); page++) {
+            getLoaderManager().destroyLoader( BOOK_LOADER + page );
+        }
+        pages.clear();
+        pageArgs.clear();
+        firstPage = 0;
+        pages.add( null );
+        pageArgs.add( createFirstPageArgs() );
+        getLoaderManager().restartLoader( BOOK_LOADER, pageArgs.get( 0 ), this );
+        showPages();
+    }
+
+    /**
+     * Let the user pick the supplier whose books are shown, from the suppliers once they're loaded.
+     */
+    private void pickSupplier() {
+        pickingSupplier = true;
+        getLoaderManager().restartLoader( SUPPLIER_LOADER, null, supplierCallbacks );
+    }
+
+    /**
+     * Show the suppliers in the cursor to pick from, after the choice of all of them.
+     */
+    private void showSupplierDialog(Cursor cursor) {
+        final long[] ids = new long[cursor.getCount() + 1];
+        String[] names = new String[ids.length];
+        ids[0] = ALL_SUPPLIERS;
+        names[0] = getString( R.string.all_suppliers );
+        int checked = 0;
+        cursor.moveToPosition( -1 );
+        for (int i = 1; cursor.moveToNext(); i++) {
+            ids[i] = cursor.getLong( 0 );
+            names[i] = cursor.getString( 1 );
+            if (ids[i] == supplierId) {
+                checked = i;
+            }
+        }
+
+        AlertDialog.Builder builder = new AlertDialog.Builder( this );
+        builder.setTitle( R.string.action_filter_supplier );
+        builder.setSingleChoiceItems( names, checked, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                dialog.dismiss();
+                if (ids[which] != supplierId) {
+                    supplierId = ids[which];
+                    reloadPages();
+                }
             }
         } );
+        builder.setNegativeButton( R.string.cancel, null );
+        builder.create().show();
+    }
+
+    /**
+     * Returns the number of books the given page was asked for.
+     */
+    private int getPageSize(int page) {
+        return pageArgs.get( page ).getInt( ARG_PAGE_SIZE, PAGE_SIZE );
+    }
 
-        // Kick off the loader
-        getLoaderManager().initLoader( BOOK_LOADER, null, this );
+    /**
+     * Show the pages that are loaded from {@link #firstPage} on, up to the first one that isn't.
+     * The page before them may still be loading.
+     */
+    private void showPages() {
+        if (searching) {
+            return;
+        }
+        ArrayList<Cursor> loaded = new ArrayList<>();
+        int page = firstPage;
+        if (page < pages.size() - 1 && pages.get( page ) == null) {
+            page++;
+        }
+        for (; page < pages.size() && pages.get( page ) != null; page++) {
+            loaded.add( pages.get( page ) );
+        }
+        showBooks( loaded.isEmpty() ? null
+                : new MergeCursor( loaded.toArray( new Cursor[loaded.size()] ) ) );
+    }
+
+    /**
+     * Called when the user taps a book in the list.
+     */
+    @Override
+    public void onBookClick(long bookId) {
+        // Create new intent to go to {@link EditorActivity}
+        Intent intent = new Intent( InventoryActivity.this, EditorActivity.class );
+
+        // Form the content URI that represents the specific book that was clicked on,
+        // by appending the "id" (passed as input to this method) onto the {@link BookEntry#CONTENT_URI}.
+        Uri currentBookUri = ContentUris.withAppendedId( BookEntry.CONTENT_URI, bookId );
+
+        // Set the URI on the data field of the intent
+        intent.setData( currentBookUri );
+
+        // Launch the {@link EditorActivity} to display the data for the current book.
+        startActivity( intent );
+    }
+
+    /**
+     * Called when the user taps the "BUY" button of a book in the list.
+     */
+    @Override
+    public void onSellClick(long bookId, int stock) {
+        decreaseQuantity( bookId, stock );
+    }
+
+    /**
+     * Show the books in the cursor, or the empty view if there are none.
+     */
+    private void showBooks(Cursor cursor) {
+        cursorAdapter.swapCursor( cursor );
+        emptyView.setVisibility( cursorAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE );
     }
 
     /**
@@ -92,27 +741,155 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
     private void insertBook() {
         // Create a ContentValues object where column names are the keys,
         // and The Great Gatsby book attributes are the values.
-        ContentValues values = new ContentValues();
+        final ContentValues values = new ContentValues();
 
         values.put( BookEntry.COLUMN_PRODUCT_NAME, "The Great Gatsby" );
-        values.put( BookEntry.COLUMN_PRODUCT_PRICE, 19.99 );
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, 1999 );
         values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, 1 );
         values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Scholastic" );
         values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER, "8001234567" );
 
-        // Insert a new row for The Great Gatsby into the provider using the ContentResolver.
-        // Use the {@link BookEntry#CONTENT_URI} to indicate that we want to insert
-        // into the books database table.
-        // Receive the new content URI that will allow us to access The Great Gatsby's data in the future.
-        getContentResolver().insert( BookEntry.CONTENT_URI, values );
+        // Insert a new row for The Great Gatsby into the provider using the ContentResolver,
+        // in the background. Use the {@link BookEntry#CONTENT_URI} to indicate that we want to insert
+        // into the books database table. The list picks up the new book through its observer.
+        BookWriteExecutor.getInstance( this ).submit( BookWriteExecutor.NEW_BOOK,
+                new BookWriteExecutor.Write<Uri>() {
+                    @Override
+                    public Uri write(ContentResolver contentResolver) {
+                        return contentResolver.insert( BookEntry.CONTENT_URI, values );
+                    }
+                }, null );
+    }
+
+    /**
+     * Hand the running import over to the activity that replaces this one after
+     * a configuration change.
+     */
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        return importTask;
+    }
+
+    /**
+     * Let the user pick a CSV catalog of books to import.
+     */
+    private void pickCatalog() {
+        if (importTask != null) {
+            Toast.makeText( this, R.string.import_already_running, Toast.LENGTH_SHORT ).show();
+            return;
+        }
+
+        Intent intent = new Intent( Intent.ACTION_GET_CONTENT );
+        intent.addCategory( Intent.CATEGORY_OPENABLE );
+        // Catalogs come with all sorts of MIME types, from text/csv to application/octet-stream
+        intent.setType( "*/*" );
+        startActivityForResult( Intent.createChooser( intent, getString( R.string.action_import_catalog ) ),
+                REQUEST_IMPORT_CATALOG );
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if (requestCode == REQUEST_IMPORT_CATALOG) {
+            if (resultCode == RESULT_OK && data != null && data.getData() != null) {
+                importCatalog( data.getData() );
+            }
+            return;
+        }
+        super.onActivityResult( requestCode, resultCode, data );
+    }
+
+    /**
+     * Import the books in the CSV catalog at the given URI in the background.
+     */
+    private void importCatalog(Uri catalogUri) {
+        // Write the rejected lines where the user can get at them, if there is such a place
+        File rejectDirectory = getExternalFilesDir( null );
+        if (rejectDirectory == null) {
+            rejectDirectory = getFilesDir();
+        }
+
+        importTask = new ImportBooksTask( getContentResolver(),
+                new File( rejectDirectory, IMPORT_REJECTS_FILE ) );
+        importTask.attach( this );
+        importTask.executeOnExecutor( AsyncTask.THREAD_POOL_EXECUTOR, catalogUri );
+
+        importStatusTextView.setText( R.string.import_starting );
+        importProgressBar.setIndeterminate( true );
+        importProgressView.setVisibility( View.VISIBLE );
+    }
+
+    @Override
+    public void onImportProgress(BookImporter.Progress progress) {
+        importStatusTextView.setText( getString( R.string.import_progress,
+                progress.imported, progress.rejected ) );
+
+        // Show how far through the file the import is, when the size of the file is known
+        if (progress.totalBytes > 0) {
+            importProgressBar.setIndeterminate( false );
+            importProgressBar.setMax( 1000 );
+            importProgressBar.setProgress( (int) (progress.bytesRead * 1000 / progress.totalBytes) );
+        }
+        importProgressView.setVisibility( View.VISIBLE );
+    }
+
+    @Override
+    public void onImportFinished(BookImporter.Progress result, Exception error) {
+        File rejectFile = importTask.getRejectFile();
+        importTask = null;
+        importProgressView.setVisibility( View.GONE );
+
+        String message;
+        if (result == null) {
+            // Not every exception has a message, such as some the provider throws
+            message = getString( R.string.import_failed, error.getMessage() != null
+                    ? error.getMessage() : error.getClass().getSimpleName() );
+        } else if (result.rejected == 0) {
+            message = getResources().getQuantityString( R.plurals.import_finished,
+                    result.imported, result.imported );
+        } else {
+            message = getResources().getQuantityString( R.plurals.import_finished,
+                    result.imported, result.imported ) + " "
+                    + getResources().getQuantityString( R.plurals.import_rejected,
+                    result.rejected, result.rejected, rejectFile.getPath() );
+        }
+        Toast.makeText( this, message, Toast.LENGTH_LONG ).show();
+    }
+
+    /**
+     * Let the user send all the books as CSV to another app, such as their accounting system.
+     * The receiving app is only allowed to read the export, and reads it straight from the provider
+     * as it is written.
+     */
+    private void exportInventory() {
+        Intent intent = new Intent( Intent.ACTION_SEND );
+        intent.setType( BookContract.MIME_TYPE_CSV );
+        intent.putExtra( Intent.EXTRA_STREAM, BookEntry.EXPORT_URI );
+        intent.addFlags( Intent.FLAG_GRANT_READ_URI_PERMISSION );
+        startActivity( Intent.createChooser( intent, getString( R.string.action_export_inventory ) ) );
     }
 
     /**
      * Helper method to delete all books in the database
      */
     private void deleteAllBooks() {
-        int rowsDeleted = getContentResolver().delete( BookEntry.CONTENT_URI, null, null );
-        Log.v( "InventoryActivity", rowsDeleted + " rows deleted from book database" );
+        BookWriteExecutor.getInstance( this ).submit( BookWriteExecutor.ALL_BOOKS,
+                new BookWriteExecutor.Write<Integer>() {
+                    @Override
+                    public Integer write(ContentResolver contentResolver) {
+                        return contentResolver.delete( BookEntry.CONTENT_URI, null, null );
+                    }
+                }, new BookWriteExecutor.Callback<Integer>() {
+                    @Override
+                    public void onComplete(Integer rowsDeleted) {
+                        Log.v( LOG_TAG, rowsDeleted + " rows deleted from book database" );
+                    }
+
+                    @Override
+                    public void onError(RuntimeException e) {
+                        Toast.makeText( getApplicationContext(), R.string.delete_all_books_failed,
+                                Toast.LENGTH_SHORT ).show();
+                    }
+                } );
     }
 
     @Override
@@ -120,9 +897,60 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
         // Inflate the menu options from the res/menu/menu_inventory.xml file.
         // This adds menu items to the app bar.
         getMenuInflater().inflate( R.menu.menu_inventory, menu );
+
+        // Check the current sort, and whether only the books low on stock are shown
+        int sortItemId = R.id.sort_added;
+        if (BookEntry.SORT_NAME.equals( sort )) {
+            sortItemId = R.id.sort_name;
+        } else if (BookEntry.SORT_PRICE.equals( sort )) {
+            sortItemId = descending ? R.id.sort_price_descending : R.id.sort_price;
+        } else if (BookEntry.SORT_QUANTITY.equals( sort )) {
+            sortItemId = R.id.sort_quantity;
+        }
+        menu.findItem( sortItemId ).setChecked( true );
+        menu.findItem( R.id.action_low_stock_only ).setChecked( lowStockOnly );
+
+        // Search the books as the user types in the search field
+        SearchView searchView = (SearchView) menu.findItem( R.id.action_search ).getActionView();
+        searchView.setQueryHint( getString( R.string.search_hint ) );
+        searchView.setOnQueryTextListener( new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                search( query );
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                search( newText );
+                return true;
+            }
+        } );
         return true;
     }
 
+    /**
+     * Show the books whose book or supplier name match the given terms, or all the books again
+     * if the terms are empty.
+     */
+    private void search(String terms) {
+        terms = terms.trim();
+        if (terms.isEmpty()) {
+            if (searching) {
+                // Show the pages again before the search results are closed
+                searching = false;
+                showPages();
+                getLoaderManager().destroyLoader( SEARCH_LOADER );
+            }
+            return;
+        }
+
+        searching = true;
+        Bundle args = new Bundle();
+        args.putString( ARG_SEARCH_TERMS, terms );
+        getLoaderManager().restartLoader( SEARCH_LOADER, args, searchCallbacks );
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         // User clicked on a menu option in the app bar overflow menu
@@ -131,6 +959,45 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
             case R.id.action_insert_dummy_data:
                 insertBook();
                 return true;
+            // Respond to a click on one of the "Sort by" options
+            case R.id.sort_added:
+                item.setChecked( true );
+                setSort( null, false );
+                return true;
+            case R.id.sort_name:
+                item.setChecked( true );
+                setSort( BookEntry.SORT_NAME, false );
+                return true;
+            case R.id.sort_price:
+                item.setChecked( true );
+                setSort( BookEntry.SORT_PRICE, false );
+                return true;
+            case R.id.sort_price_descending:
+                item.setChecked( true );
+                setSort( BookEntry.SORT_PRICE, true );
+                return true;
+            case R.id.sort_quantity:
+                item.setChecked( true );
+                setSort( BookEntry.SORT_QUANTITY, false );
+                return true;
+            // Respond to a click on the "Low stock only" menu option
+            case R.id.action_low_stock_only:
+                lowStockOnly = !lowStockOnly;
+                item.setChecked( lowStockOnly );
+                reloadPages();
+                return true;
+            // Respond to a click on the "Filter by supplier" menu option
+            case R.id.action_filter_supplier:
+                pickSupplier();
+                return true;
+            // Respond to a click on the "Import catalog" menu option
+            case R.id.action_import_catalog:
+                pickCatalog();
+                return true;
+            // Respond to a click on the "Export inventory" menu option
+            case R.id.action_export_inventory:
+                exportInventory();
+                return true;
             // Respond to a click on the "Delete all books" menu option
             case R.id.action_delete_all_entries:
                 // Delete all books
@@ -142,50 +1009,90 @@ public class InventoryActivity extends AppCompatActivity implements LoaderManage
 
     @Override
     public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-        // Define a projection that specifies the columns from the table we care about.
-        String[] projection = {
-                BookEntry._ID,
-                BookEntry.COLUMN_PRODUCT_NAME,
-                BookEntry.COLUMN_PRODUCT_PRICE,
-                BookEntry.COLUMN_PRODUCT_QUANTITY};
+        // Only ask for one page of books, starting after the last book of the previous page.
+        // Changes to single books are handled by bookObserver, so the page only needs to reload
+        // by itself when the collection of books changes.
+        Uri.Builder builder = BookEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_LIMIT,
+                        String.valueOf( args.getInt( ARG_PAGE_SIZE, PAGE_SIZE ) ) )
+                .appendQueryParameter( BookEntry.QUERY_PARAMETER_COLLECTION_NOTIFICATIONS, "true" );
+        if (args.containsKey( ARG_AFTER_ID )) {
+            builder.appendQueryParameter( BookEntry.QUERY_PARAMETER_AFTER_ID,
+                    String.valueOf( args.getLong( ARG_AFTER_ID ) ) );
+            if (sort != null) {
+                builder.appendQueryParameter( BookEntry.QUERY_PARAMETER_AFTER_VALUE,
+                        args.getString( ARG_AFTER_VALUE ) );
+            }
+        }
+
+        // The provider sorts and filters the books, using its indexes
+        if (sort != null) {
+            builder.appendQueryParameter( BookEntry.QUERY_PARAMETER_SORT, sort );
+        }
+        if (descending) {
+            builder.appendQueryParameter( BookEntry.QUERY_PARAMETER_DESCENDING, "true" );
+        }
+        if (lowStockOnly) {
+            builder.appendQueryParameter( BookEntry.QUERY_PARAMETER_LOW_STOCK, "true" );
+        }
+        if (supplierId != ALL_SUPPLIERS) {
+            builder.appendQueryParameter( BookEntry.QUERY_PARAMETER_SUPPLIER_ID,
+                    String.valueOf( supplierId ) );
+        }
+
+        // Once the next page exists, this page ends at its last book, in the order of the list
+        String selection = null;
+        String[] selectionArgs = null;
+        if (args.containsKey( ARG_LAST_ID )) {
+            String before = descending ? ">" : "<";
+            String lastId = String.valueOf( args.getLong( ARG_LAST_ID ) );
+            if (sort == null) {
+                selection = BookEntry._ID + before + "=?";
+                selectionArgs = new String[]{lastId};
+            } else {
+                String lastValue = args.getString( ARG_LAST_VALUE );
+                selection = "(" + getSortColumn() + before + "? OR (" + getSortColumn() + "=? AND "
+                        + BookEntry._ID + before + "=?))";
+                selectionArgs = new String[]{lastValue, lastValue, lastId};
+            }
+        }
 
         // This Loader will execute the ContentProvider's query method on a background thread.
+        // Unless the list is sorted otherwise, it is in the order the books were added in.
         return new CursorLoader( this,
-                BookEntry.CONTENT_URI,
-                projection,
-                null,
-                null,
-                null );
+                builder.build(),
+                PROJECTION,
+                selection,
+                selectionArgs,
+                BookEntry._ID );
 
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
-        // Update {@link BookCursorAdapter} with this new cursor containing updated book data
-        cursorAdapter.swapCursor( cursor );
+        // Update {@link BookCursorAdapter} with this new page of updated book data
+        pages.set( loader.getId() - BOOK_LOADER, cursor );
+        showPages();
     }
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
         // Callback called when the data needs to be deleted
-        cursorAdapter.swapCursor( null );
+        pages.set( loader.getId() - BOOK_LOADER, null );
+        showPages();
     }
 
     /**
-     * Helper method for decreasing the quantity if books on the ListView Item
+     * Helper method for selling one copy of a book in the list. The sale is queued, and written
+     * together with the other sales made in the meantime, so a burst of taps costs a single
+     * transaction on the queue's own thread. The list counts the queued sales, so the quantity
+     * shown never goes below 0.
      *
-     * @param columnId _ID of the current book
-     * @param quantity quantity of the current book
+     * @param bookId _ID of the current book
+     * @param stock  quantity of the book in stock the list shows
      */
-    public void decreaseQuantity(int columnId, int quantity) {
-        quantity = quantity - 1;
-
-        ContentValues contentValues = new ContentValues();
-        contentValues.put( BookEntry.COLUMN_PRODUCT_QUANTITY, quantity );
-
-        Uri updateUri = ContentUris.withAppendedId( BookEntry.CONTENT_URI, columnId );
-
-        getContentResolver().update( updateUri, contentValues, null, null );
+    public void decreaseQuantity(long bookId, int stock) {
+        saleQueue.sell( bookId, stock );
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,90 @@
+package com.example.android.bookstore.data;
+
+/**
+ * Normalizes the codes books are identified by at the till, as stored in
+ * {@link BookContract.BookEntry#COLUMN_ISBN}. An ISBN-13 or another EAN-13, an EAN-8, a UPC-A
+ * or an ISBN-10 is accepted, with or without hyphens and spaces. ISBN-10s and UPC-As become the
+ * EAN-13 printed on the same book, so a book is found by its code however it was typed or scanned.
+ */
+public final class BarcodeFormatter {
+
+    private BarcodeFormatter() {
+    }
+
+    /**
+     * Returns the code as the digits of an EAN-13, or of an EAN-8, such as "9780141439518" for
+     * "0-14-143951-3".
+     *
+     * @throws NumberFormatException if it isn't one of the codes accepted, or its check digit
+     *                               is wrong
+     */
+    public static String normalize(String code) {
+        StringBuilder digits = new StringBuilder( 13 );
+        int length = code.length();
+        for (int i = 0; i < length; i++) {
+            char c = code.charAt( i );
+            if (c >= '0' && c <= '9') {
+                digits.append( c );
+            } else if ((c == 'X' || c == 'x') && digits.length() == 9) {
+                // The check digit of an ISBN-10 can be 10, written as an X
+                digits.append( 'X' );
+            } else if (c != '-' && c != ' ') {
+                throw new NumberFormatException( "Not an ISBN or EAN: " + code );
+            }
+        }
+
+        switch (digits.length()) {
+            case 10:
+                if (isbn10CheckDigit( digits ) != digits.charAt( 9 )) {
+                    break;
+                }
+                // The ISBN-13 of an ISBN-10 is the same number in the 978 prefix
+                digits.setLength( 9 );
+                digits.insert( 0, "978" );
+                digits.append( eanCheckDigit( digits ) );
+                return digits.toString();
+            case 12:
+                // A UPC-A is an EAN-13 with a leading 0
+                digits.insert( 0, '0' );
+                // Fall through to check it as one
+            case 13:
+            case 8:
+                if (digits.indexOf( "X" ) == -1
+                        && eanCheckDigit( digits.subSequence( 0, digits.length() - 1 ) )
+                        == digits.charAt( digits.length() - 1 )) {
+                    return digits.toString();
+                }
+                break;
+            default:
+                break;
+        }
+        throw new NumberFormatException( "Not an ISBN or EAN: " + code );
+    }
+
+    /**
+     * Returns the EAN check digit of the given digits: weighted by 3 and 1 in turn from the right,
+     * they add up to a multiple of 10 with it.
+     */
+    private static char eanCheckDigit(CharSequence digits) {
+        int length = digits.length();
+        int sum = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = digits.charAt( i ) - '0';
+            sum += (length - i) % 2 == 1 ? 3 * digit : digit;
+        }
+        return (char) ('0' + (10 - sum % 10) % 10);
+    }
+
+    /**
+     * Returns the ISBN-10 check digit of the first 9 of the given digits: weighted by 10 down to 2,
+     * they add up to a multiple of 11 with it. A check digit of 10 is an X.
+     */
+    private static char isbn10CheckDigit(CharSequence digits) {
+        int sum = 0;
+        for (int i = 0; i < 9; i++) {
+            sum += (10 - i) * (digits.charAt( i ) - '0');
+        }
+        int check = (11 - sum % 11) % 11;
+        return check == 10 ? 'X' : (char) ('0' + check);
+    }
+}
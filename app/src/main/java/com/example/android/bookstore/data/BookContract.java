@@ -26,6 +26,238 @@ public final class BookContract {
      */
     public static final String PATH_BOOKS = "books";
 
+    /**
+     * Possible path (appended to base content URI) for the suppliers, and (appended to the URI
+     * of a supplier) for its books
+     */
+    public static final String PATH_SUPPLIERS = "suppliers";
+
+    /**
+     * Possible path, only used to notify listeners of changes to the collection of books
+     */
+    public static final String PATH_BOOK_COLLECTION = "book_collection";
+
+    /**
+     * Possible path (appended to the books content URI, followed by the search terms)
+     */
+    public static final String PATH_SEARCH = "search";
+
+    /**
+     * Possible path (appended to the books content URI) for an export of all the books
+     */
+    public static final String PATH_EXPORT = "export";
+
+    /**
+     * Possible path (appended to the books content URI) for the log of changes to the books
+     */
+    public static final String PATH_CHANGES = "changes";
+
+    /**
+     * Possible path (appended to the books content URI, and followed by an ISBN or EAN) for the
+     * books looked up by the code on their barcode
+     */
+    public static final String PATH_ISBN = "isbn";
+
+    /**
+     * Possible path (appended to the books content URI) for the books low on stock
+     */
+    public static final String PATH_LOW_STOCK = "low_stock";
+
+    /**
+     * Possible path (appended to base content URI) for the sales reports
+     */
+    public static final String PATH_SALES = "sales";
+
+    /**
+     * Possible path (appended to the sales content URI) for the sales of each book on each day
+     */
+    public static final String PATH_DAILY = "daily";
+
+    /**
+     * Possible path (appended to the sales content URI) for the books that sold the most
+     */
+    public static final String PATH_TOP = "top";
+
+    /**
+     * MIME type of the books exported as CSV, with a header naming the columns
+     */
+    public static final String MIME_TYPE_CSV = "text/csv";
+
+    /**
+     * MIME type of the books exported as JSON Lines, one JSON object per book per line
+     */
+    public static final String MIME_TYPE_JSON_LINES = "application/x-ndjson";
+
+    /**
+     * Name of the provider method (see {@link ContentResolver#call}) that sells copies of a book.
+     * The arg is the _ID of the book, and {@link #EXTRA_QUANTITY} in the extras is the number of
+     * copies sold (1 if it's missing). The stock is only decreased if there are enough copies left.
+     * The result holds {@link #EXTRA_SOLD} and the {@link #EXTRA_QUANTITY} left afterwards, which is
+     * -1 if there is no such book.
+     */
+    public static final String METHOD_SELL = "sell";
+
+    /**
+     * Name of the provider method (see {@link ContentResolver#call}) that sells copies of several
+     * books in one transaction. The arg is unused; the extras hold the _IDs of the books in
+     * {@link #EXTRA_BOOK_IDS} and the number of copies of each sold in {@link #EXTRA_QUANTITIES}.
+     * Each book's stock is only decreased if there are enough copies left. The result holds the
+     * _IDs of the books that didn't have enough in {@link #EXTRA_SOLD_OUT_IDS}.
+     */
+    public static final String METHOD_SELL_BATCH = "sell_batch";
+
+    /**
+     * Name of the provider method (see {@link ContentResolver#call}) that returns statistics over
+     * the whole inventory: {@link #EXTRA_BOOK_COUNT}, {@link #EXTRA_TOTAL_UNITS},
+     * {@link #EXTRA_TOTAL_VALUE}, {@link #EXTRA_SUPPLIER_COUNT} and {@link #EXTRA_LOW_STOCK_COUNT}.
+     * The arg and extras are unused. The statistics are cached until the books change, so asking
+     * for them again is cheap.
+     */
+    public static final String METHOD_STATS = "stats";
+
+    /**
+     * Name of the provider method (see {@link ContentResolver#call}) that returns the counters of
+     * the cache the books looked up by _ID are served from: {@link #EXTRA_HIT_COUNT},
+     * {@link #EXTRA_MISS_COUNT} and {@link #EXTRA_EVICTION_COUNT}, since the provider started.
+     */
+    public static final String METHOD_ROW_CACHE_STATS = "row_cache_stats";
+
+    /**
+     * Name of the provider method (see {@link ContentResolver#call}) that returns how the provider
+     * has been used since it started, or since the metrics were last reset. For each operation and
+     * URI called, such as "query/books" or "update/book_id", the result holds a bundle with the
+     * {@link #EXTRA_CALL_COUNT}, {@link #EXTRA_ROW_COUNT}, {@link #EXTRA_TOTAL_MICROS} and the
+     * {@link #EXTRA_LATENCY_HISTOGRAM}. It also holds whether the metrics are {@link #EXTRA_ENABLED}.
+     * The arg is unused. Put {@link #EXTRA_ENABLED} in the extras to enable or disable the metrics,
+     * and {@link #EXTRA_RESET} to reset them once they've been returned. The metrics are disabled
+     * until they're enabled, since they make every query run before it returns.
+     */
+    public static final String METHOD_METRICS = "metrics";
+
+    /**
+     * Name of the provider method (see {@link ContentResolver#call}) that compacts the log of
+     * changes to the books (see {@link ChangeEntry}). The arg is unused. The changes older than
+     * {@link #EXTRA_RETENTION_MILLIS} in the extras (or {@link ChangeEntry#DEFAULT_RETENTION_MILLIS}
+     * if it's missing) are dropped, and only the last change to each book is kept. The result
+     * holds the {@link #EXTRA_ROW_COUNT} of changes dropped. The provider also compacts the log
+     * with the default retention each time it starts.
+     */
+    public static final String METHOD_COMPACT_CHANGES = "compact_changes";
+
+    /**
+     * Name of the provider method (see {@link ContentResolver#call}) that rolls the sales of the
+     * days that are over up into the daily sales reported (see {@link DailySalesEntry}), and drops
+     * the sales rolled up that are older than {@link #EXTRA_RETENTION_MILLIS} in the extras (or
+     * {@link SaleEntry#DEFAULT_RETENTION_MILLIS} if it's missing) from the ledger. The arg is
+     * unused. The result holds the {@link #EXTRA_ROW_COUNT} of sales rolled up. The provider also
+     * rolls the sales up with the default retention each time it starts, and before the first
+     * report of each day.
+     */
+    public static final String METHOD_ROLL_UP_SALES = "roll_up_sales";
+
+    /**
+     * Extra holding a number of copies of a book
+     */
+    public static final String EXTRA_QUANTITY = "quantity";
+
+    /**
+     * Extra holding whether the copies were sold
+     */
+    public static final String EXTRA_SOLD = "sold";
+
+    /**
+     * Long array extra holding the _IDs of books
+     */
+    public static final String EXTRA_BOOK_IDS = "book_ids";
+
+    /**
+     * Int array extra holding a number of copies of each of the books in {@link #EXTRA_BOOK_IDS}
+     */
+    public static final String EXTRA_QUANTITIES = "quantities";
+
+    /**
+     * Long array extra holding the _IDs of the books that didn't have enough copies left to sell
+     */
+    public static final String EXTRA_SOLD_OUT_IDS = "sold_out_ids";
+
+    /**
+     * Long extra holding the number of books (titles)
+     */
+    public static final String EXTRA_BOOK_COUNT = "book_count";
+
+    /**
+     * Long extra holding the number of copies of all the books together
+     */
+    public static final String EXTRA_TOTAL_UNITS = "total_units";
+
+    /**
+     * Long extra holding the value of all the copies in stock, in cents
+     */
+    public static final String EXTRA_TOTAL_VALUE = "total_value";
+
+    /**
+     * Long extra holding the number of different suppliers
+     */
+    public static final String EXTRA_SUPPLIER_COUNT = "supplier_count";
+
+    /**
+     * Long extra holding the number of books with fewer copies than their
+     * {@link BookEntry#COLUMN_LOW_STOCK_THRESHOLD}, as in {@link BookEntry#LOW_STOCK_URI}
+     */
+    public static final String EXTRA_LOW_STOCK_COUNT = "low_stock_count";
+
+    /**
+     * Boolean extra holding whether the metrics are, or should be, enabled
+     */
+    public static final String EXTRA_ENABLED = "enabled";
+
+    /**
+     * Boolean extra holding whether to reset the metrics
+     */
+    public static final String EXTRA_RESET = "reset";
+
+    /**
+     * Long extra holding the number of calls
+     */
+    public static final String EXTRA_CALL_COUNT = "call_count";
+
+    /**
+     * Long extra holding the number of rows returned or changed
+     */
+    public static final String EXTRA_ROW_COUNT = "row_count";
+
+    /**
+     * Long extra holding the time spent in the calls, in microseconds
+     */
+    public static final String EXTRA_TOTAL_MICROS = "total_micros";
+
+    /**
+     * Long array extra holding the number of calls by how long they took. Element {@code i}
+     * counts the calls that took less than 2^i microseconds (and at least half that); the last
+     * element counts all the slower ones.
+     */
+    public static final String EXTRA_LATENCY_HISTOGRAM = "latency_histogram";
+
+    /**
+     * Long extra holding the number of lookups answered from a cache
+     */
+    public static final String EXTRA_HIT_COUNT = "hit_count";
+
+    /**
+     * Long extra holding the number of lookups that had to go to the database
+     */
+    public static final String EXTRA_MISS_COUNT = "miss_count";
+
+    /**
+     * Long extra holding the number of entries dropped from a cache to make room for others
+     */
+    public static final String EXTRA_EVICTION_COUNT = "eviction_count";
+
+    /**
+     * Long extra holding how long changes, or sales, are kept for, in milliseconds
+     */
+    public static final String EXTRA_RETENTION_MILLIS = "retention_millis";
+
     /**
      * Inner class that defines constant values for the books database table.
      * Each entry in the table represent a single book.
@@ -37,6 +269,119 @@ public final class BookContract {
          */
         public static final Uri CONTENT_URI = Uri.withAppendedPath( BASE_CONTENT_URI, PATH_BOOKS );
 
+        /**
+         * URI that is notified when books are added or removed, or when many books change at once.
+         * Unlike the {@link #CONTENT_URI}, it isn't notified when a single book changes: that is
+         * only notified at the URI of that book.
+         */
+        public static final Uri COLLECTION_URI =
+                Uri.withAppendedPath( BASE_CONTENT_URI, PATH_BOOK_COLLECTION );
+
+        /**
+         * Query parameter for the {@link #CONTENT_URI}. When it is "true", the cursor returned is
+         * only notified at the {@link #COLLECTION_URI}, so that a list can refresh the single books
+         * that change by itself, rather than requery all of them.
+         */
+        public static final String QUERY_PARAMETER_COLLECTION_NOTIFICATIONS = "collection_notifications";
+
+        /**
+         * Query parameter for the {@link #CONTENT_URI} that limits the number of books returned
+         */
+        public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+        /**
+         * Query parameter for the {@link #CONTENT_URI} that only returns the books with an _ID
+         * greater than the given one, in _ID order. Together with {@link #QUERY_PARAMETER_LIMIT}
+         * this pages through the list without the cost of an OFFSET.
+         */
+        public static final String QUERY_PARAMETER_AFTER_ID = "after_id";
+
+        /**
+         * Query parameter for the {@link #CONTENT_URI} that sorts the books by one of
+         * {@link #SORT_NAME}, {@link #SORT_PRICE} or {@link #SORT_QUANTITY}, then by _ID. It takes
+         * the place of the sort order given to the query. Each sort reads the books in the order
+         * of an index, so it costs no more than the page of books returned.
+         * <p>
+         * To page through sorted books, give the page after the first one both the
+         * {@link #QUERY_PARAMETER_AFTER_ID} and the {@link #QUERY_PARAMETER_AFTER_VALUE} of the sort
+         * column of the last book of the page before.
+         */
+        public static final String QUERY_PARAMETER_SORT = "sort";
+
+        /**
+         * Values of {@link #QUERY_PARAMETER_SORT}
+         */
+        public static final String SORT_NAME = "name";
+        public static final String SORT_PRICE = "price";
+        public static final String SORT_QUANTITY = "quantity";
+
+        /**
+         * Query parameter for the {@link #CONTENT_URI}. When it is "true", the books are returned
+         * in descending order, and {@link #QUERY_PARAMETER_AFTER_ID} returns the books that come
+         * after the given one in that order.
+         */
+        public static final String QUERY_PARAMETER_DESCENDING = "descending";
+
+        /**
+         * Query parameter for the {@link #CONTENT_URI} holding the value of the sort column of the
+         * book given by {@link #QUERY_PARAMETER_AFTER_ID}, when the books are sorted
+         */
+        public static final String QUERY_PARAMETER_AFTER_VALUE = "after_value";
+
+        /**
+         * Query parameter for the {@link #CONTENT_URI} that, when "true", only returns the books
+         * with fewer copies in stock than their {@link #COLUMN_LOW_STOCK_THRESHOLD}, the books of
+         * {@link #LOW_STOCK_URI}
+         */
+        public static final String QUERY_PARAMETER_LOW_STOCK = "low_stock";
+
+        /**
+         * Query parameter for the {@link #CONTENT_URI} that only returns the books of the supplier
+         * with the given _ID
+         */
+        public static final String QUERY_PARAMETER_SUPPLIER_ID = "supplier_id";
+
+        /**
+         * Query parameter for the {@link #CONTENT_URI} that skips the given number of books.
+         * SQLite still reads the books it skips, so page with {@link #QUERY_PARAMETER_AFTER_ID}
+         * rather than with large offsets.
+         */
+        public static final String QUERY_PARAMETER_OFFSET = "offset";
+
+        /**
+         * The content URI of an export of all the books. Open it with
+         * {@link ContentResolver#openTypedAssetFileDescriptor} and {@link #MIME_TYPE_CSV} or
+         * {@link #MIME_TYPE_JSON_LINES}; {@link ContentResolver#openInputStream} exports CSV.
+         * The export is streamed as it is read, so it starts straight away whatever its size.
+         * Prices are in dollars, and the CSV can be imported again.
+         */
+        public static final Uri EXPORT_URI = Uri.withAppendedPath( CONTENT_URI, PATH_EXPORT );
+
+        /**
+         * The content URI of the books looked up by their {@link #COLUMN_ISBN}. Query it with a
+         * {@link #QUERY_PARAMETER_CODE} for each code, to look many of them up at once, such as
+         * all the codes scanned during a stock-take. The codes are normalized with
+         * {@link BarcodeFormatter#normalize}, and codes that aren't valid match no book. Match the
+         * books returned to the codes by their {@link #COLUMN_ISBN}. Use {@link #buildIsbnUri}
+         * to look up a single code.
+         */
+        public static final Uri ISBN_URI = Uri.withAppendedPath( CONTENT_URI, PATH_ISBN );
+
+        /**
+         * Query parameter for the {@link #ISBN_URI} holding one of the codes to look up. It can
+         * be given any number of times.
+         */
+        public static final String QUERY_PARAMETER_CODE = "code";
+
+        /**
+         * The content URI of the books with fewer copies in stock than their
+         * {@link #COLUMN_LOW_STOCK_THRESHOLD}, sorted by quantity unless asked otherwise. They're
+         * kept in a table of their own, so only they are read, however many books there are.
+         * Its observers are only notified when a book goes below its threshold or back up, not
+         * at each sale.
+         */
+        public static final Uri LOW_STOCK_URI = Uri.withAppendedPath( CONTENT_URI, PATH_LOW_STOCK );
+
         /**
          * The MIME type of the {@link #CONTENT_URI} for a list of books
          */
@@ -54,6 +399,24 @@ public final class BookContract {
          */
         public static final String TABLE_NAME = "books";
 
+        /**
+         * Name of the database view of the books joined to their suppliers, which has the
+         * supplier name and phone number columns the books table itself no longer has
+         */
+        public static final String DETAILS_VIEW_NAME = "book_details";
+
+        /**
+         * Name of the full-text search table over the book and supplier names. Its docid is the
+         * _ID of the book, and it is kept in sync with the books table by triggers.
+         */
+        public static final String SEARCH_TABLE_NAME = "books_fts";
+
+        /**
+         * Name of the table of the _IDs of the books low on stock, which is kept in sync with the
+         * books table by triggers
+         */
+        public static final String LOW_STOCK_TABLE_NAME = "low_stock";
+
         /**
          * Unique ID number for the book (only for use in the database table).
          * Type: INTEGER
@@ -65,7 +428,7 @@ public final class BookContract {
          */
         public static final String COLUMN_PRODUCT_NAME = "product_name";
         /**
-         * Price of the book
+         * Price of the book, in cents. Use {@link PriceFormatter} to convert it to and from dollars.
          * Type: INTEGER
          */
         public static final String COLUMN_PRODUCT_PRICE = "price";
@@ -75,14 +438,399 @@ public final class BookContract {
          */
         public static final String COLUMN_PRODUCT_QUANTITY = "quantity";
         /**
-         * Supplier name for the book
+         * _ID of the book's supplier in the suppliers table. The supplier is given by its name
+         * when a book is inserted or updated, and this is filled in by the provider.
+         * Type: INTEGER
+         */
+        public static final String COLUMN_SUPPLIER_ID = "supplier_id";
+        /**
+         * Supplier name for the book. It is the name of the book's supplier in the suppliers
+         * table, which is added if it's new.
          * Type: TEXT
          */
         public static final String COLUMN_PRODUCT_SUPPLIER_NAME = "supplier_name";
         /**
-         * Supplier phone number for the book
+         * Supplier phone number for the book. It is the phone number of the book's supplier, so
+         * giving a book a new one changes it for all of the supplier's books.
          * Type: TEXT
          */
         public static final String COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER = "supplier_phone_number";
+        /**
+         * The ISBN or EAN on the book's barcode, as normalized by {@link BarcodeFormatter#normalize}
+         * (which the provider does to the codes it's given), or null if it has none. No two books
+         * have the same code: inserting a book with the code of another one fails, and so does
+         * updating a book to it.
+         * Type: TEXT
+         */
+        public static final String COLUMN_ISBN = "isbn";
+
+        /**
+         * The book is low on stock below this many copies, or null for the default
+         * {@link #LOW_STOCK_THRESHOLD}. Can't be negative.
+         * Type: INTEGER
+         */
+        public static final String COLUMN_LOW_STOCK_THRESHOLD = "low_stock_threshold";
+
+        /**
+         * Books without a {@link #COLUMN_LOW_STOCK_THRESHOLD} of their own are low on stock with
+         * fewer copies than this. The database triggers were created with it, so changing it
+         * takes a migration.
+         */
+        public static final int LOW_STOCK_THRESHOLD = 5;
+
+        /**
+         * Builds the URI for a page of at most {@code limit} books, following the book with the
+         * given _ID. Use 0 as {@code afterId} for the first page.
+         */
+        public static Uri buildPageUri(long afterId, int limit) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter( QUERY_PARAMETER_AFTER_ID, String.valueOf( afterId ) )
+                    .appendQueryParameter( QUERY_PARAMETER_LIMIT, String.valueOf( limit ) )
+                    .build();
+        }
+
+        /**
+         * Builds the URI of the book with the given ISBN or EAN, in any of the forms
+         * {@link BarcodeFormatter#normalize} accepts. The book is found with a single probe
+         * of the index on its code.
+         */
+        public static Uri buildIsbnUri(String code) {
+            return ISBN_URI.buildUpon()
+                    .appendPath( code )
+                    .build();
+        }
+
+        /**
+         * Builds the URI of all the books with one of the given ISBNs or EANs.
+         */
+        public static Uri buildIsbnUri(Iterable<String> codes) {
+            Uri.Builder builder = ISBN_URI.buildUpon();
+            for (String code : codes) {
+                builder.appendQueryParameter( QUERY_PARAMETER_CODE, code );
+            }
+            return builder.build();
+        }
+
+        /**
+         * Builds the URI that searches the book and supplier names for the given terms. Every term
+         * must match the start of a word, and the best matches (in the book name) come first.
+         */
+        public static Uri buildSearchUri(String terms) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath( PATH_SEARCH )
+                    .appendPath( terms )
+                    .build();
+        }
+    }
+
+    /**
+     * Inner class that defines constant values for the log of changes to the books. Each entry
+     * in the log is a book that was inserted, updated or deleted, numbered in the order of the
+     * changes by its _ID. The log is written by triggers, so it has every change however it was
+     * made.
+     * <p>
+     * To sync the books, query the {@link #CONTENT_URI} for the changes after the _ID of the last
+     * change read, with {@link #QUERY_PARAMETER_SINCE}, then read the books that were inserted or
+     * updated, and drop the ones that were deleted. The cost of a sync is the number of books that
+     * changed, whatever the number of books there are. Start from 0, and start over from scratch
+     * at every {@link #OPERATION_RESET}.
+     */
+    public static abstract class ChangeEntry implements BaseColumns {
+
+        /**
+         * The content URI of the changes to the books. It can't be written to.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath( BookEntry.CONTENT_URI, PATH_CHANGES );
+
+        /**
+         * Query parameter for the {@link #CONTENT_URI} that only returns the changes with an _ID
+         * greater than the given one, in _ID order. {@link BookEntry#QUERY_PARAMETER_LIMIT} limits
+         * the number of changes returned.
+         */
+        public static final String QUERY_PARAMETER_SINCE = "since";
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of changes
+         */
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/"
+                + CONTENT_AUTHORITY + "/" + PATH_BOOKS + "/" + PATH_CHANGES;
+
+        /**
+         * Name of database table for the changes
+         */
+        public static final String TABLE_NAME = "book_changes";
+
+        /**
+         * How long the changes are kept for, unless the compaction is asked otherwise: a week
+         */
+        public static final long DEFAULT_RETENTION_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+        /**
+         * Sequence number of the change, which only ever increases.
+         * Type: INTEGER
+         */
+        public static final String _ID = BaseColumns._ID;
+        /**
+         * _ID of the book that changed, or null for a {@link #OPERATION_RESET}
+         * Type: INTEGER
+         */
+        public static final String COLUMN_BOOK_ID = "book_id";
+        /**
+         * What happened to the book: one of the OPERATION_ values
+         * Type: TEXT
+         */
+        public static final String COLUMN_OPERATION = "operation";
+        /**
+         * The columns of the book (as in {@link BookEntry#CONTENT_URI}) that an update changed,
+         * separated by commas, or null if any of them may have. Always null for the other
+         * operations.
+         * Type: TEXT
+         */
+        public static final String COLUMN_CHANGED_COLUMNS = "changed_columns";
+        /**
+         * When the change was made, in milliseconds since the epoch
+         * Type: INTEGER
+         */
+        public static final String COLUMN_TIME = "time";
+
+        /**
+         * The book was inserted
+         */
+        public static final String OPERATION_INSERT = "insert";
+        /**
+         * The book was updated. When the log is compacted, the changes to a book are folded into
+         * its last one, so a book that is new to the consumer can show up as updated: treat both
+         * the same, by reading the book.
+         */
+        public static final String OPERATION_UPDATE = "update";
+        /**
+         * The book was deleted
+         */
+        public static final String OPERATION_DELETE = "delete";
+        /**
+         * The changes before this one are no longer in the log, so read all the books again
+         */
+        public static final String OPERATION_RESET = "reset";
+
+        /**
+         * Builds the URI of the changes after the one with the given _ID.
+         */
+        public static Uri buildChangesUri(long since) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter( QUERY_PARAMETER_SINCE, String.valueOf( since ) )
+                    .build();
+        }
+    }
+
+    /**
+     * Inner class that defines constant values for the ledger of sales. Each entry in the ledger
+     * is a sale of copies of a single book, appended in the same transaction that took them out of
+     * stock. Setting a book's quantity is a stock correction, not a sale, so it isn't in the
+     * ledger. The ledger isn't queried directly: its sales are reported once they're rolled up
+     * into the {@link DailySalesEntry}.
+     */
+    public static abstract class SaleEntry implements BaseColumns {
+
+        /**
+         * Name of database table for the sales
+         */
+        public static final String TABLE_NAME = "sales";
+
+        /**
+         * How long the sales rolled up are kept in the ledger, unless the rollup is asked
+         * otherwise: 30 days
+         */
+        public static final long DEFAULT_RETENTION_MILLIS = 30L * 24 * 60 * 60 * 1000;
+
+        /**
+         * Sequence number of the sale, which only ever increases.
+         * Type: INTEGER
+         */
+        public static final String _ID = BaseColumns._ID;
+        /**
+         * _ID of the book sold
+         * Type: INTEGER
+         */
+        public static final String COLUMN_BOOK_ID = "book_id";
+        /**
+         * Number of copies sold
+         * Type: INTEGER
+         */
+        public static final String COLUMN_QUANTITY = "quantity";
+        /**
+         * Price of each copy when it was sold, in cents
+         * Type: INTEGER
+         */
+        public static final String COLUMN_PRICE = "price";
+        /**
+         * When the sale was made, in milliseconds since the epoch
+         * Type: INTEGER
+         */
+        public static final String COLUMN_TIME = "time";
+    }
+
+    /**
+     * Inner class that defines constant values for the daily sales of the books. Each entry is
+     * the number of copies of a single book sold on a single day, and what they were sold for.
+     * The sales in the ledger (see {@link SaleEntry}) are rolled up into them once their day is
+     * over, so the reports below only read a row per book and day, however many sales there were,
+     * and don't include the sales of the current day.
+     * <p>
+     * Days are local dates, as "yyyy-MM-dd". Query the {@link #CONTENT_URI} for the daily sales,
+     * and the {@link #TOP_SELLERS_URI} for the books that sold the most, both over the days from
+     * {@link #QUERY_PARAMETER_FROM} to {@link #QUERY_PARAMETER_TO}.
+     */
+    public static abstract class DailySalesEntry implements BaseColumns {
+
+        /**
+         * The content URI of the daily sales, sorted by day and then book _ID unless asked
+         * otherwise. It can't be written to.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(
+                Uri.withAppendedPath( BASE_CONTENT_URI, PATH_SALES ), PATH_DAILY );
+
+        /**
+         * The content URI of the books that sold the most copies, with the total
+         * {@link #COLUMN_QUANTITY} and {@link #COLUMN_REVENUE} of each, and its
+         * {@link BookEntry#COLUMN_PRODUCT_NAME} (null for a book that was deleted since). The
+         * _ID is the book's. {@link BookEntry#QUERY_PARAMETER_LIMIT} limits the number of books
+         * returned.
+         */
+        public static final Uri TOP_SELLERS_URI = Uri.withAppendedPath(
+                Uri.withAppendedPath( BASE_CONTENT_URI, PATH_SALES ), PATH_TOP );
+
+        /**
+         * Query parameter for the {@link #CONTENT_URI} and {@link #TOP_SELLERS_URI} for the first
+         * day reported, as "yyyy-MM-dd". Without it the reports start with the first sale.
+         */
+        public static final String QUERY_PARAMETER_FROM = "from";
+
+        /**
+         * Query parameter for the {@link #CONTENT_URI} and {@link #TOP_SELLERS_URI} for the last
+         * day reported, as "yyyy-MM-dd". Without it the reports go on to the last day rolled up.
+         */
+        public static final String QUERY_PARAMETER_TO = "to";
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of daily sales
+         */
+        public static final String CONTENT_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/"
+                + CONTENT_AUTHORITY + "/" + PATH_SALES + "/" + PATH_DAILY;
+
+        /**
+         * The MIME type of the {@link #TOP_SELLERS_URI} for a list of top sellers
+         */
+        public static final String TOP_SELLERS_LIST_TYPE = ContentResolver.CURSOR_DIR_BASE_TYPE + "/"
+                + CONTENT_AUTHORITY + "/" + PATH_SALES + "/" + PATH_TOP;
+
+        /**
+         * Name of database table for the daily sales
+         */
+        public static final String TABLE_NAME = "daily_sales";
+
+        /**
+         * The local date of the sales, as "yyyy-MM-dd"
+         * Type: TEXT
+         */
+        public static final String COLUMN_DAY = "day";
+        /**
+         * _ID of the book sold
+         * Type: INTEGER
+         */
+        public static final String COLUMN_BOOK_ID = "book_id";
+        /**
+         * Number of copies sold
+         * Type: INTEGER
+         */
+        public static final String COLUMN_QUANTITY = "quantity";
+        /**
+         * What the copies were sold for, in cents
+         * Type: INTEGER
+         */
+        public static final String COLUMN_REVENUE = "revenue";
+
+        /**
+         * Builds the URI of the daily sales from one day to another, either of which may be null.
+         */
+        public static Uri buildDailySalesUri(String from, String to) {
+            return appendRange( CONTENT_URI.buildUpon(), from, to ).build();
+        }
+
+        /**
+         * Builds the URI of the given number of books that sold the most from one day to another,
+         * either of which may be null.
+         */
+        public static Uri buildTopSellersUri(String from, String to, int limit) {
+            return appendRange( TOP_SELLERS_URI.buildUpon(), from, to )
+                    .appendQueryParameter( BookEntry.QUERY_PARAMETER_LIMIT, String.valueOf( limit ) )
+                    .build();
+        }
+
+        private static Uri.Builder appendRange(Uri.Builder builder, String from, String to) {
+            if (from != null) {
+                builder.appendQueryParameter( QUERY_PARAMETER_FROM, from );
+            }
+            if (to != null) {
+                builder.appendQueryParameter( QUERY_PARAMETER_TO, to );
+            }
+            return builder;
+        }
+    }
+
+    /**
+     * Inner class that defines constant values for the suppliers database table.
+     * Each entry in the table represents a single supplier of books.
+     */
+    public static abstract class SupplierEntry implements BaseColumns {
+
+        /**
+         * The content URI to access the supplier data in the provider
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath( BASE_CONTENT_URI, PATH_SUPPLIERS );
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of suppliers
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a single supplier.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * Name of database table for suppliers
+         */
+        public static final String TABLE_NAME = "suppliers";
+
+        /**
+         * Unique ID number for the supplier (only for use in the database table).
+         * Type: INTEGER
+         */
+        public static final String _ID = BaseColumns._ID;
+        /**
+         * Name of the supplier, unique among the suppliers
+         * Type: TEXT
+         */
+        public static final String COLUMN_SUPPLIER_NAME = "supplier_name";
+        /**
+         * Phone number of the supplier
+         * Type: TEXT
+         */
+        public static final String COLUMN_SUPPLIER_PHONE_NUMBER = "supplier_phone_number";
+
+        /**
+         * Builds the URI of the books of the supplier with the given _ID. It can be queried like
+         * the {@link BookEntry#CONTENT_URI}, and finds the books through an index on their
+         * supplier rather than by reading all of them.
+         */
+        public static Uri buildBooksUri(long supplierId) {
+            return CONTENT_URI.buildUpon()
+                    .appendPath( String.valueOf( supplierId ) )
+                    .appendPath( PATH_BOOKS )
+                    .build();
+        }
     }
-}
\ No newline at end of file
+}
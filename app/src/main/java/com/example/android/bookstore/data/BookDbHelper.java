@@ -1,10 +1,16 @@
 package com.example.android.bookstore.data;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import com.example.android.bookstore.data.BookContract.BookEntry;
+import com.example.android.bookstore.data.BookContract.ChangeEntry;
+import com.example.android.bookstore.data.BookContract.DailySalesEntry;
+import com.example.android.bookstore.data.BookContract.SaleEntry;
+import com.example.android.bookstore.data.BookContract.SupplierEntry;
 
 /**
  * Database helper for BookStore app. Manages database creation and version management.
@@ -17,21 +23,219 @@ public class BookDbHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "inventory.db";
 
     /**
-     * Database version. If you change the database schema, you must increment the database version.
+     * Database version. If you change the database schema, you must increment the database version
+     * and add the migration from the previous version to {@link #migrate}.
      */
-    private static final int DATABASE_VERSION = 1;
+    static final int DATABASE_VERSION = 10;
 
     /**
-     * Constructs a new instance of {@link BookDbHelper}.
+     * Name of the index on {@link BookEntry#COLUMN_PRODUCT_NAME}
+     */
+    static final String INDEX_PRODUCT_NAME = "books_product_name_index";
+
+    /**
+     * Name of the index on {@link BookEntry#COLUMN_PRODUCT_SUPPLIER_NAME}, until the supplier
+     * names moved to their own table in version 5
+     */
+    static final String INDEX_SUPPLIER_NAME = "books_supplier_name_index";
+
+    /**
+     * Name of the index on {@link BookEntry#COLUMN_SUPPLIER_ID} and
+     * {@link BookEntry#COLUMN_PRODUCT_QUANTITY}, which finds a supplier's books, and the ones
+     * low on stock among them
+     */
+    static final String INDEX_SUPPLIER_QUANTITY = "books_supplier_quantity_index";
+
+    /**
+     * Name of the index on {@link BookEntry#COLUMN_PRODUCT_QUANTITY}
+     */
+    static final String INDEX_QUANTITY = "books_quantity_index";
+
+    /**
+     * Name of the index on {@link BookEntry#COLUMN_PRODUCT_PRICE}
+     */
+    static final String INDEX_PRICE = "books_price_index";
+
+    /**
+     * Name of the unique index on {@link BookEntry#COLUMN_ISBN}
+     */
+    static final String INDEX_ISBN = "books_isbn_index";
+
+    /**
+     * Name of the index on {@link DailySalesEntry#COLUMN_BOOK_ID} and
+     * {@link DailySalesEntry#COLUMN_DAY}, which finds the daily sales of a single book
+     */
+    static final String INDEX_DAILY_SALES_BOOK = "daily_sales_book_index";
+
+    /**
+     * Name of the one-row table that holds the _ID of the last sale rolled up into
+     * {@link DailySalesEntry#TABLE_NAME}, in its {@link #COLUMN_LAST_SALE_ID}
+     */
+    static final String SALES_ROLLUP_TABLE_NAME = "sales_rollup";
+    static final String COLUMN_LAST_SALE_ID = "last_sale_id";
+
+    /**
+     * Names of the triggers that keep {@link BookEntry#LOW_STOCK_TABLE_NAME} in sync with the
+     * quantities and thresholds of the books
+     */
+    static final String TRIGGER_LOW_STOCK_INSERT = "low_stock_insert";
+    static final String TRIGGER_LOW_STOCK_UPDATE = "low_stock_update";
+    static final String TRIGGER_LOW_STOCK_DELETE = "low_stock_delete";
+
+    /**
+     * Name of the one-row table that holds the {@link #COLUMN_VERSION} of
+     * {@link BookEntry#LOW_STOCK_TABLE_NAME}, which the triggers increment each time a book
+     * goes below its threshold or back up
+     */
+    static final String LOW_STOCK_VERSION_TABLE_NAME = "low_stock_version";
+    static final String COLUMN_VERSION = "version";
+
+    /**
+     * Names of the triggers that keep {@link BookEntry#SEARCH_TABLE_NAME} in sync with the books
+     */
+    static final String TRIGGER_SEARCH_INSERT = "books_fts_insert";
+    static final String TRIGGER_SEARCH_UPDATE = "books_fts_update";
+    static final String TRIGGER_SEARCH_DELETE = "books_fts_delete";
+
+    /**
+     * Name of the trigger that keeps the supplier names in {@link BookEntry#SEARCH_TABLE_NAME}
+     * in sync with the suppliers
+     */
+    static final String TRIGGER_SEARCH_SUPPLIER_UPDATE = "books_fts_supplier_update";
+
+    /**
+     * Names of the triggers that log every change to the books in {@link ChangeEntry#TABLE_NAME}
+     */
+    static final String TRIGGER_CHANGES_INSERT = "book_changes_insert";
+    static final String TRIGGER_CHANGES_UPDATE = "book_changes_update";
+    static final String TRIGGER_CHANGES_DELETE = "book_changes_delete";
+
+    /**
+     * Name of the trigger that logs the changes to the supplier columns of a supplier's books
+     * in {@link ChangeEntry#TABLE_NAME}
+     */
+    static final String TRIGGER_CHANGES_SUPPLIER_UPDATE = "book_changes_supplier_update";
+
+    /**
+     * SQL expression of the current time, in milliseconds since the epoch
+     */
+    private static final String NOW_MILLIS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+
+    /**
+     * Journaling settings the database is configured with
+     */
+    private final Settings settings;
+
+    /**
+     * Constructs a new instance of {@link BookDbHelper} with the default {@link Settings}.
      *
      * @param context of the app
      */
     public BookDbHelper(Context context) {
-        super( context, DATABASE_NAME, null, DATABASE_VERSION );
+        this( context, new Settings() );
+    }
+
+    /**
+     * Constructs a new instance of {@link BookDbHelper}.
+     *
+     * @param context  of the app
+     * @param settings the database connection is configured with
+     */
+    public BookDbHelper(Context context, Settings settings) {
+        this( context, DATABASE_NAME, settings );
+    }
+
+    /**
+     * Constructs a new instance of {@link BookDbHelper} for the database file with the given name,
+     * with the default {@link Settings}.
+     *
+     * @param context of the app
+     * @param name    of the database file
+     */
+    BookDbHelper(Context context, String name) {
+        this( context, name, new Settings() );
+    }
+
+    /**
+     * Constructs a new instance of {@link BookDbHelper} for the database file with the given name.
+     *
+     * @param context  of the app
+     * @param name     of the database file
+     * @param settings the database connection is configured with
+     */
+    BookDbHelper(Context context, String name, Settings settings) {
+        super( context, name, null, DATABASE_VERSION );
+        this.settings = settings;
+
+        // With write-ahead logging, readers see the last committed data while a write is in
+        // progress, so the list can load while books are being sold, and sales don't wait for it.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled( settings.writeAheadLogging );
+        }
+    }
+
+    /**
+     * This is called when the database connection is being configured, before the database is
+     * created, upgraded or opened.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        configure( db );
+    }
+
+    /**
+     * This is called when the database has been opened.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        // Before Jelly Bean there is no onConfigure, so configure the connection here instead
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            if (settings.writeAheadLogging) {
+                db.enableWriteAheadLogging();
+            }
+            configure( db );
+        }
+    }
+
+    /**
+     * Apply the {@link Settings} to the database. The pragmas only reach the primary connection,
+     * which makes every write and commit; the reader connections write-ahead logging opens keep
+     * SQLite's defaults.
+     */
+    private void configure(SQLiteDatabase db) {
+        // The page size only takes effect before the first table is created
+        executePragma( db, "page_size = " + settings.pageSize );
+        executePragma( db, "synchronous = " + settings.synchronousMode );
+        // Check that every book's supplier exists. The connection pool applies this to each of
+        // its connections, which the pragma wouldn't.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            db.setForeignKeyConstraintsEnabled( true );
+        } else {
+            executePragma( db, "foreign_keys = ON" );
+        }
+        if (settings.writeAheadLogging) {
+            executePragma( db, "wal_autocheckpoint = " + settings.checkpointPages );
+            executePragma( db, "journal_size_limit = " + settings.journalSizeLimitBytes );
+        }
+    }
+
+    /**
+     * Execute a PRAGMA statement. Some pragmas return the value they were set to, which
+     * {@link SQLiteDatabase#execSQL} doesn't allow, so run it as a query instead.
+     */
+    private static void executePragma(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery( "PRAGMA " + pragma, null );
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
     }
 
     /**
-     * This is called when the database is created for the first time.
+     * This is called when the database is created for the first time. It creates the version 1
+     * schema and then runs every migration on it, so that new databases and upgraded ones always
+     * end up with the same schema.
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
@@ -46,14 +250,478 @@ public class BookDbHelper extends SQLiteOpenHelper {
 
         // Execute the SQL statement
         db.execSQL( SQL_CREATE_BOOKS_TABLE );
+
+        // Bring the version 1 schema up to date
+        onUpgrade( db, 1, DATABASE_VERSION );
     }
 
     /**
-     * This is called when the database needs to be upgraded.
+     * This is called when the database needs to be upgraded. Each version's migration is run in
+     * turn, in place, so the books already in the database are kept.
+     * SQLiteOpenHelper runs this inside a transaction, so a failed upgrade leaves the database
+     * as it was.
      */
     @Override
-    public void onUpgrade(SQLiteDatabase db, int i, int i1) {
-        db.execSQL( "DROP TABLE IF EXISTS " + BookEntry.TABLE_NAME );
-        onCreate( db );
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            migrate( db, version );
+        }
+    }
+
+    /**
+     * Migrate the database from the previous version to the given one.
+     */
+    private void migrate(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 2:
+                // Index the columns the list is sorted by, filtered by supplier and
+                // checked for low stock on, so those queries don't scan the whole table.
+                db.execSQL( "CREATE INDEX " + INDEX_PRODUCT_NAME + " ON "
+                        + BookEntry.TABLE_NAME + "(" + BookEntry.COLUMN_PRODUCT_NAME + ");" );
+                db.execSQL( "CREATE INDEX " + INDEX_SUPPLIER_NAME + " ON "
+                        + BookEntry.TABLE_NAME + "(" + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ");" );
+                db.execSQL( "CREATE INDEX " + INDEX_QUANTITY + " ON "
+                        + BookEntry.TABLE_NAME + "(" + BookEntry.COLUMN_PRODUCT_QUANTITY + ");" );
+                break;
+            case 3:
+                // Full-text search over the book and supplier names, with the book _ID as docid
+                db.execSQL( "CREATE VIRTUAL TABLE " + BookEntry.SEARCH_TABLE_NAME + " USING fts4("
+                        + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                        + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ");" );
+                db.execSQL( "INSERT INTO " + BookEntry.SEARCH_TABLE_NAME + "(docid, "
+                        + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                        + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ") SELECT "
+                        + BookEntry._ID + ", "
+                        + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                        + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " FROM "
+                        + BookEntry.TABLE_NAME + ";" );
+
+                // Keep the search table in sync with every change to the books table
+                db.execSQL( "CREATE TRIGGER " + TRIGGER_SEARCH_INSERT + " AFTER INSERT ON "
+                        + BookEntry.TABLE_NAME + " BEGIN INSERT INTO " + BookEntry.SEARCH_TABLE_NAME
+                        + "(docid, " + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                        + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ") VALUES (new." + BookEntry._ID
+                        + ", new." + BookEntry.COLUMN_PRODUCT_NAME
+                        + ", new." + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + "); END;" );
+                db.execSQL( "CREATE TRIGGER " + TRIGGER_SEARCH_UPDATE + " AFTER UPDATE OF "
+                        + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME
+                        + " ON " + BookEntry.TABLE_NAME + " BEGIN UPDATE " + BookEntry.SEARCH_TABLE_NAME
+                        + " SET " + BookEntry.COLUMN_PRODUCT_NAME + " = new." + BookEntry.COLUMN_PRODUCT_NAME
+                        + ", " + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " = new."
+                        + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " WHERE docid = old." + BookEntry._ID
+                        + "; END;" );
+                db.execSQL( "CREATE TRIGGER " + TRIGGER_SEARCH_DELETE + " AFTER DELETE ON "
+                        + BookEntry.TABLE_NAME + " BEGIN DELETE FROM " + BookEntry.SEARCH_TABLE_NAME
+                        + " WHERE docid = old." + BookEntry._ID + "; END;" );
+                break;
+            case 4:
+                // Prices used to be stored in dollars, as whatever the editor was given: "19.99"
+                // ended up a REAL and "12" an INTEGER. Store them all as whole cents instead,
+                // so sums and sorts over prices are integer arithmetic.
+                db.execSQL( "UPDATE " + BookEntry.TABLE_NAME + " SET "
+                        + BookEntry.COLUMN_PRODUCT_PRICE + " = CAST(ROUND("
+                        + BookEntry.COLUMN_PRODUCT_PRICE + " * 100) AS INTEGER);" );
+                break;
+            case 5:
+                migrateToSuppliersTable( db );
+                break;
+            case 6:
+                // The list can be sorted by price, which reads the books in index order
+                db.execSQL( "CREATE INDEX " + INDEX_PRICE + " ON "
+                        + BookEntry.TABLE_NAME + "(" + BookEntry.COLUMN_PRODUCT_PRICE + ");" );
+                break;
+            case 7:
+                createChangeLog( db );
+                break;
+            case 8:
+                // Books are found by the barcode scanned at the till, with a single probe of the
+                // index. Books without a code yet have a NULL, which any number of them can share.
+                db.execSQL( "ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN "
+                        + BookEntry.COLUMN_ISBN + " TEXT;" );
+                db.execSQL( "CREATE UNIQUE INDEX " + INDEX_ISBN + " ON "
+                        + BookEntry.TABLE_NAME + "(" + BookEntry.COLUMN_ISBN + ");" );
+                db.execSQL( "DROP VIEW " + BookEntry.DETAILS_VIEW_NAME + ";" );
+                createDetailsView( db, BookEntry.COLUMN_ISBN );
+                db.execSQL( "DROP TRIGGER " + TRIGGER_CHANGES_UPDATE + ";" );
+                createChangesUpdateTrigger( db, BookEntry.COLUMN_ISBN );
+                break;
+            case 9:
+                createSalesTables( db );
+                break;
+            case 10:
+                db.execSQL( "ALTER TABLE " + BookEntry.TABLE_NAME + " ADD COLUMN "
+                        + BookEntry.COLUMN_LOW_STOCK_THRESHOLD + " INTEGER;" );
+                createLowStockTable( db );
+                db.execSQL( "DROP VIEW " + BookEntry.DETAILS_VIEW_NAME + ";" );
+                createDetailsView( db, BookEntry.COLUMN_ISBN, BookEntry.COLUMN_LOW_STOCK_THRESHOLD );
+                db.execSQL( "DROP TRIGGER " + TRIGGER_CHANGES_UPDATE + ";" );
+                createChangesUpdateTrigger( db, BookEntry.COLUMN_ISBN,
+                        BookEntry.COLUMN_LOW_STOCK_THRESHOLD );
+                break;
+            default:
+                throw new IllegalStateException( "No migration to database version " + version );
+        }
+    }
+
+    /**
+     * Move the supplier names and phone numbers out of the books, into a table of their own that
+     * the books refer to by _ID. Each supplier keeps the phone number of its last book that had
+     * one. SQLite can't drop columns, so the books table is rebuilt, keeping the books' _IDs.
+     */
+    private static void migrateToSuppliersTable(SQLiteDatabase db) {
+        db.execSQL( "CREATE TABLE " + SupplierEntry.TABLE_NAME + "("
+                + SupplierEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " TEXT NOT NULL UNIQUE, "
+                + SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " TEXT);" );
+        db.execSQL( "INSERT INTO " + SupplierEntry.TABLE_NAME + "("
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + ", "
+                + SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER + ") SELECT "
+                + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ", (SELECT "
+                + BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER + " FROM " + BookEntry.TABLE_NAME
+                + " AS b WHERE b." + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " = "
+                + BookEntry.TABLE_NAME + "." + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " AND b."
+                + BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER + " IS NOT NULL ORDER BY b."
+                + BookEntry._ID + " DESC LIMIT 1) FROM " + BookEntry.TABLE_NAME + " GROUP BY "
+                + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " ORDER BY MIN(" + BookEntry._ID + ");" );
+
+        // The search triggers read the supplier names from the books, so they go first
+        db.execSQL( "DROP TRIGGER " + TRIGGER_SEARCH_INSERT + ";" );
+        db.execSQL( "DROP TRIGGER " + TRIGGER_SEARCH_UPDATE + ";" );
+        db.execSQL( "DROP TRIGGER " + TRIGGER_SEARCH_DELETE + ";" );
+
+        // Rebuild the books with a supplier _ID instead of the supplier columns. The new table
+        // carries on the old one's AUTOINCREMENT sequence, so deleted _IDs aren't reused.
+        String newTable = BookEntry.TABLE_NAME + "_new";
+        db.execSQL( "CREATE TABLE " + newTable + "("
+                + BookEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + BookEntry.COLUMN_PRODUCT_NAME + " TEXT NOT NULL, "
+                + BookEntry.COLUMN_PRODUCT_PRICE + " INTEGER NOT NULL, "
+                + BookEntry.COLUMN_PRODUCT_QUANTITY + " INTEGER NOT NULL DEFAULT 0, "
+                + BookEntry.COLUMN_SUPPLIER_ID + " INTEGER NOT NULL REFERENCES "
+                + SupplierEntry.TABLE_NAME + "(" + SupplierEntry._ID + "));" );
+        db.execSQL( "INSERT INTO sqlite_sequence (name, seq) SELECT '" + newTable
+                + "', seq FROM sqlite_sequence WHERE name = '" + BookEntry.TABLE_NAME + "';" );
+        db.execSQL( "INSERT INTO " + newTable + "(" + BookEntry._ID + ", "
+                + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_PRODUCT_PRICE + ", "
+                + BookEntry.COLUMN_PRODUCT_QUANTITY + ", " + BookEntry.COLUMN_SUPPLIER_ID + ") SELECT "
+                + BookEntry.TABLE_NAME + "." + BookEntry._ID + ", "
+                + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_PRODUCT_PRICE + ", "
+                + BookEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                + SupplierEntry.TABLE_NAME + "." + SupplierEntry._ID + " FROM " + BookEntry.TABLE_NAME
+                + " JOIN " + SupplierEntry.TABLE_NAME + " ON " + SupplierEntry.TABLE_NAME + "."
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " = " + BookEntry.TABLE_NAME + "."
+                + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ";" );
+        // Dropping the old table drops its indexes too
+        db.execSQL( "DROP TABLE " + BookEntry.TABLE_NAME + ";" );
+        db.execSQL( "ALTER TABLE " + newTable + " RENAME TO " + BookEntry.TABLE_NAME + ";" );
+
+        db.execSQL( "CREATE INDEX " + INDEX_PRODUCT_NAME + " ON "
+                + BookEntry.TABLE_NAME + "(" + BookEntry.COLUMN_PRODUCT_NAME + ");" );
+        db.execSQL( "CREATE INDEX " + INDEX_QUANTITY + " ON "
+                + BookEntry.TABLE_NAME + "(" + BookEntry.COLUMN_PRODUCT_QUANTITY + ");" );
+        db.execSQL( "CREATE INDEX " + INDEX_SUPPLIER_QUANTITY + " ON " + BookEntry.TABLE_NAME + "("
+                + BookEntry.COLUMN_SUPPLIER_ID + ", " + BookEntry.COLUMN_PRODUCT_QUANTITY + ");" );
+
+        // The books with their supplier's name and phone number, as they were before
+        createDetailsView( db );
+
+        // Keep the search table in sync again, looking the supplier names up by _ID
+        String supplierName = "(SELECT " + SupplierEntry.COLUMN_SUPPLIER_NAME + " FROM "
+                + SupplierEntry.TABLE_NAME + " WHERE " + SupplierEntry._ID + " = new."
+                + BookEntry.COLUMN_SUPPLIER_ID + ")";
+        db.execSQL( "CREATE TRIGGER " + TRIGGER_SEARCH_INSERT + " AFTER INSERT ON "
+                + BookEntry.TABLE_NAME + " BEGIN INSERT INTO " + BookEntry.SEARCH_TABLE_NAME
+                + "(docid, " + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ") VALUES (new." + BookEntry._ID
+                + ", new." + BookEntry.COLUMN_PRODUCT_NAME + ", " + supplierName + "); END;" );
+        db.execSQL( "CREATE TRIGGER " + TRIGGER_SEARCH_UPDATE + " AFTER UPDATE OF "
+                + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_SUPPLIER_ID
+                + " ON " + BookEntry.TABLE_NAME + " BEGIN UPDATE " + BookEntry.SEARCH_TABLE_NAME
+                + " SET " + BookEntry.COLUMN_PRODUCT_NAME + " = new." + BookEntry.COLUMN_PRODUCT_NAME
+                + ", " + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " = " + supplierName
+                + " WHERE docid = old." + BookEntry._ID + "; END;" );
+        db.execSQL( "CREATE TRIGGER " + TRIGGER_SEARCH_DELETE + " AFTER DELETE ON "
+                + BookEntry.TABLE_NAME + " BEGIN DELETE FROM " + BookEntry.SEARCH_TABLE_NAME
+                + " WHERE docid = old." + BookEntry._ID + "; END;" );
+        db.execSQL( "CREATE TRIGGER " + TRIGGER_SEARCH_SUPPLIER_UPDATE + " AFTER UPDATE OF "
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " ON " + SupplierEntry.TABLE_NAME
+                + " BEGIN UPDATE " + BookEntry.SEARCH_TABLE_NAME + " SET "
+                + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + " = new." + SupplierEntry.COLUMN_SUPPLIER_NAME
+                + " WHERE docid IN (SELECT " + BookEntry._ID + " FROM " + BookEntry.TABLE_NAME
+                + " WHERE " + BookEntry.COLUMN_SUPPLIER_ID + " = new." + SupplierEntry._ID + "); END;" );
+    }
+
+    /**
+     * Create the view of the books joined to their suppliers, with the columns the books had
+     * before the suppliers moved out, and then the given ones.
+     */
+    private static void createDetailsView(SQLiteDatabase db, String... columns) {
+        StringBuilder view = new StringBuilder( "CREATE VIEW " + BookEntry.DETAILS_VIEW_NAME
+                + " AS SELECT "
+                + BookEntry.TABLE_NAME + "." + BookEntry._ID + " AS " + BookEntry._ID + ", "
+                + BookEntry.COLUMN_PRODUCT_NAME + ", "
+                + BookEntry.COLUMN_PRODUCT_PRICE + ", "
+                + BookEntry.COLUMN_PRODUCT_QUANTITY + ", "
+                + BookEntry.COLUMN_SUPPLIER_ID + ", "
+                + SupplierEntry.COLUMN_SUPPLIER_NAME + " AS " + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ", "
+                + SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER + " AS "
+                + BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER );
+        for (String column : columns) {
+            view.append( ", " ).append( column );
+        }
+        view.append( " FROM " + BookEntry.TABLE_NAME
+                + " JOIN " + SupplierEntry.TABLE_NAME + " ON " + SupplierEntry.TABLE_NAME + "."
+                + SupplierEntry._ID + " = " + BookEntry.TABLE_NAME + "." + BookEntry.COLUMN_SUPPLIER_ID
+                + ";" );
+        db.execSQL( view.toString() );
+    }
+
+    /**
+     * Log every change to the books in a table of their own, so a consumer that syncs the books
+     * only has to read the ones that changed since it last did. The log starts with a reset,
+     * since the books already in the database were never logged.
+     */
+    private static void createChangeLog(SQLiteDatabase db) {
+        db.execSQL( "CREATE TABLE " + ChangeEntry.TABLE_NAME + "("
+                + ChangeEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + ChangeEntry.COLUMN_BOOK_ID + " INTEGER, "
+                + ChangeEntry.COLUMN_OPERATION + " TEXT NOT NULL, "
+                + ChangeEntry.COLUMN_CHANGED_COLUMNS + " TEXT, "
+                + ChangeEntry.COLUMN_TIME + " INTEGER NOT NULL DEFAULT (" + NOW_MILLIS + "));" );
+        db.execSQL( "INSERT INTO " + ChangeEntry.TABLE_NAME + "(" + ChangeEntry.COLUMN_OPERATION
+                + ") VALUES ('" + ChangeEntry.OPERATION_RESET + "');" );
+
+        db.execSQL( "CREATE TRIGGER " + TRIGGER_CHANGES_INSERT + " AFTER INSERT ON "
+                + BookEntry.TABLE_NAME + " BEGIN INSERT INTO " + ChangeEntry.TABLE_NAME + "("
+                + ChangeEntry.COLUMN_BOOK_ID + ", " + ChangeEntry.COLUMN_OPERATION + ") VALUES (new."
+                + BookEntry._ID + ", '" + ChangeEntry.OPERATION_INSERT + "'); END;" );
+
+        createChangesUpdateTrigger( db );
+
+        db.execSQL( "CREATE TRIGGER " + TRIGGER_CHANGES_DELETE + " AFTER DELETE ON "
+                + BookEntry.TABLE_NAME + " BEGIN INSERT INTO " + ChangeEntry.TABLE_NAME + "("
+                + ChangeEntry.COLUMN_BOOK_ID + ", " + ChangeEntry.COLUMN_OPERATION + ") VALUES (old."
+                + BookEntry._ID + ", '" + ChangeEntry.OPERATION_DELETE + "'); END;" );
+
+        // A supplier's new name or phone number changes each of its books
+        String[] supplierColumns = {
+                SupplierEntry.COLUMN_SUPPLIER_NAME,
+                SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER};
+        String[] supplierChangedColumns = {
+                BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+                BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER};
+        db.execSQL( "CREATE TRIGGER " + TRIGGER_CHANGES_SUPPLIER_UPDATE + " AFTER UPDATE ON "
+                + SupplierEntry.TABLE_NAME + " WHEN " + buildAnyChanged( supplierColumns )
+                + " BEGIN INSERT INTO " + ChangeEntry.TABLE_NAME + "(" + ChangeEntry.COLUMN_BOOK_ID
+                + ", " + ChangeEntry.COLUMN_OPERATION + ", " + ChangeEntry.COLUMN_CHANGED_COLUMNS
+                + ") SELECT " + BookEntry._ID + ", '" + ChangeEntry.OPERATION_UPDATE + "', "
+                + buildChangedColumns( supplierColumns, supplierChangedColumns ) + " FROM "
+                + BookEntry.TABLE_NAME + " WHERE " + BookEntry.COLUMN_SUPPLIER_ID + " = new."
+                + SupplierEntry._ID + "; END;" );
+    }
+
+    /**
+     * Keep a ledger of the sales, which only ever has sales appended to it, and the daily sales of
+     * each book that the sales are rolled up into. A book's sales outlive the book, so neither
+     * refers to the books table.
+     */
+    private static void createSalesTables(SQLiteDatabase db) {
+        db.execSQL( "CREATE TABLE " + SaleEntry.TABLE_NAME + "("
+                + SaleEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + SaleEntry.COLUMN_BOOK_ID + " INTEGER NOT NULL, "
+                + SaleEntry.COLUMN_QUANTITY + " INTEGER NOT NULL, "
+                + SaleEntry.COLUMN_PRICE + " INTEGER NOT NULL, "
+                + SaleEntry.COLUMN_TIME + " INTEGER NOT NULL DEFAULT (" + NOW_MILLIS + "));" );
+
+        // The primary key finds the sales of a range of days, and the index those of one book
+        db.execSQL( "CREATE TABLE " + DailySalesEntry.TABLE_NAME + "("
+                + DailySalesEntry.COLUMN_DAY + " TEXT NOT NULL, "
+                + DailySalesEntry.COLUMN_BOOK_ID + " INTEGER NOT NULL, "
+                + DailySalesEntry.COLUMN_QUANTITY + " INTEGER NOT NULL, "
+                + DailySalesEntry.COLUMN_REVENUE + " INTEGER NOT NULL, "
+                + "PRIMARY KEY (" + DailySalesEntry.COLUMN_DAY + ", "
+                + DailySalesEntry.COLUMN_BOOK_ID + "));" );
+        db.execSQL( "CREATE INDEX " + INDEX_DAILY_SALES_BOOK + " ON " + DailySalesEntry.TABLE_NAME
+                + "(" + DailySalesEntry.COLUMN_BOOK_ID + ", " + DailySalesEntry.COLUMN_DAY + ");" );
+
+        db.execSQL( "CREATE TABLE " + SALES_ROLLUP_TABLE_NAME + "("
+                + COLUMN_LAST_SALE_ID + " INTEGER NOT NULL);" );
+        db.execSQL( "INSERT INTO " + SALES_ROLLUP_TABLE_NAME + " VALUES (0);" );
+    }
+
+    /**
+     * Keep the _IDs of the books low on stock in a table of their own, so they're found without
+     * reading the quantity of every book. The triggers only write to it when a book goes below its
+     * threshold or back up, so a sale that doesn't cross the threshold costs nothing more.
+     */
+    private static void createLowStockTable(SQLiteDatabase db) {
+        db.execSQL( "CREATE TABLE " + BookEntry.LOW_STOCK_TABLE_NAME + "("
+                + BookEntry._ID + " INTEGER PRIMARY KEY);" );
+        db.execSQL( "INSERT INTO " + BookEntry.LOW_STOCK_TABLE_NAME + "(" + BookEntry._ID
+                + ") SELECT " + BookEntry._ID + " FROM " + BookEntry.TABLE_NAME + " WHERE "
+                + buildLowStock( "" ) + ";" );
+        db.execSQL( "CREATE TABLE " + LOW_STOCK_VERSION_TABLE_NAME + "("
+                + COLUMN_VERSION + " INTEGER NOT NULL);" );
+        db.execSQL( "INSERT INTO " + LOW_STOCK_VERSION_TABLE_NAME + " VALUES (0);" );
+
+        String incrementVersion = "UPDATE " + LOW_STOCK_VERSION_TABLE_NAME + " SET "
+                + COLUMN_VERSION + " = " + COLUMN_VERSION + " + 1; ";
+        db.execSQL( "CREATE TRIGGER " + TRIGGER_LOW_STOCK_INSERT + " AFTER INSERT ON "
+                + BookEntry.TABLE_NAME + " WHEN " + buildLowStock( "new." ) + " BEGIN INSERT INTO "
+                + BookEntry.LOW_STOCK_TABLE_NAME + "(" + BookEntry._ID + ") VALUES (new."
+                + BookEntry._ID + "); " + incrementVersion + "END;" );
+        db.execSQL( "CREATE TRIGGER " + TRIGGER_LOW_STOCK_UPDATE + " AFTER UPDATE OF "
+                + BookEntry.COLUMN_PRODUCT_QUANTITY + ", " + BookEntry.COLUMN_LOW_STOCK_THRESHOLD
+                + " ON " + BookEntry.TABLE_NAME + " WHEN (" + buildLowStock( "new." ) + ") != ("
+                + buildLowStock( "old." ) + ") BEGIN DELETE FROM " + BookEntry.LOW_STOCK_TABLE_NAME
+                + " WHERE " + BookEntry._ID + " = old." + BookEntry._ID + "; INSERT INTO "
+                + BookEntry.LOW_STOCK_TABLE_NAME + "(" + BookEntry._ID + ") SELECT new."
+                + BookEntry._ID + " WHERE " + buildLowStock( "new." ) + "; " + incrementVersion
+                + "END;" );
+        db.execSQL( "CREATE TRIGGER " + TRIGGER_LOW_STOCK_DELETE + " AFTER DELETE ON "
+                + BookEntry.TABLE_NAME + " WHEN " + buildLowStock( "old." ) + " BEGIN DELETE FROM "
+                + BookEntry.LOW_STOCK_TABLE_NAME + " WHERE " + BookEntry._ID + " = old."
+                + BookEntry._ID + "; " + incrementVersion + "END;" );
+    }
+
+    /**
+     * Returns the SQL condition of a book being low on stock, for the columns with the given
+     * prefix, such as "new.". Books without a threshold of their own use the default one.
+     */
+    private static String buildLowStock(String prefix) {
+        return prefix + BookEntry.COLUMN_PRODUCT_QUANTITY + " < IFNULL(" + prefix
+                + BookEntry.COLUMN_LOW_STOCK_THRESHOLD + ", " + BookEntry.LOW_STOCK_THRESHOLD + ")";
+    }
+
+    /**
+     * Create the trigger that logs the updates to the books, for the columns the books had when
+     * the log was created, and then the given ones.
+     */
+    private static void createChangesUpdateTrigger(SQLiteDatabase db, String... columns) {
+        // Only log updates that change something, naming the columns of the book that changed.
+        // A new supplier _ID also changes the supplier name and phone number of the book.
+        String[] bookColumns = new String[4 + columns.length];
+        String[] bookChangedColumns = new String[bookColumns.length];
+        bookColumns[0] = bookChangedColumns[0] = BookEntry.COLUMN_PRODUCT_NAME;
+        bookColumns[1] = bookChangedColumns[1] = BookEntry.COLUMN_PRODUCT_PRICE;
+        bookColumns[2] = bookChangedColumns[2] = BookEntry.COLUMN_PRODUCT_QUANTITY;
+        bookColumns[3] = BookEntry.COLUMN_SUPPLIER_ID;
+        bookChangedColumns[3] = BookEntry.COLUMN_SUPPLIER_ID + ","
+                + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + ","
+                + BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER;
+        for (int i = 0; i < columns.length; i++) {
+            bookColumns[4 + i] = bookChangedColumns[4 + i] = columns[i];
+        }
+
+        db.execSQL( "CREATE TRIGGER " + TRIGGER_CHANGES_UPDATE + " AFTER UPDATE ON "
+                + BookEntry.TABLE_NAME + " WHEN " + buildAnyChanged( bookColumns )
+                + " BEGIN INSERT INTO " + ChangeEntry.TABLE_NAME + "(" + ChangeEntry.COLUMN_BOOK_ID
+                + ", " + ChangeEntry.COLUMN_OPERATION + ", " + ChangeEntry.COLUMN_CHANGED_COLUMNS
+                + ") VALUES (new." + BookEntry._ID + ", '" + ChangeEntry.OPERATION_UPDATE + "', "
+                + buildChangedColumns( bookColumns, bookChangedColumns ) + "); END;" );
+    }
+
+    /**
+     * Returns the condition, for an update trigger, that any of the given columns changed.
+     */
+    private static String buildAnyChanged(String[] columns) {
+        StringBuilder condition = new StringBuilder();
+        for (String column : columns) {
+            if (condition.length() > 0) {
+                condition.append( " OR " );
+            }
+            condition.append( "old." ).append( column ).append( " IS NOT new." ).append( column );
+        }
+        return condition.toString();
+    }
+
+    /**
+     * Returns the expression, for an update trigger, that lists the changed columns separated by
+     * commas. Each of the columns is listed under the names at the same index.
+     */
+    private static String buildChangedColumns(String[] columns, String[] names) {
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (list.length() > 0) {
+                list.append( " || " );
+            }
+            list.append( "CASE WHEN old." ).append( columns[i] ).append( " IS NOT new." )
+                    .append( columns[i] ).append( " THEN '," ).append( names[i] )
+                    .append( "' ELSE '' END" );
+        }
+        // Drop the leading comma
+        return "substr(" + list + ", 2)";
+    }
+
+    /**
+     * Journaling settings for the database. The defaults suit a catalog that is read much more
+     * often than it is written, on a phone's flash storage. They are applied to the connection
+     * that writes, so they govern how writes are committed and checkpointed.
+     */
+    public static final class Settings {
+
+        /**
+         * Synchronous mode that syncs to storage at every commit. Nothing committed is ever lost.
+         */
+        public static final String SYNCHRONOUS_FULL = "FULL";
+
+        /**
+         * Synchronous mode that only syncs to storage at checkpoints in write-ahead logging mode.
+         * A power loss can roll back the last commits, but it can't corrupt the database.
+         */
+        public static final String SYNCHRONOUS_NORMAL = "NORMAL";
+
+        /**
+         * Synchronous mode that never syncs to storage. Only for throwaway databases.
+         */
+        public static final String SYNCHRONOUS_OFF = "OFF";
+
+        private boolean writeAheadLogging = true;
+        private String synchronousMode = SYNCHRONOUS_NORMAL;
+        private int checkpointPages = 1000;
+        private long journalSizeLimitBytes = 4 * 1024 * 1024;
+        private int pageSize = 4096;
+
+        /**
+         * Whether to use write-ahead logging (the default) or a rollback journal.
+         */
+        public Settings setWriteAheadLogging(boolean writeAheadLogging) {
+            this.writeAheadLogging = writeAheadLogging;
+            return this;
+        }
+
+        /**
+         * One of the SYNCHRONOUS_ modes. {@link #SYNCHRONOUS_NORMAL} by default. It's set on the
+         * connection that writes, which makes every commit.
+         */
+        public Settings setSynchronousMode(String synchronousMode) {
+            if (!SYNCHRONOUS_FULL.equals( synchronousMode )
+                    && !SYNCHRONOUS_NORMAL.equals( synchronousMode )
+                    && !SYNCHRONOUS_OFF.equals( synchronousMode )) {
+                throw new IllegalArgumentException( "Unknown synchronous mode " + synchronousMode );
+            }
+            this.synchronousMode = synchronousMode;
+            return this;
+        }
+
+        /**
+         * The checkpoint policy in write-ahead logging mode: the log is checkpointed into the
+         * database once it holds this many pages (1000 by default), and is then truncated back
+         * to at most the journal size limit (4 MiB by default).
+         */
+        public Settings setCheckpointPolicy(int checkpointPages, long journalSizeLimitBytes) {
+            this.checkpointPages = checkpointPages;
+            this.journalSizeLimitBytes = journalSizeLimitBytes;
+            return this;
+        }
+
+        /**
+         * The page size of a new database, a power of 2 between 512 and 65536 (4096 by default).
+         * It has no effect on an existing database.
+         */
+        public Settings setPageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
     }
-}
\ No newline at end of file
+}
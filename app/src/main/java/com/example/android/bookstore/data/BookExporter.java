@@ -0,0 +1,229 @@
+package com.example.android.bookstore.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writes all the books to a stream as CSV or JSON Lines, row by row. The books are read in
+ * chunks in _ID order, each chunk a separate query that seeks straight to where the last one
+ * ended. Only one chunk is ever in memory, and the first bytes are written as soon as the first
+ * chunk has been read, however many books there are.
+ */
+class BookExporter {
+
+    /**
+     * Number of books read per query
+     */
+    static final int CHUNK_SIZE = 500;
+
+    /**
+     * The columns exported, in order. The CSV header uses the same names as
+     * {@link BookImporter}, so an export can be imported again.
+     */
+    private static final String[] COLUMNS = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRODUCT_PRICE,
+            BookEntry.COLUMN_PRODUCT_QUANTITY,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER,
+            BookEntry.COLUMN_ISBN,
+            BookEntry.COLUMN_LOW_STOCK_THRESHOLD};
+
+    /**
+     * Indices of the columns in {@link #COLUMNS}
+     */
+    private static final int ID = 0;
+    private static final int NAME = 1;
+    private static final int PRICE = 2;
+    private static final int QUANTITY = 3;
+    private static final int SUPPLIER_NAME = 4;
+    private static final int SUPPLIER_PHONE_NUMBER = 5;
+    private static final int ISBN = 6;
+    private static final int LOW_STOCK_THRESHOLD = 7;
+
+    private final SQLiteDatabase database;
+
+    private final Writer writer;
+
+    private final boolean jsonLines;
+
+    /**
+     * Writes the CSV fields and records to the {@link #writer}
+     */
+    private final CsvWriter csvWriter;
+
+    /**
+     * Buffer the numbers are written into, so they don't each allocate a String
+     */
+    private final char[] numberChars = new char[PriceFormatter.MAX_LENGTH];
+
+    /**
+     * @param mimeType {@link BookContract#MIME_TYPE_CSV} or {@link BookContract#MIME_TYPE_JSON_LINES}
+     */
+    BookExporter(SQLiteDatabase database, String mimeType, Writer writer) {
+        if (!BookContract.MIME_TYPE_CSV.equals( mimeType )
+                && !BookContract.MIME_TYPE_JSON_LINES.equals( mimeType )) {
+            throw new IllegalArgumentException( "Can't export books as " + mimeType );
+        }
+        this.database = database;
+        this.writer = writer;
+        jsonLines = BookContract.MIME_TYPE_JSON_LINES.equals( mimeType );
+        csvWriter = new CsvWriter( writer );
+    }
+
+    /**
+     * Write all the books. The writer is flushed, but not closed.
+     *
+     * @throws IOException if the books can't be written, for instance because the reader
+     *                     closed its end of the pipe
+     */
+    void export() throws IOException {
+        if (!jsonLines) {
+            csvWriter.writeRecord( Arrays.asList( COLUMNS ) );
+        }
+
+        String[] selectionArgs = new String[1];
+        long lastId = 0;
+        boolean more = true;
+        while (more) {
+            selectionArgs[0] = String.valueOf( lastId );
+            Cursor cursor = database.query( BookEntry.DETAILS_VIEW_NAME, COLUMNS, BookEntry._ID + ">?",
+                    selectionArgs, null, null, BookEntry._ID, String.valueOf( CHUNK_SIZE ) );
+            try {
+                more = cursor.getCount() == CHUNK_SIZE;
+                while (cursor.moveToNext()) {
+                    lastId = cursor.getLong( ID );
+                    if (jsonLines) {
+                        writeJsonLine( cursor );
+                    } else {
+                        writeCsvLine( cursor );
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        writer.flush();
+    }
+
+    private void writeCsvLine(Cursor cursor) throws IOException {
+        int end = numberChars.length;
+        int start = writeDigits( cursor.getLong( ID ), numberChars, end );
+        csvWriter.writeUnquotedField( numberChars, start, end - start );
+        csvWriter.writeField( cursor.getString( NAME ) );
+        start = PriceFormatter.writeDollars( cursor.getLong( PRICE ), numberChars, end );
+        csvWriter.writeUnquotedField( numberChars, start, end - start );
+        start = writeDigits( cursor.getLong( QUANTITY ), numberChars, end );
+        csvWriter.writeUnquotedField( numberChars, start, end - start );
+        csvWriter.writeField( cursor.getString( SUPPLIER_NAME ) );
+        csvWriter.writeField( cursor.getString( SUPPLIER_PHONE_NUMBER ) );
+        csvWriter.writeField( cursor.getString( ISBN ) );
+        // Leave the threshold empty for the books that use the default one
+        if (cursor.isNull( LOW_STOCK_THRESHOLD )) {
+            csvWriter.writeField( null );
+        } else {
+            start = writeDigits( cursor.getLong( LOW_STOCK_THRESHOLD ), numberChars, end );
+            csvWriter.writeUnquotedField( numberChars, start, end - start );
+        }
+        csvWriter.endRecord();
+    }
+
+    private void writeJsonLine(Cursor cursor) throws IOException {
+        writer.write( "{\"" + BookEntry._ID + "\":" );
+        writeNumber( cursor.getLong( ID ) );
+        writer.write( ",\"" + BookEntry.COLUMN_PRODUCT_NAME + "\":" );
+        writeJsonString( cursor.getString( NAME ) );
+        writer.write( ",\"" + BookEntry.COLUMN_PRODUCT_PRICE + "\":" );
+        writePrice( cursor.getLong( PRICE ) );
+        writer.write( ",\"" + BookEntry.COLUMN_PRODUCT_QUANTITY + "\":" );
+        writeNumber( cursor.getLong( QUANTITY ) );
+        writer.write( ",\"" + BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME + "\":" );
+        writeJsonString( cursor.getString( SUPPLIER_NAME ) );
+        writer.write( ",\"" + BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER + "\":" );
+        writeJsonString( cursor.getString( SUPPLIER_PHONE_NUMBER ) );
+        writer.write( ",\"" + BookEntry.COLUMN_ISBN + "\":" );
+        writeJsonString( cursor.getString( ISBN ) );
+        writer.write( ",\"" + BookEntry.COLUMN_LOW_STOCK_THRESHOLD + "\":" );
+        if (cursor.isNull( LOW_STOCK_THRESHOLD )) {
+            writer.write( "null" );
+        } else {
+            writeNumber( cursor.getLong( LOW_STOCK_THRESHOLD ) );
+        }
+        writer.write( "}\n" );
+    }
+
+    private void writeNumber(long number) throws IOException {
+        int end = numberChars.length;
+        int start = writeDigits( number, numberChars, end );
+        writer.write( numberChars, start, end - start );
+    }
+
+    /**
+     * Write the price in dollars, such as 19.99
+     */
+    private void writePrice(long cents) throws IOException {
+        int end = numberChars.length;
+        int start = PriceFormatter.writeDollars( cents, numberChars, end );
+        writer.write( numberChars, start, end - start );
+    }
+
+    /**
+     * Write the decimal digits of a non-negative number into the buffer, ending just before
+     * {@code end}. Returns the index of the first digit.
+     */
+    private static int writeDigits(long number, char[] buffer, int end) {
+        do {
+            buffer[--end] = (char) ('0' + number % 10);
+            number /= 10;
+        } while (number > 0);
+        return end;
+    }
+
+    /**
+     * Write a JSON string, escaping the quotes, backslashes and control characters in it.
+     */
+    private void writeJsonString(String value) throws IOException {
+        if (value == null) {
+            writer.write( "null" );
+            return;
+        }
+
+        writer.write( '"' );
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt( i );
+            switch (c) {
+                case '"':
+                    writer.write( "\\\"" );
+                    break;
+                case '\\':
+                    writer.write( "\\\\" );
+                    break;
+                case '\n':
+                    writer.write( "\\n" );
+                    break;
+                case '\r':
+                    writer.write( "\\r" );
+                    break;
+                case '\t':
+                    writer.write( "\\t" );
+                    break;
+                default:
+                    // The line and paragraph separators are valid JSON, but not valid JavaScript
+                    if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                        writer.write( String.format( "\\u%04x", (int) c ) );
+                    } else {
+                        writer.write( c );
+                    }
+                    break;
+            }
+        }
+        writer.write( '"' );
+    }
+}
@@ -0,0 +1,506 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.text.TextUtils;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Imports a catalog of books from a CSV file. The first line names the columns: product_name,
+ * price (in dollars), quantity, supplier_name, supplier_phone_number, isbn and
+ * low_stock_threshold, in any order. Only the name, price and supplier name are required.
+ * ISBNs are normalized with {@link BarcodeFormatter}, like the provider stores them.
+ * <p>
+ * The file is streamed a line at a time, and the books are inserted a batch at a time, each batch
+ * in a single transaction, so catalogs of any size are imported in a fixed amount of memory.
+ * Lines that aren't valid books, or whose ISBN another book has already, are skipped, and written
+ * to a reject file with the reason. This does its work on the calling thread, so call it from a
+ * background thread.
+ */
+public class BookImporter {
+
+    /**
+     * Number of lines imported in each transaction, unless set otherwise
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    /**
+     * The columns of the file, in the order they're looked up in
+     */
+    private static final String[] COLUMNS = {
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRODUCT_PRICE,
+            BookEntry.COLUMN_PRODUCT_QUANTITY,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER,
+            BookEntry.COLUMN_ISBN,
+            BookEntry.COLUMN_LOW_STOCK_THRESHOLD};
+
+    /**
+     * Columns every file must have
+     */
+    private static final String[] REQUIRED_COLUMNS = {
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRODUCT_PRICE,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME};
+
+    /**
+     * Listener for the progress of an import
+     */
+    public interface ProgressListener {
+
+        /**
+         * Called on the importing thread after each batch has been committed.
+         */
+        void onProgress(Progress progress);
+    }
+
+    /**
+     * How far an import has got
+     */
+    public static final class Progress {
+
+        /**
+         * Number of books inserted so far
+         */
+        public final int imported;
+
+        /**
+         * Number of lines rejected so far
+         */
+        public final int rejected;
+
+        /**
+         * Number of bytes of the file read so far
+         */
+        public final long bytesRead;
+
+        /**
+         * Size of the file in bytes, or -1 if it isn't known
+         */
+        public final long totalBytes;
+
+        Progress(int imported, int rejected, long bytesRead, long totalBytes) {
+            this.imported = imported;
+            this.rejected = rejected;
+            this.bytesRead = bytesRead;
+            this.totalBytes = totalBytes;
+        }
+    }
+
+    private final ContentResolver contentResolver;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    public BookImporter(ContentResolver contentResolver) {
+        this.contentResolver = contentResolver;
+    }
+
+    /**
+     * The number of lines to import in each transaction, which is the number of books inserted
+     * unless some are rejected. Larger batches import faster, but hold the database lock longer
+     * and keep more books in memory at once.
+     */
+    public BookImporter setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException( "Invalid batch size " + batchSize );
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Import the books in the CSV file at the given content or file URI. Books already committed
+     * stay in the database if the import fails or is interrupted part way.
+     *
+     * @param source     URI of the CSV file
+     * @param rejectFile file the rejected lines are written to, with their line number and the
+     *                   reason they were rejected. It is only created if a line is rejected.
+     * @param listener   to report the progress to, or null
+     * @return the final progress
+     * @throws IOException if either file can't be read or written, the file has no header with the
+     *                     required columns, or the thread was interrupted
+     * @throws android.database.SQLException if the database refuses a batch, which is then
+     *                                       rolled back as a whole
+     */
+    public Progress importBooks(Uri source, File rejectFile, ProgressListener listener)
+            throws IOException {
+        AssetFileDescriptor descriptor = contentResolver.openAssetFileDescriptor( source, "r" );
+        if (descriptor == null) {
+            throw new FileNotFoundException( "Can't open " + source );
+        }
+
+        // Don't leave the rejects of an earlier import behind
+        if (rejectFile.exists() && !rejectFile.delete()) {
+            descriptor.close();
+            throw new IOException( "Can't delete " + rejectFile );
+        }
+
+        long totalBytes = descriptor.getLength();
+        CountingInputStream input = new CountingInputStream( descriptor.createInputStream() );
+        CsvReader reader = new CsvReader( new InputStreamReader( input, UTF_8 ) );
+        Rejects rejects = null;
+        try {
+            List<String> header = reader.readRecord();
+            if (header == null) {
+                throw new IOException( "The file is empty" );
+            }
+            int[] columnIndices = findColumns( header );
+            rejects = new Rejects( rejectFile, header );
+
+            // The rejected lines are kept in the batch too, so they're written in order with
+            // the ones rejected for their ISBN when the batch is inserted
+            List<Line> batch = new ArrayList<>( batchSize );
+            int imported = 0;
+            List<String> record;
+            while ((record = reader.readRecord()) != null) {
+                Line line = new Line( reader.getLineNumber(), record );
+                try {
+                    line.book = toBook( record, header.size(), columnIndices );
+                } catch (IllegalArgumentException e) {
+                    line.error = e.getMessage();
+                }
+                batch.add( line );
+
+                if (batch.size() == batchSize) {
+                    imported += insert( batch, rejects );
+                    reportProgress( listener, imported, rejects.count, input.count, totalBytes );
+                }
+            }
+            imported += insert( batch, rejects );
+            Progress progress = new Progress( imported, rejects.count, input.count, totalBytes );
+            if (listener != null) {
+                listener.onProgress( progress );
+            }
+            return progress;
+        } finally {
+            reader.close();
+            descriptor.close();
+            if (rejects != null) {
+                rejects.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the index in the header of each of the {@link #COLUMNS}, or -1 for the ones
+     * that are missing.
+     */
+    private static int[] findColumns(List<String> header) throws IOException {
+        int[] indices = new int[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            indices[i] = -1;
+            for (int j = 0; j < header.size(); j++) {
+                if (COLUMNS[i].equalsIgnoreCase( header.get( j ).trim() )) {
+                    indices[i] = j;
+                    break;
+                }
+            }
+        }
+
+        for (String required : REQUIRED_COLUMNS) {
+            if (indices[indexOf( required )] == -1) {
+                throw new IOException( "The file has no " + required + " column" );
+            }
+        }
+        return indices;
+    }
+
+    private static int indexOf(String column) {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equals( column )) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Convert a record to the content values of a book, and check that it is a valid one.
+     *
+     * @throws IllegalArgumentException describing what is wrong with the record
+     */
+    private static ContentValues toBook(List<String> record, int columnCount, int[] columnIndices) {
+        if (record.size() != columnCount) {
+            throw new IllegalArgumentException( String.format( Locale.US,
+                    "Expected %d fields, found %d", columnCount, record.size() ) );
+        }
+
+        ContentValues values = new ContentValues();
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (columnIndices[i] == -1) {
+                continue;
+            }
+
+            // Leave empty fields out, so the validator sees them as missing
+            String field = record.get( columnIndices[i] ).trim();
+            if (TextUtils.isEmpty( field )) {
+                continue;
+            }
+
+            switch (COLUMNS[i]) {
+                case BookEntry.COLUMN_PRODUCT_PRICE:
+                    try {
+                        values.put( COLUMNS[i], PriceFormatter.parseCents( field ) );
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException( "Invalid price " + field );
+                    }
+                    break;
+                case BookEntry.COLUMN_PRODUCT_QUANTITY:
+                    try {
+                        values.put( COLUMNS[i], Integer.parseInt( field ) );
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException( "Invalid quantity " + field );
+                    }
+                    break;
+                case BookEntry.COLUMN_ISBN:
+                    // Store the code as the provider does, so the duplicates are found
+                    try {
+                        values.put( COLUMNS[i], BarcodeFormatter.normalize( field ) );
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException( "Invalid ISBN " + field );
+                    }
+                    break;
+                case BookEntry.COLUMN_LOW_STOCK_THRESHOLD:
+                    try {
+                        values.put( COLUMNS[i], Integer.parseInt( field ) );
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException( "Invalid low stock threshold " + field );
+                    }
+                    break;
+                default:
+                    values.put( COLUMNS[i], field );
+                    break;
+            }
+        }
+
+        // Apply the same rules as the provider, so a batch is never rolled back by a bad book
+        BookValidator.validateNewBook( values );
+        return values;
+    }
+
+    /**
+     * Insert the books of the batch in a single transaction, write its rejected lines in order,
+     * and clear it.
+     *
+     * @return the number of books inserted
+     */
+    private int insert(List<Line> batch, Rejects rejects) throws IOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException( "The import was interrupted" );
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        rejectDuplicateIsbns( batch );
+        List<ContentValues> books = new ArrayList<>( batch.size() );
+        for (Line line : batch) {
+            if (line.book != null) {
+                books.add( line.book );
+            }
+        }
+        int inserted = books.isEmpty() ? 0 : contentResolver.bulkInsert( BookEntry.CONTENT_URI,
+                books.toArray( new ContentValues[books.size()] ) );
+
+        for (Line line : batch) {
+            if (line.book == null) {
+                rejects.write( line );
+            }
+        }
+        batch.clear();
+        return inserted;
+    }
+
+    /**
+     * Reject the books of the batch with an ISBN that an earlier book of the batch, or a book
+     * already in the database, has. Any one of them would fail the whole batch, since ISBNs
+     * are unique.
+     */
+    private void rejectDuplicateIsbns(List<Line> batch) {
+        Set<String> isbns = new HashSet<>();
+        for (Line line : batch) {
+            String isbn = line.getIsbn();
+            if (isbn != null && !isbns.add( isbn )) {
+                line.reject( "Duplicate ISBN " + isbn );
+            }
+        }
+        if (isbns.isEmpty()) {
+            return;
+        }
+
+        // Look all of them up at once, rather than a query per book
+        Set<String> taken = new HashSet<>();
+        Cursor cursor = contentResolver.query( BookEntry.buildIsbnUri( isbns ),
+                new String[]{BookEntry.COLUMN_ISBN}, null, null, null );
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    taken.add( cursor.getString( 0 ) );
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        for (Line line : batch) {
+            String isbn = line.getIsbn();
+            if (isbn != null && taken.contains( isbn )) {
+                line.reject( "Duplicate ISBN " + isbn );
+            }
+        }
+    }
+
+    private static void reportProgress(ProgressListener listener, int imported, int rejected,
+                                       long bytesRead, long totalBytes) {
+        if (listener != null) {
+            listener.onProgress( new Progress( imported, rejected, bytesRead, totalBytes ) );
+        }
+    }
+
+    /**
+     * A record of the file, and the book it holds, or the reason it's rejected
+     */
+    private static final class Line {
+
+        final long number;
+
+        final List<String> record;
+
+        /**
+         * The book to insert, or null if the line is rejected
+         */
+        ContentValues book;
+
+        /**
+         * Why the line is rejected, or null if it isn't
+         */
+        String error;
+
+        Line(long number, List<String> record) {
+            this.number = number;
+            this.record = record;
+        }
+
+        /**
+         * Returns the normalized ISBN of the book, or null if it has none or the line is rejected
+         */
+        String getIsbn() {
+            return book == null ? null : book.getAsString( BookEntry.COLUMN_ISBN );
+        }
+
+        void reject(String error) {
+            book = null;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Writes the rejected lines to the reject file, which is only created with the first of them
+     */
+    private static final class Rejects {
+
+        private final File file;
+
+        private final List<String> header;
+
+        private CsvWriter writer;
+
+        /**
+         * Number of lines written so far
+         */
+        int count;
+
+        Rejects(File file, List<String> header) {
+            this.file = file;
+            this.header = header;
+        }
+
+        /**
+         * Write the line with its number and the reason it was rejected, creating the file first
+         * with the header of the imported file after the line and error columns.
+         */
+        void write(Line line) throws IOException {
+            if (writer == null) {
+                writer = new CsvWriter( new OutputStreamWriter( new FileOutputStream( file ), UTF_8 ) );
+                List<String> rejectHeader = new ArrayList<>( header.size() + 2 );
+                rejectHeader.add( "line" );
+                rejectHeader.add( "error" );
+                rejectHeader.addAll( header );
+                writer.writeRecord( rejectHeader );
+            }
+
+            line.record.add( 0, String.valueOf( line.number ) );
+            line.record.add( 1, line.error );
+            writer.writeRecord( line.record );
+            count++;
+        }
+
+        void close() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes read through it, to report the progress through the file.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        /**
+         * Only written and read by the importing thread
+         */
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super( in );
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read( buffer, offset, length );
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip( n );
+            count += skipped;
+            return skipped;
+        }
+    }
+}
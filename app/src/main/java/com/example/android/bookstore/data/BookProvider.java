@@ -1,15 +1,54 @@
 package com.example.android.bookstore.data;
 
+import android.content.ClipDescription;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
+import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.MergeCursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.os.Process;
+import android.text.TextUtils;
 import android.util.Log;
+import android.util.LruCache;
 
 import com.example.android.bookstore.data.BookContract.BookEntry;
+import com.example.android.bookstore.data.BookContract.ChangeEntry;
+import com.example.android.bookstore.data.BookContract.DailySalesEntry;
+import com.example.android.bookstore.data.BookContract.SaleEntry;
+import com.example.android.bookstore.data.BookContract.SupplierEntry;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 /**
  * {@link ContentProvider} for Pets app.
@@ -25,6 +64,61 @@ public class BookProvider extends ContentProvider {
      */
     private static final int BOOK_ID = 101;
 
+    /**
+     * URI matcher code for the content URI for a full-text search of the books
+     */
+    private static final int BOOKS_SEARCH = 102;
+
+    /**
+     * URI matcher code for the content URI for an export of all the books
+     */
+    private static final int BOOKS_EXPORT = 103;
+
+    /**
+     * URI matcher code for the content URI for the log of changes to the books
+     */
+    private static final int BOOK_CHANGES = 104;
+
+    /**
+     * URI matcher code for the content URI for the books with any of the ISBNs or EANs given
+     */
+    private static final int BOOKS_ISBN = 105;
+
+    /**
+     * URI matcher code for the content URI for the book with a single ISBN or EAN
+     */
+    private static final int BOOK_ISBN = 106;
+
+    /**
+     * URI matcher code for the content URI for the books low on stock
+     */
+    private static final int BOOKS_LOW_STOCK = 107;
+
+    /**
+     * URI matcher code for the content URI for the suppliers table
+     */
+    private static final int SUPPLIERS = 200;
+
+    /**
+     * URI matcher code for the content URI for a single supplier in the suppliers table
+     */
+    private static final int SUPPLIER_ID = 201;
+
+    /**
+     * URI matcher code for the content URI for the books of a single supplier
+     */
+    private static final int SUPPLIER_BOOKS = 202;
+
+    /**
+     * URI matcher code for the content URI for the daily sales
+     */
+    private static final int SALES_DAILY = 300;
+
+    /**
+     * URI matcher code for the content URI for the top selling books
+     */
+    private static final int SALES_TOP = 301;
+
     /**
      * UriMatcher object to match a content URI to a corresponding code.
      * The input passed into the constructor represents the code to return for the root URI.
@@ -38,6 +132,37 @@ public class BookProvider extends ContentProvider {
         uriMatcher.addURI( BookContract.CONTENT_AUTHORITY, BookContract.PATH_BOOKS, BOOKS );
 
         uriMatcher.addURI( BookContract.CONTENT_AUTHORITY, BookContract.PATH_BOOKS + "/#", BOOK_ID );
+
+        uriMatcher.addURI( BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_BOOKS + "/" + BookContract.PATH_SEARCH + "/*", BOOKS_SEARCH );
+
+        uriMatcher.addURI( BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_BOOKS + "/" + BookContract.PATH_EXPORT, BOOKS_EXPORT );
+
+        uriMatcher.addURI( BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_BOOKS + "/" + BookContract.PATH_CHANGES, BOOK_CHANGES );
+
+        uriMatcher.addURI( BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_BOOKS + "/" + BookContract.PATH_ISBN, BOOKS_ISBN );
+
+        uriMatcher.addURI( BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_BOOKS + "/" + BookContract.PATH_ISBN + "/*", BOOK_ISBN );
+
+        uriMatcher.addURI( BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_BOOKS + "/" + BookContract.PATH_LOW_STOCK, BOOKS_LOW_STOCK );
+
+        uriMatcher.addURI( BookContract.CONTENT_AUTHORITY, BookContract.PATH_SUPPLIERS, SUPPLIERS );
+
+        uriMatcher.addURI( BookContract.CONTENT_AUTHORITY, BookContract.PATH_SUPPLIERS + "/#", SUPPLIER_ID );
+
+        uriMatcher.addURI( BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_SUPPLIERS + "/#/" + BookContract.PATH_BOOKS, SUPPLIER_BOOKS );
+
+        uriMatcher.addURI( BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_SALES + "/" + BookContract.PATH_DAILY, SALES_DAILY );
+
+        uriMatcher.addURI( BookContract.CONTENT_AUTHORITY,
+                BookContract.PATH_SALES + "/" + BookContract.PATH_TOP, SALES_TOP );
     }
 
     /**
@@ -51,38 +176,375 @@ public class BookProvider extends ContentProvider {
     private BookDbHelper DbHelper;
 
     /**
-     * Initializes the provider and the database helper object.
+     * Set while a batch is running on the current thread, so the single row operations it is
+     * made of don't each notify the listeners. The batch sends one notification when it's done.
+     */
+    private final ThreadLocal<Boolean> applyingBatch = new ThreadLocal<>();
+
+    /**
+     * Most books an update notifies one by one. Updates to more books notify the whole collection.
+     */
+    private static final int MAX_BOOK_NOTIFICATIONS = 50;
+
+    /**
+     * The types the books can be exported as, the default first
+     */
+    private static final String[] EXPORT_TYPES = {
+            BookContract.MIME_TYPE_CSV,
+            BookContract.MIME_TYPE_JSON_LINES};
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+    /**
+     * Counts the changes to the books. It is only ever incremented, after each change has been
+     * committed, so statistics computed at one generation are out of date once it has moved on.
+     */
+    private final AtomicLong booksGeneration = new AtomicLong();
+
+    /**
+     * The last statistics computed, with the generation of the books they were computed at
+     */
+    private volatile CachedStats cachedStats;
+
+    /**
+     * The compiled statements of each thread for the most common writes
+     */
+    private final ThreadLocal<BookStatements> statements = new ThreadLocal<>();
+
+    /**
+     * Whether the most common writes go through the compiled {@link #statements}, rather than
+     * through ContentValues or statements compiled for each call. Only benchmarks turn it off,
+     * to compare the two.
+     */
+    private volatile boolean compiledWrites = true;
+
+    /**
+     * The URI the sales reports are notified on, which both of them are under
+     */
+    private static final Uri SALES_URI =
+            Uri.withAppendedPath( BookContract.BASE_CONTENT_URI, BookContract.PATH_SALES );
+
+    /**
+     * A day in the {@link DailySalesEntry#QUERY_PARAMETER_FROM} and
+     * {@link DailySalesEntry#QUERY_PARAMETER_TO} of a sales report
+     */
+    private static final Pattern DAY_PATTERN = Pattern.compile( "\\d{4}-\\d{2}-\\d{2}" );
+
+    /**
+     * The days a sales report covers when it isn't given its first or last one
+     */
+    private static final String FIRST_DAY = "0000-01-01";
+    private static final String LAST_DAY = "9999-12-31";
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000;
+
+    /**
+     * SQL expression of the local date of a sale in the ledger, as "yyyy-MM-dd"
+     */
+    private static final String SALE_DAY = "date(" + SaleEntry.COLUMN_TIME
+            + " / 1000, 'unixepoch', 'localtime')";
+
+    /**
+     * Returns the _ID of the last sale rolled up into the daily sales
+     */
+    private static final String LAST_ROLLED_UP_SALE_SQL = "SELECT " + BookDbHelper.COLUMN_LAST_SALE_ID
+            + " FROM " + BookDbHelper.SALES_ROLLUP_TABLE_NAME;
+
+    /**
+     * Returns the _ID of the last sale before the current day that comes after the one bound
+     * second, or the one bound first if there is none. Only the sales not rolled up yet are read.
+     */
+    private static final String LAST_SALE_TO_ROLL_UP_SQL = "SELECT IFNULL(MAX(" + SaleEntry._ID
+            + "), ?) FROM " + SaleEntry.TABLE_NAME + " WHERE " + SaleEntry._ID + " > ? AND "
+            + SALE_DAY + " < date('now', 'localtime')";
+
+    /**
+     * Adds the sales after the _ID bound first, up to the _ID bound second, to the daily sales of
+     * their book and day. SQLite before 3.24 has no upsert, so the sums are joined with the daily
+     * sales already there and replace them.
+     */
+    private static final String ROLL_UP_SQL = "INSERT OR REPLACE INTO " + DailySalesEntry.TABLE_NAME
+            + "(" + DailySalesEntry.COLUMN_DAY + ", " + DailySalesEntry.COLUMN_BOOK_ID + ", "
+            + DailySalesEntry.COLUMN_QUANTITY + ", " + DailySalesEntry.COLUMN_REVENUE + ") SELECT s."
+            + DailySalesEntry.COLUMN_DAY + ", s." + DailySalesEntry.COLUMN_BOOK_ID + ", s."
+            + DailySalesEntry.COLUMN_QUANTITY + " + IFNULL(d." + DailySalesEntry.COLUMN_QUANTITY
+            + ", 0), s." + DailySalesEntry.COLUMN_REVENUE + " + IFNULL(d."
+            + DailySalesEntry.COLUMN_REVENUE + ", 0) FROM (SELECT " + SALE_DAY + " AS "
+            + DailySalesEntry.COLUMN_DAY + ", " + SaleEntry.COLUMN_BOOK_ID + ", SUM("
+            + SaleEntry.COLUMN_QUANTITY + ") AS " + DailySalesEntry.COLUMN_QUANTITY + ", SUM("
+            + SaleEntry.COLUMN_QUANTITY + " * " + SaleEntry.COLUMN_PRICE + ") AS "
+            + DailySalesEntry.COLUMN_REVENUE + " FROM " + SaleEntry.TABLE_NAME + " WHERE "
+            + SaleEntry._ID + " > ? AND " + SaleEntry._ID + " <= ? GROUP BY "
+            + DailySalesEntry.COLUMN_DAY + ", " + SaleEntry.COLUMN_BOOK_ID + ") AS s LEFT JOIN "
+            + DailySalesEntry.TABLE_NAME + " AS d ON d." + DailySalesEntry.COLUMN_DAY + " = s."
+            + DailySalesEntry.COLUMN_DAY + " AND d." + DailySalesEntry.COLUMN_BOOK_ID + " = s."
+            + DailySalesEntry.COLUMN_BOOK_ID;
+
+    /**
+     * The top sellers from the day bound first to the day bound second, with the names of the
+     * books. Only the daily sales of those days are read, through their primary key.
+     */
+    private static final String TOP_SELLERS_TABLE = "(SELECT d." + DailySalesEntry.COLUMN_BOOK_ID
+            + " AS " + BookEntry._ID + ", d." + DailySalesEntry.COLUMN_BOOK_ID + " AS "
+            + DailySalesEntry.COLUMN_BOOK_ID + ", b." + BookEntry.COLUMN_PRODUCT_NAME + " AS "
+            + BookEntry.COLUMN_PRODUCT_NAME + ", SUM(d." + DailySalesEntry.COLUMN_QUANTITY + ") AS "
+            + DailySalesEntry.COLUMN_QUANTITY + ", SUM(d." + DailySalesEntry.COLUMN_REVENUE + ") AS "
+            + DailySalesEntry.COLUMN_REVENUE + " FROM " + DailySalesEntry.TABLE_NAME + " AS d LEFT JOIN "
+            + BookEntry.TABLE_NAME + " AS b ON b." + BookEntry._ID + " = d."
+            + DailySalesEntry.COLUMN_BOOK_ID + " WHERE d." + DailySalesEntry.COLUMN_DAY + " >= ? AND d."
+            + DailySalesEntry.COLUMN_DAY + " <= ? GROUP BY d." + DailySalesEntry.COLUMN_BOOK_ID + ")";
+
+    /**
+     * The local day, counted from the epoch, the sales were last rolled up on, or -1 if they
+     * haven't been since the provider started. The first report of a day rolls up the day before.
+     */
+    private volatile long rolledUpDay = -1;
+
+    /**
+     * Selects the books of the details view that are low on stock, through the table of their _IDs
+     */
+    private static final String LOW_STOCK_SELECTION = BookEntry._ID + " IN (SELECT "
+            + BookEntry._ID + " FROM " + BookEntry.LOW_STOCK_TABLE_NAME + ")";
+
+    /**
+     * Returns the version of the books low on stock, which moves on each time a book goes below
+     * its threshold or back up
+     */
+    private static final String LOW_STOCK_VERSION_SQL = "SELECT " + BookDbHelper.COLUMN_VERSION
+            + " FROM " + BookDbHelper.LOW_STOCK_VERSION_TABLE_NAME;
+
+    /**
+     * The version of the books low on stock their observers were last notified at, or -1 if it
+     * hasn't been read yet
+     */
+    private final AtomicLong lowStockVersion = new AtomicLong( -1 );
+
+    /**
+     * Query of the first book of the list, as the list asks for it, to warm up the database
+     */
+    private static final String PREWARM_SQL = "SELECT " + BookEntry._ID + ", "
+            + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_PRODUCT_PRICE + ", "
+            + BookEntry.COLUMN_PRODUCT_QUANTITY + " FROM " + BookEntry.DETAILS_VIEW_NAME
+            + " ORDER BY " + BookEntry._ID + " LIMIT 1";
+
+    /**
+     * The URI matcher codes the metrics are broken down by, and their names
+     */
+    private static final int[] METRICS_CODES = {
+            BOOKS, BOOK_ID, BOOKS_SEARCH, BOOKS_EXPORT, BOOK_CHANGES, BOOKS_ISBN, BOOK_ISBN,
+            BOOKS_LOW_STOCK, SUPPLIERS, SUPPLIER_ID, SUPPLIER_BOOKS, SALES_DAILY, SALES_TOP};
+    private static final String[] METRICS_CODE_NAMES = {
+            "books", "book_id", "books_search", "books_export", "book_changes", "books_isbn",
+            "book_isbn", "books_low_stock", "suppliers", "supplier_id", "supplier_books",
+            "sales_daily", "sales_top"};
+
+    /**
+     * Most codes looked up in a single query, well below SQLite's limit of 999 arguments
+     */
+    private static final int MAX_CODES_PER_QUERY = 500;
+
+    /**
+     * Operations that take at least this long, in microseconds, are logged with their query plan
+     */
+    private static final long SLOW_OPERATION_MICROS = 100 * 1000;
+
+    /**
+     * Call counts, row counts and latencies of the operations, per URI
+     */
+    private final ProviderMetrics metrics = new ProviderMetrics( METRICS_CODES, METRICS_CODE_NAMES );
+
+    /**
+     * The SQL and the arguments of the last query run on this thread, while the metrics are
+     * enabled, so a slow query can be logged with its query plan
+     */
+    private final ThreadLocal<Object[]> lastQuery = new ThreadLocal<>();
+
+    /**
+     * Number of books kept in {@link #rowCache}
+     */
+    private static final int ROW_CACHE_SIZE = 256;
+
+    /**
+     * The columns of a book, in the order they're kept in {@link #rowCache}
+     */
+    private static final String[] ROW_COLUMNS = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRODUCT_PRICE,
+            BookEntry.COLUMN_PRODUCT_QUANTITY,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME,
+            BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER,
+            BookEntry.COLUMN_ISBN,
+            BookEntry.COLUMN_LOW_STOCK_THRESHOLD};
+
+    /**
+     * The values of the books last looked up by _ID, in {@link #ROW_COLUMNS} order, so the books
+     * looked up the most are served without touching the database. A book is removed as soon as
+     * it changes. Lock on the cache to change it together with {@link #booksGeneration}.
+     */
+    private final LruCache<Long, Object[]> rowCache = new LruCache<>( ROW_CACHE_SIZE );
+
+    /**
+     * Initializes the provider and the database helper object. The database itself is opened in
+     * the background, so the provider is ready without waiting for it, and the first query of the
+     * list usually finds it open already. The log of changes is compacted after that, and the
+     * sales of the days that are over are rolled up.
      */
     @Override
     public boolean onCreate() {
         DbHelper = new BookDbHelper( getContext() );
+        new Thread( new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority( Process.THREAD_PRIORITY_BACKGROUND );
+                prewarmDatabase();
+                try {
+                    compactChanges( ChangeEntry.DEFAULT_RETENTION_MILLIS );
+                } catch (RuntimeException e) {
+                    Log.w( LOG_TAG, "Failed to compact the changes", e );
+                }
+                try {
+                    rollUpSales( SaleEntry.DEFAULT_RETENTION_MILLIS );
+                } catch (RuntimeException e) {
+                    Log.w( LOG_TAG, "Failed to roll up the sales", e );
+                }
+            }
+        }, LOG_TAG + " prewarm" ).start();
         return true;
     }
 
+    /**
+     * Open the database, which upgrades it if needed, and read the first book of the list, which
+     * parses the schema and reads the first pages of the books into SQLite's cache. A query that
+     * comes in meanwhile waits for the database to be open, rather than opening it a second time.
+     */
+    private void prewarmDatabase() {
+        try {
+            SQLiteDatabase database = DbHelper.getWritableDatabase();
+            Cursor cursor = database.rawQuery( PREWARM_SQL, null );
+            try {
+                cursor.moveToFirst();
+            } finally {
+                cursor.close();
+            }
+            // Start from the books low on stock as they are, so the first write doesn't notify
+            lowStockVersion.compareAndSet( -1,
+                    DatabaseUtils.longForQuery( database, LOW_STOCK_VERSION_SQL, null ) );
+        } catch (RuntimeException e) {
+            // The first query will run into the same problem, and report it to its caller
+            Log.w( LOG_TAG, "Failed to prewarm the database", e );
+        }
+    }
+
+    /**
+     * Release the database. The provider can't be used anymore afterwards. Android never calls
+     * this, but tests and benchmarks do to start over with a new provider.
+     */
+    @Override
+    public void shutdown() {
+        // The statements of the other threads are compiled again when they next see the database
+        BookStatements threadStatements = statements.get();
+        if (threadStatements != null) {
+            threadStatements.close();
+            statements.remove();
+        }
+        DbHelper.close();
+        super.shutdown();
+    }
+
     /**
      * Perform the query for the given URI. Use the given projection, selection, selection arguments,and sort order.
      */
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        long start = metrics.start();
+
+        // Figure out if the URI matcher can match the URI to a specific code
+        int match = uriMatcher.match( uri );
+        Cursor cursor = queryUri( uri, match, projection, selection, selectionArgs, sortOrder );
+
+        if (start != ProviderMetrics.NOT_STARTED) {
+            // Counting the rows runs the query now, rather than when the cursor is first read,
+            // so the time it takes is counted too
+            long micros = metrics.record( ProviderMetrics.QUERY, match, start, cursor.getCount() );
+            Object[] query = lastQuery.get();
+            lastQuery.remove();
+            if (micros >= SLOW_OPERATION_MICROS) {
+                logSlowOperation( "query", uri, micros, selection,
+                        query == null ? null : (String) query[0],
+                        query == null ? null : (String[]) query[1] );
+            }
+        }
+        return cursor;
+    }
+
+    /**
+     * Query the URI with the given URI matcher code.
+     */
+    private Cursor queryUri(Uri uri, int match, String[] projection, String selection,
+                            String[] selectionArgs, String sortOrder) {
         // Get readable database
         SQLiteDatabase database = DbHelper.getReadableDatabase();
 
         // This cursor will hold the result of the query
         Cursor cursor;
 
-        // Figure out if the URI matcher can match the URI to a specific code
-        int match = uriMatcher.match( uri );
         switch (match) {
             case BOOKS:
-                cursor = database.query( BookEntry.TABLE_NAME, projection, selection,
-                        selectionArgs, null, null, sortOrder );
+                cursor = queryBooks( database, uri, projection, selection, selectionArgs, sortOrder );
                 break;
             case BOOK_ID:
-                selection = BookEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf( ContentUris.parseId( uri ) )};
-                cursor = database.query( BookEntry.TABLE_NAME, projection, selection,
-                        selectionArgs, null, null, sortOrder );
+                cursor = queryBook( database, ContentUris.parseId( uri ), projection, selection,
+                        selectionArgs, sortOrder );
+                break;
+            case BOOKS_SEARCH:
+                cursor = searchBooks( database, uri, projection, selection, selectionArgs, sortOrder );
+                break;
+            case BOOK_CHANGES:
+                cursor = queryChanges( database, uri, projection, selection, selectionArgs, sortOrder );
+                break;
+            case BOOKS_ISBN:
+                cursor = queryIsbns( database, uri.getQueryParameters( BookEntry.QUERY_PARAMETER_CODE ),
+                        projection, selection, selectionArgs, sortOrder );
+                break;
+            case BOOK_ISBN:
+                cursor = queryIsbns( database, Collections.singletonList( uri.getLastPathSegment() ),
+                        projection, selection, selectionArgs, sortOrder );
+                break;
+            case BOOKS_LOW_STOCK:
+                // Only the books in the low stock table are read, each by its _ID
+                selection = DatabaseUtils.concatenateWhere( selection, LOW_STOCK_SELECTION );
+                if (sortOrder == null) {
+                    sortOrder = BookEntry.COLUMN_PRODUCT_QUANTITY + ", " + BookEntry._ID;
+                }
+                cursor = queryTable( database, BookEntry.DETAILS_VIEW_NAME, projection, selection,
+                        selectionArgs, sortOrder, null );
+                break;
+            case SUPPLIERS:
+                cursor = queryTable( database, SupplierEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, sortOrder, null );
+                break;
+            case SUPPLIER_ID:
+                selection = DatabaseUtils.concatenateWhere( selection, SupplierEntry._ID + "=?" );
+                selectionArgs = DatabaseUtils.appendSelectionArgs( selectionArgs,
+                        new String[]{String.valueOf( ContentUris.parseId( uri ) )} );
+                cursor = queryTable( database, SupplierEntry.TABLE_NAME, projection, selection,
+                        selectionArgs, sortOrder, null );
+                break;
+            case SUPPLIER_BOOKS:
+                // The index on the books' supplier finds them without reading the other books
+                selection = DatabaseUtils.concatenateWhere( selection, BookEntry.COLUMN_SUPPLIER_ID + "=?" );
+                selectionArgs = DatabaseUtils.appendSelectionArgs( selectionArgs,
+                        new String[]{uri.getPathSegments().get( 1 )} );
+                cursor = queryTable( database, BookEntry.DETAILS_VIEW_NAME, projection, selection,
+                        selectionArgs, sortOrder, null );
+                break;
+            case SALES_DAILY:
+                cursor = queryDailySales( database, uri, projection, selection, selectionArgs, sortOrder );
+                break;
+            case SALES_TOP:
+                cursor = queryTopSellers( database, uri, projection, selection, selectionArgs, sortOrder );
                 break;
             default:
                 throw new IllegalArgumentException( "Cannot query unknown URI " + uri );
@@ -91,210 +553,1620 @@ public class BookProvider extends ContentProvider {
         // Set notification URI on the Cursor,
         // so we know what content URI the Cursor was created for.
         // If the data at this URI changes, then we know we need to update the Cursor.
-        cursor.setNotificationUri( getContext().getContentResolver(), uri );
+        // Lists that refresh single books by themselves only need to know when the collection changes.
+        Uri notificationUri = uri;
+        if (match == BOOKS && Boolean.parseBoolean(
+                uri.getQueryParameter( BookEntry.QUERY_PARAMETER_COLLECTION_NOTIFICATIONS ) )) {
+            notificationUri = BookEntry.COLLECTION_URI;
+        } else if (match == SUPPLIER_BOOKS || match == BOOK_CHANGES || match == BOOKS_ISBN
+                || match == BOOK_ISBN) {
+            // The books of a supplier or with given codes, and the changes, change whenever one
+            // of the books does
+            notificationUri = BookEntry.CONTENT_URI;
+        } else if (match == BOOKS_LOW_STOCK) {
+            // Notified only when a book goes below its threshold or back up
+            notificationUri = BookEntry.LOW_STOCK_URI;
+        } else if (match == SALES_DAILY || match == SALES_TOP) {
+            // The reports change when the sales are rolled up, rather than with each sale
+            notificationUri = SALES_URI;
+        }
+        cursor.setNotificationUri( getContext().getContentResolver(), notificationUri );
 
         // Return the cursor
         return cursor;
     }
 
     /**
-     * Insert new data into the provider with the given ContentValues.
+     * Query the book with the given _ID. Plain lookups of the book's columns are answered from
+     * {@link #rowCache}, and the book is read into the cache on a miss. Other queries, with a
+     * selection or computed columns, go to the database.
      */
-    @Override
-    public Uri insert(Uri uri, ContentValues contentValues) {
-        final int match = uriMatcher.match( uri );
-        switch (match) {
-            case BOOKS:
-                return insertBook( uri, contentValues );
-            default:
-                throw new IllegalArgumentException( "Insertion is not supported for " + uri );
+    private Cursor queryBook(SQLiteDatabase database, long id, String[] projection,
+                             String selection, String[] selectionArgs, String sortOrder) {
+        int[] columnIndices = selection == null ? getRowColumnIndices( projection ) : null;
+        if (columnIndices == null) {
+            selection = DatabaseUtils.concatenateWhere( selection, BookEntry._ID + "=?" );
+            selectionArgs = DatabaseUtils.appendSelectionArgs( selectionArgs,
+                    new String[]{String.valueOf( id )} );
+            return queryTable( database, BookEntry.DETAILS_VIEW_NAME, projection, selection,
+                    selectionArgs, sortOrder, null );
+        }
+
+        Object[] row = rowCache.get( id );
+        if (row == null) {
+            // Read the generation before the book, so that if the book changes while it is read
+            // the old values aren't cached
+            long generation = booksGeneration.get();
+            row = readRow( database, id );
+            if (row != null) {
+                synchronized (rowCache) {
+                    if (booksGeneration.get() == generation) {
+                        rowCache.put( id, row );
+                    }
+                }
+            }
         }
+
+        // Answer with just the columns asked for
+        MatrixCursor cursor = new MatrixCursor( projection == null ? ROW_COLUMNS : projection, 1 );
+        if (row != null) {
+            Object[] values = new Object[columnIndices.length];
+            for (int i = 0; i < columnIndices.length; i++) {
+                values[i] = row[columnIndices[i]];
+            }
+            cursor.addRow( values );
+        }
+        return cursor;
     }
 
     /**
-     * Insert a book into the database with given content values. Return the new content URI
-     * for that specific row in the database.
+     * Returns the index in {@link #ROW_COLUMNS} of each column in the projection (all of them for
+     * a null projection), or null if the projection asks for anything else.
      */
-    private Uri insertBook(Uri uri, ContentValues contentValues) {
-        // Check that the name is not null
-        String name = contentValues.getAsString( BookEntry.COLUMN_PRODUCT_NAME );
-        if (name == null) {
-            throw new IllegalArgumentException( "Book requires a name" );
+    private static int[] getRowColumnIndices(String[] projection) {
+        if (projection == null) {
+            projection = ROW_COLUMNS;
         }
 
-        Integer price = contentValues.getAsInteger( BookEntry.COLUMN_PRODUCT_PRICE );
-        if (price != null && price < 0) {
-            throw new IllegalArgumentException( "Book requires a price" );
+        int[] indices = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            indices[i] = -1;
+            for (int j = 0; j < ROW_COLUMNS.length; j++) {
+                if (ROW_COLUMNS[j].equals( projection[i] )) {
+                    indices[i] = j;
+                    break;
+                }
+            }
+            if (indices[i] == -1) {
+                return null;
+            }
         }
+        return indices;
+    }
 
-        Integer quantity = contentValues.getAsInteger( BookEntry.COLUMN_PRODUCT_QUANTITY );
-        if (quantity != null && quantity < 0) {
-            throw new IllegalArgumentException( "Book requires a quantity" );
-        }
+    /**
+     * Returns the values of the book with the given _ID in {@link #ROW_COLUMNS} order, or null
+     * if there is no such book.
+     */
+    private Object[] readRow(SQLiteDatabase database, long id) {
+        Cursor cursor = queryTable( database, BookEntry.DETAILS_VIEW_NAME, ROW_COLUMNS,
+                BookEntry._ID + "=?", new String[]{String.valueOf( id )}, null, null );
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
 
-        String supplier = contentValues.getAsString( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME );
-        if (supplier == null) {
-            throw new IllegalArgumentException( "Book requires a supplier" );
+            Object[] row = new Object[ROW_COLUMNS.length];
+            for (int i = 0; i < row.length; i++) {
+                switch (cursor.getType( i )) {
+                    case Cursor.FIELD_TYPE_NULL:
+                        row[i] = null;
+                        break;
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        row[i] = cursor.getLong( i );
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        row[i] = cursor.getDouble( i );
+                        break;
+                    default:
+                        row[i] = cursor.getString( i );
+                        break;
+                }
+            }
+            return row;
+        } finally {
+            cursor.close();
         }
+    }
 
-        // No need to check supplier phone number, any value is valid ( even null ).
+    /**
+     * Search the book and supplier names for the terms in the last segment of the URI.
+     * Unless another sort order is given, books whose name matches come before books whose
+     * supplier matches, then the books that match the most often.
+     */
+    private Cursor searchBooks(SQLiteDatabase database, Uri uri, String[] projection,
+                               String selection, String[] selectionArgs, String sortOrder) {
+        // Join the books to the docids (book _IDs) the full-text search matches. offsets() lists
+        // each match as "column term offset size", starting with the lowest column.
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables( BookEntry.DETAILS_VIEW_NAME + " JOIN (SELECT docid, offsets("
+                + BookEntry.SEARCH_TABLE_NAME + ") AS match_offsets FROM "
+                + BookEntry.SEARCH_TABLE_NAME + " WHERE " + BookEntry.SEARCH_TABLE_NAME
+                + " MATCH ?) AS matches ON " + BookEntry.DETAILS_VIEW_NAME + "." + BookEntry._ID
+                + " = matches.docid" );
 
-        // Get writable database
-        SQLiteDatabase database = DbHelper.getWritableDatabase();
+        if (sortOrder == null) {
+            sortOrder = "CASE WHEN match_offsets LIKE '0 %' THEN 0 ELSE 1 END, "
+                    + "length(match_offsets) DESC, " + BookEntry.COLUMN_PRODUCT_NAME;
+        }
 
-        // Insert the new book with the given values
-        long id = database.insert( BookEntry.TABLE_NAME, null, contentValues );
-        // If the ID is -1, then the insertion failed. Log an error and return null.
-        if (id == -1) {
-            Log.e( LOG_TAG, "Failed to insert row for " + uri );
-            return null;
+        String limit = uri.getQueryParameter( BookEntry.QUERY_PARAMETER_LIMIT );
+        if (limit != null) {
+            limit = String.valueOf( parseNumber( uri, limit ) );
         }
 
-        // Notify all listeners that the data has changed for the book content URI.
-        getContext().getContentResolver().notifyChange( uri, null );
+        // The MATCH argument comes first, since the join is before the WHERE clause
+        selectionArgs = DatabaseUtils.appendSelectionArgs(
+                new String[]{buildSearchQuery( uri.getLastPathSegment() )}, selectionArgs );
 
-        // Return the new URI with the ID (of the newly inserted row) appended to the end of it
-        return ContentUris.withAppendedId( uri, id );
+        return runQuery( database, builder.buildQuery( projection, selection, null, null,
+                sortOrder, limit ), selectionArgs );
     }
 
     /**
-     * Updates the data at the given selection and selection arguments, with the new ContentValues.
+     * Query the changes to the books after the {@link ChangeEntry#QUERY_PARAMETER_SINCE} one, in
+     * the order they were made. The changes are found through the primary key, so only the ones
+     * returned are read.
      */
-    @Override
-    public int update(Uri uri, ContentValues contentValues, String selection,
-                      String[] selectionArgs) {
-        final int match = uriMatcher.match( uri );
-        switch (match) {
-            case BOOKS:
-                return updateBook( uri, contentValues, selection, selectionArgs );
-            case BOOK_ID:
-                selection = BookEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf( ContentUris.parseId( uri ) )};
-                return updateBook( uri, contentValues, selection, selectionArgs );
-            default:
-                throw new IllegalArgumentException( "Update is not supported for " + uri );
+    private Cursor queryChanges(SQLiteDatabase database, Uri uri, String[] projection,
+                                String selection, String[] selectionArgs, String sortOrder) {
+        String since = uri.getQueryParameter( ChangeEntry.QUERY_PARAMETER_SINCE );
+        selection = DatabaseUtils.concatenateWhere( selection, ChangeEntry._ID + ">?" );
+        selectionArgs = DatabaseUtils.appendSelectionArgs( selectionArgs,
+                new String[]{since == null ? "0" : String.valueOf( parseNumber( uri, since ) )} );
+
+        if (sortOrder == null) {
+            sortOrder = ChangeEntry._ID;
+        }
+
+        String limit = uri.getQueryParameter( BookEntry.QUERY_PARAMETER_LIMIT );
+        if (limit != null) {
+            limit = String.valueOf( parseNumber( uri, limit ) );
         }
+
+        return queryTable( database, ChangeEntry.TABLE_NAME, projection, selection, selectionArgs,
+                sortOrder, limit );
     }
 
     /**
-     * Update books in the database with the given content values. Apply that changes to the rows
-     * specified in the selection and selection arguments (which could be 0 or 1 or more books).
-     * Return the number of rows that were successfully updated.
+     * Query the books with the given ISBNs or EANs. Each code is a single probe of the unique
+     * index on the codes, so the cost is the number of codes, whatever the number of books. Codes
+     * that aren't valid match no book. Long lists of codes are looked up a chunk at a time, and
+     * the sort order only applies within each chunk.
      */
-    private int updateBook(Uri uri, ContentValues contentValues, String selection,
-                           String[] selectionArgs) {
-        // If the {@link BookEntry#COLUMN_PRODUCT_NAME} key is present,
-        // check that the name value is not null.
-        if (contentValues.containsKey( BookEntry.COLUMN_PRODUCT_NAME )) {
-            String name = contentValues.getAsString( BookEntry.COLUMN_PRODUCT_NAME );
-            if (name == null) {
-                throw new IllegalArgumentException( "Book requires a name" );
+    private Cursor queryIsbns(SQLiteDatabase database, List<String> codes, String[] projection,
+                              String selection, String[] selectionArgs, String sortOrder) {
+        List<String> isbns = new ArrayList<>( codes.size() );
+        for (String code : codes) {
+            try {
+                isbns.add( BarcodeFormatter.normalize( code ) );
+            } catch (NumberFormatException e) {
+                // No book has it
             }
         }
+        if (isbns.isEmpty()) {
+            // Without any codes, IN () would read all the books to find none
+            return queryTable( database, BookEntry.DETAILS_VIEW_NAME, projection,
+                    DatabaseUtils.concatenateWhere( selection, "0" ), selectionArgs, sortOrder, null );
+        }
 
-        // If the {@link BookEntry#COLUMN_PRODUCT_PRICE} key is present,
-        // check that the price value is valid.
-        if (contentValues.containsKey( BookEntry.COLUMN_PRODUCT_PRICE )) {
-            // Check that the price is greater than or equal to $0
-            Integer price = contentValues.getAsInteger( BookEntry.COLUMN_PRODUCT_PRICE );
-            if (price != null && price < 0) {
-                throw new IllegalArgumentException( "Book requires valid price" );
+        Cursor[] cursors = new Cursor[(isbns.size() + MAX_CODES_PER_QUERY - 1) / MAX_CODES_PER_QUERY];
+        for (int i = 0; i < cursors.length; i++) {
+            List<String> chunk = isbns.subList( i * MAX_CODES_PER_QUERY,
+                    Math.min( isbns.size(), (i + 1) * MAX_CODES_PER_QUERY ) );
+            StringBuilder in = new StringBuilder( BookEntry.COLUMN_ISBN ).append( " IN (" );
+            for (int j = 0; j < chunk.size(); j++) {
+                in.append( j == 0 ? "?" : ",?" );
             }
+            in.append( ')' );
+            cursors[i] = queryTable( database, BookEntry.DETAILS_VIEW_NAME, projection,
+                    DatabaseUtils.concatenateWhere( selection, in.toString() ),
+                    DatabaseUtils.appendSelectionArgs( selectionArgs,
+                            chunk.toArray( new String[chunk.size()] ) ), sortOrder, null );
         }
+        return cursors.length == 1 ? cursors[0] : new MergeCursor( cursors );
+    }
 
-        // If the {@link BookEntry#COLUMN_PRODUCT_QUANTITY} key is present,
-        // check that the quantity is valid.
-        if (contentValues.containsKey( BookEntry.COLUMN_PRODUCT_QUANTITY )) {
-            // Check that the price is greater than or equal to 0
-            Integer quantity = contentValues.getAsInteger( BookEntry.COLUMN_PRODUCT_QUANTITY );
-            if (quantity != null && quantity < 0) {
-                throw new IllegalArgumentException( "Book requires valid quantity" );
-            }
+    /**
+     * Query a table or view, like {@link SQLiteDatabase#query}.
+     */
+    private Cursor queryTable(SQLiteDatabase database, String table, String[] projection,
+                              String selection, String[] selectionArgs, String sortOrder,
+                              String limit) {
+        return runQuery( database, SQLiteQueryBuilder.buildQueryString( false, table, projection,
+                selection, null, null, sortOrder, limit ), selectionArgs );
+    }
+
+    /**
+     * Run a query, keeping its SQL for the slow query log while the metrics are enabled.
+     */
+    private Cursor runQuery(SQLiteDatabase database, String sql, String[] selectionArgs) {
+        if (metrics.isEnabled()) {
+            lastQuery.set( new Object[]{sql, selectionArgs} );
         }
+        return database.rawQuery( sql, selectionArgs );
+    }
 
-        // If the {@link BookEntry#COLUMN_PRODUCT_SUPPLIER_NAME key is present,
-        // check that the supplier name is valid
-        if (contentValues.containsKey( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME )) {
-            String supplierName = contentValues.getAsString( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME );
-            if (supplierName == null) {
-                throw new IllegalArgumentException( "Book requires a supplier" );
+    /**
+     * Turn the terms the user typed into a full-text query that matches the start of every term.
+     * Anything that isn't a letter or a digit separates terms, so the user can't type in
+     * full-text query syntax by accident.
+     */
+    private static String buildSearchQuery(String terms) {
+        StringBuilder query = new StringBuilder();
+        int start = -1;
+        for (int i = 0; i <= terms.length(); i++) {
+            boolean inTerm = i < terms.length() && Character.isLetterOrDigit( terms.charAt( i ) );
+            if (inTerm && start < 0) {
+                start = i;
+            } else if (!inTerm && start >= 0) {
+                if (query.length() > 0) {
+                    query.append( ' ' );
+                }
+                // Lower case, so that terms like "or" and "near" aren't taken as operators
+                query.append( terms.substring( start, i ).toLowerCase( Locale.ROOT ) ).append( '*' );
+                start = -1;
             }
         }
+        return query.toString();
+    }
 
-        // No need to check supplier phone number, any value is valid ( even null ).
+    /**
+     * Query the books, filtered, sorted and paged as the query parameters of the URI ask. The
+     * parameters are turned into SQL with arguments, in a shape the indexes can serve: the sort
+     * reads an index in order, and a page seeks into it rather than skipping the books before it.
+     */
+    private Cursor queryBooks(SQLiteDatabase database, Uri uri, String[] projection,
+                              String selection, String[] selectionArgs, String sortOrder) {
+        // Only the books of the given supplier, which the index on the supplier finds
+        String supplierId = uri.getQueryParameter( BookEntry.QUERY_PARAMETER_SUPPLIER_ID );
+        if (supplierId != null) {
+            selection = DatabaseUtils.concatenateWhere( selection, BookEntry.COLUMN_SUPPLIER_ID + "=?" );
+            selectionArgs = DatabaseUtils.appendSelectionArgs( selectionArgs,
+                    new String[]{String.valueOf( parseNumber( uri, supplierId ) )} );
+        }
 
-        // If there are no contentValues to update, then don't try to update the database
-        if (contentValues.size() == 0) {
-            return 0;
+        // Only the books low on stock, each below its own threshold, as kept in the low stock table
+        if (uri.getBooleanQueryParameter( BookEntry.QUERY_PARAMETER_LOW_STOCK, false )) {
+            selection = DatabaseUtils.concatenateWhere( selection, LOW_STOCK_SELECTION );
         }
 
-        // Otherwise, get writable database to update the data
-        SQLiteDatabase database = DbHelper.getWritableDatabase();
+        String sort = uri.getQueryParameter( BookEntry.QUERY_PARAMETER_SORT );
+        boolean descending = uri.getBooleanQueryParameter( BookEntry.QUERY_PARAMETER_DESCENDING, false );
+        String afterId = uri.getQueryParameter( BookEntry.QUERY_PARAMETER_AFTER_ID );
+        if (sort != null || descending || afterId != null) {
+            String sortColumn = sort == null ? null : getSortColumn( uri, sort );
+            String direction = descending ? " DESC" : "";
+            String after = descending ? "<" : ">";
+
+            // If a page was asked for, only return the books after the given one. Paging goes in
+            // the order of the sort column, then of the _ID, so the index on the sort column (or
+            // the primary key) can seek straight to the page.
+            if (afterId != null) {
+                String id = String.valueOf( parseNumber( uri, afterId ) );
+                if (sortColumn == null) {
+                    selection = DatabaseUtils.concatenateWhere( selection, BookEntry._ID + after + "?" );
+                    selectionArgs = DatabaseUtils.appendSelectionArgs( selectionArgs, new String[]{id} );
+                } else {
+                    String afterValue = uri.getQueryParameter( BookEntry.QUERY_PARAMETER_AFTER_VALUE );
+                    if (afterValue == null) {
+                        throw new IllegalArgumentException( "A page of sorted books needs "
+                                + BookEntry.QUERY_PARAMETER_AFTER_VALUE + " for " + uri );
+                    }
+                    if (!BookEntry.SORT_NAME.equals( sort )) {
+                        afterValue = String.valueOf( parseNumber( uri, afterValue ) );
+                    }
+                    // The same as (value, _ID) > (?, ?), but written so the index seeks to the value
+                    selection = DatabaseUtils.concatenateWhere( selection,
+                            sortColumn + after + "=? AND (" + sortColumn + after + "? OR "
+                                    + BookEntry._ID + after + "?)" );
+                    selectionArgs = DatabaseUtils.appendSelectionArgs( selectionArgs,
+                            new String[]{afterValue, afterValue, id} );
+                }
+            }
 
-        // Perform the update on the database and get the number of rows affected
-        int rowsUpdated = database.update( BookEntry.TABLE_NAME, contentValues, selection, selectionArgs );
+            sortOrder = (sortColumn == null ? "" : sortColumn + direction + ", ")
+                    + BookEntry._ID + direction;
+        }
 
-        // If 1 or more rows were updated, then notify all listeners that the data at the
-        // given URI has changed
-        if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange( uri, null );
+        String limit = uri.getQueryParameter( BookEntry.QUERY_PARAMETER_LIMIT );
+        if (limit != null) {
+            limit = String.valueOf( parseNumber( uri, limit ) );
+        }
+        String offset = uri.getQueryParameter( BookEntry.QUERY_PARAMETER_OFFSET );
+        if (offset != null) {
+            // SQLite's "LIMIT offset, count"; without a limit, there is no end to the count
+            limit = parseNumber( uri, offset ) + "," + (limit == null ? Long.MAX_VALUE : limit);
         }
 
-        // Return the number of rows updated
-        return rowsUpdated;
+        return queryTable( database, BookEntry.DETAILS_VIEW_NAME, projection, selection,
+                selectionArgs, sortOrder, limit );
     }
 
     /**
-     * Delete the data at the given selection and selection arguments.
+     * Returns the column the books are sorted by for a {@link BookEntry#QUERY_PARAMETER_SORT}.
      */
-    @Override
+    private static String getSortColumn(Uri uri, String sort) {
+        switch (sort) {
+            case BookEntry.SORT_NAME:
+                return BookEntry.COLUMN_PRODUCT_NAME;
+            case BookEntry.SORT_PRICE:
+                return BookEntry.COLUMN_PRODUCT_PRICE;
+            case BookEntry.SORT_QUANTITY:
+                return BookEntry.COLUMN_PRODUCT_QUANTITY;
+            default:
+                throw new IllegalArgumentException( "Invalid sort " + sort + " for " + uri );
+        }
+    }
+
+    /**
+     * Query the daily sales of {@link DailySalesEntry#CONTENT_URI}, over the days the URI asks for.
+     */
+    private Cursor queryDailySales(SQLiteDatabase database, Uri uri, String[] projection,
+                                   String selection, String[] selectionArgs, String sortOrder) {
+        selection = DatabaseUtils.concatenateWhere( selection, DailySalesEntry.COLUMN_DAY
+                + ">=? AND " + DailySalesEntry.COLUMN_DAY + "<=?" );
+        selectionArgs = DatabaseUtils.appendSelectionArgs( selectionArgs, getDays( uri ) );
+
+        if (sortOrder == null) {
+            sortOrder = DailySalesEntry.COLUMN_DAY + ", " + DailySalesEntry.COLUMN_BOOK_ID;
+        }
+
+        rollUpSalesIfNewDay();
+        return queryTable( database, DailySalesEntry.TABLE_NAME, projection, selection,
+                selectionArgs, sortOrder, null );
+    }
+
+    /**
+     * Query the books that sold the most of {@link DailySalesEntry#TOP_SELLERS_URI}, over the
+     * days the URI asks for. The totals of each book are summed from its daily sales.
+     */
+    private Cursor queryTopSellers(SQLiteDatabase database, Uri uri, String[] projection,
+                                   String selection, String[] selectionArgs, String sortOrder) {
+        // The days are bound in the table, which comes before the selection
+        String[] days = getDays( uri );
+        selectionArgs = selectionArgs == null ? days
+                : DatabaseUtils.appendSelectionArgs( days, selectionArgs );
+
+        if (sortOrder == null) {
+            sortOrder = DailySalesEntry.COLUMN_QUANTITY + " DESC, " + BookEntry._ID;
+        }
+
+        String limit = uri.getQueryParameter( BookEntry.QUERY_PARAMETER_LIMIT );
+        if (limit != null) {
+            limit = String.valueOf( parseNumber( uri, limit ) );
+        }
+
+        rollUpSalesIfNewDay();
+        return queryTable( database, TOP_SELLERS_TABLE, projection, selection, selectionArgs,
+                sortOrder, limit );
+    }
+
+    /**
+     * Returns the first and the last day a sales report covers, as the URI asks for.
+     */
+    private static String[] getDays(Uri uri) {
+        String from = uri.getQueryParameter( DailySalesEntry.QUERY_PARAMETER_FROM );
+        String to = uri.getQueryParameter( DailySalesEntry.QUERY_PARAMETER_TO );
+        return new String[]{
+                from == null ? FIRST_DAY : parseDay( uri, from ),
+                to == null ? LAST_DAY : parseDay( uri, to )};
+    }
+
+    /**
+     * Parse the value of a day query parameter, rejecting anything that isn't a "yyyy-MM-dd".
+     */
+    private static String parseDay(Uri uri, String value) {
+        if (!DAY_PATTERN.matcher( value ).matches()) {
+            throw new IllegalArgumentException( "Invalid query parameter " + value + " for " + uri );
+        }
+        return value;
+    }
+
+    /**
+     * Parse the value of a numeric query parameter, rejecting anything that isn't a
+     * non-negative number.
+     */
+    private static long parseNumber(Uri uri, String value) {
+        try {
+            long number = Long.parseLong( value );
+            if (number >= 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through to the exception below
+        }
+        throw new IllegalArgumentException( "Invalid query parameter " + value + " for " + uri );
+    }
+
+    /**
+     * Insert new data into the provider with the given ContentValues.
+     */
+    @Override
+    public Uri insert(Uri uri, ContentValues contentValues) {
+        long start = metrics.start();
+        final int match = uriMatcher.match( uri );
+        Uri newUri;
+        switch (match) {
+            case BOOKS:
+                newUri = insertBook( uri, contentValues );
+                break;
+            case SUPPLIERS:
+                newUri = insertSupplier( uri, contentValues );
+                break;
+            default:
+                throw new IllegalArgumentException( "Insertion is not supported for " + uri );
+        }
+
+        recordOperation( ProviderMetrics.INSERT, "insert", uri, match, start, newUri == null ? 0 : 1,
+                null, null );
+        return newUri;
+    }
+
+    /**
+     * Insert a book into the database with given content values. Return the new content URI
+     * for that specific row in the database.
+     */
+    private Uri insertBook(Uri uri, ContentValues contentValues) {
+        // Check that the book is valid
+        BookValidator.validateNewBook( contentValues );
+
+        // Get writable database
+        SQLiteDatabase database = DbHelper.getWritableDatabase();
+
+        long id;
+        boolean suppliersChanged;
+        database.beginTransaction();
+        try {
+            // Refer to the supplier by _ID, rather than repeat its name and phone number
+            ContentValues values = new ContentValues( contentValues );
+            suppliersChanged = putSupplierId( database, values );
+
+            // Insert the new book with the given values. A book with just the usual columns
+            // goes through the compiled statement, the others through ContentValues.
+            if (compiledWrites && isWholeBook( values )) {
+                id = insertWholeBook( database, values );
+            } else {
+                id = database.insert( BookEntry.TABLE_NAME, null, values );
+            }
+            // If the ID is -1, then the insertion failed. Log an error and return null. In a batch,
+            // ending this transaction unsuccessfully would roll back the whole batch behind its
+            // back, so fail the batch instead.
+            if (id == -1) {
+                Log.e( LOG_TAG, "Failed to insert row for " + uri );
+                if (applyingBatch.get() != null) {
+                    throw new SQLException( "Failed to insert " + contentValues );
+                }
+                return null;
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        // Notify all listeners that a book was added to the collection, or that all the books
+        // changed, if the phone number of a supplier other books share changed with it
+        if (suppliersChanged) {
+            notifyAllChanged();
+        } else {
+            notifyCollectionChanged( id );
+        }
+
+        // Return the new URI with the ID (of the newly inserted row) appended to the end of it
+        return ContentUris.withAppendedId( uri, id );
+    }
+
+    /**
+     * Returns whether the values of a new book are those of {@link BookStatements#INSERT_SQL}: a
+     * name, a price, a supplier _ID and maybe a quantity, with whole numbers as numbers.
+     */
+    private static boolean isWholeBook(ContentValues values) {
+        boolean hasQuantity = values.containsKey( BookEntry.COLUMN_PRODUCT_QUANTITY );
+        return values.size() == (hasQuantity ? 4 : 3)
+                && values.get( BookEntry.COLUMN_PRODUCT_NAME ) instanceof String
+                && isWholeNumber( values.get( BookEntry.COLUMN_PRODUCT_PRICE ) )
+                && isWholeNumber( values.get( BookEntry.COLUMN_SUPPLIER_ID ) )
+                && (!hasQuantity || isWholeNumber( values.get( BookEntry.COLUMN_PRODUCT_QUANTITY ) ));
+    }
+
+    private static boolean isWholeNumber(Object value) {
+        return value instanceof Long || value instanceof Integer;
+    }
+
+    /**
+     * Insert a book whose values are {@link #isWholeBook}, with the compiled statement. Like
+     * {@link SQLiteDatabase#insert}, returns -1 if the book couldn't be inserted.
+     */
+    private long insertWholeBook(SQLiteDatabase database, ContentValues values) {
+        Number quantity = (Number) values.get( BookEntry.COLUMN_PRODUCT_QUANTITY );
+        try {
+            // A book without a quantity has the column's default of 0
+            return getStatements( database ).insertBook(
+                    values.getAsString( BookEntry.COLUMN_PRODUCT_NAME ),
+                    values.getAsLong( BookEntry.COLUMN_PRODUCT_PRICE ),
+                    quantity == null ? 0 : quantity.longValue(),
+                    values.getAsLong( BookEntry.COLUMN_SUPPLIER_ID ) );
+        } catch (SQLException e) {
+            Log.e( LOG_TAG, "Error inserting " + values, e );
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the compiled statements of this thread for the given database, compiling new ones
+     * if the database was opened again since.
+     */
+    private BookStatements getStatements(SQLiteDatabase database) {
+        BookStatements threadStatements = statements.get();
+        if (threadStatements == null || !threadStatements.isFor( database )) {
+            if (threadStatements != null) {
+                threadStatements.close();
+            }
+            threadStatements = new BookStatements( database );
+            statements.set( threadStatements );
+        }
+        return threadStatements;
+    }
+
+    /**
+     * Enable or disable the compiled statements for the most common writes. For benchmarks.
+     */
+    void setCompiledWritesEnabled(boolean enabled) {
+        compiledWrites = enabled;
+    }
+
+    /**
+     * Insert a supplier into the database with given content values. Return the new content URI
+     * for that supplier, or null if there already is a supplier with that name.
+     */
+    private Uri insertSupplier(Uri uri, ContentValues contentValues) {
+        validateSupplier( contentValues, true );
+
+        long id = DbHelper.getWritableDatabase().insert( SupplierEntry.TABLE_NAME, null, contentValues );
+        if (id == -1) {
+            Log.e( LOG_TAG, "Failed to insert row for " + uri );
+            return null;
+        }
+
+        notifySuppliersChanged();
+        return ContentUris.withAppendedId( uri, id );
+    }
+
+    /**
+     * Check the values of a supplier. Its name is required when it's new, and can't be removed.
+     *
+     * @throws IllegalArgumentException if the values aren't valid
+     */
+    private static void validateSupplier(ContentValues values, boolean isNew) {
+        if (isNew || values.containsKey( SupplierEntry.COLUMN_SUPPLIER_NAME )) {
+            if (TextUtils.isEmpty( values.getAsString( SupplierEntry.COLUMN_SUPPLIER_NAME ) )) {
+                throw new IllegalArgumentException( "Supplier requires a name" );
+            }
+        }
+    }
+
+    /**
+     * Replace the supplier name and phone number in the values of a book with the _ID of the
+     * supplier with that name, adding the supplier if it's new. A phone number that isn't empty
+     * becomes the supplier's. Does nothing if the values have no supplier name.
+     *
+     * @return whether an existing supplier's phone number changed, so all its books changed
+     */
+    private static boolean putSupplierId(SQLiteDatabase database, ContentValues values) {
+        if (!values.containsKey( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME )) {
+            return false;
+        }
+        String name = values.getAsString( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME );
+        String phone = values.getAsString( BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER );
+        values.remove( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME );
+        values.remove( BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER );
+
+        long id = -1;
+        String currentPhone = null;
+        Cursor cursor = database.query( SupplierEntry.TABLE_NAME,
+                new String[]{SupplierEntry._ID, SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER},
+                SupplierEntry.COLUMN_SUPPLIER_NAME + "=?", new String[]{name}, null, null, null );
+        try {
+            if (cursor.moveToFirst()) {
+                id = cursor.getLong( 0 );
+                currentPhone = cursor.getString( 1 );
+            }
+        } finally {
+            cursor.close();
+        }
+
+        boolean changed = false;
+        if (id == -1) {
+            ContentValues supplier = new ContentValues();
+            supplier.put( SupplierEntry.COLUMN_SUPPLIER_NAME, name );
+            supplier.put( SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER, phone );
+            id = database.insertOrThrow( SupplierEntry.TABLE_NAME, null, supplier );
+        } else if (!TextUtils.isEmpty( phone ) && !phone.equals( currentPhone )) {
+            ContentValues supplier = new ContentValues();
+            supplier.put( SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER, phone );
+            database.update( SupplierEntry.TABLE_NAME, supplier, SupplierEntry._ID + "=?",
+                    new String[]{String.valueOf( id )} );
+            changed = true;
+        }
+
+        values.put( BookEntry.COLUMN_SUPPLIER_ID, id );
+        return changed;
+    }
+
+    /**
+     * Turn a selection of books, which may name the supplier columns of the book details, into a
+     * selection of the same books in the books table itself.
+     */
+    private static String selectBooksByDetails(String selection) {
+        if (TextUtils.isEmpty( selection )) {
+            return selection;
+        }
+        return BookEntry._ID + " IN (SELECT " + BookEntry._ID + " FROM "
+                + BookEntry.DETAILS_VIEW_NAME + " WHERE " + selection + ")";
+    }
+
+    /**
+     * Insert all the given books in a single transaction. Every row goes through the same
+     * validation as {@link #insertBook}, and if any of them is rejected none of them are inserted.
+     * Listeners are notified once, after the whole batch has been committed.
+     *
+     * @throws IllegalArgumentException if a book isn't valid
+     * @throws SQLException             if a book can't be inserted, such as one with the ISBN of
+     *                                  another book
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        final int match = uriMatcher.match( uri );
+        if (match != BOOKS) {
+            throw new IllegalArgumentException( "Insertion is not supported for " + uri );
+        }
+
+        long start = metrics.start();
+        SQLiteDatabase database = DbHelper.getWritableDatabase();
+
+        // Track the number of rows that were inserted
+        int rowsInserted = 0;
+
+        applyingBatch.set( Boolean.TRUE );
+        database.beginTransaction();
+        try {
+            for (ContentValues contentValues : values) {
+                if (insertBook( uri, contentValues ) != null) {
+                    rowsInserted++;
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            applyingBatch.remove();
+        }
+
+        // Notify all listeners once for the whole batch
+        if (rowsInserted != 0) {
+            notifyAllChanged();
+        }
+
+        // Count the batch as a single insert of all its rows
+        recordOperation( ProviderMetrics.INSERT, "bulk insert", uri, match, start, rowsInserted,
+                null, null );
+
+        // Return the number of rows inserted
+        return rowsInserted;
+    }
+
+    /**
+     * Apply all the given operations in a single transaction. If any of them fails, none of them
+     * are applied. Listeners are notified once, after the whole batch has been committed.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase database = DbHelper.getWritableDatabase();
+
+        ContentProviderResult[] results;
+
+        applyingBatch.set( Boolean.TRUE );
+        database.beginTransaction();
+        try {
+            results = super.applyBatch( operations );
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            applyingBatch.remove();
+        }
+
+        // Notify all listeners once for the whole batch
+        if (!operations.isEmpty()) {
+            notifyAllChanged();
+        }
+
+        return results;
+    }
+
+    /**
+     * Updates the data at the given selection and selection arguments, with the new ContentValues.
+     */
+    @Override
+    public int update(Uri uri, ContentValues contentValues, String selection,
+                      String[] selectionArgs) {
+        long start = metrics.start();
+        final int match = uriMatcher.match( uri );
+        int rowsUpdated;
+        switch (match) {
+            case BOOKS:
+                rowsUpdated = updateBook( uri, contentValues, selectBooksByDetails( selection ),
+                        selectionArgs );
+                break;
+            case BOOK_ID:
+                rowsUpdated = updateBook( uri, contentValues, BookEntry._ID + "=?",
+                        new String[]{String.valueOf( ContentUris.parseId( uri ) )} );
+                break;
+            case SUPPLIERS:
+                rowsUpdated = updateSuppliers( contentValues, selection, selectionArgs );
+                break;
+            case SUPPLIER_ID:
+                rowsUpdated = updateSuppliers( contentValues, SupplierEntry._ID + "=?",
+                        new String[]{String.valueOf( ContentUris.parseId( uri ) )} );
+                break;
+            default:
+                throw new IllegalArgumentException( "Update is not supported for " + uri );
+        }
+
+        recordOperation( ProviderMetrics.UPDATE, "update", uri, match, start, rowsUpdated,
+                selection, selectionArgs );
+        return rowsUpdated;
+    }
+
+    /**
+     * Update books in the database with the given content values. Apply that changes to the rows
+     * specified in the selection and selection arguments (which could be 0 or 1 or more books).
+     * Return the number of rows that were successfully updated.
+     */
+    private int updateBook(Uri uri, ContentValues contentValues, String selection,
+                           String[] selectionArgs) {
+        // Check that the attributes being changed are valid
+        BookValidator.validateBookChanges( contentValues );
+
+        // If there are no contentValues to update, then don't try to update the database
+        if (contentValues.size() == 0) {
+            return 0;
+        }
+
+        // Otherwise, get writable database to update the data
+        SQLiteDatabase database = DbHelper.getWritableDatabase();
+
+        // Setting just the quantity or the price of a single book, as the editor and the list
+        // do, goes through a compiled statement
+        if (compiledWrites && contentValues.size() == 1 && uriMatcher.match( uri ) == BOOK_ID) {
+            int rowsUpdated = updateBookColumn( database, ContentUris.parseId( uri ), contentValues );
+            if (rowsUpdated != -1) {
+                if (rowsUpdated != 0) {
+                    notifyBooksChanged( ContentUris.parseId( uri ) );
+                }
+                return rowsUpdated;
+            }
+        }
+
+        int rowsUpdated;
+        long[] ids;
+        boolean suppliersChanged;
+        database.beginTransaction();
+        try {
+            // Find out which books are about to change, so that only their listeners are notified.
+            // The URI of a single book already tells which one it is.
+            if (uriMatcher.match( uri ) == BOOK_ID) {
+                ids = new long[]{ContentUris.parseId( uri )};
+            } else {
+                ids = queryIds( database, selection, selectionArgs, MAX_BOOK_NOTIFICATIONS );
+            }
+
+            // Refer to the supplier by _ID. A phone number without a supplier name is the new
+            // phone number of the books' suppliers.
+            ContentValues values = new ContentValues( contentValues );
+            suppliersChanged = putSupplierId( database, values );
+            if (values.containsKey( BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER )) {
+                ContentValues supplier = new ContentValues();
+                supplier.put( SupplierEntry.COLUMN_SUPPLIER_PHONE_NUMBER,
+                        values.getAsString( BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER ) );
+                values.remove( BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER );
+                suppliersChanged = database.update( SupplierEntry.TABLE_NAME, supplier,
+                        SupplierEntry._ID + " IN (SELECT " + BookEntry.COLUMN_SUPPLIER_ID + " FROM "
+                                + BookEntry.TABLE_NAME + (selection == null ? "" : " WHERE " + selection)
+                                + ")", selectionArgs ) != 0;
+            }
+
+            // Perform the update on the database and get the number of rows affected. If only
+            // the suppliers changed, those are all the books selected.
+            if (values.size() != 0) {
+                rowsUpdated = database.update( BookEntry.TABLE_NAME, values, selection, selectionArgs );
+            } else {
+                rowsUpdated = (int) DatabaseUtils.queryNumEntries( database, BookEntry.TABLE_NAME,
+                        selection, selectionArgs );
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        // If 1 or more rows were updated, then notify the listeners of the books that changed,
+        // or everyone if too many books changed to name them one by one. A change to a supplier
+        // changes the supplier's other books too.
+        if (rowsUpdated != 0) {
+            if (ids != null && !suppliersChanged) {
+                notifyBooksChanged( ids );
+            } else {
+                notifyAllChanged();
+            }
+        }
+
+        // Return the number of rows updated
+        return rowsUpdated;
+    }
+
+    /**
+     * Set the quantity or the price of the book with the given _ID with a compiled statement, if
+     * that is the one value given as a whole number. Returns the number of books changed, or -1
+     * if there is no statement for the value.
+     */
+    private int updateBookColumn(SQLiteDatabase database, long id, ContentValues values) {
+        Object quantity = values.get( BookEntry.COLUMN_PRODUCT_QUANTITY );
+        if (isWholeNumber( quantity )) {
+            return getStatements( database ).setQuantity( id, ((Number) quantity).longValue() );
+        }
+        Object price = values.get( BookEntry.COLUMN_PRODUCT_PRICE );
+        if (isWholeNumber( price )) {
+            return getStatements( database ).setPrice( id, ((Number) price).longValue() );
+        }
+        return -1;
+    }
+
+    /**
+     * Update the suppliers that match the selection with the given content values. Their books
+     * change with them, so the listeners of all the books are notified.
+     */
+    private int updateSuppliers(ContentValues contentValues, String selection, String[] selectionArgs) {
+        validateSupplier( contentValues, false );
+        if (contentValues.size() == 0) {
+            return 0;
+        }
+
+        int rowsUpdated = DbHelper.getWritableDatabase().update( SupplierEntry.TABLE_NAME,
+                contentValues, selection, selectionArgs );
+        if (rowsUpdated != 0) {
+            notifyAllChanged();
+        }
+        return rowsUpdated;
+    }
+
+    /**
+     * Delete the data at the given selection and selection arguments.
+     */
+    @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long start = metrics.start();
+        final int match = uriMatcher.match( uri );
+        int rowsDeleted = deleteUri( uri, match, selection, selectionArgs );
+        recordOperation( ProviderMetrics.DELETE, "delete", uri, match, start, rowsDeleted,
+                selection, selectionArgs );
+        return rowsDeleted;
+    }
+
+    /**
+     * Delete the data at the URI with the given URI matcher code.
+     */
+    private int deleteUri(Uri uri, int match, String selection, String[] selectionArgs) {
         // Get writable database
         SQLiteDatabase database = DbHelper.getWritableDatabase();
 
         // Track the number of rows that were deleted
         int rowsDeleted;
 
-        final int match = uriMatcher.match( uri );
+        // The _ID of the book deleted, if a single book was
+        long id = -1;
+
         switch (match) {
             case BOOKS:
                 // Delete all rows that match the selection and selection args
-                rowsDeleted = database.delete( BookEntry.TABLE_NAME, selection, selectionArgs );
+                rowsDeleted = database.delete( BookEntry.TABLE_NAME, selectBooksByDetails( selection ),
+                        selectionArgs );
                 break;
             case BOOK_ID:
                 // Delete a single row given by the ID in the URI
+                id = ContentUris.parseId( uri );
                 selection = BookEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf( ContentUris.parseId( uri ) )};
+                selectionArgs = new String[]{String.valueOf( id )};
                 rowsDeleted = database.delete( BookEntry.TABLE_NAME, selection, selectionArgs );
                 break;
+            case SUPPLIERS:
+            case SUPPLIER_ID:
+                if (match == SUPPLIER_ID) {
+                    selection = SupplierEntry._ID + "=?";
+                    selectionArgs = new String[]{String.valueOf( ContentUris.parseId( uri ) )};
+                }
+                // Only delete the suppliers no book refers to anymore
+                selection = DatabaseUtils.concatenateWhere( selection, "NOT EXISTS (SELECT 1 FROM "
+                        + BookEntry.TABLE_NAME + " WHERE " + BookEntry.TABLE_NAME + "."
+                        + BookEntry.COLUMN_SUPPLIER_ID + " = " + SupplierEntry.TABLE_NAME + "."
+                        + SupplierEntry._ID + ")" );
+                rowsDeleted = database.delete( SupplierEntry.TABLE_NAME, selection, selectionArgs );
+                if (rowsDeleted != 0) {
+                    notifySuppliersChanged();
+                }
+                return rowsDeleted;
             default:
                 throw new IllegalArgumentException( "Deletion is not supported for " + uri );
         }
 
-        // If 1 or more rows were deleted, then notify all listeners that the data at the
-        // given URI has changed
+        // If 1 or more rows were deleted, then notify all listeners that books were removed
+        // from the collection
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange( uri, null );
+            if (id != -1) {
+                notifyCollectionChanged( id );
+            } else {
+                notifyAllChanged();
+            }
         }
 
         // Return the number of rows deleted
         return rowsDeleted;
     }
 
+    /**
+     * Call a provider specific method, such as {@link BookContract#METHOD_SELL}.
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        switch (method) {
+            case BookContract.METHOD_SELL:
+                int quantity = extras == null ? 1 : extras.getInt( BookContract.EXTRA_QUANTITY, 1 );
+                return sellBook( Long.parseLong( arg ), quantity );
+            case BookContract.METHOD_SELL_BATCH:
+                if (extras == null) {
+                    throw new IllegalArgumentException( "No books to sell" );
+                }
+                return sellBooks( extras.getLongArray( BookContract.EXTRA_BOOK_IDS ),
+                        extras.getIntArray( BookContract.EXTRA_QUANTITIES ) );
+            case BookContract.METHOD_STATS:
+                return getStats();
+            case BookContract.METHOD_METRICS:
+                return getMetrics( extras );
+            case BookContract.METHOD_COMPACT_CHANGES:
+                long retentionMillis = extras == null ? ChangeEntry.DEFAULT_RETENTION_MILLIS
+                        : extras.getLong( BookContract.EXTRA_RETENTION_MILLIS,
+                        ChangeEntry.DEFAULT_RETENTION_MILLIS );
+                Bundle compacted = new Bundle();
+                compacted.putLong( BookContract.EXTRA_ROW_COUNT, compactChanges( retentionMillis ) );
+                return compacted;
+            case BookContract.METHOD_ROLL_UP_SALES:
+                long ledgerRetentionMillis = extras == null ? SaleEntry.DEFAULT_RETENTION_MILLIS
+                        : extras.getLong( BookContract.EXTRA_RETENTION_MILLIS,
+                        SaleEntry.DEFAULT_RETENTION_MILLIS );
+                Bundle rolledUp = new Bundle();
+                rolledUp.putLong( BookContract.EXTRA_ROW_COUNT, rollUpSales( ledgerRetentionMillis ) );
+                return rolledUp;
+            case BookContract.METHOD_ROW_CACHE_STATS:
+                Bundle result = new Bundle();
+                synchronized (rowCache) {
+                    result.putLong( BookContract.EXTRA_HIT_COUNT, rowCache.hitCount() );
+                    result.putLong( BookContract.EXTRA_MISS_COUNT, rowCache.missCount() );
+                    result.putLong( BookContract.EXTRA_EVICTION_COUNT, rowCache.evictionCount() );
+                }
+                return result;
+            default:
+                return super.call( method, arg, extras );
+        }
+    }
+
+    /**
+     * Sell copies of each of the given books, all in one transaction. As with a single sale, the
+     * copies of a book are only sold if there are enough of them left, and the books that didn't
+     * have enough are returned in {@link BookContract#EXTRA_SOLD_OUT_IDS}.
+     */
+    private Bundle sellBooks(long[] ids, int[] quantities) {
+        if (ids == null || quantities == null || ids.length != quantities.length) {
+            throw new IllegalArgumentException( "Books and quantities don't match" );
+        }
+        for (int quantity : quantities) {
+            if (quantity <= 0) {
+                throw new IllegalArgumentException( "Can't sell " + quantity + " copies of a book" );
+            }
+        }
+
+        // Get writable database
+        SQLiteDatabase database = DbHelper.getWritableDatabase();
+
+        long[] soldIds = new long[ids.length];
+        int soldCount = 0;
+        long[] soldOutIds = new long[ids.length];
+        int soldOutCount = 0;
+
+        database.beginTransaction();
+        BookStatements sellStatements = acquireSellStatements( database );
+        try {
+            for (int i = 0; i < ids.length; i++) {
+                if (sellStatements.sell( ids[i], quantities[i] )) {
+                    soldIds[soldCount++] = ids[i];
+                } else {
+                    soldOutIds[soldOutCount++] = ids[i];
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            releaseSellStatements( sellStatements );
+            database.endTransaction();
+        }
+
+        // Notify the listeners of the books sold, or of all the books if there are too many
+        if (soldCount > MAX_BOOK_NOTIFICATIONS) {
+            notifyAllChanged();
+        } else if (soldCount > 0) {
+            notifyBooksChanged( Arrays.copyOf( soldIds, soldCount ) );
+        }
+
+        Bundle result = new Bundle();
+        result.putLongArray( BookContract.EXTRA_SOLD_OUT_IDS, Arrays.copyOf( soldOutIds, soldOutCount ) );
+        return result;
+    }
+
+    /**
+     * Sell copies of the book with the given ID. The quantity is decreased by a single
+     * conditional UPDATE, so concurrent sales can neither lose an update nor take the stock
+     * below 0.
+     */
+    private Bundle sellBook(long id, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException( "Can't sell " + quantity + " copies of a book" );
+        }
+
+        // Get writable database
+        SQLiteDatabase database = DbHelper.getWritableDatabase();
+
+        boolean sold;
+        int quantityLeft;
+
+        // Read the quantity left in the same transaction, so it's the one this sale left behind
+        database.beginTransaction();
+        try {
+            BookStatements sellStatements = acquireSellStatements( database );
+            try {
+                sold = sellStatements.sell( id, quantity );
+            } finally {
+                releaseSellStatements( sellStatements );
+            }
+
+            try {
+                quantityLeft = (int) DatabaseUtils.longForQuery( database, "SELECT "
+                                + BookEntry.COLUMN_PRODUCT_QUANTITY + " FROM " + BookEntry.TABLE_NAME
+                                + " WHERE " + BookEntry._ID + " = ?",
+                        new String[]{String.valueOf( id )} );
+            } catch (SQLiteDoneException e) {
+                // There is no book with this ID
+                quantityLeft = -1;
+            }
+
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        // If the book was sold, notify all listeners that its data has changed
+        if (sold) {
+            notifyBooksChanged( id );
+        }
+
+        Bundle result = new Bundle();
+        result.putBoolean( BookContract.EXTRA_SOLD, sold );
+        result.putInt( BookContract.EXTRA_QUANTITY, quantityLeft );
+        return result;
+    }
+
+    /**
+     * Returns the statements to sell books with: the compiled statements of this thread, or
+     * statements of their own if those are disabled. Release them when done.
+     */
+    private BookStatements acquireSellStatements(SQLiteDatabase database) {
+        return compiledWrites ? getStatements( database ) : new BookStatements( database );
+    }
+
+    /**
+     * Release the statements returned by {@link #acquireSellStatements}.
+     */
+    private void releaseSellStatements(BookStatements sellStatements) {
+        if (sellStatements != statements.get()) {
+            sellStatements.close();
+        }
+    }
+
+    /**
+     * Returns the _IDs of the books that match the selection, or null if there are more than
+     * {@code max} of them.
+     */
+    private static long[] queryIds(SQLiteDatabase database, String selection, String[] selectionArgs,
+                                   int max) {
+        Cursor cursor = database.query( BookEntry.TABLE_NAME, new String[]{BookEntry._ID},
+                selection, selectionArgs, null, null, null, String.valueOf( max + 1 ) );
+        try {
+            if (cursor.getCount() > max) {
+                return null;
+            }
+            long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong( 0 );
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Notify the listeners of each of the given books that its data has changed.
+     * Every notification waits until the end of the batch, if one is running on this thread.
+     */
+    private void notifyBooksChanged(long... ids) {
+        invalidateBooks( ids );
+        if (applyingBatch.get() != null) {
+            return;
+        }
+        // ContentResolver#notifyChange(Collection<Uri>, ...) only exists from Android 11 onwards,
+        // so notify the books one at a time.
+        ContentResolver contentResolver = getContext().getContentResolver();
+        for (long id : ids) {
+            contentResolver.notifyChange( ContentUris.withAppendedId( BookEntry.CONTENT_URI, id ), null );
+        }
+        if (lowStockChanged()) {
+            contentResolver.notifyChange( BookEntry.LOW_STOCK_URI, null );
+        }
+    }
+
+    /**
+     * Returns whether books went below their threshold or back up since the observers of the
+     * books low on stock were last notified. The triggers count those changes, so this is a
+     * single read of a one-row table.
+     */
+    private boolean lowStockChanged() {
+        long version = DatabaseUtils.longForQuery( DbHelper.getReadableDatabase(),
+                LOW_STOCK_VERSION_SQL, null );
+        return lowStockVersion.getAndSet( version ) != version;
+    }
+
+    /**
+     * Compact the log of changes to the books, in one transaction. First the changes to each book
+     * are folded into its last one, which a consumer that is behind reads anyway. Then the last
+     * change older than the retention becomes a reset, and the changes before it are dropped, so
+     * a consumer that is further behind than that starts over.
+     *
+     * @return the number of changes dropped
+     */
+    private int compactChanges(long retentionMillis) {
+        SQLiteDatabase database = DbHelper.getWritableDatabase();
+        String[] cutoff = {String.valueOf( System.currentTimeMillis() - retentionMillis )};
+        int changesDropped;
+        database.beginTransaction();
+        try {
+            // A change that was folded into may have changed any of the columns
+            ContentValues folded = new ContentValues();
+            folded.putNull( ChangeEntry.COLUMN_CHANGED_COLUMNS );
+            database.update( ChangeEntry.TABLE_NAME, folded, ChangeEntry.COLUMN_OPERATION + "=? AND "
+                    + ChangeEntry.COLUMN_BOOK_ID + " IN (SELECT " + ChangeEntry.COLUMN_BOOK_ID
+                    + " FROM " + ChangeEntry.TABLE_NAME + " WHERE " + ChangeEntry.COLUMN_BOOK_ID
+                    + " IS NOT NULL GROUP BY " + ChangeEntry.COLUMN_BOOK_ID + " HAVING COUNT(*) > 1)",
+                    new String[]{ChangeEntry.OPERATION_UPDATE} );
+            changesDropped = database.delete( ChangeEntry.TABLE_NAME, ChangeEntry.COLUMN_BOOK_ID
+                    + " IS NOT NULL AND " + ChangeEntry._ID + " NOT IN (SELECT MAX(" + ChangeEntry._ID
+                    + ") FROM " + ChangeEntry.TABLE_NAME + " WHERE " + ChangeEntry.COLUMN_BOOK_ID
+                    + " IS NOT NULL GROUP BY " + ChangeEntry.COLUMN_BOOK_ID + ")", null );
+
+            ContentValues reset = new ContentValues();
+            reset.putNull( ChangeEntry.COLUMN_BOOK_ID );
+            reset.put( ChangeEntry.COLUMN_OPERATION, ChangeEntry.OPERATION_RESET );
+            reset.putNull( ChangeEntry.COLUMN_CHANGED_COLUMNS );
+            database.update( ChangeEntry.TABLE_NAME, reset, ChangeEntry._ID + " = (SELECT MAX("
+                    + ChangeEntry._ID + ") FROM " + ChangeEntry.TABLE_NAME + " WHERE "
+                    + ChangeEntry.COLUMN_TIME + "<?)", cutoff );
+            changesDropped += database.delete( ChangeEntry.TABLE_NAME, ChangeEntry._ID
+                    + " < (SELECT MAX(" + ChangeEntry._ID + ") FROM " + ChangeEntry.TABLE_NAME
+                    + " WHERE " + ChangeEntry.COLUMN_OPERATION + "=?)",
+                    new String[]{ChangeEntry.OPERATION_RESET} );
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (changesDropped != 0) {
+            Log.v( LOG_TAG, changesDropped + " changes compacted" );
+        }
+        return changesDropped;
+    }
+
+    /**
+     * Roll the sales in the ledger up into the daily sales, in one transaction. The sales after
+     * the last one rolled up are added to the daily sales of their book and day, up to the last
+     * sale before the current day, which is still being sold on. Then the sales rolled up that
+     * are older than the retention are dropped from the ledger.
+     *
+     * @return the number of sales rolled up
+     */
+    private int rollUpSales(long retentionMillis) {
+        SQLiteDatabase database = DbHelper.getWritableDatabase();
+        long now = System.currentTimeMillis();
+        int salesRolledUp;
+        int salesDropped;
+        database.beginTransaction();
+        try {
+            String lastSaleId = String.valueOf(
+                    DatabaseUtils.longForQuery( database, LAST_ROLLED_UP_SALE_SQL, null ) );
+            String lastSaleIdToRollUp = String.valueOf( DatabaseUtils.longForQuery( database,
+                    LAST_SALE_TO_ROLL_UP_SQL, new String[]{lastSaleId, lastSaleId} ) );
+            salesRolledUp = (int) DatabaseUtils.queryNumEntries( database, SaleEntry.TABLE_NAME,
+                    SaleEntry._ID + ">? AND " + SaleEntry._ID + "<=?",
+                    new String[]{lastSaleId, lastSaleIdToRollUp} );
+            if (salesRolledUp > 0) {
+                database.execSQL( ROLL_UP_SQL, new Object[]{lastSaleId, lastSaleIdToRollUp} );
+                ContentValues watermark = new ContentValues();
+                watermark.put( BookDbHelper.COLUMN_LAST_SALE_ID, Long.parseLong( lastSaleIdToRollUp ) );
+                database.update( BookDbHelper.SALES_ROLLUP_TABLE_NAME, watermark, null, null );
+            }
+
+            salesDropped = database.delete( SaleEntry.TABLE_NAME, SaleEntry._ID + "<=? AND "
+                            + SaleEntry.COLUMN_TIME + "<?",
+                    new String[]{lastSaleIdToRollUp, String.valueOf( now - retentionMillis )} );
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        rolledUpDay = getLocalDay( now );
+
+        if (salesRolledUp != 0) {
+            Log.v( LOG_TAG, salesRolledUp + " sales rolled up, " + salesDropped + " dropped" );
+            getContext().getContentResolver().notifyChange( SALES_URI, null );
+        }
+        return salesRolledUp;
+    }
+
+    /**
+     * Roll the sales up with the default retention, unless they already were today, so a report
+     * includes the day before. A failure is only logged, since the report is still right up to
+     * the last rollup.
+     */
+    private void rollUpSalesIfNewDay() {
+        if (rolledUpDay == getLocalDay( System.currentTimeMillis() )) {
+            return;
+        }
+        try {
+            rollUpSales( SaleEntry.DEFAULT_RETENTION_MILLIS );
+        } catch (RuntimeException e) {
+            Log.w( LOG_TAG, "Failed to roll up the sales", e );
+        }
+    }
+
+    /**
+     * Returns the local day of the given time, counted from the epoch.
+     */
+    private static long getLocalDay(long millis) {
+        return (millis + TimeZone.getDefault().getOffset( millis )) / DAY_MILLIS;
+    }
+
+    /**
+     * Returns the counters of {@link BookContract#METHOD_METRICS}, then enables, disables or resets
+     * them as the extras ask.
+     */
+    private Bundle getMetrics(Bundle extras) {
+        Bundle result = metrics.toBundle();
+        if (extras != null) {
+            if (extras.containsKey( BookContract.EXTRA_ENABLED )) {
+                metrics.setEnabled( extras.getBoolean( BookContract.EXTRA_ENABLED ) );
+            }
+            if (extras.getBoolean( BookContract.EXTRA_RESET )) {
+                metrics.reset();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Count an insert, update or delete in the metrics, and log it if it was slow.
+     *
+     * @param selection     the selection the operation was given, or null
+     * @param selectionArgs the arguments of the selection
+     */
+    private void recordOperation(int operation, String name, Uri uri, int match, long start,
+                                 long rowCount, String selection, String[] selectionArgs) {
+        long micros = metrics.record( operation, match, start, rowCount );
+        if (micros < SLOW_OPERATION_MICROS) {
+            return;
+        }
+
+        // Explain how the selection finds the rows. Single rows are found by _ID.
+        String sql = null;
+        if (!TextUtils.isEmpty( selection ) && (match == BOOKS || match == SUPPLIERS)) {
+            sql = "SELECT 1 FROM " + (match == BOOKS ? BookEntry.DETAILS_VIEW_NAME
+                    : SupplierEntry.TABLE_NAME) + " WHERE " + selection;
+        }
+        logSlowOperation( name, uri, micros, selection, sql, selectionArgs );
+    }
+
+    /**
+     * Log an operation that took at least {@link #SLOW_OPERATION_MICROS}, with the query plan of
+     * the given SQL, if there is any.
+     */
+    private void logSlowOperation(String name, Uri uri, long micros, String selection,
+                                  String sql, String[] selectionArgs) {
+        StringBuilder message = new StringBuilder();
+        message.append( "Slow " ).append( name ).append( " of " ).append( uri )
+                .append( " took " ).append( micros / 1000 ).append( " ms" )
+                .append( "\nselection: " ).append( selection );
+        if (sql != null) {
+            message.append( "\nsql: " ).append( sql ).append( "\nplan:" );
+            try {
+                Cursor plan = DbHelper.getReadableDatabase().rawQuery( "EXPLAIN QUERY PLAN " + sql,
+                        selectionArgs );
+                try {
+                    int detailColumnIndex = plan.getColumnIndexOrThrow( "detail" );
+                    while (plan.moveToNext()) {
+                        message.append( "\n  " ).append( plan.getString( detailColumnIndex ) );
+                    }
+                } finally {
+                    plan.close();
+                }
+            } catch (RuntimeException e) {
+                message.append( " unavailable: " ).append( e.getMessage() );
+            }
+        }
+        Log.w( LOG_TAG, message.toString() );
+    }
+
+    /**
+     * Print the metrics of the provider, for {@code adb shell dumpsys activity provider}
+     * (Android 4.3 and later).
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        metrics.dump( writer );
+    }
+
+    /**
+     * Returns the statistics of {@link BookContract#METHOD_STATS}. They are computed with a single
+     * aggregate query, and then served from the cache until the books change.
+     */
+    private Bundle getStats() {
+        // Read the generation before the books, so that if they change while the statistics are
+        // computed, the statistics are already out of date when cached
+        long generation = booksGeneration.get();
+        CachedStats cached = cachedStats;
+        if (cached != null && cached.generation == generation) {
+            return new Bundle( cached.stats );
+        }
+
+        Bundle stats = new Bundle();
+        Cursor cursor = DbHelper.getReadableDatabase().rawQuery( "SELECT COUNT(*), "
+                + "IFNULL(SUM(" + BookEntry.COLUMN_PRODUCT_QUANTITY + "), 0), "
+                + "IFNULL(SUM(" + BookEntry.COLUMN_PRODUCT_PRICE + " * "
+                + BookEntry.COLUMN_PRODUCT_QUANTITY + "), 0), "
+                + "COUNT(DISTINCT " + BookEntry.COLUMN_SUPPLIER_ID + "), "
+                + "(SELECT COUNT(*) FROM " + BookEntry.LOW_STOCK_TABLE_NAME + ") FROM "
+                + BookEntry.TABLE_NAME, null );
+        try {
+            cursor.moveToFirst();
+            stats.putLong( BookContract.EXTRA_BOOK_COUNT, cursor.getLong( 0 ) );
+            stats.putLong( BookContract.EXTRA_TOTAL_UNITS, cursor.getLong( 1 ) );
+            stats.putLong( BookContract.EXTRA_TOTAL_VALUE, cursor.getLong( 2 ) );
+            stats.putLong( BookContract.EXTRA_SUPPLIER_COUNT, cursor.getLong( 3 ) );
+            stats.putLong( BookContract.EXTRA_LOW_STOCK_COUNT, cursor.getLong( 4 ) );
+        } finally {
+            cursor.close();
+        }
+
+        cachedStats = new CachedStats( generation, stats );
+        return new Bundle( stats );
+    }
+
+    /**
+     * Move on to the next {@link #booksGeneration} and drop the given books from the
+     * {@link #rowCache}, after they have changed.
+     */
+    private void invalidateBooks(long... ids) {
+        synchronized (rowCache) {
+            booksGeneration.incrementAndGet();
+            for (long id : ids) {
+                rowCache.remove( id );
+            }
+        }
+    }
+
+    /**
+     * Move on to the next {@link #booksGeneration} and empty the {@link #rowCache}, after changes
+     * to too many books to name them one by one.
+     */
+    private void invalidateAllBooks() {
+        synchronized (rowCache) {
+            booksGeneration.incrementAndGet();
+            rowCache.evictAll();
+        }
+    }
+
+    /**
+     * Notify the listeners of the given books, which were added or removed, and the listeners of
+     * the collection of books.
+     */
+    private void notifyCollectionChanged(long... ids) {
+        invalidateBooks( ids );
+        if (applyingBatch.get() != null) {
+            return;
+        }
+        notifyBooksChanged( ids );
+        getContext().getContentResolver().notifyChange( BookEntry.COLLECTION_URI, null );
+    }
+
+    /**
+     * Notify every listener of the books, for changes to too many books to name them one by one.
+     */
+    private void notifyAllChanged() {
+        invalidateAllBooks();
+        if (applyingBatch.get() != null) {
+            return;
+        }
+        // Notifying all the books notifies the books low on stock too
+        lowStockChanged();
+        ContentResolver contentResolver = getContext().getContentResolver();
+        contentResolver.notifyChange( BookEntry.CONTENT_URI, null );
+        contentResolver.notifyChange( BookEntry.COLLECTION_URI, null );
+        // Books may have brought in new suppliers
+        contentResolver.notifyChange( SupplierEntry.CONTENT_URI, null );
+    }
+
+    /**
+     * Notify the listeners of the suppliers, for changes to the suppliers that no book refers to.
+     */
+    private void notifySuppliersChanged() {
+        if (applyingBatch.get() != null) {
+            return;
+        }
+        getContext().getContentResolver().notifyChange( SupplierEntry.CONTENT_URI, null );
+    }
+
     /**
      * Returns the MIME type of data for the content URI.
      */
 
     @Override
     public String getType(Uri uri) {
+        long start = metrics.start();
         final int match = uriMatcher.match( uri );
+        String type = getType( match );
+        metrics.record( ProviderMetrics.GET_TYPE, match, start, 0 );
+        if (type == null) {
+            throw new IllegalArgumentException( "Unknown URI " + uri + " with match " + match );
+        }
+        return type;
+    }
+
+    /**
+     * Returns the MIME type of the URIs with the given URI matcher code, or null if there is none.
+     */
+    private static String getType(int match) {
         switch (match) {
             case BOOKS:
+            case BOOKS_SEARCH:
                 return BookEntry.CONTENT_LIST_TYPE;
             case BOOK_ID:
                 return BookEntry.CONTENT_ITEM_TYPE;
+            case BOOKS_EXPORT:
+                return BookContract.MIME_TYPE_CSV;
+            case BOOK_CHANGES:
+                return ChangeEntry.CONTENT_LIST_TYPE;
+            case BOOKS_ISBN:
+                return BookEntry.CONTENT_LIST_TYPE;
+            case BOOK_ISBN:
+                return BookEntry.CONTENT_ITEM_TYPE;
+            case BOOKS_LOW_STOCK:
+                return BookEntry.CONTENT_LIST_TYPE;
+            case SUPPLIERS:
+                return SupplierEntry.CONTENT_LIST_TYPE;
+            case SUPPLIER_ID:
+                return SupplierEntry.CONTENT_ITEM_TYPE;
+            case SUPPLIER_BOOKS:
+                return BookEntry.CONTENT_LIST_TYPE;
+            case SALES_DAILY:
+                return DailySalesEntry.CONTENT_LIST_TYPE;
+            case SALES_TOP:
+                return DailySalesEntry.TOP_SELLERS_LIST_TYPE;
             default:
-                throw new IllegalArgumentException( "Unknown URI " + uri + " with match " + match );
+                return null;
+        }
+    }
+
+    /**
+     * Returns the types of the export that match the filter, or null for other URIs.
+     */
+    @Override
+    public String[] getStreamTypes(Uri uri, String mimeTypeFilter) {
+        if (uriMatcher.match( uri ) != BOOKS_EXPORT) {
+            return null;
+        }
+
+        ArrayList<String> types = new ArrayList<>( EXPORT_TYPES.length );
+        for (String type : EXPORT_TYPES) {
+            if (ClipDescription.compareMimeTypes( type, mimeTypeFilter )) {
+                types.add( type );
+            }
+        }
+        return types.isEmpty() ? null : types.toArray( new String[types.size()] );
+    }
+
+    /**
+     * Open the export in the first of its types that matches the filter.
+     */
+    @Override
+    public AssetFileDescriptor openTypedAssetFile(Uri uri, String mimeTypeFilter, Bundle opts)
+            throws FileNotFoundException {
+        String[] types = getStreamTypes( uri, mimeTypeFilter );
+        if (types == null) {
+            return super.openTypedAssetFile( uri, mimeTypeFilter, opts );
+        }
+        return new AssetFileDescriptor( openExport( uri, types[0] ), 0,
+                AssetFileDescriptor.UNKNOWN_LENGTH );
+    }
+
+    /**
+     * Open the export as CSV.
+     */
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (uriMatcher.match( uri ) != BOOKS_EXPORT) {
+            throw new FileNotFoundException( "No files at " + uri );
+        }
+        if (!"r".equals( mode )) {
+            throw new FileNotFoundException( "The export can only be read, not opened with " + mode );
+        }
+        return openExport( uri, BookContract.MIME_TYPE_CSV );
+    }
+
+    /**
+     * Returns the read end of a pipe that a background thread writes the export into, as fast as
+     * it is read. Nothing is exported ahead of the reader, so the export takes the same little
+     * memory whatever its size, and stops when the reader closes the pipe.
+     */
+    private ParcelFileDescriptor openExport(Uri uri, String mimeType) throws FileNotFoundException {
+        return openPipeHelper( uri, mimeType, null, null, new PipeDataWriter<Void>() {
+            @Override
+            public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType,
+                                        Bundle opts, Void args) {
+                // The pipe is closed once this returns, so the writer is only flushed
+                Writer writer = new BufferedWriter( new OutputStreamWriter(
+                        new FileOutputStream( output.getFileDescriptor() ), UTF_8 ) );
+                try {
+                    new BookExporter( DbHelper.getReadableDatabase(), mimeType, writer ).export();
+                } catch (IOException e) {
+                    // Most likely the reader stopped reading and closed the pipe
+                    Log.w( LOG_TAG, "Export of " + uri + " stopped", e );
+                }
+            }
+        } );
+    }
+
+    /**
+     * Statistics of the books, and the generation of the books they were computed at
+     */
+    private static final class CachedStats {
+
+        final long generation;
+
+        final Bundle stats;
+
+        CachedStats(long generation, Bundle stats) {
+            this.generation = generation;
+            this.stats = stats;
         }
     }
 }
@@ -0,0 +1,163 @@
+package com.example.android.bookstore.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+import com.example.android.bookstore.data.BookContract.SaleEntry;
+
+/**
+ * Compiled statements for the writes {@link BookProvider} makes most often: inserting a whole
+ * book, setting its quantity or its price, and selling copies of it and recording the sale. The values are bound as
+ * primitives, so these writes neither box them into ContentValues nor build their SQL again.
+ * <p>
+ * Each statement is compiled the first time it's used, and kept until {@link #close}. Binding a
+ * statement and running it isn't thread safe, so each thread needs statements of its own.
+ */
+final class BookStatements {
+
+    /**
+     * Inserts a book with all of its columns but the _ID
+     */
+    static final String INSERT_SQL = "INSERT INTO " + BookEntry.TABLE_NAME + "("
+            + BookEntry.COLUMN_PRODUCT_NAME + ", " + BookEntry.COLUMN_PRODUCT_PRICE + ", "
+            + BookEntry.COLUMN_PRODUCT_QUANTITY + ", " + BookEntry.COLUMN_SUPPLIER_ID
+            + ") VALUES (?, ?, ?, ?)";
+
+    /**
+     * Sets the quantity of a book, bound first. The book's _ID is bound second.
+     */
+    static final String SET_QUANTITY_SQL = "UPDATE " + BookEntry.TABLE_NAME + " SET "
+            + BookEntry.COLUMN_PRODUCT_QUANTITY + " = ? WHERE " + BookEntry._ID + " = ?";
+
+    /**
+     * Sets the price of a book, bound first. The book's _ID is bound second.
+     */
+    static final String SET_PRICE_SQL = "UPDATE " + BookEntry.TABLE_NAME + " SET "
+            + BookEntry.COLUMN_PRODUCT_PRICE + " = ? WHERE " + BookEntry._ID + " = ?";
+
+    /**
+     * Decreases the quantity of a book by the copies sold (bound first and last), but only if
+     * there are enough copies left. The book's _ID is bound second.
+     */
+    static final String SELL_SQL = "UPDATE " + BookEntry.TABLE_NAME
+            + " SET " + BookEntry.COLUMN_PRODUCT_QUANTITY + " = "
+            + BookEntry.COLUMN_PRODUCT_QUANTITY + " - ? WHERE " + BookEntry._ID + " = ? AND "
+            + BookEntry.COLUMN_PRODUCT_QUANTITY + " >= ?";
+
+    /**
+     * Appends a sale of copies of a book (bound first) to the ledger, at the book's current price,
+     * at the time bound second. The book's _ID is bound third.
+     */
+    static final String RECORD_SALE_SQL = "INSERT INTO " + SaleEntry.TABLE_NAME + "("
+            + SaleEntry.COLUMN_BOOK_ID + ", " + SaleEntry.COLUMN_QUANTITY + ", "
+            + SaleEntry.COLUMN_PRICE + ", " + SaleEntry.COLUMN_TIME + ") SELECT "
+            + BookEntry._ID + ", ?, " + BookEntry.COLUMN_PRODUCT_PRICE + ", ? FROM "
+            + BookEntry.TABLE_NAME + " WHERE " + BookEntry._ID + " = ?";
+
+    private final SQLiteDatabase database;
+
+    /**
+     * The statements, or null until they're first used
+     */
+    private SQLiteStatement insert;
+    private SQLiteStatement setQuantity;
+    private SQLiteStatement setPrice;
+    private SQLiteStatement sell;
+    private SQLiteStatement recordSale;
+
+    BookStatements(SQLiteDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Returns whether the statements can run on the given database, which is the one they were
+     * compiled for, as long as it is still open.
+     */
+    boolean isFor(SQLiteDatabase database) {
+        return this.database == database && database.isOpen();
+    }
+
+    /**
+     * Insert a book. Returns the _ID of the new book.
+     *
+     * @throws android.database.SQLException if the book can't be inserted
+     */
+    long insertBook(String name, long priceCents, long quantity, long supplierId) {
+        if (insert == null) {
+            insert = database.compileStatement( INSERT_SQL );
+        }
+        insert.bindString( 1, name );
+        insert.bindLong( 2, priceCents );
+        insert.bindLong( 3, quantity );
+        insert.bindLong( 4, supplierId );
+        return insert.executeInsert();
+    }
+
+    /**
+     * Set the quantity of the book with the given _ID. Returns the number of books changed.
+     */
+    int setQuantity(long id, long quantity) {
+        if (setQuantity == null) {
+            setQuantity = database.compileStatement( SET_QUANTITY_SQL );
+        }
+        setQuantity.bindLong( 1, quantity );
+        setQuantity.bindLong( 2, id );
+        return setQuantity.executeUpdateDelete();
+    }
+
+    /**
+     * Set the price of the book with the given _ID. Returns the number of books changed.
+     */
+    int setPrice(long id, long priceCents) {
+        if (setPrice == null) {
+            setPrice = database.compileStatement( SET_PRICE_SQL );
+        }
+        setPrice.bindLong( 1, priceCents );
+        setPrice.bindLong( 2, id );
+        return setPrice.executeUpdateDelete();
+    }
+
+    /**
+     * Sell copies of the book with the given _ID, if there are enough of them left, and append
+     * the sale to the ledger. Returns whether they were sold. Call it in a transaction, so the
+     * stock and the ledger are only ever written together.
+     */
+    boolean sell(long id, int quantity) {
+        if (sell == null) {
+            sell = database.compileStatement( SELL_SQL );
+        }
+        sell.bindLong( 1, quantity );
+        sell.bindLong( 2, id );
+        sell.bindLong( 3, quantity );
+        if (sell.executeUpdateDelete() != 1) {
+            return false;
+        }
+
+        if (recordSale == null) {
+            recordSale = database.compileStatement( RECORD_SALE_SQL );
+        }
+        recordSale.bindLong( 1, quantity );
+        recordSale.bindLong( 2, System.currentTimeMillis() );
+        recordSale.bindLong( 3, id );
+        recordSale.executeInsert();
+        return true;
+    }
+
+    /**
+     * Release the statements that were compiled.
+     */
+    void close() {
+        SQLiteStatement[] statements = {insert, setQuantity, setPrice, sell, recordSale};
+        for (SQLiteStatement statement : statements) {
+            if (statement != null) {
+                statement.close();
+            }
+        }
+        insert = null;
+        setQuantity = null;
+        setPrice = null;
+        sell = null;
+        recordSale = null;
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentValues;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+/**
+ * The rules a book must follow to be stored. {@link BookProvider} checks every insert and update
+ * against them, and importers can check rows up front to report the bad ones.
+ */
+public final class BookValidator {
+
+    private BookValidator() {
+    }
+
+    /**
+     * Check the content values of a new book. A price given as a String is put back as a long.
+     *
+     * @throws IllegalArgumentException describing the first attribute that isn't valid
+     */
+    public static void validateNewBook(ContentValues contentValues) {
+        // Check that the name is not null
+        String name = contentValues.getAsString( BookEntry.COLUMN_PRODUCT_NAME );
+        if (name == null) {
+            throw new IllegalArgumentException( "Book requires a name" );
+        }
+
+        Long price = getPriceCents( contentValues );
+        if (price != null && price < 0) {
+            throw new IllegalArgumentException( "Book requires a price" );
+        }
+
+        Integer quantity = contentValues.getAsInteger( BookEntry.COLUMN_PRODUCT_QUANTITY );
+        if (quantity != null && quantity < 0) {
+            throw new IllegalArgumentException( "Book requires a quantity" );
+        }
+
+        String supplier = contentValues.getAsString( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME );
+        if (supplier == null) {
+            throw new IllegalArgumentException( "Book requires a supplier" );
+        }
+
+        // No need to check supplier phone number, any value is valid ( even null ).
+
+        validateLowStockThreshold( contentValues );
+        normalizeIsbn( contentValues );
+    }
+
+    /**
+     * Check the content values of an update to existing books. Only the attributes present are
+     * checked. A price given as a String is put back as a long.
+     *
+     * @throws IllegalArgumentException describing the first attribute that isn't valid
+     */
+    public static void validateBookChanges(ContentValues contentValues) {
+        // If the {@link BookEntry#COLUMN_PRODUCT_NAME} key is present,
+        // check that the name value is not null.
+        if (contentValues.containsKey( BookEntry.COLUMN_PRODUCT_NAME )) {
+            String name = contentValues.getAsString( BookEntry.COLUMN_PRODUCT_NAME );
+            if (name == null) {
+                throw new IllegalArgumentException( "Book requires a name" );
+            }
+        }
+
+        // If the {@link BookEntry#COLUMN_PRODUCT_PRICE} key is present,
+        // check that the price value is valid.
+        if (contentValues.containsKey( BookEntry.COLUMN_PRODUCT_PRICE )) {
+            // Check that the price is greater than or equal to $0
+            Long price = getPriceCents( contentValues );
+            if (price != null && price < 0) {
+                throw new IllegalArgumentException( "Book requires valid price" );
+            }
+        }
+
+        // If the {@link BookEntry#COLUMN_PRODUCT_QUANTITY} key is present,
+        // check that the quantity is valid.
+        if (contentValues.containsKey( BookEntry.COLUMN_PRODUCT_QUANTITY )) {
+            // Check that the quantity is greater than or equal to 0
+            Integer quantity = contentValues.getAsInteger( BookEntry.COLUMN_PRODUCT_QUANTITY );
+            if (quantity != null && quantity < 0) {
+                throw new IllegalArgumentException( "Book requires valid quantity" );
+            }
+        }
+
+        // If the {@link BookEntry#COLUMN_PRODUCT_SUPPLIER_NAME key is present,
+        // check that the supplier name is valid
+        if (contentValues.containsKey( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME )) {
+            String supplierName = contentValues.getAsString( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME );
+            if (supplierName == null) {
+                throw new IllegalArgumentException( "Book requires a supplier" );
+            }
+        }
+
+        // No need to check supplier phone number, any value is valid ( even null ).
+
+        validateLowStockThreshold( contentValues );
+        normalizeIsbn( contentValues );
+    }
+
+    /**
+     * Check the low stock threshold in the content values, if there is one. A null threshold is
+     * valid: the book uses the default one.
+     *
+     * @throws IllegalArgumentException if the threshold is negative
+     */
+    private static void validateLowStockThreshold(ContentValues contentValues) {
+        Integer threshold = contentValues.getAsInteger( BookEntry.COLUMN_LOW_STOCK_THRESHOLD );
+        if (threshold != null && threshold < 0) {
+            throw new IllegalArgumentException( "Book requires a valid low stock threshold" );
+        }
+    }
+
+    /**
+     * Put the ISBN in the content values back normalized, if there is one, so it's stored the
+     * same however it was typed. A null ISBN is valid: the book has none.
+     *
+     * @throws IllegalArgumentException if the ISBN isn't an ISBN or EAN
+     */
+    private static void normalizeIsbn(ContentValues contentValues) {
+        String isbn = contentValues.getAsString( BookEntry.COLUMN_ISBN );
+        if (isbn == null) {
+            return;
+        }
+        try {
+            contentValues.put( BookEntry.COLUMN_ISBN, BarcodeFormatter.normalize( isbn ) );
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException( "Book requires a valid ISBN, not " + isbn );
+        }
+    }
+
+    /**
+     * Returns the price in the content values, in cents, or null if there is none. The price is
+     * put back as a long, so that it's stored as an INTEGER even if it was given as a String.
+     *
+     * @throws IllegalArgumentException if the price isn't a whole number of cents
+     */
+    private static Long getPriceCents(ContentValues contentValues) {
+        Object value = contentValues.get( BookEntry.COLUMN_PRODUCT_PRICE );
+        if (value == null) {
+            return null;
+        }
+
+        long cents;
+        if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            cents = ((Number) value).longValue();
+        } else if (value instanceof String) {
+            try {
+                cents = Long.parseLong( ((String) value).trim() );
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException( "Book requires a price in cents, not " + value );
+            }
+        } else {
+            throw new IllegalArgumentException( "Book requires a price in cents, not " + value );
+        }
+
+        contentValues.put( BookEntry.COLUMN_PRODUCT_PRICE, cents );
+        return cents;
+    }
+}
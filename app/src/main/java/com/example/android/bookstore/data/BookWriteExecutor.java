@@ -0,0 +1,345 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the writes the activities make to the provider on a small pool of background threads, so
+ * the main thread never waits for the database, and tells about their results on the main thread.
+ * <p>
+ * Each write is submitted for a book _ID, and the writes for the same _ID run one after the other
+ * in the order they were submitted, so a save followed by a delete of the same book is never
+ * turned around. Writes for different books may run at the same time. Writes that aren't about a
+ * single book use {@link #NEW_BOOK} or {@link #ALL_BOOKS} instead. A write to {@link #ALL_BOOKS}
+ * touches every book, so it waits for all the writes submitted before it, and all the writes
+ * submitted after it wait for it.
+ */
+public final class BookWriteExecutor {
+
+    private static final String LOG_TAG = BookWriteExecutor.class.getSimpleName();
+
+    /**
+     * The _ID to submit inserts of new books under
+     */
+    public static final long NEW_BOOK = 0;
+
+    /**
+     * The _ID to submit writes to all the books under, such as deleting them all. They run
+     * on their own, between the writes submitted before and after them.
+     */
+    public static final long ALL_BOOKS = -1;
+
+    /**
+     * Number of writes that run at the same time. SQLite only writes one transaction at a time
+     * anyway, so more threads would only wait for each other.
+     */
+    private static final int THREAD_COUNT = 2;
+
+    /**
+     * Number of books whose writes may wait for a thread. A book's writes after its first one
+     * wait in its own queue, so this only runs out with this many books written at once.
+     */
+    private static final int QUEUE_CAPACITY = 64;
+
+    /**
+     * How long an idle thread is kept for the next write
+     */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * A write to run in the background
+     */
+    public interface Write<T> {
+
+        /**
+         * Called on a background thread to make the write. Returns its result, which is passed
+         * to {@link Callback#onComplete}.
+         */
+        T write(ContentResolver contentResolver);
+    }
+
+    /**
+     * Callback for the result of a write
+     */
+    public interface Callback<T> {
+
+        /**
+         * Called on the main thread with the result of the write.
+         */
+        void onComplete(T result);
+
+        /**
+         * Called on the main thread if the write threw, or couldn't be run at all.
+         */
+        void onError(RuntimeException e);
+    }
+
+    private static BookWriteExecutor instance;
+
+    private final ContentResolver contentResolver;
+
+    private final ThreadPoolExecutor executor;
+
+    private final Handler mainHandler = new Handler( Looper.getMainLooper() );
+
+    /**
+     * The writes waiting for the write running for each book _ID. A book has a queue for as long
+     * as one of its writes is running or waiting for a thread. Lock on the map to read or change it.
+     */
+    private final Map<Long, ArrayDeque<Task<?>>> queues = new HashMap<>();
+
+    /**
+     * The write to {@link #ALL_BOOKS} waiting for the books' queues to drain, or running, or
+     * null if there is none. Guarded by {@link #queues}.
+     */
+    private Task<?> barrier;
+
+    /**
+     * Whether the {@link #barrier} has been handed to the threads. Guarded by {@link #queues}.
+     */
+    private boolean barrierStarted;
+
+    /**
+     * The writes submitted after the {@link #barrier}, in order, held until it's done. Guarded
+     * by {@link #queues}.
+     */
+    private final ArrayDeque<Task<?>> held = new ArrayDeque<>();
+
+    /**
+     * Returns the executor shared by the whole app.
+     */
+    public static synchronized BookWriteExecutor getInstance(Context context) {
+        if (instance == null) {
+            instance = new BookWriteExecutor( context.getApplicationContext().getContentResolver() );
+        }
+        return instance;
+    }
+
+    BookWriteExecutor(ContentResolver contentResolver) {
+        this.contentResolver = contentResolver;
+        executor = new ThreadPoolExecutor( THREAD_COUNT, THREAD_COUNT, KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>( QUEUE_CAPACITY ),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread( new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority( Process.THREAD_PRIORITY_BACKGROUND );
+                                runnable.run();
+                            }
+                        }, LOG_TAG + " #" + count.incrementAndGet() );
+                    }
+                } );
+        // Let the threads go while nothing is written
+        executor.allowCoreThreadTimeOut( true );
+    }
+
+    /**
+     * Run a write in the background, after the writes submitted before it for the same book, and
+     * after all the writes submitted before it if it's for {@link #ALL_BOOKS}, or one of them is.
+     *
+     * @param bookId   _ID of the book written, or {@link #NEW_BOOK} or {@link #ALL_BOOKS}
+     * @param callback to tell about the result of the write on the main thread, or null
+     * @return the task of the write, to cancel it with
+     */
+    public <T> Task<T> submit(long bookId, Write<T> write, Callback<T> callback) {
+        Task<T> task = new Task<>( bookId, write, callback );
+        Task<?> ready;
+        synchronized (queues) {
+            ready = schedule( task );
+        }
+        if (ready != null) {
+            start( ready );
+        }
+        return task;
+    }
+
+    /**
+     * Queue a task behind the ones it has to wait for. Hold the lock on {@link #queues} to call
+     * this.
+     *
+     * @return the task if it can start straight away, or null if another task starts it
+     */
+    private Task<?> schedule(Task<?> task) {
+        if (barrier != null) {
+            // A write to all the books comes first, and starts this one when it's done
+            held.add( task );
+            return null;
+        }
+
+        if (task.bookId == ALL_BOOKS) {
+            // Wait for the writes already running or queued, the last of which starts it
+            barrier = task;
+            barrierStarted = queues.isEmpty();
+            return barrierStarted ? task : null;
+        }
+
+        ArrayDeque<Task<?>> queue = queues.get( task.bookId );
+        if (queue != null) {
+            // Another write for the book comes first, and starts this one when it's done
+            queue.add( task );
+            return null;
+        }
+        queues.put( task.bookId, new ArrayDeque<Task<?>>() );
+        return task;
+    }
+
+    /**
+     * Hand a task to the threads. If they're all busy and the queue is full, the task fails, and
+     * the tasks waiting for it are tried instead.
+     */
+    private void start(Task<?> task) {
+        try {
+            executor.execute( task );
+        } catch (RejectedExecutionException e) {
+            Log.e( LOG_TAG, "Too many writes waiting, dropped one for book " + task.bookId );
+            task.fail( e );
+            for (Task<?> next : finish( task )) {
+                start( next );
+            }
+        }
+    }
+
+    /**
+     * Take the task off the books it was written for, and return the tasks that can start now
+     * that it's done: the book's next task, the write to all the books once no other write is
+     * left, or the writes held by that one once it's done.
+     */
+    private List<Task<?>> finish(Task<?> task) {
+        List<Task<?>> ready = new ArrayList<>();
+        synchronized (queues) {
+            if (task == barrier) {
+                barrier = null;
+                barrierStarted = false;
+                // Let the writes held go, up to the next write to all the books
+                while (!held.isEmpty() && barrier == null) {
+                    Task<?> next = schedule( held.poll() );
+                    if (next != null) {
+                        ready.add( next );
+                    }
+                }
+                return ready;
+            }
+
+            ArrayDeque<Task<?>> queue = queues.get( task.bookId );
+            Task<?> next = queue.poll();
+            if (next != null) {
+                ready.add( next );
+            } else {
+                queues.remove( task.bookId );
+                if (barrier != null && !barrierStarted && queues.isEmpty()) {
+                    barrierStarted = true;
+                    ready.add( barrier );
+                }
+            }
+        }
+        return ready;
+    }
+
+    /**
+     * A write submitted to the executor
+     */
+    public final class Task<T> implements Runnable {
+
+        private static final int PENDING = 0;
+        private static final int RUNNING = 1;
+        private static final int CANCELLED = 2;
+
+        private final long bookId;
+
+        private final Write<T> write;
+
+        private final Callback<T> callback;
+
+        private final AtomicInteger state = new AtomicInteger( PENDING );
+
+        /**
+         * Whether the callback shouldn't be called anymore
+         */
+        private volatile boolean cancelled;
+
+        private Task(long bookId, Write<T> write, Callback<T> callback) {
+            this.bookId = bookId;
+            this.write = write;
+            this.callback = callback;
+        }
+
+        /**
+         * Cancel the write, if it hasn't started yet. Either way its callback isn't called
+         * anymore, as long as this is called on the main thread.
+         *
+         * @return whether the write was cancelled before it started
+         */
+        public boolean cancel() {
+            cancelled = true;
+            return state.compareAndSet( PENDING, CANCELLED );
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!state.compareAndSet( PENDING, RUNNING )) {
+                    return;
+                }
+                final T result;
+                try {
+                    result = write.write( contentResolver );
+                } catch (RuntimeException e) {
+                    Log.e( LOG_TAG, "Failed to write book " + bookId, e );
+                    fail( e );
+                    return;
+                }
+                if (callback != null) {
+                    mainHandler.post( new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!cancelled) {
+                                callback.onComplete( result );
+                            }
+                        }
+                    } );
+                }
+            } finally {
+                // Let the writes waiting for this one go on, whatever became of it
+                for (Task<?> next : finish( this )) {
+                    start( next );
+                }
+            }
+        }
+
+        /**
+         * Tell the callback the write failed, on the main thread.
+         */
+        private void fail(final RuntimeException e) {
+            if (callback != null) {
+                mainHandler.post( new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!cancelled) {
+                            callback.onError( e );
+                        }
+                    }
+                } );
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.android.bookstore.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the records of a CSV file (RFC 4180) one at a time, so a file of any size can be read
+ * in a small, fixed amount of memory. Fields may be quoted, with doubled quotes inside them, and
+ * quoted fields may span lines.
+ */
+public class CsvReader implements Closeable {
+
+    /**
+     * Longest record that is read, in chars. An unterminated quote would otherwise read the
+     * rest of the file into a single field.
+     */
+    private static final int MAX_RECORD_LENGTH = 64 * 1024;
+
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final Reader reader;
+
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+
+    /**
+     * The field being read, reused for every field
+     */
+    private final StringBuilder field = new StringBuilder();
+
+    /**
+     * Line the next record starts on, counting from 1
+     */
+    private long nextLineNumber = 1;
+
+    /**
+     * Line the last record read started on
+     */
+    private long lineNumber;
+
+    public CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Returns the fields of the next record, or null at the end of the file. Blank lines are
+     * skipped.
+     *
+     * @throws IOException if the file can't be read, or a record is longer than 64 KiB
+     */
+    public List<String> readRecord() throws IOException {
+        int c = read();
+
+        // Skip blank lines, and the byte order mark some editors start UTF-8 files with
+        while (c == '\r' || c == '\n' || (c == BYTE_ORDER_MARK && nextLineNumber == 1)) {
+            if (c == '\n') {
+                nextLineNumber++;
+            }
+            c = read();
+        }
+        if (c == -1) {
+            return null;
+        }
+
+        lineNumber = nextLineNumber;
+        List<String> record = new ArrayList<>();
+        int length = 0;
+        boolean quoted = false;
+        field.setLength( 0 );
+
+        while (true) {
+            if (++length > MAX_RECORD_LENGTH) {
+                throw new IOException( "Record on line " + lineNumber + " is too long" );
+            }
+
+            if (quoted) {
+                if (c == -1) {
+                    // An unterminated quote ends with the file
+                    record.add( field.toString() );
+                    return record;
+                } else if (c == '"') {
+                    c = read();
+                    if (c == '"') {
+                        // A doubled quote is a quote inside the field
+                        field.append( '"' );
+                    } else {
+                        quoted = false;
+                        continue;
+                    }
+                } else {
+                    if (c == '\n') {
+                        nextLineNumber++;
+                    }
+                    field.append( (char) c );
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                record.add( field.toString() );
+                field.setLength( 0 );
+            } else if (c == '\r' || c == '\n' || c == -1) {
+                if (c == '\r') {
+                    c = read();
+                    if (c != '\n') {
+                        unread();
+                    }
+                }
+                nextLineNumber++;
+                record.add( field.toString() );
+                return record;
+            } else {
+                field.append( (char) c );
+            }
+            c = read();
+        }
+    }
+
+    /**
+     * Returns the line the last record read started on, counting from 1.
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read( buffer, 0, buffer.length );
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * Step back over the char just read, which is always still in the buffer.
+     */
+    private void unread() {
+        if (position > 0) {
+            position--;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.android.bookstore.data;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Writes records to a CSV file (RFC 4180) that {@link CsvReader} and spreadsheets can read back.
+ * Fields are only quoted when they have to be.
+ */
+public class CsvWriter implements Closeable, Flushable {
+
+    private final Writer writer;
+
+    /**
+     * Whether the next field is the first of its record, so isn't preceded by a comma
+     */
+    private boolean firstField = true;
+
+    public CsvWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    public void writeRecord(List<String> fields) throws IOException {
+        for (String field : fields) {
+            writeField( field );
+        }
+        endRecord();
+    }
+
+    /**
+     * Write the next field of the current record, quoting it if it holds a comma, a quote or
+     * a line break. A null field is written as an empty one.
+     */
+    public void writeField(String field) throws IOException {
+        startField();
+        if (field == null) {
+            return;
+        }
+
+        boolean needsQuotes = false;
+        for (int i = 0; i < field.length() && !needsQuotes; i++) {
+            char c = field.charAt( i );
+            needsQuotes = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+
+        if (!needsQuotes) {
+            writer.write( field );
+            return;
+        }
+
+        writer.write( '"' );
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt( i );
+            if (c == '"') {
+                writer.write( '"' );
+            }
+            writer.write( c );
+        }
+        writer.write( '"' );
+    }
+
+    /**
+     * Write the next field of the current record from a range of chars that is known not to
+     * need quotes, such as a number.
+     */
+    public void writeUnquotedField(char[] chars, int offset, int length) throws IOException {
+        startField();
+        writer.write( chars, offset, length );
+    }
+
+    /**
+     * End the current record, so the next field starts a new one.
+     */
+    public void endRecord() throws IOException {
+        writer.write( "\r\n" );
+        firstField = true;
+    }
+
+    private void startField() throws IOException {
+        if (!firstField) {
+            writer.write( ',' );
+        }
+        firstField = false;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
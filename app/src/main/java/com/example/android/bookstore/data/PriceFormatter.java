@@ -0,0 +1,74 @@
+package com.example.android.bookstore.data;
+
+import java.math.BigDecimal;
+
+/**
+ * Converts between prices in cents, as stored in {@link BookContract.BookEntry#COLUMN_PRODUCT_PRICE},
+ * and the prices in dollars that the user reads and types.
+ */
+public final class PriceFormatter {
+
+    /**
+     * Length of a buffer large enough for any price written by {@link #writeDollars}, with its
+     * sign, decimal point and a currency symbol in front
+     */
+    public static final int MAX_LENGTH = 22;
+
+    private PriceFormatter() {
+    }
+
+    /**
+     * Write the price in dollars, such as "19.99" or "-0.05", into the buffer, ending just before
+     * {@code end}. Nothing is allocated, so this can be called for every row of a list.
+     *
+     * @return the index of the first char written
+     */
+    public static int writeDollars(long cents, char[] buffer, int end) {
+        int start = writeDigits( cents % 100, buffer, end );
+        if (start == end - 1) {
+            buffer[--start] = '0';
+        }
+        buffer[--start] = '.';
+        start = writeDigits( cents / 100, buffer, start );
+        if (cents < 0) {
+            buffer[--start] = '-';
+        }
+        return start;
+    }
+
+    /**
+     * Returns the price in dollars, such as "19.99".
+     */
+    public static String toDollars(long cents) {
+        char[] buffer = new char[MAX_LENGTH];
+        int start = writeDollars( cents, buffer, buffer.length );
+        return new String( buffer, start, buffer.length - start );
+    }
+
+    /**
+     * Parse a price in dollars, such as "19.99", "19.9" or "19", into cents.
+     *
+     * @throws NumberFormatException if it isn't a number, or has fractions of a cent
+     */
+    public static long parseCents(String dollars) {
+        try {
+            return new BigDecimal( dollars.trim() ).movePointRight( 2 ).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException( "Not a price in whole cents: " + dollars );
+        }
+    }
+
+    /**
+     * Write the decimal digits of the number, without its sign, into the buffer, ending just
+     * before {@code end}. Returns the index of the first digit.
+     */
+    private static int writeDigits(long number, char[] buffer, int end) {
+        // Work with the remainders rather than negating the number, which would overflow
+        // for Long.MIN_VALUE
+        do {
+            buffer[--end] = (char) ('0' + Math.abs( number % 10 ));
+            number /= 10;
+        } while (number != 0);
+        return end;
+    }
+}
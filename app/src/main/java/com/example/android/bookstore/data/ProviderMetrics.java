@@ -0,0 +1,228 @@
+package com.example.android.bookstore.data;
+
+import android.os.Bundle;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the calls to a content provider per operation and per URI matcher code: how many there
+ * were, how many rows they returned or changed, and how long they took, as a histogram. The
+ * counters are atomic, so recording a call takes no lock, and while the metrics are disabled
+ * recording costs a single volatile read.
+ */
+final class ProviderMetrics {
+
+    /**
+     * The operations counted
+     */
+    static final int QUERY = 0;
+    static final int INSERT = 1;
+    static final int UPDATE = 2;
+    static final int DELETE = 3;
+    static final int GET_TYPE = 4;
+
+    private static final String[] OPERATION_NAMES = {"query", "insert", "update", "delete", "getType"};
+
+    /**
+     * Number of latency buckets. Bucket {@code i} counts the calls that took less than 2^i
+     * microseconds (and at least half that), and the last bucket counts all the slower ones.
+     */
+    static final int BUCKET_COUNT = 24;
+
+    /**
+     * Returned by {@link #start} while the metrics are disabled
+     */
+    static final long NOT_STARTED = Long.MIN_VALUE;
+
+    /**
+     * The URI matcher codes counted, and their names. Calls with any other code, such as
+     * {@link android.content.UriMatcher#NO_MATCH}, are counted under "other".
+     */
+    private final int[] codes;
+    private final String[] codeNames;
+
+    /**
+     * Counters per operation and code, at {@link #index}
+     */
+    private final AtomicLongArray calls;
+    private final AtomicLongArray rows;
+    private final AtomicLongArray totalMicros;
+
+    /**
+     * Latency buckets per operation and code, at {@link #index} times {@link #BUCKET_COUNT}
+     */
+    private final AtomicLongArray histogram;
+
+    /**
+     * Whether calls are counted. Off until enabled, since counting the rows of a query runs it
+     * straight away on the calling thread, rather than when the cursor is first read.
+     */
+    private volatile boolean enabled;
+
+    /**
+     * @param codes     the URI matcher codes to count the calls of separately
+     * @param codeNames the names the counters of each code are reported under
+     */
+    ProviderMetrics(int[] codes, String[] codeNames) {
+        if (codes.length != codeNames.length) {
+            throw new IllegalArgumentException( "Codes and names don't match" );
+        }
+        this.codes = codes.clone();
+        this.codeNames = codeNames.clone();
+
+        int size = OPERATION_NAMES.length * (codes.length + 1);
+        calls = new AtomicLongArray( size );
+        rows = new AtomicLongArray( size );
+        totalMicros = new AtomicLongArray( size );
+        histogram = new AtomicLongArray( size * BUCKET_COUNT );
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns the start time of a call to pass to {@link #record}, or {@link #NOT_STARTED}
+     * if the metrics are disabled.
+     */
+    long start() {
+        return enabled ? System.nanoTime() : NOT_STARTED;
+    }
+
+    /**
+     * Count a call that started at the given time.
+     *
+     * @param operation one of the operations, such as {@link #QUERY}
+     * @param code      the URI matcher code of the call's URI
+     * @param start     what {@link #start} returned when the call started
+     * @param rowCount  the rows the call returned or changed
+     * @return how long the call took in microseconds, or -1 if it wasn't started
+     */
+    long record(int operation, int code, long start, long rowCount) {
+        if (start == NOT_STARTED) {
+            return -1;
+        }
+        long micros = (System.nanoTime() - start) / 1000;
+
+        int index = index( operation, code );
+        calls.incrementAndGet( index );
+        rows.addAndGet( index, rowCount );
+        totalMicros.addAndGet( index, micros );
+        histogram.incrementAndGet( index * BUCKET_COUNT + bucket( micros ) );
+        return micros;
+    }
+
+    /**
+     * Returns the bucket that counts calls that took the given number of microseconds.
+     */
+    private static int bucket(long micros) {
+        // The number of bits needed for the number, which is i for values in [2^(i-1), 2^i)
+        int bits = 64 - Long.numberOfLeadingZeros( micros );
+        return Math.min( bits, BUCKET_COUNT - 1 );
+    }
+
+    private int index(int operation, int code) {
+        int codeIndex = codes.length;
+        for (int i = 0; i < codes.length; i++) {
+            if (codes[i] == code) {
+                codeIndex = i;
+                break;
+            }
+        }
+        return operation * (codes.length + 1) + codeIndex;
+    }
+
+    private String codeName(int codeIndex) {
+        return codeIndex < codes.length ? codeNames[codeIndex] : "other";
+    }
+
+    /**
+     * Set all the counters back to 0.
+     */
+    void reset() {
+        for (int i = 0; i < calls.length(); i++) {
+            calls.set( i, 0 );
+            rows.set( i, 0 );
+            totalMicros.set( i, 0 );
+        }
+        for (int i = 0; i < histogram.length(); i++) {
+            histogram.set( i, 0 );
+        }
+    }
+
+    /**
+     * Returns the counters of every operation and code that was called at least once, each in
+     * a bundle named "operation/code" such as "query/books". See {@link BookContract#METHOD_METRICS}.
+     * The counters are read one at a time while calls may still be counted, so they may be a
+     * call or two apart.
+     */
+    Bundle toBundle() {
+        Bundle result = new Bundle();
+        result.putBoolean( BookContract.EXTRA_ENABLED, enabled );
+        for (int operation = 0; operation < OPERATION_NAMES.length; operation++) {
+            for (int codeIndex = 0; codeIndex <= codes.length; codeIndex++) {
+                int index = operation * (codes.length + 1) + codeIndex;
+                long callCount = calls.get( index );
+                if (callCount == 0) {
+                    continue;
+                }
+
+                Bundle counters = new Bundle();
+                counters.putLong( BookContract.EXTRA_CALL_COUNT, callCount );
+                counters.putLong( BookContract.EXTRA_ROW_COUNT, rows.get( index ) );
+                counters.putLong( BookContract.EXTRA_TOTAL_MICROS, totalMicros.get( index ) );
+                long[] buckets = new long[BUCKET_COUNT];
+                for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                    buckets[bucket] = histogram.get( index * BUCKET_COUNT + bucket );
+                }
+                counters.putLongArray( BookContract.EXTRA_LATENCY_HISTOGRAM, buckets );
+                result.putBundle( OPERATION_NAMES[operation] + "/" + codeName( codeIndex ), counters );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Print the counters as a table, for {@code adb shell dumpsys activity provider}.
+     */
+    void dump(PrintWriter writer) {
+        writer.println( "Metrics " + (enabled ? "enabled" : "disabled") );
+        writer.println( String.format( Locale.US, "%-24s %10s %12s %10s %10s %10s",
+                "operation", "calls", "rows", "mean us", "p50 us", "p99 us" ) );
+        for (int operation = 0; operation < OPERATION_NAMES.length; operation++) {
+            for (int codeIndex = 0; codeIndex <= codes.length; codeIndex++) {
+                int index = operation * (codes.length + 1) + codeIndex;
+                long callCount = calls.get( index );
+                if (callCount == 0) {
+                    continue;
+                }
+                writer.println( String.format( Locale.US, "%-24s %10d %12d %10d %10s %10s",
+                        OPERATION_NAMES[operation] + "/" + codeName( codeIndex ), callCount,
+                        rows.get( index ), totalMicros.get( index ) / callCount,
+                        percentile( index, callCount, 0.5 ), percentile( index, callCount, 0.99 ) ) );
+            }
+        }
+    }
+
+    /**
+     * Returns the upper bound of the bucket the given percentile of the calls falls in, such as
+     * "<512", or ">=4194304" for the last bucket.
+     */
+    private String percentile(int index, long callCount, double fraction) {
+        long rank = (long) Math.ceil( callCount * fraction );
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT - 1; bucket++) {
+            seen += histogram.get( index * BUCKET_COUNT + bucket );
+            if (seen >= rank) {
+                return "<" + (1L << bucket);
+            }
+        }
+        return ">=" + (1L << (BUCKET_COUNT - 2));
+    }
+}
@@ -0,0 +1,387 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentResolver;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Gathers the copies of books sold in memory, and writes them to the provider a while later, all
+ * in one transaction with {@link BookContract#METHOD_SELL_BATCH}. However quickly the "BUY" button
+ * is tapped, the books are then written and reloaded once per flush rather than once per tap.
+ * <p>
+ * The sales that aren't written yet are taken off the quantities by {@link #getQuantityLeft}, so
+ * the list can show them straight away. So are the sales written until the list has loaded the
+ * books again, so the quantities don't go back up in between. Call {@link #flushInBackground}
+ * when the activity is paused, {@link #flushAndWait} when it's stopped, and {@link #close} when
+ * it's destroyed. None of them writes on the calling thread.
+ * <p>
+ * The sales not written yet are also kept in {@link SharedPreferences}, so those that can't be
+ * written before the process is killed are written by the next queue created with the same
+ * preferences. A sale is only lost if the preferences can't be saved either. A sale is written
+ * twice if the process is killed between writing it and clearing it from the preferences.
+ */
+public class SaleQueue {
+
+    private static final String LOG_TAG = SaleQueue.class.getSimpleName();
+
+    /**
+     * How long the sales are gathered for before they are written, unless set otherwise
+     */
+    public static final long DEFAULT_FLUSH_DELAY_MILLIS = 500;
+
+    /**
+     * Name of the {@link SharedPreferences} the sales not written yet are kept in, as the copies
+     * sold keyed by the book _ID
+     */
+    public static final String PREFERENCES_NAME = "sale_queue";
+
+    /**
+     * Listener for the sales written by the queue
+     */
+    public interface Listener {
+
+        /**
+         * Called on the main thread after sales were written, or found to be sold out. The
+         * quantities left of the books whose sales were written don't change, only those of
+         * the books sold out do.
+         *
+         * @param soldOutIds _IDs of the books that didn't have enough copies left, whose sales
+         *                   were dropped
+         */
+        void onSalesFlushed(long[] soldOutIds);
+    }
+
+    private final ContentResolver contentResolver;
+
+    /**
+     * Holds the same sales as {@link #pending}, so they outlive the process. Only edited while
+     * holding the lock on {@link #pending}, so the edits are saved in the same order.
+     */
+    private final SharedPreferences preferences;
+
+    private final long flushDelayMillis;
+
+    private final Listener listener;
+
+    /**
+     * Copies sold per book _ID, including the ones being written right now. Lock on the map
+     * to read or change it.
+     */
+    private final Map<Long, Integer> pending = new HashMap<>();
+
+    /**
+     * Copies sold per book _ID that were written, but may not be in the books the list shows
+     * yet. Guarded by {@link #pending}.
+     */
+    private final Map<Long, Integer> unseen = new HashMap<>();
+
+    /**
+     * The quantity in stock the list showed for each book with sales pending or unseen. Once
+     * the list shows another one, it was loaded after the sales were written. Guarded by
+     * {@link #pending}.
+     */
+    private final Map<Long, Integer> stocks = new HashMap<>();
+
+    /**
+     * Lock held while the sales are written, so only one flush writes them at a time
+     */
+    private final Object flushLock = new Object();
+
+    /**
+     * The thread the scheduled flushes run on
+     */
+    private final HandlerThread thread;
+
+    private final Handler handler;
+
+    private final Handler mainHandler = new Handler( Looper.getMainLooper() );
+
+    /**
+     * Whether a flush is scheduled on {@link #handler}. Guarded by {@link #pending}.
+     */
+    private boolean flushScheduled;
+
+    /**
+     * Whether the queue is closed, so the listener isn't called anymore. Only touched on the main thread.
+     */
+    private boolean closed;
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public SaleQueue(ContentResolver contentResolver, SharedPreferences preferences,
+                     Listener listener) {
+        this( contentResolver, preferences, DEFAULT_FLUSH_DELAY_MILLIS, listener );
+    }
+
+    /**
+     * Create a queue, which starts writing the sales an earlier queue left in the preferences
+     * straight away.
+     *
+     * @param preferences      to keep the sales not written yet in, usually the ones named
+     *                         {@link #PREFERENCES_NAME}
+     * @param flushDelayMillis how long the sales are gathered for before they are written
+     * @param listener         to tell about the sales written, or null
+     */
+    public SaleQueue(ContentResolver contentResolver, SharedPreferences preferences,
+                     long flushDelayMillis, Listener listener) {
+        this.contentResolver = contentResolver;
+        this.preferences = preferences;
+        this.flushDelayMillis = flushDelayMillis;
+        this.listener = listener;
+        thread = new HandlerThread( LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND );
+        thread.start();
+        handler = new Handler( thread.getLooper() );
+
+        // Pick up the sales the last queue didn't write before its process was killed
+        synchronized (pending) {
+            for (Map.Entry<String, ?> entry : preferences.getAll().entrySet()) {
+                if (entry.getValue() instanceof Integer) {
+                    pending.put( Long.parseLong( entry.getKey() ), (Integer) entry.getValue() );
+                }
+            }
+            if (!pending.isEmpty()) {
+                Log.i( LOG_TAG, "Writing the sales of " + pending.size() + " books left unwritten" );
+                flushScheduled = true;
+                handler.post( flushRunnable );
+            }
+        }
+    }
+
+    /**
+     * Sell a copy of the book with the given _ID. It's only written once the flush delay is over.
+     *
+     * @param stock the quantity of the book in stock the list shows, without the sales in flight
+     */
+    public void sell(long bookId, int stock) {
+        synchronized (pending) {
+            Integer quantity = pending.get( bookId );
+            quantity = quantity == null ? 1 : quantity + 1;
+            pending.put( bookId, quantity );
+            preferences.edit().putInt( String.valueOf( bookId ), quantity ).apply();
+            if (!stocks.containsKey( bookId )) {
+                stocks.put( bookId, stock );
+            }
+
+            if (!flushScheduled) {
+                flushScheduled = true;
+                handler.postDelayed( flushRunnable, flushDelayMillis );
+            }
+        }
+    }
+
+    /**
+     * Returns the copies of the book with the given _ID that were sold, but may not be written yet.
+     */
+    public int getPendingQuantity(long bookId) {
+        synchronized (pending) {
+            Integer quantity = pending.get( bookId );
+            return quantity == null ? 0 : quantity;
+        }
+    }
+
+    /**
+     * Returns the quantity of the book with the given _ID left once the sales in flight are
+     * taken off. Those are the sales not written yet, and the sales written while the list
+     * showed the same stock. A stock other than the one shown before means the list has loaded
+     * the book again since, and already counts the sales written.
+     *
+     * @param stock the quantity of the book in stock the list shows
+     */
+    public int getQuantityLeft(long bookId, int stock) {
+        synchronized (pending) {
+            Integer shownStock = stocks.get( bookId );
+            if (shownStock == null) {
+                return stock;
+            }
+            if (shownStock != stock) {
+                unseen.remove( bookId );
+                stocks.put( bookId, stock );
+                forgetStock( bookId );
+            }
+            Integer unwritten = pending.get( bookId );
+            Integer written = unseen.get( bookId );
+            return Math.max( 0, stock - (unwritten == null ? 0 : unwritten)
+                    - (written == null ? 0 : written) );
+        }
+    }
+
+    /**
+     * Forget the stock shown for the book once it has no sales in flight. Hold the lock on
+     * {@link #pending} to call this.
+     */
+    private void forgetStock(long bookId) {
+        if (!pending.containsKey( bookId ) && !unseen.containsKey( bookId )) {
+            stocks.remove( bookId );
+        }
+    }
+
+    /**
+     * Write all the sales gathered so far, on the calling thread. Sales made while they're being
+     * written are kept for the next flush. If the sales can't be written they're kept as well,
+     * and tried again after the flush delay.
+     *
+     * @return whether the sales were written, or there were none
+     */
+    public boolean flush() {
+        synchronized (flushLock) {
+            long[] ids;
+            int[] quantities;
+            Integer[] shownStocks;
+            synchronized (pending) {
+                flushScheduled = false;
+                handler.removeCallbacks( flushRunnable );
+                if (pending.isEmpty()) {
+                    return true;
+                }
+
+                ids = new long[pending.size()];
+                quantities = new int[pending.size()];
+                shownStocks = new Integer[pending.size()];
+                int i = 0;
+                for (Map.Entry<Long, Integer> entry : pending.entrySet()) {
+                    ids[i] = entry.getKey();
+                    quantities[i] = entry.getValue();
+                    shownStocks[i] = stocks.get( ids[i] );
+                    i++;
+                }
+            }
+
+            Bundle extras = new Bundle();
+            extras.putLongArray( BookContract.EXTRA_BOOK_IDS, ids );
+            extras.putIntArray( BookContract.EXTRA_QUANTITIES, quantities );
+            Bundle result;
+            try {
+                result = contentResolver.call( BookEntry.CONTENT_URI,
+                        BookContract.METHOD_SELL_BATCH, null, extras );
+            } catch (RuntimeException e) {
+                Log.e( LOG_TAG, "Failed to write " + ids.length + " sales", e );
+                synchronized (pending) {
+                    if (!flushScheduled) {
+                        flushScheduled = true;
+                        handler.postDelayed( flushRunnable, flushDelayMillis );
+                    }
+                }
+                return false;
+            }
+
+            // Take the sales written off the pending ones, leaving the sales made in the meantime.
+            // Those that weren't dropped are unseen until the list shows another stock, unless it
+            // already does.
+            final long[] soldOutIds = result == null ? new long[0]
+                    : result.getLongArray( BookContract.EXTRA_SOLD_OUT_IDS );
+            synchronized (pending) {
+                SharedPreferences.Editor editor = preferences.edit();
+                for (int i = 0; i < ids.length; i++) {
+                    int quantity = pending.get( ids[i] ) - quantities[i];
+                    if (quantity == 0) {
+                        pending.remove( ids[i] );
+                        editor.remove( String.valueOf( ids[i] ) );
+                    } else {
+                        pending.put( ids[i], quantity );
+                        editor.putInt( String.valueOf( ids[i] ), quantity );
+                    }
+
+                    if (!contains( soldOutIds, ids[i] ) && shownStocks[i] != null
+                            && shownStocks[i].equals( stocks.get( ids[i] ) )) {
+                        Integer written = unseen.get( ids[i] );
+                        unseen.put( ids[i], written == null ? quantities[i] : written + quantities[i] );
+                    }
+                    forgetStock( ids[i] );
+                }
+                editor.apply();
+            }
+
+            mainHandler.post( new Runnable() {
+                @Override
+                public void run() {
+                    if (!closed && listener != null) {
+                        listener.onSalesFlushed( soldOutIds );
+                    }
+                }
+            } );
+            return true;
+        }
+    }
+
+    private static boolean contains(long[] ids, long id) {
+        for (long other : ids) {
+            if (other == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Write all the sales gathered so far on the queue's thread, without waiting for the flush delay.
+     */
+    public void flushInBackground() {
+        synchronized (pending) {
+            handler.removeCallbacks( flushRunnable );
+            flushScheduled = true;
+            handler.post( flushRunnable );
+        }
+    }
+
+    /**
+     * Write all the sales gathered so far on the queue's thread, and wait until they are written,
+     * but no longer than the given time. The sales not written by then, or that failed to be
+     * written, are still written later, by this queue or the next one.
+     *
+     * @return whether the sales were written in time
+     */
+    public boolean flushAndWait(long timeoutMillis) {
+        final CountDownLatch flushed = new CountDownLatch( 1 );
+        final AtomicBoolean written = new AtomicBoolean();
+        boolean posted = handler.post( new Runnable() {
+            @Override
+            public void run() {
+                written.set( flush() );
+                flushed.countDown();
+            }
+        } );
+        if (!posted) {
+            return false;
+        }
+
+        try {
+            return flushed.await( timeoutMillis, TimeUnit.MILLISECONDS ) && written.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Write the sales left on the queue's thread, and then stop it. Call from the main thread;
+     * the listener isn't called anymore afterwards.
+     */
+    public void close() {
+        closed = true;
+        handler.post( new Runnable() {
+            @Override
+            public void run() {
+                flush();
+                thread.quit();
+            }
+        } );
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.android.bookstore.data;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A minimal benchmark harness. It runs an operation a number of times after a warm-up, timing
+ * each run, and reports the throughput and latency percentiles.
+ * <p>
+ * Benchmarks only run when the {@value #PROPERTY_ENABLED} system property is true, which
+ * {@code ./gradlew testDebugUnitTest -Pbenchmark} sets. Results are printed, and appended to the
+ * CSV file named by the {@value #PROPERTY_OUTPUT} system property so that runs before and after
+ * a change can be compared.
+ */
+final class Benchmark {
+
+    /**
+     * System property that enables the benchmarks
+     */
+    static final String PROPERTY_ENABLED = "bookstore.benchmark";
+
+    /**
+     * System property with the path of the CSV file the results are appended to
+     */
+    static final String PROPERTY_OUTPUT = "bookstore.benchmark.output";
+
+    /**
+     * An operation to benchmark.
+     */
+    interface Operation {
+
+        /**
+         * Run the operation once. The iteration counts up from 0 over the warm-up and again
+         * over the measured runs.
+         */
+        void run(int iteration) throws Exception;
+    }
+
+    private Benchmark() {
+    }
+
+    static boolean isEnabled() {
+        return Boolean.getBoolean( PROPERTY_ENABLED );
+    }
+
+    /**
+     * Run the operation {@code warmUps} times untimed, then {@code iterations} times timed,
+     * and report the results under the given name.
+     */
+    static Result measure(String name, int warmUps, int iterations, Operation operation)
+            throws Exception {
+        for (int i = 0; i < warmUps; i++) {
+            operation.run( i );
+        }
+
+        long[] nanos = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            operation.run( i );
+            nanos[i] = System.nanoTime() - start;
+        }
+
+        Result result = new Result( name, nanos );
+        report( result );
+        return result;
+    }
+
+    /**
+     * Print the result, and append it to the output file if there is one.
+     */
+    private static void report(Result result) throws IOException {
+        System.out.println( result );
+
+        String output = System.getProperty( PROPERTY_OUTPUT );
+        if (output == null) {
+            return;
+        }
+
+        File file = new File( output );
+        boolean isNew = !file.exists();
+        if (isNew && file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        Writer writer = new FileWriter( file, true );
+        try {
+            if (isNew) {
+                writer.write( "name,iterations,ops_per_sec,p50_us,p90_us,p99_us,max_us\n" );
+            }
+            writer.write( String.format( Locale.US, "%s,%d,%.1f,%d,%d,%d,%d\n",
+                    result.name, result.getIterations(), result.getOpsPerSecond(),
+                    toMicros( result.getPercentileNanos( 50 ) ),
+                    toMicros( result.getPercentileNanos( 90 ) ),
+                    toMicros( result.getPercentileNanos( 99 ) ),
+                    toMicros( result.getPercentileNanos( 100 ) ) ) );
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros( nanos );
+    }
+
+    /**
+     * The timings of every measured run of an operation.
+     */
+    static final class Result {
+
+        final String name;
+
+        /**
+         * Duration of each run, sorted
+         */
+        private final long[] sortedNanos;
+
+        private final long totalNanos;
+
+        Result(String name, long[] nanos) {
+            this.name = name;
+            sortedNanos = nanos.clone();
+            Arrays.sort( sortedNanos );
+            long total = 0;
+            for (long runNanos : nanos) {
+                total += runNanos;
+            }
+            totalNanos = total;
+        }
+
+        int getIterations() {
+            return sortedNanos.length;
+        }
+
+        double getOpsPerSecond() {
+            return totalNanos == 0 ? 0 : sortedNanos.length * (double) TimeUnit.SECONDS.toNanos( 1 )
+                    / totalNanos;
+        }
+
+        /**
+         * Returns the duration that the given percentage of runs were at least as fast as,
+         * using the nearest-rank method.
+         */
+        long getPercentileNanos(double percentile) {
+            int rank = (int) Math.ceil( percentile / 100 * sortedNanos.length );
+            return sortedNanos[Math.max( 0, Math.min( rank, sortedNanos.length ) - 1 )];
+        }
+
+        @Override
+        public String toString() {
+            return String.format( Locale.US,
+                    "%-36s %8d ops %12.1f ops/s   p50 %9.3f ms   p90 %9.3f ms   p99 %9.3f ms   max %9.3f ms",
+                    name, getIterations(), getOpsPerSecond(),
+                    getPercentileNanos( 50 ) / 1e6, getPercentileNanos( 90 ) / 1e6,
+                    getPercentileNanos( 99 ) / 1e6, getPercentileNanos( 100 ) / 1e6 );
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Benchmarks of the {@link BookProvider} data paths, run on the JVM against Robolectric's real
+ * SQLite. See {@link Benchmark} for how to run them and where the results go.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class BookProviderBenchmark {
+
+    /**
+     * Sizes of the books table the reads and writes are measured at, unless the
+     * {@value #PROPERTY_ROWS} system property lists others
+     */
+    private static final String DEFAULT_ROWS = "1000,100000,1000000";
+
+    /**
+     * System property with a comma separated list of table sizes to measure at
+     */
+    private static final String PROPERTY_ROWS = "bookstore.benchmark.rows";
+
+    private static final int WARM_UPS = 100;
+    private static final int ITERATIONS = 1000;
+
+    /**
+     * Books per bulk insert, both when benchmarking it and when filling the table
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * Books per page of the list, as in the inventory
+     */
+    private static final int PAGE_SIZE = 50;
+
+    /**
+     * Columns the inventory list shows
+     */
+    private static final String[] LIST_PROJECTION = {
+            BookEntry._ID,
+            BookEntry.COLUMN_PRODUCT_NAME,
+            BookEntry.COLUMN_PRODUCT_PRICE,
+            BookEntry.COLUMN_PRODUCT_QUANTITY};
+
+    private BookProvider provider;
+
+    /**
+     * Seeded, so every run works on the same books in the same order
+     */
+    private final Random random = new Random( 42 );
+
+    /**
+     * Number of books in the table, all with _IDs from 1 up
+     */
+    private int rows;
+
+    @Before
+    public void setUp() {
+        assumeTrue( "Run with -Pbenchmark to benchmark the data layer", Benchmark.isEnabled() );
+        provider = Robolectric.setupContentProvider( BookProvider.class );
+        rows = 0;
+    }
+
+    @Test
+    public void insertSingle() throws Exception {
+        Benchmark.measure( "insert single", WARM_UPS, ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                assertNotNull( provider.insert( BookEntry.CONTENT_URI, createBook( iteration ) ) );
+            }
+        } );
+    }
+
+    @Test
+    public void insertBulk() throws Exception {
+        final ContentValues[] batch = createBooks( BATCH_SIZE );
+        Benchmark.Result result = Benchmark.measure( "insert bulk of " + BATCH_SIZE, 5, 100,
+                new Benchmark.Operation() {
+                    @Override
+                    public void run(int iteration) {
+                        assertEquals( BATCH_SIZE, provider.bulkInsert( BookEntry.CONTENT_URI, batch ) );
+                    }
+                } );
+        System.out.println( String.format( "insert bulk: %.0f books/s",
+                result.getOpsPerSecond() * BATCH_SIZE ) );
+    }
+
+    /**
+     * Measure the most common writes as they were, through ContentValues and statements compiled
+     * for each call, then through the provider's compiled statements.
+     */
+    @Test
+    public void compiledWrites() throws Exception {
+        growTo( 10000 );
+        final ContentValues[] batch = createBooks( BATCH_SIZE );
+        final ContentValues values = new ContentValues();
+        final long[] ids = new long[PAGE_SIZE];
+        final int[] quantities = new int[PAGE_SIZE];
+        Arrays.fill( quantities, 1 );
+
+        for (boolean compiled : new boolean[]{false, true}) {
+            provider.setCompiledWritesEnabled( compiled );
+            String path = compiled ? " (compiled)" : " (ContentValues)";
+
+            Benchmark.measure( "insert single" + path, WARM_UPS, ITERATIONS, new Benchmark.Operation() {
+                @Override
+                public void run(int iteration) {
+                    assertNotNull( provider.insert( BookEntry.CONTENT_URI, createBook( iteration ) ) );
+                }
+            } );
+
+            Benchmark.Result result = Benchmark.measure( "insert bulk of " + BATCH_SIZE + path, 2, 20,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int iteration) {
+                            assertEquals( BATCH_SIZE, provider.bulkInsert( BookEntry.CONTENT_URI, batch ) );
+                        }
+                    } );
+            System.out.println( String.format( "insert bulk%s: %.0f books/s", path,
+                    result.getOpsPerSecond() * BATCH_SIZE ) );
+
+            Benchmark.measure( "update quantity" + path, WARM_UPS, ITERATIONS, new Benchmark.Operation() {
+                @Override
+                public void run(int iteration) {
+                    values.clear();
+                    values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, 1000 + iteration );
+                    assertEquals( 1, provider.update( randomBookUri(), values, null, null ) );
+                }
+            } );
+
+            Benchmark.measure( "update price" + path, WARM_UPS, ITERATIONS, new Benchmark.Operation() {
+                @Override
+                public void run(int iteration) {
+                    values.clear();
+                    values.put( BookEntry.COLUMN_PRODUCT_PRICE, 100 + iteration );
+                    assertEquals( 1, provider.update( randomBookUri(), values, null, null ) );
+                }
+            } );
+
+            Benchmark.measure( "sell" + path, WARM_UPS, ITERATIONS, new Benchmark.Operation() {
+                @Override
+                public void run(int iteration) {
+                    long id = ContentUris.parseId( randomBookUri() );
+                    provider.call( BookContract.METHOD_SELL, String.valueOf( id ), null );
+                }
+            } );
+
+            // A burst of sales from the list, as the sale queue writes them
+            Benchmark.measure( "sell batch of " + PAGE_SIZE + path, WARM_UPS, ITERATIONS,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int iteration) {
+                            for (int i = 0; i < ids.length; i++) {
+                                ids[i] = ContentUris.parseId( randomBookUri() );
+                            }
+                            Bundle extras = new Bundle();
+                            extras.putLongArray( BookContract.EXTRA_BOOK_IDS, ids );
+                            extras.putIntArray( BookContract.EXTRA_QUANTITIES, quantities );
+                            provider.call( BookContract.METHOD_SELL_BATCH, null, extras );
+                        }
+                    } );
+        }
+    }
+
+    /**
+     * Measure the reads and writes at each table size in turn, growing the table in between.
+     */
+    @Test
+    public void readsAndWrites() throws Exception {
+        for (String size : System.getProperty( PROPERTY_ROWS, DEFAULT_ROWS ).split( "," )) {
+            growTo( Integer.parseInt( size.trim() ) );
+            benchmarkListQueries();
+            benchmarkLookups();
+            benchmarkUpdates();
+            benchmarkDeletes();
+        }
+    }
+
+    private void benchmarkListQueries() throws Exception {
+        // A page at a random point in the list, as the inventory loads while scrolling
+        Benchmark.measure( rows + " rows: list page", WARM_UPS, ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                long afterId = random.nextInt( Math.max( 1, rows - PAGE_SIZE ) );
+                Uri uri = BookEntry.buildPageUri( afterId, PAGE_SIZE );
+                assertEquals( PAGE_SIZE, readAll( provider.query( uri, LIST_PROJECTION,
+                        null, null, null ) ) );
+            }
+        } );
+
+        // The first page sorted by each column in turn, which the provider reads in index order
+        final String[] sorts = {BookEntry.SORT_NAME, BookEntry.SORT_PRICE, BookEntry.SORT_QUANTITY};
+        Benchmark.measure( rows + " rows: sorted page", WARM_UPS, ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                Uri uri = BookEntry.CONTENT_URI.buildUpon()
+                        .appendQueryParameter( BookEntry.QUERY_PARAMETER_SORT, sorts[iteration % sorts.length] )
+                        .appendQueryParameter( BookEntry.QUERY_PARAMETER_DESCENDING,
+                                String.valueOf( iteration % 2 == 0 ) )
+                        .appendQueryParameter( BookEntry.QUERY_PARAMETER_LIMIT, String.valueOf( PAGE_SIZE ) )
+                        .build();
+                assertEquals( Math.min( PAGE_SIZE, rows ), readAll( provider.query( uri, LIST_PROJECTION,
+                        null, null, null ) ) );
+            }
+        } );
+
+        // The whole list at once, as it was loaded before paging
+        int scans = Math.max( 3, 100000 / rows );
+        Benchmark.measure( rows + " rows: list all", 1, scans, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                assertEquals( rows, readAll( provider.query( BookEntry.CONTENT_URI, LIST_PROJECTION,
+                        null, null, null ) ) );
+            }
+        } );
+    }
+
+    private void benchmarkLookups() throws Exception {
+        Benchmark.measure( rows + " rows: lookup by _ID", WARM_UPS, ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                assertEquals( 1, readAll( provider.query( randomBookUri(), null, null, null, null ) ) );
+            }
+        } );
+    }
+
+    private void benchmarkUpdates() throws Exception {
+        final ContentValues values = new ContentValues();
+        Benchmark.measure( rows + " rows: update quantity", WARM_UPS, ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, 1000 + iteration );
+                assertEquals( 1, provider.update( randomBookUri(), values, null, null ) );
+            }
+        } );
+
+        Benchmark.measure( rows + " rows: sell", WARM_UPS, ITERATIONS, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                long id = ContentUris.parseId( randomBookUri() );
+                provider.call( BookContract.METHOD_SELL, String.valueOf( id ), null );
+            }
+        } );
+    }
+
+    /**
+     * Delete books spread over the whole table, then put them back so the table keeps its size
+     * and its _IDs for the next round.
+     */
+    private void benchmarkDeletes() throws Exception {
+        final int deletes = Math.min( ITERATIONS, rows );
+        Benchmark.measure( rows + " rows: delete", 0, deletes, new Benchmark.Operation() {
+            @Override
+            public void run(int iteration) {
+                assertEquals( 1, provider.delete( bookUri( iteration, deletes ), null, null ) );
+            }
+        } );
+
+        ContentValues[] deleted = new ContentValues[deletes];
+        for (int i = 0; i < deletes; i++) {
+            long id = ContentUris.parseId( bookUri( i, deletes ) );
+            deleted[i] = createBook( (int) id - 1 );
+            deleted[i].put( BookEntry._ID, id );
+        }
+        assertEquals( deletes, provider.bulkInsert( BookEntry.CONTENT_URI, deleted ) );
+    }
+
+    /**
+     * Bulk insert books until the table holds the given number.
+     */
+    private void growTo(int size) {
+        while (rows < size) {
+            int count = Math.min( BATCH_SIZE, size - rows );
+            assertEquals( count, provider.bulkInsert( BookEntry.CONTENT_URI, createBooks( count ) ) );
+            rows += count;
+        }
+    }
+
+    /**
+     * Returns the URI of the given one of {@code count} books evenly spread over the table.
+     */
+    private Uri bookUri(int index, int count) {
+        return ContentUris.withAppendedId( BookEntry.CONTENT_URI, 1 + (long) index * rows / count );
+    }
+
+    private Uri randomBookUri() {
+        return ContentUris.withAppendedId( BookEntry.CONTENT_URI, 1 + random.nextInt( rows ) );
+    }
+
+    private ContentValues[] createBooks(int count) {
+        ContentValues[] books = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            books[i] = createBook( rows + i );
+        }
+        return books;
+    }
+
+    private ContentValues createBook(int number) {
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_NAME, "Book " + number );
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, 100 + number % 5000 );
+        values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, 1000 );
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Supplier " + number % 100 );
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER, "8001234567" );
+        return values;
+    }
+
+    /**
+     * Read every row of the cursor, as the list would, then close it. Returns the row count.
+     */
+    private static int readAll(Cursor cursor) {
+        try {
+            int count = 0;
+            while (cursor.moveToNext()) {
+                cursor.getLong( 0 );
+                cursor.getString( 1 );
+                count++;
+            }
+            return count;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.android.bookstore.data;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit test for {@link CsvReader}, which checks the quoting rules and line numbers, also where
+ * a record is split between two fills of the reader's 8 KiB buffer.
+ */
+public class CsvReaderTest {
+
+    /**
+     * Size of the reader's buffer, in chars
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    @Test
+    public void quotedFields_mayHoldCommasQuotesAndLineBreaks() throws IOException {
+        CsvReader reader = new CsvReader( new StringReader(
+                "name,note\r\n\"Emma, a novel\",\"She said \"\"hi\"\"\nand left\"\r\nPersuasion,\r\n" ) );
+
+        assertEquals( Arrays.asList( "name", "note" ), reader.readRecord() );
+        assertEquals( Arrays.asList( "Emma, a novel", "She said \"hi\"\nand left" ), reader.readRecord() );
+        assertEquals( 2, reader.getLineNumber() );
+        assertEquals( Arrays.asList( "Persuasion", "" ), reader.readRecord() );
+        assertEquals( 4, reader.getLineNumber() );
+        assertNull( reader.readRecord() );
+    }
+
+    @Test
+    public void blankLines_areSkippedButCounted() throws IOException {
+        CsvReader reader = new CsvReader( new StringReader( "a\n\n\r\nb\rc" ) );
+
+        assertEquals( Arrays.asList( "a" ), reader.readRecord() );
+        assertEquals( 1, reader.getLineNumber() );
+        assertEquals( Arrays.asList( "b" ), reader.readRecord() );
+        assertEquals( 4, reader.getLineNumber() );
+        assertEquals( Arrays.asList( "c" ), reader.readRecord() );
+        assertNull( reader.readRecord() );
+    }
+
+    @Test
+    public void crlf_splitBetweenBufferFills_endsASingleLine() throws IOException {
+        // The \r is the last char of the first fill, and the \n the first of the second
+        String first = repeat( 'a', BUFFER_SIZE - 1 );
+        CsvReader reader = new CsvReader( new StringReader( first + "\r\nb\r\n" ) );
+
+        assertEquals( Arrays.asList( first ), reader.readRecord() );
+        assertEquals( Arrays.asList( "b" ), reader.readRecord() );
+        assertEquals( 2, reader.getLineNumber() );
+        assertNull( reader.readRecord() );
+    }
+
+    @Test
+    public void cr_atTheEndOfABufferFill_isALineBreakByItself() throws IOException {
+        String first = repeat( 'a', BUFFER_SIZE - 1 );
+        CsvReader reader = new CsvReader( new StringReader( first + "\rb" ) );
+
+        assertEquals( Arrays.asList( first ), reader.readRecord() );
+        assertEquals( Arrays.asList( "b" ), reader.readRecord() );
+        assertEquals( 2, reader.getLineNumber() );
+    }
+
+    @Test
+    public void doubledQuote_splitBetweenBufferFills_isASingleQuote() throws IOException {
+        // The first quote of the pair is the last char of the first fill
+        String start = repeat( 'a', BUFFER_SIZE - 2 );
+        CsvReader reader = new CsvReader( new StringReader( "\"" + start + "\"\"b\",c\n" ) );
+
+        assertEquals( Arrays.asList( start + "\"b", "c" ), reader.readRecord() );
+        assertNull( reader.readRecord() );
+    }
+
+    @Test
+    public void records_readInSmallPieces_areTheSame() throws IOException {
+        String csv = "\uFEFFname,note\r\n\"a,\"\"b\"\"\r\nc\",d\r\n\r\ne,f";
+        CsvReader reader = new CsvReader( new TricklingReader( csv ) );
+
+        assertEquals( Arrays.asList( "name", "note" ), reader.readRecord() );
+        assertEquals( Arrays.asList( "a,\"b\"\r\nc", "d" ), reader.readRecord() );
+        assertEquals( 2, reader.getLineNumber() );
+        assertEquals( Arrays.asList( "e", "f" ), reader.readRecord() );
+        assertEquals( 5, reader.getLineNumber() );
+        assertNull( reader.readRecord() );
+    }
+
+    @Test
+    public void byteOrderMark_isSkippedAtTheStartOnly() throws IOException {
+        CsvReader reader = new CsvReader( new StringReader( "\uFEFFname\n\uFEFFEmma\n" ) );
+
+        assertEquals( Arrays.asList( "name" ), reader.readRecord() );
+        assertEquals( 1, reader.getLineNumber() );
+        assertEquals( Arrays.asList( "\uFEFFEmma" ), reader.readRecord() );
+    }
+
+    @Test
+    public void recordOfAlmost64KiB_isRead() throws IOException {
+        // The line break counts towards the length too
+        String field = repeat( 'a', 64 * 1024 - 1 );
+        CsvReader reader = new CsvReader( new StringReader( field + "\nb\n" ) );
+
+        assertEquals( Arrays.asList( field ), reader.readRecord() );
+        assertEquals( Arrays.asList( "b" ), reader.readRecord() );
+    }
+
+    @Test
+    public void recordOfMoreThan64KiB_isRejected() {
+        CsvReader reader = new CsvReader( new StringReader( "a\n" + repeat( 'b', 64 * 1024 ) + "\n" ) );
+
+        try {
+            reader.readRecord();
+            reader.readRecord();
+            fail( "The record was read" );
+        } catch (IOException e) {
+            assertEquals( "Record on line 2 is too long", e.getMessage() );
+        }
+    }
+
+    @Test
+    public void unterminatedQuote_stopsAt64KiB() {
+        CsvReader reader = new CsvReader( new StringReader(
+                "\"" + repeat( 'a', 40 * 1024 ) + "\n" + repeat( 'b', 40 * 1024 ) ) );
+
+        try {
+            reader.readRecord();
+            fail( "The record was read" );
+        } catch (IOException e) {
+            assertEquals( "Record on line 1 is too long", e.getMessage() );
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill( chars, c );
+        return new String( chars );
+    }
+
+    /**
+     * Returns at most three chars per read, so every record is split between buffer fills.
+     */
+    private static class TricklingReader extends Reader {
+
+        private final StringReader reader;
+
+        TricklingReader(String s) {
+            reader = new StringReader( s );
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return reader.read( buffer, offset, Math.min( length, 3 ) );
+        }
+
+        @Override
+        public void close() {
+            reader.close();
+        }
+    }
+}
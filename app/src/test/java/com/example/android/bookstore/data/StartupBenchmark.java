@@ -0,0 +1,154 @@
+package com.example.android.bookstore.data;
+
+import android.content.ContentValues;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import com.example.android.bookstore.InventoryActivity;
+import com.example.android.bookstore.R;
+import com.example.android.bookstore.data.BookContract.BookEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Benchmark of the time from a cold start of the inventory to the first book it shows, at several
+ * catalog sizes. Each run starts a new {@link BookProvider}, which opens the database again, then
+ * creates the {@link InventoryActivity} and lays out its list until it has bound a row. See
+ * {@link Benchmark} for how to run it and where the results go.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class StartupBenchmark {
+
+    /**
+     * Catalog sizes the startup is measured at, unless the {@value #PROPERTY_ROWS} system property
+     * lists others
+     */
+    private static final String DEFAULT_ROWS = "1000,100000,1000000";
+
+    /**
+     * System property with a comma separated list of catalog sizes to measure at
+     */
+    private static final String PROPERTY_ROWS = "bookstore.benchmark.rows";
+
+    private static final int WARM_UPS = 2;
+    private static final int ITERATIONS = 10;
+
+    /**
+     * Books per bulk insert when filling the table
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * Size of the screen the list is laid out on, in pixels
+     */
+    private static final int SCREEN_WIDTH = 1080;
+    private static final int SCREEN_HEIGHT = 1920;
+
+    /**
+     * How many times the background and main thread tasks are run before giving up on the first row
+     */
+    private static final int MAX_ROUNDS = 100;
+
+    private BookProvider provider;
+
+    /**
+     * Number of books in the table
+     */
+    private int rows;
+
+    @Before
+    public void setUp() {
+        assumeTrue( "Run with -Pbenchmark to benchmark the startup", Benchmark.isEnabled() );
+        provider = Robolectric.setupContentProvider( BookProvider.class );
+        rows = 0;
+    }
+
+    @After
+    public void tearDown() {
+        if (provider != null) {
+            provider.shutdown();
+        }
+    }
+
+    /**
+     * Measure the startup at each catalog size in turn, growing the catalog in between.
+     */
+    @Test
+    public void timeToFirstRow() throws Exception {
+        for (String size : System.getProperty( PROPERTY_ROWS, DEFAULT_ROWS ).split( "," )) {
+            growTo( Integer.parseInt( size.trim() ) );
+            Benchmark.measure( rows + " rows: start to first row", WARM_UPS, ITERATIONS,
+                    new Benchmark.Operation() {
+                        @Override
+                        public void run(int iteration) {
+                            // A new provider has to open the database again, as after the process started
+                            provider.shutdown();
+                            provider = Robolectric.setupContentProvider( BookProvider.class );
+
+                            ActivityController<InventoryActivity> controller =
+                                    Robolectric.buildActivity( InventoryActivity.class ).setup();
+                            try {
+                                waitForFirstRow( controller.get() );
+                            } finally {
+                                controller.pause().stop().destroy();
+                            }
+                        }
+                    } );
+        }
+    }
+
+    /**
+     * Run the loaders and lay out the list of the activity, as its first frames would, until
+     * the list shows a book.
+     */
+    private static void waitForFirstRow(InventoryActivity activity) {
+        RecyclerView list = activity.findViewById( R.id.text_view_inventory );
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            Robolectric.flushBackgroundThreadScheduler();
+            ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+            list.measure( View.MeasureSpec.makeMeasureSpec( SCREEN_WIDTH, View.MeasureSpec.EXACTLY ),
+                    View.MeasureSpec.makeMeasureSpec( SCREEN_HEIGHT, View.MeasureSpec.EXACTLY ) );
+            list.layout( 0, 0, SCREEN_WIDTH, SCREEN_HEIGHT );
+            if (list.getChildCount() > 0) {
+                return;
+            }
+        }
+        fail( "The list didn't show any book" );
+    }
+
+    /**
+     * Bulk insert books until the table holds the given number.
+     */
+    private void growTo(int size) {
+        while (rows < size) {
+            int count = Math.min( BATCH_SIZE, size - rows );
+            ContentValues[] books = new ContentValues[count];
+            for (int i = 0; i < count; i++) {
+                books[i] = createBook( rows + i );
+            }
+            assertEquals( count, provider.bulkInsert( BookEntry.CONTENT_URI, books ) );
+            rows += count;
+        }
+    }
+
+    private static ContentValues createBook(int number) {
+        ContentValues values = new ContentValues();
+        values.put( BookEntry.COLUMN_PRODUCT_NAME, "Book " + number );
+        values.put( BookEntry.COLUMN_PRODUCT_PRICE, 100 + number % 5000 );
+        values.put( BookEntry.COLUMN_PRODUCT_QUANTITY, 1000 );
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_NAME, "Supplier " + number % 100 );
+        values.put( BookEntry.COLUMN_PRODUCT_SUPPLIER_PHONE_NUMBER, "8001234567" );
+        return values;
+    }
+}